@@ -24,6 +24,9 @@ import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.jcs.access.behavior.ICacheAccess;
 import org.apache.commons.jcs.access.exception.CacheException;
@@ -32,6 +35,7 @@ import org.apache.commons.jcs.access.exception.InvalidHandleException;
 import org.apache.commons.jcs.access.exception.ObjectExistsException;
 import org.apache.commons.jcs.engine.CacheElement;
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICacheLoader;
 import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
 import org.apache.commons.jcs.engine.behavior.IElementAttributes;
 import org.apache.commons.jcs.engine.control.CompositeCache;
@@ -192,6 +196,49 @@ public class CacheAccess<K extends Serializable, V extends Serializable>
         return ( element != null ) ? element.getVal() : null;
     }
 
+    /**
+     * Retrieve an object from the cache region this instance provides access to. If it is not
+     * found, the loader is called and the result is put in the region.
+     * <p>
+     * Concurrent misses for the same key share one call to the loader, the other callers wait for
+     * its result. This protects expensive loads from a stampede when a hot key expires.
+     * <p>
+     * @param name Key the object is stored as
+     * @param loader computes the object on a miss
+     * @return The object, or null if the loader returned null
+     * @throws CacheException if the loader failed
+     */
+    public V get( K name, Callable<V> loader )
+        throws CacheException
+    {
+        if ( name == null )
+        {
+            throw new InvalidArgumentException( "Key must not be null" );
+        }
+
+        return this.cacheControl.get( name, loader );
+    }
+
+    /**
+     * Asynchronous version of {@link #get(Serializable, Callable)}. On a miss the loader is run on
+     * the cache_loader thread pool.
+     * <p>
+     * @param name Key the object is stored as
+     * @param loader computes the object on a miss
+     * @return a future for the object
+     * @throws CacheException
+     */
+    public Future<V> getAsync( K name, Callable<V> loader )
+        throws CacheException
+    {
+        if ( name == null )
+        {
+            throw new InvalidArgumentException( "Key must not be null" );
+        }
+
+        return this.cacheControl.getAsync( name, loader );
+    }
+
     /**
      * Retrieve matching objects from the cache region this instance provides access to.
      * <p>
@@ -286,6 +333,9 @@ public class CacheAccess<K extends Serializable, V extends Serializable>
      * associated with name in the region an ObjectExistsException is thrown. Names are scoped to a
      * region so they must be unique within the region they are placed.
      * <p>
+     * The check and the put hold the write lock of the key's stripe, so of several threads that
+     * putSafe the same key at once only one succeeds. Only the keys sharing the stripe are locked.
+     * <p>
      * @param key Key object will be stored with
      * @param value Object to store
      * @exception CacheException and ObjectExistsException is thrown if the item is already in the
@@ -294,12 +344,26 @@ public class CacheAccess<K extends Serializable, V extends Serializable>
     public void putSafe( K key, V value )
         throws CacheException
     {
-        if ( this.cacheControl.get( key ) != null )
+        if ( key == null )
+        {
+            throw new InvalidArgumentException( "Key must not be null" );
+        }
+
+        Lock lock = this.cacheControl.getKeyLock( key, true );
+        lock.lock();
+        try
         {
-            throw new ObjectExistsException( "putSafe failed.  Object exists in the cache for key [" + key
-                + "].  Remove first or use a non-safe put to override the value." );
+            if ( this.cacheControl.get( key ) != null )
+            {
+                throw new ObjectExistsException( "putSafe failed.  Object exists in the cache for key [" + key
+                    + "].  Remove first or use a non-safe put to override the value." );
+            }
+            put( key, value );
+        }
+        finally
+        {
+            lock.unlock();
         }
-        put( key, value );
     }
 
     /**
@@ -356,6 +420,51 @@ public class CacheAccess<K extends Serializable, V extends Serializable>
         }
     }
 
+    /**
+     * Place all of the entries in the cache with the default element attributes of the region,
+     * replacing any current objects with the same names.
+     * <p>
+     * The memory cache is updated in one pass under a single lock of the region. Disk caches queue
+     * the entries as one event and sync once after writing them. Lateral and remote caches send
+     * them one at a time, as for put.
+     * <p>
+     * If a key or a value is null, an InvalidArgumentException is thrown and nothing is put.
+     * <p>
+     * @param entries map of keys to objects
+     * @exception CacheException
+     */
+    public void putAll( Map<K, V> entries )
+        throws CacheException
+    {
+        Map<K, ICacheElement<K, V>> elements = new HashMap<K, ICacheElement<K, V>>();
+        for ( Map.Entry<K, V> entry : entries.entrySet() )
+        {
+            if ( entry.getKey() == null )
+            {
+                throw new InvalidArgumentException( "Key must not be null" );
+            }
+
+            if ( entry.getValue() == null )
+            {
+                throw new InvalidArgumentException( "Value must not be null" );
+            }
+
+            CacheElement<K, V> ce = new CacheElement<K, V>( this.cacheControl.getCacheName(), entry.getKey(),
+                                                            entry.getValue() );
+            ce.setElementAttributes( this.cacheControl.getElementAttributes() );
+            elements.put( entry.getKey(), ce );
+        }
+
+        try
+        {
+            this.cacheControl.updateMultiple( elements );
+        }
+        catch ( Exception e )
+        {
+            throw new CacheException( e );
+        }
+    }
+
     /**
      * Destroy the region and all objects within it. After calling this method, the Cache object can
      * no longer be used as it will be closed.
@@ -523,6 +632,18 @@ public class CacheAccess<K extends Serializable, V extends Serializable>
         return this.cacheControl.getElementAttributes();
     }
 
+    /**
+     * Registers a loader for the region. Elements whose attributes define a refresh ahead or stale
+     * window are reloaded with it in the background, on the cache_loader thread pool, while the
+     * current value keeps being served.
+     * <p>
+     * @param loader the loader, or null to turn background refresh off
+     */
+    public void setCacheLoader( ICacheLoader<K, V> loader )
+    {
+        this.cacheControl.setCacheLoader( loader );
+    }
+
     /**
      * Retrieves A COPY OF the default element attributes used by this region. This does not provide
      * a reference to the element attributes.
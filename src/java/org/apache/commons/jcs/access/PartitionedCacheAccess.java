@@ -25,10 +25,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.commons.jcs.access.behavior.ICacheAccess;
 import org.apache.commons.jcs.access.exception.CacheException;
 import org.apache.commons.jcs.access.exception.ConfigurationException;
+import org.apache.commons.jcs.access.exception.InvalidArgumentException;
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
 import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
 import org.apache.commons.jcs.engine.behavior.IElementAttributes;
@@ -112,6 +115,50 @@ public class PartitionedCacheAccess<K extends Serializable, V extends Serializab
         }
     }
 
+    /**
+     * Divides the entries by partition and puts each part in one call.
+     * <p>
+     * @param entries map of keys to objects
+     * @throws CacheException on configuration problem
+     */
+    public void putAll( Map<K, V> entries )
+        throws CacheException
+    {
+        if ( entries == null )
+        {
+            log.warn( "Bad input entries cannot be null." );
+            return;
+        }
+        ensureInit();
+
+        @SuppressWarnings("unchecked") // No generic arrays in java
+        Map<K, V>[] dividedEntries = new Map[this.getNumberOfPartitions()];
+
+        for ( Map.Entry<K, V> entry : entries.entrySet() )
+        {
+            if ( entry.getKey() == null || entry.getValue() == null )
+            {
+                log.warn( "Bad input key [" + entry.getKey() + "].  Cannot put null into the cache." );
+                continue;
+            }
+
+            int partition = getPartitionNumberForKey( entry.getKey() );
+            if ( dividedEntries[partition] == null )
+            {
+                dividedEntries[partition] = new HashMap<K, V>();
+            }
+            dividedEntries[partition].put( entry.getKey(), entry.getValue() );
+        }
+
+        for ( int i = 0; i < partitions.length; i++ )
+        {
+            if ( dividedEntries[i] != null )
+            {
+                partitions[i].putAll( dividedEntries[i] );
+            }
+        }
+    }
+
     /**
      * Puts in cache if an item does not exist with the name in that region.
      * <p>
@@ -191,6 +238,52 @@ public class PartitionedCacheAccess<K extends Serializable, V extends Serializab
         return partitions[partition].get( key );
     }
 
+    /**
+     * Gets the object for the key from the desired partition, loading it on a miss.
+     * <p>
+     * @param key key
+     * @param loader computes the value on a miss
+     * @return result, null if the key is null or the loader returned null.
+     * @throws CacheException on configuration problem or if the loader failed
+     */
+    public V get( K key, Callable<V> loader )
+        throws CacheException
+    {
+        if ( key == null )
+        {
+            log.warn( "Input key is null." );
+            return null;
+        }
+        ensureInit();
+
+        int partition = getPartitionNumberForKey( key );
+
+        return partitions[partition].get( key, loader );
+    }
+
+    /**
+     * Gets the object for the key from the desired partition, loading it in the background on a
+     * miss.
+     * <p>
+     * @param key key
+     * @param loader computes the value on a miss
+     * @return a future for the value
+     * @throws CacheException on configuration problem
+     */
+    public Future<V> getAsync( K key, Callable<V> loader )
+        throws CacheException
+    {
+        if ( key == null )
+        {
+            throw new InvalidArgumentException( "Key must not be null" );
+        }
+        ensureInit();
+
+        int partition = getPartitionNumberForKey( key );
+
+        return partitions[partition].getAsync( key, loader );
+    }
+
     /**
      * Gets the ICacheElement<K, V> (the wrapped object) for the key from the desired partition.
      * <p>
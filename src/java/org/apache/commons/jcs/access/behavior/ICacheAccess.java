@@ -22,6 +22,8 @@ package org.apache.commons.jcs.access.behavior;
 import java.io.Serializable;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 
 import org.apache.commons.jcs.access.exception.CacheException;
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
@@ -41,6 +43,30 @@ public interface ICacheAccess<K extends Serializable, V extends Serializable>
      */
     V get( K name );
 
+    /**
+     * Gets the value for the name, calling the loader and caching the result if it is not found.
+     * Concurrent misses for the same name in a region share one call to the loader.
+     * <p>
+     * @param name
+     * @param loader computes the value on a miss
+     * @return the value, or null if the loader returned null
+     * @throws CacheException if the loader failed
+     */
+    V get( K name, Callable<V> loader )
+        throws CacheException;
+
+    /**
+     * Asynchronous version of {@link #get(Serializable, Callable)}. The loader is run in the
+     * background on a miss.
+     * <p>
+     * @param name
+     * @param loader computes the value on a miss
+     * @return a future for the value
+     * @throws CacheException
+     */
+    Future<V> getAsync( K name, Callable<V> loader )
+        throws CacheException;
+
     /**
      * Retrieve matching objects from the cache region this instance provides access to.
      * <p>
@@ -69,6 +95,17 @@ public interface ICacheAccess<K extends Serializable, V extends Serializable>
     void put( K name, V obj )
         throws CacheException;
 
+    /**
+     * Puts and/or overrides all of the entries in that region. The region is locked once for the
+     * whole batch instead of once per entry. Disk caches queue the batch as one write and sync it
+     * once. Lateral and remote caches still send the entries one at a time.
+     * <p>
+     * @param entries map of names to objects
+     * @throws CacheException
+     */
+    void putAll( Map<K, V> entries )
+        throws CacheException;
+
     /**
      * Description of the Method
      * <p>
@@ -40,6 +40,7 @@ import org.apache.commons.jcs.engine.control.CompositeCache;
 import org.apache.commons.jcs.engine.control.CompositeCacheManager;
 import org.apache.commons.jcs.engine.memory.behavior.IMemoryCache;
 import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
+import org.apache.commons.jcs.utils.timing.CacheClock;
 
 /**
  * A servlet which provides HTTP access to JCS. Allows a summary of regions to be viewed, and
@@ -101,7 +102,7 @@ public class JCSAdminBean
 
         DateFormat format = DateFormat.getDateTimeInstance( DateFormat.SHORT, DateFormat.SHORT );
 
-        long now = System.currentTimeMillis();
+        long now = CacheClock.currentTimeMillis();
 
         for (Serializable key : keys)
         {
@@ -1,6 +1,8 @@
 package org.apache.commons.jcs.auxiliary;
 
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.Map;
 
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
 import org.apache.commons.jcs.engine.behavior.IElementSerializer;
@@ -27,6 +29,22 @@ public abstract class AbstractAuxiliaryCache<K extends Serializable, V extends S
     /** Key matcher used by the getMatching API */
     protected IKeyMatcher<K> keyMatcher = new KeyMatcherPatternImpl<K>();
 
+    /**
+     * Puts multiple items. By default they are put one by one through update, so the batch takes
+     * the same path as single puts. Auxiliaries that can hand a batch on as a unit override this.
+     * <p>
+     * @param elements
+     * @throws IOException
+     */
+    public void updateMultiple( Map<K, ICacheElement<K, V>> elements )
+        throws IOException
+    {
+        for ( ICacheElement<K, V> element : elements.values() )
+        {
+            update( element );
+        }
+    }
+
     /**
      * Logs an event if an event logger is configured.
      * <p>
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -33,6 +34,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.commons.jcs.auxiliary.AbstractAuxiliaryCacheEventLogging;
 import org.apache.commons.jcs.auxiliary.AuxiliaryCache;
 import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes;
+import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes.SyncMode;
 import org.apache.commons.jcs.engine.CacheEventQueueFactory;
 import org.apache.commons.jcs.engine.CacheInfo;
 import org.apache.commons.jcs.engine.CacheStatus;
@@ -40,6 +42,7 @@ import org.apache.commons.jcs.engine.behavior.ICache;
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
 import org.apache.commons.jcs.engine.behavior.ICacheEventQueue;
 import org.apache.commons.jcs.engine.behavior.ICacheListener;
+import org.apache.commons.jcs.engine.behavior.ICacheMultipleListener;
 import org.apache.commons.jcs.engine.stats.StatElement;
 import org.apache.commons.jcs.engine.stats.Stats;
 import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
@@ -106,6 +109,9 @@ public abstract class AbstractDiskCache<K extends Serializable, V extends Serial
      */
     protected final ReentrantReadWriteLock removeAllLock = new ReentrantReadWriteLock();
 
+    /** The time of the last force in the BATCH sync mode. */
+    private volatile long lastSyncTime = System.currentTimeMillis();
+
     // ----------------------------------------------------------- constructors
 
     /**
@@ -213,6 +219,50 @@ public abstract class AbstractDiskCache<K extends Serializable, V extends Serial
         }
     }
 
+    /**
+     * Adds the provided elements to purgatory, and then queues them as a single event, so the child
+     * writes the whole batch before syncing once.
+     * <p>
+     * @param elements
+     * @throws IOException
+     * @see org.apache.commons.jcs.engine.behavior.ICache#updateMultiple
+     */
+    @Override
+    public void updateMultiple( Map<K, ICacheElement<K, V>> elements )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "Putting " + elements.size() + " elements in purgatory, cacheName: " + cacheName );
+        }
+
+        try
+        {
+            List<ICacheElement<K, V>> batch = new ArrayList<ICacheElement<K, V>>( elements.size() );
+
+            // Add the elements to purgatory
+            synchronized ( purgatory )
+            {
+                for ( ICacheElement<K, V> cacheElement : elements.values() )
+                {
+                    PurgatoryElement<K, V> pe = new PurgatoryElement<K, V>( cacheElement );
+                    pe.setSpoolable( true );
+                    purgatory.put( pe.getKey(), pe );
+                    batch.add( pe );
+                }
+            }
+
+            // Queue the elements for serialization
+            cacheEventQueue.addPutMultipleEvent( batch );
+        }
+        catch ( IOException ex )
+        {
+            log.error( "Problem adding put multiple event to queue.", ex );
+
+            cacheEventQueue.destroy();
+        }
+    }
+
     /**
      * Check to see if the item is in purgatory. If so, return it. If not, check to see if we have
      * it on disk.
@@ -598,7 +648,7 @@ public abstract class AbstractDiskCache<K extends Serializable, V extends Serial
      * parent class.
      */
     protected class MyCacheListener
-        implements ICacheListener<K, V>
+        implements ICacheMultipleListener<K, V>
     {
         /** Id of the listener */
         private long listenerId = 0;
@@ -635,6 +685,48 @@ public abstract class AbstractDiskCache<K extends Serializable, V extends Serial
          */
         public void handlePut( ICacheElement<K, V> element )
             throws IOException
+        {
+            try
+            {
+                spool( element );
+            }
+            finally
+            {
+                syncIfDue();
+            }
+        }
+
+        /**
+         * Spools all the elements, then syncs once.
+         * <p>
+         * @param elements
+         * @throws IOException
+         * @see ICacheMultipleListener#handlePutMultiple
+         */
+        public void handlePutMultiple( Collection<ICacheElement<K, V>> elements )
+            throws IOException
+        {
+            try
+            {
+                for ( ICacheElement<K, V> element : elements )
+                {
+                    spool( element );
+                }
+            }
+            finally
+            {
+                syncIfDue();
+            }
+        }
+
+        /**
+         * Hands an element to the child, unless it was taken out of purgatory meanwhile.
+         * <p>
+         * @param element
+         * @throws IOException
+         */
+        private void spool( ICacheElement<K, V> element )
+            throws IOException
         {
             if ( alive )
             {
@@ -724,6 +816,7 @@ public abstract class AbstractDiskCache<K extends Serializable, V extends Serial
                 {
                     log.debug( "Element removed, key: " + key );
                 }
+                syncIfDue();
             }
         }
 
@@ -756,6 +849,39 @@ public abstract class AbstractDiskCache<K extends Serializable, V extends Serial
         }
     }
 
+    /**
+     * In the BATCH sync mode, forces the writes to disk once the event queue has nothing more
+     * waiting or the sync interval has passed since the last force. This groups the forces of a
+     * burst of puts into one. The event queue calls this after each put or remove it processed.
+     * <p>
+     * @throws IOException
+     */
+    protected void syncIfDue()
+        throws IOException
+    {
+        if ( alive && diskCacheAttributes.getSyncMode() == SyncMode.BATCH )
+        {
+            long now = System.currentTimeMillis();
+            if ( cacheEventQueue.isEmpty() || now - lastSyncTime >= diskCacheAttributes.getSyncIntervalMillis() )
+            {
+                lastSyncTime = now;
+                doSync();
+            }
+        }
+    }
+
+    /**
+     * Forces the writes that have not been forced yet to disk. Disk caches that support the BATCH
+     * sync mode override this. By default it does nothing.
+     * <p>
+     * @throws IOException
+     */
+    protected void doSync()
+        throws IOException
+    {
+        // nothing to force
+    }
+
     /**
      * Before the event logging layer, the subclasses implemented the do* methods. Now the do*
      * methods call the *WithEventLogging method on the super. The *WithEventLogging methods call
@@ -51,6 +51,18 @@ public abstract class AbstractDiskCacheAttributes
      */
     protected int shutdownSpoolTimeLimit = DEFAULT_shutdownSpoolTimeLimit;
 
+    /** When writes are forced to disk. */
+    private SyncMode syncMode = SyncMode.ALWAYS;
+
+    /** Default longest time between forces in the BATCH sync mode. */
+    private static final long DEFAULT_syncIntervalMillis = 1000;
+
+    /** The longest time between forces in the BATCH sync mode. */
+    private long syncIntervalMillis = DEFAULT_syncIntervalMillis;
+
+    /** Whether reads go through a memory mapping of the data file. */
+    private boolean useMemoryMappedReads = false;
+
     /**
      * Sets the diskPath attribute of the IJISPCacheAttributes object
      * <p>
@@ -151,6 +163,77 @@ public abstract class AbstractDiskCacheAttributes
         return allowRemoveAll;
     }
 
+    /**
+     * By default this is ALWAYS.
+     * <p>
+     * @param syncMode The syncMode to set.
+     */
+    public void setSyncMode( SyncMode syncMode )
+    {
+        this.syncMode = syncMode;
+    }
+
+    /**
+     * Translates the name to the sync mode. The allowed values are ALWAYS, BATCH and NONE.
+     * Anything else is ignored.
+     * <p>
+     * @param syncModeName The syncMode to set.
+     */
+    public void setSyncModeName( String syncModeName )
+    {
+        if ( syncModeName != null )
+        {
+            String name = syncModeName.toUpperCase().trim();
+            for ( SyncMode mode : SyncMode.values() )
+            {
+                if ( mode.name().equals( name ) )
+                {
+                    this.setSyncMode( mode );
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Returns the syncMode.
+     */
+    public SyncMode getSyncMode()
+    {
+        return syncMode;
+    }
+
+    /**
+     * @param syncIntervalMillis The syncIntervalMillis to set.
+     */
+    public void setSyncIntervalMillis( long syncIntervalMillis )
+    {
+        this.syncIntervalMillis = syncIntervalMillis;
+    }
+
+    /**
+     * @return Returns the syncIntervalMillis.
+     */
+    public long getSyncIntervalMillis()
+    {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * @param useMemoryMappedReads The useMemoryMappedReads to set.
+     */
+    public void setUseMemoryMappedReads( boolean useMemoryMappedReads )
+    {
+        this.useMemoryMappedReads = useMemoryMappedReads;
+    }
+
+    /**
+     * @return Returns the useMemoryMappedReads.
+     */
+    public boolean isUseMemoryMappedReads()
+    {
+        return useMemoryMappedReads;
+    }
+
     /**
      * Includes the common attributes for a debug message.
      * <p>
@@ -165,6 +248,9 @@ public abstract class AbstractDiskCacheAttributes
         str.append( "\n maxPurgatorySize   = " + getMaxPurgatorySize() );
         str.append( "\n allowRemoveAll   = " + isAllowRemoveAll() );
         str.append( "\n ShutdownSpoolTimeLimit   = " + getShutdownSpoolTimeLimit() );
+        str.append( "\n syncMode   = " + getSyncMode() );
+        str.append( "\n syncIntervalMillis   = " + getSyncIntervalMillis() );
+        str.append( "\n useMemoryMappedReads   = " + isUseMemoryMappedReads() );
         return str.toString();
     }
 }
@@ -0,0 +1,205 @@
+package org.apache.commons.jcs.auxiliary.disk;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads a data file through read only memory mapped windows. Reading a record that is in the page
+ * cache then costs no system call. The file is mapped in windows of a fixed size, since a single
+ * mapping cannot exceed 2GB. The last window only reaches to the end of the file as it was when it
+ * was mapped, and is mapped again when a read asks for more.
+ * <p>
+ * Writes still go through the channel, and the operating system shows them through the mapping
+ * as well. The owner must call reset whenever the file shrinks, and must make sure nobody reads
+ * while it does, since touching a mapped page past the end of the file is fatal.
+ */
+public class MappedFileReader
+{
+    /** The default window size, 256MB. */
+    public static final int DEFAULT_WINDOW_SIZE_BYTES = 256 * 1024 * 1024;
+
+    /** Nothing mapped. */
+    private static final Mapping EMPTY = new Mapping( new MappedByteBuffer[0], 0 );
+
+    /** The file. */
+    private final FileChannel fc;
+
+    /** The size of each window. */
+    private final int windowSize;
+
+    /** The current windows. Replaced as a whole. */
+    private volatile Mapping mapping = EMPTY;
+
+    /** The number of times the windows were extended. */
+    private final AtomicLong remapCount = new AtomicLong( 0 );
+
+    /**
+     * @param fc the file, open for reading
+     * @param windowSize the size of each window in bytes. Records of block files never cross a
+     *            window if this is a multiple of the block size.
+     */
+    public MappedFileReader( FileChannel fc, int windowSize )
+    {
+        if ( windowSize < 1 )
+        {
+            throw new IllegalArgumentException( "windowSize must be at least 1" );
+        }
+        this.fc = fc;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Gets a view of a region of the file. The view is positioned at the start of the region and
+     * limited to its end, and may be used by the calling thread only.
+     * <p>
+     * @param position
+     * @param length
+     * @return the region, or null if it crosses a window or lies past the end of the file. The
+     *         caller then reads through the channel.
+     * @throws IOException if the file cannot be mapped
+     */
+    public ByteBuffer slice( long position, int length )
+        throws IOException
+    {
+        long end = position + length;
+        if ( position < 0 || length < 0 )
+        {
+            return null;
+        }
+
+        Mapping current = mapping;
+        if ( end > current.end )
+        {
+            current = extend( end );
+            if ( end > current.end )
+            {
+                return null;
+            }
+        }
+
+        int index = (int) ( position / windowSize );
+        if ( length > 0 && ( end - 1 ) / windowSize != index )
+        {
+            return null;
+        }
+
+        int offset = (int) ( position - (long) index * windowSize );
+        ByteBuffer view = current.windows[index].duplicate();
+        view.limit( offset + length );
+        view.position( offset );
+        return view;
+    }
+
+    /**
+     * Maps the file up to its current end, if that covers more than is mapped now. The full
+     * windows are kept.
+     * <p>
+     * @param needed the end of the region a read needs
+     * @return the mapping to use
+     * @throws IOException
+     */
+    private synchronized Mapping extend( long needed )
+        throws IOException
+    {
+        Mapping current = mapping;
+        if ( needed <= current.end )
+        {
+            return current;
+        }
+
+        long size = fc.size();
+        if ( size <= current.end )
+        {
+            return current;
+        }
+
+        int count = (int) ( ( size + windowSize - 1 ) / windowSize );
+        MappedByteBuffer[] windows = new MappedByteBuffer[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            long start = (long) i * windowSize;
+            long length = Math.min( windowSize, size - start );
+            if ( i < current.windows.length && current.windows[i].capacity() == length )
+            {
+                windows[i] = current.windows[i];
+            }
+            else
+            {
+                windows[i] = fc.map( FileChannel.MapMode.READ_ONLY, start, length );
+            }
+        }
+
+        mapping = new Mapping( windows, size );
+        remapCount.incrementAndGet();
+        return mapping;
+    }
+
+    /**
+     * Forgets the windows. Call this after the file was truncated, and before closing it.
+     */
+    public synchronized void reset()
+    {
+        mapping = EMPTY;
+    }
+
+    /**
+     * @return the number of bytes mapped
+     */
+    public long getMappedBytes()
+    {
+        return mapping.end;
+    }
+
+    /**
+     * @return the number of times the windows were extended
+     */
+    public long getRemapCount()
+    {
+        return remapCount.get();
+    }
+
+    /**
+     * A set of windows and the end of the file they cover.
+     */
+    private static final class Mapping
+    {
+        /** The windows in file order. */
+        final MappedByteBuffer[] windows;
+
+        /** The end of the mapped part of the file. */
+        final long end;
+
+        /**
+         * @param windows
+         * @param end
+         */
+        Mapping( MappedByteBuffer[] windows, long end )
+        {
+            this.windows = windows;
+            this.end = end;
+        }
+    }
+}
@@ -27,6 +27,22 @@ import org.apache.commons.jcs.auxiliary.AuxiliaryCacheAttributes;
 public interface IDiskCacheAttributes
     extends AuxiliaryCacheAttributes
 {
+    /** When the indexed and block disk caches force their writes to the storage device. */
+    enum SyncMode
+    {
+        /** Each element is forced to disk as it is written. This is the default. */
+        ALWAYS,
+
+        /**
+         * Writes are forced once the event queue has no more puts waiting, or once SyncIntervalMillis
+         * has passed since the last force, whichever comes first.
+         */
+        BATCH,
+
+        /** Writes are never forced. The operating system writes them back when it sees fit. */
+        NONE
+    }
+
     /**
      * This is the default purgatory size limit. Purgatory is the area where
      * items to be spooled are temporarily stored. It basically provides access
@@ -100,4 +116,41 @@ public interface IDiskCacheAttributes
      * @param allowRemoveAll
      */
     public void setAllowRemoveAll( boolean allowRemoveAll );
+
+    /**
+     * @param syncMode when writes are forced to disk
+     */
+    public void setSyncMode( SyncMode syncMode );
+
+    /**
+     * Translates the name to the sync mode. The allowed values are ALWAYS, BATCH and NONE.
+     * <p>
+     * @param syncModeName
+     */
+    public void setSyncModeName( String syncModeName );
+
+    /**
+     * @return when writes are forced to disk
+     */
+    public SyncMode getSyncMode();
+
+    /**
+     * @param syncIntervalMillis the longest time between forces in the BATCH sync mode
+     */
+    public void setSyncIntervalMillis( long syncIntervalMillis );
+
+    /**
+     * @return the longest time between forces in the BATCH sync mode
+     */
+    public long getSyncIntervalMillis();
+
+    /**
+     * @param useMemoryMappedReads whether reads go through a memory mapping of the data file
+     */
+    public void setUseMemoryMappedReads( boolean useMemoryMappedReads );
+
+    /**
+     * @return whether reads go through a memory mapping of the data file
+     */
+    public boolean isUseMemoryMappedReads();
 }
@@ -27,9 +27,12 @@ import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.jcs.auxiliary.disk.MappedFileReader;
+import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes.SyncMode;
 import org.apache.commons.jcs.engine.behavior.IElementSerializer;
 import org.apache.commons.jcs.utils.serialization.StandardSerializer;
 import org.apache.commons.jcs.utils.struct.SingleLinkedList;
@@ -81,6 +84,18 @@ public class BlockDisk
     /** How many items have we put to disk */
     private final AtomicLong putCount = new AtomicLong(0);
 
+    /** When writes are forced to disk. */
+    private final SyncMode syncMode;
+
+    /** Whether there are writes that have not been forced yet. */
+    private final AtomicBoolean unsynced = new AtomicBoolean( false );
+
+    /** The number of times the file was forced. */
+    private final AtomicLong syncCount = new AtomicLong( 0 );
+
+    /** Reads through a memory mapping, or null to read through the channel. */
+    private final MappedFileReader mappedReader;
+
     /**
      * Constructor for the Disk object
      * <p>
@@ -94,6 +109,36 @@ public class BlockDisk
         this( file, DEFAULT_BLOCK_SIZE_BYTES, elementSerializer );
     }
 
+    /**
+     * Constructor for the Disk object
+     * <p>
+     * @param file
+     * @param elementSerializer
+     * @param syncMode when writes are forced to disk
+     * @exception FileNotFoundException
+     */
+    public BlockDisk( File file, IElementSerializer elementSerializer, SyncMode syncMode )
+        throws FileNotFoundException
+    {
+        this( file, DEFAULT_BLOCK_SIZE_BYTES, elementSerializer, syncMode );
+    }
+
+    /**
+     * Constructor for the Disk object
+     * <p>
+     * @param file
+     * @param elementSerializer
+     * @param syncMode when writes are forced to disk
+     * @param useMemoryMappedReads whether blocks are read through a memory mapping of the file
+     * @exception FileNotFoundException
+     */
+    public BlockDisk( File file, IElementSerializer elementSerializer, SyncMode syncMode,
+                      boolean useMemoryMappedReads )
+        throws FileNotFoundException
+    {
+        this( file, DEFAULT_BLOCK_SIZE_BYTES, elementSerializer, syncMode, useMemoryMappedReads );
+    }
+
     /**
      * Creates the file and set the block size in bytes.
      * <p>
@@ -117,6 +162,39 @@ public class BlockDisk
      */
     public BlockDisk( File file, int blockSizeBytes, IElementSerializer elementSerializer )
         throws FileNotFoundException
+    {
+        this( file, blockSizeBytes, elementSerializer, SyncMode.ALWAYS );
+    }
+
+    /**
+     * Creates the file and set the block size in bytes.
+     * <p>
+     * @param file
+     * @param blockSizeBytes
+     * @param elementSerializer
+     * @param syncMode when writes are forced to disk
+     * @throws FileNotFoundException
+     */
+    public BlockDisk( File file, int blockSizeBytes, IElementSerializer elementSerializer, SyncMode syncMode )
+        throws FileNotFoundException
+    {
+        this( file, blockSizeBytes, elementSerializer, syncMode, false );
+    }
+
+    /**
+     * Creates the file and set the block size in bytes.
+     * <p>
+     * @param file
+     * @param blockSizeBytes
+     * @param elementSerializer
+     * @param syncMode when writes are forced to disk
+     * @param useMemoryMappedReads whether blocks are read through a memory mapping of the file.
+     *            The caller must make sure nothing reads while the file is reset.
+     * @throws FileNotFoundException
+     */
+    public BlockDisk( File file, int blockSizeBytes, IElementSerializer elementSerializer, SyncMode syncMode,
+                      boolean useMemoryMappedReads )
+        throws FileNotFoundException
     {
         this.filepath = file.getAbsolutePath();
         RandomAccessFile raf = new RandomAccessFile( filepath, "rw" );
@@ -129,6 +207,18 @@ public class BlockDisk
 
         this.blockSizeBytes = blockSizeBytes;
         this.elementSerializer = elementSerializer;
+        this.syncMode = syncMode;
+
+        if ( useMemoryMappedReads )
+        {
+            // whole blocks per window, so a block never spans two
+            int blocksPerWindow = Math.max( 1, MappedFileReader.DEFAULT_WINDOW_SIZE_BYTES / blockSizeBytes );
+            this.mappedReader = new MappedFileReader( fc, blocksPerWindow * blockSizeBytes );
+        }
+        else
+        {
+            this.mappedReader = null;
+        }
     }
 
     /**
@@ -141,7 +231,8 @@ public class BlockDisk
      * <li>Look for free blocks in the emptyBlock list.</li>
      * <li>If there were not enough in the empty list. Take the nextBlock and increment it.</li>
      * <li>If the data will not fit in one block, create sub arrays.</li>
-     * <li>Write the subarrays to disk.</li>
+     * <li>Write the subarrays to disk, consecutive blocks in one write.</li>
+     * <li>Force the file to disk, depending on the sync mode.</li>
      * <li>If the process fails we should decrement the block count if we took from it.</li>
      * </ol>
      * @param object
@@ -188,12 +279,19 @@ public class BlockDisk
         // get the individual sub arrays.
         byte[][] chunks = getBlockChunks( data, numBlocksNeeded );
 
-        // write the blocks
-        for ( int i = 0; i < numBlocksNeeded; i++ )
+        // write the blocks, each run of consecutive blocks at once
+        int first = 0;
+        while ( first < numBlocksNeeded )
         {
-            int position = calculateByteOffsetForBlock( blocks[i] );
-            write( position, chunks[i] );
+            int count = 1;
+            while ( first + count < numBlocksNeeded && blocks[first + count] == blocks[first] + count )
+            {
+                count++;
+            }
+            write( calculateByteOffsetForBlock( blocks[first] ), chunks, first, count );
+            first += count;
         }
+        written();
 
         return blocks;
     }
@@ -236,24 +334,70 @@ public class BlockDisk
     }
 
     /**
-     * Writes the given byte array to the Disk at the specified position.
+     * Writes chunks to consecutive blocks, starting at the specified position. Each chunk but the
+     * last fills its block, so the blocks can be written as one buffer.
      * <p>
      * @param position
-     * @param data
+     * @param chunks
+     * @param first the first chunk to write
+     * @param count the number of chunks to write
      * @return true if we wrote successfully
      * @throws IOException
      */
-    private boolean write( long position, byte[] data )
+    private boolean write( long position, byte[][] chunks, int first, int count )
         throws IOException
     {
-        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE_BYTES + data.length);
-        buffer.putInt(data.length);
-        buffer.put(data);
+        int length = 0;
+        for ( int i = first; i < first + count; i++ )
+        {
+            length += HEADER_SIZE_BYTES + chunks[i].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for ( int i = first; i < first + count; i++ )
+        {
+            buffer.putInt(chunks[i].length);
+            buffer.put(chunks[i]);
+        }
         buffer.flip();
         int written = fc.write(buffer, position);
-        fc.force(true);
 
-        return written == data.length + HEADER_SIZE_BYTES;
+        return written == length;
+    }
+
+    /**
+     * Forces a write to disk right away in the ALWAYS sync mode, otherwise remembers that there is
+     * something to force.
+     * <p>
+     * @throws IOException
+     */
+    private void written()
+        throws IOException
+    {
+        if ( syncMode == SyncMode.ALWAYS )
+        {
+            fc.force(true);
+            syncCount.incrementAndGet();
+        }
+        else
+        {
+            unsynced.set( true );
+        }
+    }
+
+    /**
+     * Forces the writes that have not been forced yet to disk. Does nothing in the NONE sync mode.
+     * <p>
+     * @throws IOException
+     */
+    protected void sync()
+        throws IOException
+    {
+        if ( syncMode != SyncMode.NONE && unsynced.getAndSet( false ) )
+        {
+            fc.force(true);
+            syncCount.incrementAndGet();
+        }
     }
 
     /**
@@ -308,6 +452,15 @@ public class BlockDisk
     private byte[] readBlock( int block )
         throws IOException
     {
+        if ( mappedReader != null )
+        {
+            byte[] data = readMappedBlock( block );
+            if ( data != null )
+            {
+                return data;
+            }
+        }
+
         int datalen = 0;
 
         String message = null;
@@ -346,6 +499,41 @@ public class BlockDisk
         return data.array();
     }
 
+    /**
+     * Reads the occupied data in a block through the memory mapping.
+     * <p>
+     * @param block
+     * @return the data, or null if the block is not mapped or its header does not look right. The
+     *         caller then reads through the channel, which also reports the corruption.
+     * @throws IOException
+     */
+    private byte[] readMappedBlock( int block )
+        throws IOException
+    {
+        int position = calculateByteOffsetForBlock( block );
+        ByteBuffer header = mappedReader.slice( position, HEADER_SIZE_BYTES );
+        if ( header == null )
+        {
+            return null;
+        }
+
+        int datalen = header.getInt();
+        if ( datalen < 0 || datalen > blockSizeBytes - HEADER_SIZE_BYTES )
+        {
+            return null;
+        }
+
+        ByteBuffer chunk = mappedReader.slice( position + HEADER_SIZE_BYTES, datalen );
+        if ( chunk == null )
+        {
+            return null;
+        }
+
+        byte[] data = new byte[datalen];
+        chunk.get( data );
+        return data;
+    }
+
     /**
      * Add these blocks to the emptyBlock list.
      * <p>
@@ -420,6 +608,8 @@ public class BlockDisk
     protected void close()
         throws IOException
     {
+        sync();
+        resetMapping();
         fc.close();
     }
 
@@ -433,10 +623,38 @@ public class BlockDisk
     {
         this.numberOfBlocks.set(0);
         this.emptyBlocks.clear();
+        resetMapping();
         fc.truncate(0);
         fc.force(true);
     }
 
+    /**
+     * Drops the memory mapping before the file shrinks.
+     */
+    private void resetMapping()
+    {
+        if ( mappedReader != null )
+        {
+            mappedReader.reset();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the file that are memory mapped
+     */
+    protected long getMappedBytes()
+    {
+        return mappedReader != null ? mappedReader.getMappedBytes() : 0;
+    }
+
+    /**
+     * @return the number of times the file was forced to disk
+     */
+    protected long getSyncCount()
+    {
+        return syncCount.get();
+    }
+
     /**
      * @return Returns the numberOfBlocks.
      */
@@ -492,6 +710,9 @@ public class BlockDisk
         buf.append( "\n  Put Count [" + this.putCount + "]" );
         buf.append( "\n  Average Size [" + getAveragePutSizeBytes() + "]" );
         buf.append( "\n  Empty Blocks [" + this.getEmptyBlocks() + "]" );
+        buf.append( "\n  Sync Mode [" + this.syncMode + "]" );
+        buf.append( "\n  Sync Count [" + this.syncCount + "]" );
+        buf.append( "\n  Mapped Bytes [" + getMappedBytes() + "]" );
         try
         {
             buf.append( "\n  Length [" + length() + "]" );
@@ -133,11 +133,16 @@ public class BlockDiskCache<K extends Serializable, V extends Serializable>
             if ( this.blockDiskCacheAttributes.getBlockSizeBytes() > 0 )
             {
                 this.dataFile = new BlockDisk( new File( rootDirectory, fileName + ".data" ),
-                                               this.blockDiskCacheAttributes.getBlockSizeBytes() );
+                                               this.blockDiskCacheAttributes.getBlockSizeBytes(),
+                                               getElementSerializer(),
+                                               this.blockDiskCacheAttributes.getSyncMode(),
+                                               this.blockDiskCacheAttributes.isUseMemoryMappedReads() );
             }
             else
             {
-                this.dataFile = new BlockDisk( new File( rootDirectory, fileName + ".data" ), getElementSerializer() );
+                this.dataFile = new BlockDisk( new File( rootDirectory, fileName + ".data" ), getElementSerializer(),
+                                               this.blockDiskCacheAttributes.getSyncMode(),
+                                               this.blockDiskCacheAttributes.isUseMemoryMappedReads() );
             }
 
             keyStore = new BlockDiskKeyStore<K>( this.blockDiskCacheAttributes, this );
@@ -791,6 +796,16 @@ public class BlockDiskCache<K extends Serializable, V extends Serializable>
         se.setData( "" + this.dataFile.getEmptyBlocks() );
         elems.add( se );
 
+        se = new StatElement();
+        se.setName( "Sync Count" );
+        se.setData( "" + this.dataFile.getSyncCount() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Mapped Bytes" );
+        se.setData( "" + this.dataFile.getMappedBytes() );
+        elems.add( se );
+
         // get the stats from the super too
         // get as array, convert to list, add list to our outer list
         IStats sStats = super.getStatistics();
@@ -805,6 +820,29 @@ public class BlockDiskCache<K extends Serializable, V extends Serializable>
         return stats;
     }
 
+    /**
+     * Forces the data file writes that have not been forced yet to disk.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    protected void doSync()
+        throws IOException
+    {
+        storageLock.readLock().lock();
+        try
+        {
+            if ( alive )
+            {
+                dataFile.sync();
+            }
+        }
+        finally
+        {
+            storageLock.readLock().unlock();
+        }
+    }
+
     /**
      * This is used by the event logging.
      * <p>
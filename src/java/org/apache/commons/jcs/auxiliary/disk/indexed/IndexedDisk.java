@@ -26,7 +26,11 @@ import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.apache.commons.jcs.auxiliary.disk.MappedFileReader;
+import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes.SyncMode;
 import org.apache.commons.jcs.engine.behavior.IElementSerializer;
 import org.apache.commons.jcs.utils.serialization.StandardSerializer;
 import org.apache.commons.logging.Log;
@@ -50,8 +54,20 @@ class IndexedDisk
     /** The data file. */
     private final FileChannel fc;
 
+    /** When writes are forced to disk. */
+    private final SyncMode syncMode;
+
+    /** Whether there are writes that have not been forced yet. */
+    private final AtomicBoolean unsynced = new AtomicBoolean( false );
+
+    /** The number of times the file was forced. */
+    private final AtomicLong syncCount = new AtomicLong( 0 );
+
+    /** Reads through a memory mapping, or null to read through the channel. */
+    private final MappedFileReader mappedReader;
+
     /**
-     * Constructor for the Disk object
+     * Constructor for the Disk object. Each write is forced to disk.
      * <p>
      * @param file
      * @param elementSerializer
@@ -59,11 +75,45 @@ class IndexedDisk
      */
     public IndexedDisk( File file, IElementSerializer elementSerializer )
         throws FileNotFoundException
+    {
+        this( file, elementSerializer, SyncMode.ALWAYS );
+    }
+
+    /**
+     * Constructor for the Disk object
+     * <p>
+     * @param file
+     * @param elementSerializer
+     * @param syncMode when writes are forced to disk
+     * @exception FileNotFoundException
+     */
+    public IndexedDisk( File file, IElementSerializer elementSerializer, SyncMode syncMode )
+        throws FileNotFoundException
+    {
+        this( file, elementSerializer, syncMode, false );
+    }
+
+    /**
+     * Constructor for the Disk object
+     * <p>
+     * @param file
+     * @param elementSerializer
+     * @param syncMode when writes are forced to disk
+     * @param useMemoryMappedReads whether records are read through a memory mapping of the file.
+     *            The caller must make sure nothing reads while the file is truncated.
+     * @exception FileNotFoundException
+     */
+    public IndexedDisk( File file, IElementSerializer elementSerializer, SyncMode syncMode,
+                        boolean useMemoryMappedReads )
+        throws FileNotFoundException
     {
         this.filepath = file.getAbsolutePath();
         this.elementSerializer = elementSerializer;
+        this.syncMode = syncMode;
         RandomAccessFile raf = new RandomAccessFile( filepath, "rw" );
         this.fc = raf.getChannel();
+        this.mappedReader = useMemoryMappedReads
+            ? new MappedFileReader( fc, MappedFileReader.DEFAULT_WINDOW_SIZE_BYTES ) : null;
     }
 
     /**
@@ -80,6 +130,15 @@ class IndexedDisk
     protected <T extends Serializable> T readObject( IndexedDiskElementDescriptor ded )
         throws IOException, ClassNotFoundException
     {
+        if ( mappedReader != null )
+        {
+            byte[] data = readMapped( ded );
+            if ( data != null )
+            {
+                return elementSerializer.deSerialize( data );
+            }
+        }
+
         String message = null;
         boolean corrupted = false;
         long fileLength = fc.size();
@@ -119,8 +178,31 @@ class IndexedDisk
         return elementSerializer.deSerialize( data.array() );
     }
 
+    /**
+     * Reads a record through the memory mapping.
+     * <p>
+     * @param ded
+     * @return the data, or null if the record is not mapped or does not look right. The caller
+     *         then reads through the channel, which also reports the corruption.
+     * @throws IOException
+     */
+    private byte[] readMapped( IndexedDiskElementDescriptor ded )
+        throws IOException
+    {
+        ByteBuffer record = mappedReader.slice( ded.pos, HEADER_SIZE_BYTES + ded.len );
+        if ( record == null || record.getInt() != ded.len )
+        {
+            return null;
+        }
+
+        byte[] data = new byte[ded.len];
+        record.get( data );
+        return data;
+    }
+
     /**
      * Moves the data stored from one position to another. The descriptor's position is updated.
+     * The move is not forced to disk, call sync once the moves are done.
      * <p>
      * @param ded
      * @param newPosition
@@ -152,6 +234,8 @@ class IndexedDisk
         {
             // chunk it
             int chunkSize = Math.min( remaining, buffer.capacity() );
+            // never copy past the record, the next one may not have been moved yet
+            buffer.limit(chunkSize);
             fc.read(buffer, readPos);
             buffer.flip();
             fc.write(buffer, writePos);
@@ -162,6 +246,7 @@ class IndexedDisk
             remaining -= chunkSize;
         }
 
+        unsynced.set( true );
         ded.pos = newPosition;
     }
 
@@ -193,11 +278,54 @@ class IndexedDisk
         buffer.put(data);
         buffer.flip();
         int written = fc.write(buffer, pos);
-        fc.force(true);
+        written();
 
         return written == data.length;
     }
 
+    /**
+     * Forces a write to disk right away in the ALWAYS sync mode, otherwise remembers that there is
+     * something to force.
+     * <p>
+     * @throws IOException
+     */
+    private void written()
+        throws IOException
+    {
+        if ( syncMode == SyncMode.ALWAYS )
+        {
+            fc.force(true);
+            syncCount.incrementAndGet();
+        }
+        else
+        {
+            unsynced.set( true );
+        }
+    }
+
+    /**
+     * Forces the writes that have not been forced yet to disk. Does nothing in the NONE sync mode.
+     * <p>
+     * @throws IOException
+     */
+    protected void sync()
+        throws IOException
+    {
+        if ( syncMode != SyncMode.NONE && unsynced.getAndSet( false ) )
+        {
+            fc.force(true);
+            syncCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of times the file was forced to disk
+     */
+    protected long getSyncCount()
+    {
+        return syncCount.get();
+    }
+
     /**
      * Serializes the object and write it out to the given position.
      * <p>
@@ -235,6 +363,8 @@ class IndexedDisk
     protected void close()
         throws IOException
     {
+        sync();
+        resetMapping();
         fc.close();
     }
 
@@ -250,6 +380,7 @@ class IndexedDisk
         {
             log.debug( "Resetting Indexed File [" + filepath + "]" );
         }
+        resetMapping();
         fc.truncate(0);
         fc.force(true);
     }
@@ -267,9 +398,32 @@ class IndexedDisk
         {
             log.info( "Truncating file [" + filepath + "] to " + length );
         }
+        if ( length < fc.size() )
+        {
+            resetMapping();
+        }
         fc.truncate( length );
     }
 
+    /**
+     * Drops the memory mapping before the file shrinks.
+     */
+    private void resetMapping()
+    {
+        if ( mappedReader != null )
+        {
+            mappedReader.reset();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the file that are memory mapped
+     */
+    protected long getMappedBytes()
+    {
+        return mappedReader != null ? mappedReader.getMappedBytes() : 0;
+    }
+
     /**
      * This is used for debugging.
      * <p>
@@ -109,6 +109,21 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
     /** The thread optimizing the file. */
     protected volatile Thread currentOptimizationThread;
 
+    /** The number of records the current or last optimization has to pack. */
+    private volatile int optimizationRecordCount = 0;
+
+    /** The number of those records that have been packed. */
+    private volatile int optimizationRecordsPacked = 0;
+
+    /** The number of bytes the current or last optimization moved. */
+    private volatile long optimizationBytesMoved = 0;
+
+    /** When the current or last optimization started. */
+    private volatile long optimizationStartTime = 0;
+
+    /** How long the last optimization took, -1 while one is running. */
+    private volatile long optimizationTime = 0;
+
     /** used for counting the number of requests */
     private int removeCount = 0;
 
@@ -142,6 +157,19 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
      */
     protected ReentrantReadWriteLock storageLock = new ReentrantReadWriteLock();
 
+    /**
+     * Updates hold the read lock while their write is in progress. Taking the write lock waits for
+     * them, which the optimization, reset and dispose need. Always taken before the storageLock.
+     */
+    private final ReentrantReadWriteLock pendingWriteLock = new ReentrantReadWriteLock();
+
+    /** The slots being written, by key. Guarded by the storageLock. */
+    private final Map<K, IndexedDiskElementDescriptor> pendingWrites =
+        new HashMap<K, IndexedDiskElementDescriptor>();
+
+    /** The end of the space handed out at the end of the data file. Guarded by the storageLock. */
+    private long reservedFileEnd = 0;
+
     /**
      * Constructor for the DiskCache object.
      * <p>
@@ -231,7 +259,8 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
     private void initializeKeysAndData( IndexedDiskCacheAttributes cattr )
         throws FileNotFoundException, IOException, InterruptedException
     {
-        this.dataFile = new IndexedDisk( new File( rafDir, fileName + ".data" ), getElementSerializer() );
+        this.dataFile = new IndexedDisk( new File( rafDir, fileName + ".data" ), getElementSerializer(),
+                                         cattr.getSyncMode(), cattr.isUseMemoryMappedReads() );
 
         this.keyFile = new IndexedDisk( new File( rafDir, fileName + ".key" ), getElementSerializer() );
 
@@ -471,7 +500,16 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
 
             HashMap<K, IndexedDiskElementDescriptor> keys =
                 new HashMap<K, IndexedDiskElementDescriptor>();
-            keys.putAll( keyHash );
+            // puts may still be made after an optimization
+            storageLock.readLock().lock();
+            try
+            {
+                keys.putAll( keyHash );
+            }
+            finally
+            {
+                storageLock.readLock().unlock();
+            }
 
             if ( keys.size() > 0 )
             {
@@ -493,6 +531,12 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
      * Update the disk cache. Called from the Queue. Makes sure the Item has not been retrieved from
      * purgatory while in queue for disk. Remove items from purgatory when they go to disk.
      * <p>
+     * The slot is chosen under the write lock, but the bytes are written after it is released, so
+     * readers never wait for the disk. The record only becomes visible once it is written. Until
+     * then, readers going through the purgatory get the new value and readers of the file get the
+     * old one, unless the old slot is being rewritten, in which case the key is hidden meanwhile.
+     * If the key is removed or put again while the write is in progress, the slot is recycled.
+     * <p>
      * @param ce The ICacheElement<K, V> to put to disk.
      */
     @Override
@@ -518,68 +562,45 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         {
             byte[] data = getElementSerializer().serialize( ce );
 
-            // make sure this only locks for one particular cache region
-            storageLock.writeLock().lock();
+            pendingWriteLock.readLock().lock();
             try
             {
-                old = keyHash.get( ce.getKey() );
+                IndexedDisk file;
 
-                // Item with the same key already exists in file.
-                // Try to reuse the location if possible.
-                if ( old != null && data.length <= old.len )
+                // make sure this only locks for one particular cache region
+                storageLock.writeLock().lock();
+                try
                 {
-                    // Reuse the old ded. The defrag relies on ded updates by reference, not
-                    // replacement.
-                    ded = old;
-                    ded.len = data.length;
+                    file = dataFile;
+                    ded = allocate( ce.getKey(), data.length );
                 }
-                else
+                finally
                 {
-                    // we need this to compare in the recycle bin
-                    ded = new IndexedDiskElementDescriptor( dataFile.length(), data.length );
-
-                    if ( doRecycle )
-                    {
-                        IndexedDiskElementDescriptor rep = recycle
-                            .takeNearestLargerOrEqual( ded );
-                        if ( rep != null )
-                        {
-                            ded = rep;
-                            ded.len = data.length;
-                            recycleCnt++;
-                            this.adjustBytesFree( ded, false );
-                            if ( log.isDebugEnabled() )
-                            {
-                                log.debug( logCacheName + "using recycled ded " + ded.pos + " rep.len = " + rep.len
-                                    + " ded.len = " + ded.len );
-                            }
-                        }
-                    }
-
-                    // Put it in the map
-                    keyHash.put( ce.getKey(), ded );
+                    storageLock.writeLock().unlock();
+                }
 
-                    if ( queueInput )
+                boolean written = false;
+                try
+                {
+                    file.write( ded, data );
+                    written = true;
+                }
+                finally
+                {
+                    storageLock.writeLock().lock();
+                    try
                     {
-                        queuedPutList.add( ded );
-                        if ( log.isDebugEnabled() )
-                        {
-                            log.debug( logCacheName + "added to queued put list." + queuedPutList.size() );
-                        }
+                        old = publish( ce.getKey(), ded, written );
                     }
-
-                    // add the old slot to the recycle bin
-                    if ( old != null )
+                    finally
                     {
-                        addToRecycleBin( old );
+                        storageLock.writeLock().unlock();
                     }
                 }
-
-                dataFile.write( ded, data );
             }
             finally
             {
-                storageLock.writeLock().unlock();
+                pendingWriteLock.readLock().unlock();
             }
 
             if ( log.isDebugEnabled() )
@@ -604,6 +625,115 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         }
     }
 
+    /**
+     * Chooses the slot for a record. The old slot of the key is rewritten if the record fits,
+     * unless the file is being optimized. Otherwise a slot is taken from the recycle bin, or space
+     * is reserved at the end of the file.
+     * <p>
+     * This operates under the write lock obtained in processUpdate.
+     * <p>
+     * @param key
+     * @param length the length of the serialized element
+     * @return the slot to write to
+     * @throws IOException
+     */
+    private IndexedDiskElementDescriptor allocate( K key, int length )
+        throws IOException
+    {
+        IndexedDiskElementDescriptor ded;
+        IndexedDiskElementDescriptor old = keyHash.get( key );
+
+        // Item with the same key already exists in file.
+        // Try to reuse the location if possible.
+        if ( old != null && length <= old.len && !queueInput )
+        {
+            // Reuse the old ded. The defrag relies on ded updates by reference, not
+            // replacement. Hide it from readers while it is being rewritten.
+            keyHash.remove( key );
+            ded = old;
+            ded.len = length;
+        }
+        else
+        {
+            ded = null;
+            if ( doRecycle )
+            {
+                // we need this to compare in the recycle bin
+                IndexedDiskElementDescriptor rep = recycle
+                    .takeNearestLargerOrEqual( new IndexedDiskElementDescriptor( 0, length ) );
+                if ( rep != null )
+                {
+                    ded = rep;
+                    ded.len = length;
+                    recycleCnt++;
+                    this.adjustBytesFree( ded, false );
+                    if ( log.isDebugEnabled() )
+                    {
+                        log.debug( logCacheName + "using recycled ded " + ded.pos + " rep.len = " + rep.len
+                            + " ded.len = " + ded.len );
+                    }
+                }
+            }
+
+            if ( ded == null )
+            {
+                // reserve the space at the end, other writes may still be in progress there
+                long pos = Math.max( dataFile.length(), reservedFileEnd );
+                ded = new IndexedDiskElementDescriptor( pos, length );
+                reservedFileEnd = pos + IndexedDisk.HEADER_SIZE_BYTES + length;
+            }
+
+            if ( queueInput )
+            {
+                queuedPutList.add( ded );
+                if ( log.isDebugEnabled() )
+                {
+                    log.debug( logCacheName + "added to queued put list." + queuedPutList.size() );
+                }
+            }
+        }
+
+        pendingWrites.put( key, ded );
+        return ded;
+    }
+
+    /**
+     * Makes a record visible once it has been written, and recycles the slot it replaces. If the
+     * write failed, or the key was removed or put again in the meantime, the slot is recycled
+     * instead.
+     * <p>
+     * This operates under the write lock obtained in processUpdate.
+     * <p>
+     * @param key
+     * @param ded the slot that was written
+     * @param written whether the write succeeded
+     * @return the slot that was replaced, if any
+     */
+    private IndexedDiskElementDescriptor publish( K key, IndexedDiskElementDescriptor ded, boolean written )
+    {
+        if ( pendingWrites.get( key ) != ded )
+        {
+            // removed or superseded while writing
+            addToRecycleBin( ded );
+            return null;
+        }
+
+        pendingWrites.remove( key );
+        if ( !written )
+        {
+            addToRecycleBin( ded );
+            return null;
+        }
+
+        IndexedDiskElementDescriptor old = keyHash.put( key, ded );
+        if ( old != null && old != ded )
+        {
+            // add the old slot to the recycle bin
+            addToRecycleBin( old );
+        }
+        return old;
+    }
+
     /**
      * Gets the key, then goes to disk to get the object.
      * <p>
@@ -882,7 +1012,7 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         // remove all keys of the same name hierarchy.
         List<K> itemsToRemove = new LinkedList<K>();
 
-        for (K k : keyHash.keySet())
+        for (K k : getKeysAndPendingWrites())
         {
             if ( k instanceof String && k.toString().startsWith( key.toString() ) )
             {
@@ -920,7 +1050,7 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         List<K> itemsToRemove = new LinkedList<K>();
 
         // remove all keys of the same name hierarchy.
-        for (K k : keyHash.keySet())
+        for (K k : getKeysAndPendingWrites())
         {
             if ( k instanceof GroupAttrName && ( (GroupAttrName<?>) k ).groupId.equals( key ) )
             {
@@ -941,6 +1071,18 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         return removed;
     }
 
+    /**
+     * This operates under a lock obtained in doRemove().
+     * <p>
+     * @return the keys on disk and the keys being written
+     */
+    private Set<K> getKeysAndPendingWrites()
+    {
+        Set<K> keys = new HashSet<K>( keyHash.keySet() );
+        keys.addAll( pendingWrites.keySet() );
+        return keys;
+    }
+
     /**
      * Removes an individual key from the cache.
      * <p>
@@ -957,6 +1099,12 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         removed = ( ded != null );
         addToRecycleBin( ded );
 
+        // a write in progress must not bring the key back
+        if ( pendingWrites.remove( key ) != null )
+        {
+            removed = true;
+        }
+
         if ( log.isDebugEnabled() )
         {
             log.debug( logCacheName + "Disk removal: Removed from key hash, key [" + key + "] removed = " + removed );
@@ -998,6 +1146,7 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
             log.warn( logCacheName + "Reseting cache" );
         }
 
+        pendingWriteLock.writeLock().lock();
         try
         {
             storageLock.writeLock().lock();
@@ -1016,13 +1165,17 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
             File keyFileTemp = new File( rafDir, fileName + ".key" );
             keyFileTemp.delete();
 
-            dataFile = new IndexedDisk( new File( rafDir, fileName + ".data" ), getElementSerializer() );
+            dataFile = new IndexedDisk( new File( rafDir, fileName + ".data" ), getElementSerializer(),
+                                        cattr.getSyncMode(), cattr.isUseMemoryMappedReads() );
 
             keyFile = new IndexedDisk( new File( rafDir, fileName + ".key" ), getElementSerializer() );
 
             initializeRecycleBin();
 
             initializeKeyMap();
+
+            pendingWrites.clear();
+            reservedFileEnd = 0;
         }
         catch ( Exception e )
         {
@@ -1031,6 +1184,7 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         finally
         {
             storageLock.writeLock().unlock();
+            pendingWriteLock.writeLock().unlock();
         }
     }
 
@@ -1125,6 +1279,10 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         // Prevents any interaction with the cache while we're shutting down.
         alive = false;
 
+        // Let the writes in progress finish
+        pendingWriteLock.writeLock().lock();
+        pendingWriteLock.writeLock().unlock();
+
         Thread optimizationThread = currentOptimizationThread;
         if ( isRealTimeOptimizationEnabled && optimizationThread != null )
         {
@@ -1253,18 +1411,25 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
     /**
      * File optimization is handled by this method. It works as follows:
      * <ol>
-     * <li>Shutdown recycling and turn on queuing of puts. </li> <li>Take a snapshot of the current
-     * descriptors. If there are any removes, ignore them, as they will be compacted during the next
-     * optimization.</li> <li>Optimize the snapshot. For each descriptor:
+     * <li>Wait for the writes in progress. Shutdown recycling and turn on queuing of puts. </li>
+     * <li>Take a snapshot of the current descriptors. If there are any removes, ignore them, as they
+     * will be compacted during the next optimization.</li> <li>Empty the key file, since the
+     * positions it holds are about to change. If the process dies before the keys are saved again,
+     * the cache starts empty rather than reading the wrong records.</li> <li>Optimize the snapshot
+     * in steps. For each step:
      * <ol>
-     * <li>Obtain the write-lock.</li> <li>Shift the element on the disk, in order to compact out
-     * the free space. </li> <li>Release the write-lock. This allows elements to still be accessible
-     * during optimization.</li>
+     * <li>Wait for the writes in progress and obtain the write-lock.</li> <li>Shift up to
+     * OptimizeBatchSize elements on the disk, in order to compact out the free space. </li>
+     * <li>Release the write-lock. This allows elements to still be accessible during
+     * optimization.</li>
      * </ol>
-     * </li> <li>Obtain the write-lock.</li> <li>All queued puts are made at the end of the file.
-     * Optimize these under a single write-lock.</li> <li>Truncate the file.</li> <li>Release the
-     * write-lock. </li> <li>Restore system to standard operation.</li>
+     * </li> <li>All queued puts are made at the end of the file. Optimize the ones made so far in
+     * steps as well.</li> <li>Wait for the writes in progress and obtain the write-lock.</li>
+     * <li>Optimize the puts queued during the previous step.</li> <li>Truncate the file.</li>
+     * <li>Restore system to standard operation and release the write-lock. </li> <li>Force the
+     * moves to disk and save the keys.</li>
      * </ol>
+     * If a move fails, the file is left as it is and the keys are not saved.
      */
     protected void optimizeFile()
     {
@@ -1277,7 +1442,10 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
 
         // CREATE SNAPSHOT
         IndexedDiskElementDescriptor[] defragList = null;
+        boolean packed = false;
 
+        // wait for the writes in progress, from here on puts only append
+        pendingWriteLock.writeLock().lock();
         storageLock.writeLock().lock();
 
         try
@@ -1286,41 +1454,81 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
             // shut off recycle while we're optimizing,
             doRecycle = false;
             defragList = createPositionSortedDescriptorList();
+            keyFile.reset();
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Could not empty the key file, not optimizing.", e );
+            defragList = null;
         }
         finally
         {
             // Release if I acquired.
             storageLock.writeLock().unlock();
+            pendingWriteLock.writeLock().unlock();
         }
 
-        // Defrag the file outside of the write lock. This allows a move to be made,
-        // and yet have the element still accessible for reading or writing.
-        long expectedNextPos = defragFile( defragList, 0 );
+        optimizationStartTime = System.currentTimeMillis();
+        optimizationTime = -1;
+        optimizationBytesMoved = 0;
+        optimizationRecordsPacked = 0;
+        optimizationRecordCount = defragList == null ? 0 : defragList.length;
 
-        // ADD THE QUEUED ITEMS to the end and then truncate
+        long expectedNextPos = 0;
+        if ( defragList != null )
+        {
+            try
+            {
+                // Defrag the file in steps. This allows a move to be made, and yet have the
+                // element still accessible for reading or writing.
+                expectedNextPos = defragFile( defragList, 0 );
+
+                // the puts made in the meantime, in steps too
+                storageLock.readLock().lock();
+                try
+                {
+                    defragList = createPositionSortedQueuedList( expectedNextPos );
+                }
+                finally
+                {
+                    storageLock.readLock().unlock();
+                }
+                optimizationRecordCount += defragList.length;
+                expectedNextPos = defragFile( defragList, expectedNextPos );
+                packed = true;
+            }
+            catch ( IOException e )
+            {
+                log.error( logCacheName + "Error occurred during defragmentation.", e );
+            }
+        }
+
+        // ADD THE REMAINING QUEUED ITEMS to the end and then truncate
+        pendingWriteLock.writeLock().lock();
         storageLock.writeLock().lock();
 
         try
         {
-            try
+            if ( packed )
             {
-                if ( !queuedPutList.isEmpty() )
+                try
                 {
-                    // This is perhaps unnecessary, but the list might not be as sorted as we think.
-                    defragList = new IndexedDiskElementDescriptor[queuedPutList.size()];
-                    queuedPutList.toArray( defragList );
-                    Arrays.sort( defragList, new PositionComparator() );
+                    // only the puts made during the last step are left
+                    defragList = createPositionSortedQueuedList( expectedNextPos );
+                    optimizationRecordCount += defragList.length;
+                    expectedNextPos = defragRecords( defragList, 0, defragList.length, expectedNextPos );
 
-                    // pack them at the end
-                    expectedNextPos = defragFile( defragList, expectedNextPos );
+                    // TRUNCATE THE FILE
+                    dataFile.truncate( expectedNextPos );
+                }
+                catch ( IOException e )
+                {
+                    log.error( logCacheName + "Error optimizing queued puts.", e );
+                    packed = false;
                 }
-                // TRUNCATE THE FILE
-                dataFile.truncate( expectedNextPos );
-            }
-            catch ( Exception e )
-            {
-                log.error( logCacheName + "Error optimizing queued puts.", e );
             }
+            // all the reserved space has been written by now
+            reservedFileEnd = 0;
 
             // RESTORE NORMAL OPERATION
             removeCount = 0;
@@ -1335,12 +1543,29 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         finally
         {
             storageLock.writeLock().unlock();
+            pendingWriteLock.writeLock().unlock();
+        }
+
+        optimizationTime = System.currentTimeMillis() - optimizationStartTime;
+
+        // dispose saves the keys itself
+        if ( packed && alive )
+        {
+            try
+            {
+                dataFile.sync();
+                saveKeys();
+            }
+            catch ( IOException e )
+            {
+                log.error( logCacheName + "Could not force the optimized file to disk.", e );
+            }
         }
 
         if ( log.isInfoEnabled() )
         {
             log.info( logCacheName + "Finished #" + timesOptimized + " Optimization took "
-                + timer.getElapsedTimeString() );
+                + timer.getElapsedTimeString() + ", moved " + optimizationBytesMoved + " bytes" );
         }
     }
 
@@ -1349,58 +1574,109 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
      * forward). If there were no gaps the resulting file would be the same size as the previous
      * file. This must be supplied an ordered defragList.
      * <p>
+     * The records are moved in steps of OptimizeBatchSize. Each step waits for the writes in
+     * progress, since the queued puts may still be being written, and holds the write lock.
+     * <p>
      * @param defragList sorted list of descriptors for optimization
      * @param startingPos the start position in the file
      * @return this is the potential new file end
+     * @throws IOException if a record could not be moved
      */
     private long defragFile( IndexedDiskElementDescriptor[] defragList, long startingPos )
+        throws IOException
     {
         ElapsedTimer timer = new ElapsedTimer();
-        long preFileSize = 0;
-        long postFileSize = 0;
-        long expectedNextPos = 0;
+        int batchSize = Math.max( 1, cattr.getOptimizeBatchSize() );
+        long preFileSize = this.dataFile.length();
+        // find the first gap in the disk and start defragging.
+        long expectedNextPos = startingPos;
         try
         {
-            preFileSize = this.dataFile.length();
-            // find the first gap in the disk and start defragging.
-            expectedNextPos = startingPos;
-            for ( int i = 0; i < defragList.length; i++ )
+            for ( int from = 0; from < defragList.length; from += batchSize )
             {
+                int to = Math.min( from + batchSize, defragList.length );
+
+                pendingWriteLock.writeLock().lock();
                 storageLock.writeLock().lock();
                 try
                 {
-                    if ( expectedNextPos != defragList[i].pos )
-                    {
-                        dataFile.move( defragList[i], expectedNextPos );
-                    }
-                    expectedNextPos = defragList[i].pos + IndexedDisk.HEADER_SIZE_BYTES + defragList[i].len;
+                    expectedNextPos = defragRecords( defragList, from, to, expectedNextPos );
                 }
                 finally
                 {
                     storageLock.writeLock().unlock();
+                    pendingWriteLock.writeLock().unlock();
                 }
             }
 
-            postFileSize = this.dataFile.length();
-
             // this is the potential new file end
             return expectedNextPos;
         }
-        catch ( IOException e )
-        {
-            log.error( logCacheName + "Error occurred during defragmentation.", e );
-        }
         finally
         {
             if ( log.isInfoEnabled() )
             {
                 log.info( logCacheName + "Defragmentation took " + timer.getElapsedTimeString()
-                    + ". File Size (before=" + preFileSize + ") (after=" + postFileSize + ") (truncating to "
-                    + expectedNextPos + ")" );
+                    + ". File Size (before=" + preFileSize + ") (after=" + this.dataFile.length()
+                    + ") (packed to " + expectedNextPos + ")" );
             }
         }
+    }
 
-        return 0;
+    /**
+     * Moves a range of the sorted records so that they follow each other from the given position.
+     * <p>
+     * This operates under the write lock obtained by the caller.
+     * <p>
+     * @param defragList sorted list of descriptors for optimization
+     * @param from the index of the first record to move
+     * @param to the index after the last record to move
+     * @param startingPos where the first record should go
+     * @return the position after the last record
+     * @throws IOException
+     */
+    private long defragRecords( IndexedDiskElementDescriptor[] defragList, int from, int to, long startingPos )
+        throws IOException
+    {
+        long expectedNextPos = startingPos;
+        for ( int i = from; i < to; i++ )
+        {
+            IndexedDiskElementDescriptor ded = defragList[i];
+            if ( expectedNextPos != ded.pos )
+            {
+                dataFile.move( ded, expectedNextPos );
+                optimizationBytesMoved += IndexedDisk.HEADER_SIZE_BYTES + ded.len;
+            }
+            expectedNextPos = ded.pos + IndexedDisk.HEADER_SIZE_BYTES + ded.len;
+            optimizationRecordsPacked++;
+        }
+        return expectedNextPos;
+    }
+
+    /**
+     * Returns the queued puts that lie at or after the given position, sorted by position. The
+     * ones before it have been packed already.
+     * <p>
+     * This operates under a lock obtained by the caller.
+     * <p>
+     * @param fromPos
+     * @return IndexedDiskElementDescriptor[]
+     */
+    private IndexedDiskElementDescriptor[] createPositionSortedQueuedList( long fromPos )
+    {
+        List<IndexedDiskElementDescriptor> queued = new ArrayList<IndexedDiskElementDescriptor>();
+        for ( IndexedDiskElementDescriptor ded : queuedPutList )
+        {
+            if ( ded.pos >= fromPos )
+            {
+                queued.add( ded );
+            }
+        }
+
+        IndexedDiskElementDescriptor[] defragList = queued.toArray( new IndexedDiskElementDescriptor[queued.size()] );
+        Arrays.sort( defragList, new PositionComparator() );
+
+        return defragList;
     }
 
     /**
@@ -1648,6 +1924,21 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         se.setData( "" + this.timesOptimized );
         elems.add( se );
 
+        se = new StatElement();
+        se.setName( "Optimization Progress" );
+        se.setData( this.optimizationRecordsPacked + "/" + this.optimizationRecordCount );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Optimization Bytes Moved" );
+        se.setData( "" + this.optimizationBytesMoved );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Optimization Bytes Per Second" );
+        se.setData( "" + getOptimizationBytesPerSecond() );
+        elems.add( se );
+
         se = new StatElement();
         se.setName( "Recycle Count" );
         se.setData( "" + this.recycleCnt );
@@ -1663,6 +1954,16 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         se.setData( "" + this.startupSize );
         elems.add( se );
 
+        se = new StatElement();
+        se.setName( "Sync Count" );
+        se.setData( "" + getSyncCount() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Mapped Bytes" );
+        se.setData( "" + getMappedBytes() );
+        elems.add( se );
+
         // get the stats from the super too
         // get as array, convert to list, add list to our outer list
         IStats sStats = super.getStatistics();
@@ -1677,6 +1978,49 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         return stats;
     }
 
+    /**
+     * Forces the data file writes that have not been forced yet to disk.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    protected void doSync()
+        throws IOException
+    {
+        storageLock.readLock().lock();
+        try
+        {
+            if ( alive )
+            {
+                dataFile.sync();
+            }
+        }
+        finally
+        {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This is exposed for testing.
+     * <p>
+     * @return the number of times the data file was forced to disk
+     */
+    protected long getSyncCount()
+    {
+        return dataFile != null ? dataFile.getSyncCount() : -1;
+    }
+
+    /**
+     * This is exposed for testing.
+     * <p>
+     * @return the number of bytes of the data file that are memory mapped
+     */
+    protected long getMappedBytes()
+    {
+        return dataFile != null ? dataFile.getMappedBytes() : 0;
+    }
+
     /**
      * This is exposed for testing.
      * <p>
@@ -1687,6 +2031,43 @@ public class IndexedDiskCache<K extends Serializable, V extends Serializable>
         return timesOptimized;
     }
 
+    /**
+     * @return the number of records the current or last optimization has packed so far
+     */
+    protected int getOptimizationRecordsPacked()
+    {
+        return optimizationRecordsPacked;
+    }
+
+    /**
+     * @return the number of records the current or last optimization has to pack
+     */
+    protected int getOptimizationRecordCount()
+    {
+        return optimizationRecordCount;
+    }
+
+    /**
+     * @return the number of bytes the current or last optimization moved
+     */
+    protected long getOptimizationBytesMoved()
+    {
+        return optimizationBytesMoved;
+    }
+
+    /**
+     * @return the rate at which the current or last optimization moved bytes
+     */
+    protected long getOptimizationBytesPerSecond()
+    {
+        long time = optimizationTime;
+        if ( time < 0 )
+        {
+            time = System.currentTimeMillis() - optimizationStartTime;
+        }
+        return optimizationBytesMoved * 1000 / Math.max( 1, time );
+    }
+
     /**
      * This is used by the event logging.
      * <p>
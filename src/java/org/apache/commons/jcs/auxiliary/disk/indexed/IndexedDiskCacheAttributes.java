@@ -48,6 +48,12 @@ public class IndexedDiskCacheAttributes
     /** default to -1, i.e., don't optimize until shutdown */
     private int optimizeAtRemoveCount = -1;
 
+    /** The default number of records moved per step of an optimization. */
+    public static final int DEFAULT_OPTIMIZE_BATCH_SIZE = 100;
+
+    /** The number of records moved while holding the lock, before letting other threads in. */
+    private int optimizeBatchSize = DEFAULT_OPTIMIZE_BATCH_SIZE;
+
     /** Should we optimize on shutdown. */
     public static final boolean DEFAULT_OPTIMIZE_ON_SHUTDOWN = true;
 
@@ -112,6 +118,25 @@ public class IndexedDiskCacheAttributes
         this.optimizeAtRemoveCount = cnt;
     }
 
+    /**
+     * @return the number of records moved per step of an optimization
+     */
+    public int getOptimizeBatchSize()
+    {
+        return optimizeBatchSize;
+    }
+
+    /**
+     * Sets how many records an optimization moves while holding the lock. Reads and puts wait for
+     * at most one step. Values below 1 are treated as 1.
+     * <p>
+     * @param optimizeBatchSize
+     */
+    public void setOptimizeBatchSize( int optimizeBatchSize )
+    {
+        this.optimizeBatchSize = optimizeBatchSize;
+    }
+
     /**
      * This cannot be larger than the maxKeySize. It wouldn't hurt anything, but it makes the config
      * necessary. The recycle bin entry willbe at least as large as a key.
@@ -198,6 +223,7 @@ public class IndexedDiskCacheAttributes
         str.append( "\n maxPurgatorySize   = " + maxPurgatorySize );
         str.append( "\n maxKeySize  = " + maxKeySize );
         str.append( "\n maxRecycleBinSize  = " + maxRecycleBinSize );
+        str.append( "\n optimizeBatchSize  = " + optimizeBatchSize );
         str.append( "\n optimizeAtRemoveCount  = " + optimizeAtRemoveCount );
         str.append( "\n shutdownSpoolTimeLimit  = " + shutdownSpoolTimeLimit );
         str.append( "\n optimizeOnShutdown  = " + optimizeOnShutdown );
@@ -0,0 +1,828 @@
+package org.apache.commons.jcs.auxiliary.disk.offheap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.jcs.auxiliary.AbstractAuxiliaryCacheEventLogging;
+import org.apache.commons.jcs.auxiliary.AuxiliaryCacheAttributes;
+import org.apache.commons.jcs.engine.CacheConstants;
+import org.apache.commons.jcs.engine.CacheStatus;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICacheSpool;
+import org.apache.commons.jcs.engine.behavior.IElementSerializer;
+import org.apache.commons.jcs.engine.behavior.ISpoolTier;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.control.group.GroupId;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Keeps serialized elements in direct byte buffers outside of the Java heap, so that a large
+ * cache does not make the garbage collector work harder. Only the key index is on the heap.
+ * <p>
+ * This is a spool tier: listed before a disk auxiliary in the region configuration, it takes the
+ * elements spooled from memory, and the elements it evicts are spooled on to the disk auxiliary.
+ * <p>
+ * The memory is split into slabs of SlabSizeBytes, allocated as they are needed up to MaxBytes.
+ * Elements are appended to the current slab. When all slabs are in use, the oldest slab is
+ * recycled: elements that were read since they were written get a second chance and are copied to
+ * the front of the recycled slab, the others are evicted. Removed and replaced elements leave
+ * holes that are reclaimed when their slab is recycled.
+ * <p>
+ * Reads share a read lock; writes, removals and recycling take the write lock.
+ */
+public class OffHeapCache<K extends Serializable, V extends Serializable>
+    extends AbstractAuxiliaryCacheEventLogging<K, V>
+    implements ISpoolTier<K, V>
+{
+    /** Don't change. */
+    private static final long serialVersionUID = 1867383024357406283L;
+
+    /** The logger. */
+    private static final Log log = LogFactory.getLog( OffHeapCache.class );
+
+    /** The configuration. */
+    private final OffHeapCacheAttributes offHeapCacheAttributes;
+
+    /** The region name. */
+    private final String cacheName;
+
+    /** Prefix for log messages. */
+    private final String logCacheName;
+
+    /** The size of each slab. */
+    private final int slabSize;
+
+    /** The slabs, null until first used. */
+    private final ByteBuffer[] slabs;
+
+    /** The elements written to each slab, including removed ones. */
+    private final List<List<Slot<K>>> slabSlots;
+
+    /** The index of the elements. */
+    private final Map<K, Slot<K>> index = new HashMap<K, Slot<K>>();
+
+    /** Guards the index and the slabs. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /** The slab being filled, guarded by the write lock. */
+    private int currentSlab = -1;
+
+    /** The next free byte in the current slab, guarded by the write lock. */
+    private int writeOffset;
+
+    /** Bytes used by elements in the index, guarded by the write lock. */
+    private long liveBytes;
+
+    /** Where evicted elements go. */
+    private volatile ICacheSpool<K, V> spool;
+
+    /** Is it alive. */
+    private volatile boolean alive = true;
+
+    /** Number of hits. */
+    private final AtomicInteger hitCount = new AtomicInteger();
+
+    /** Number of misses. */
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    /** Number of puts, guarded by the write lock. */
+    private int putCount;
+
+    /** Number of elements evicted to the next tier, guarded by the write lock. */
+    private int spoolCount;
+
+    /** Number of elements kept when their slab was recycled, guarded by the write lock. */
+    private int secondChanceCount;
+
+    /**
+     * Creates the cache. No direct memory is allocated until elements are put.
+     * <p>
+     * @param cattr
+     * @param elementSerializer
+     */
+    public OffHeapCache( OffHeapCacheAttributes cattr, IElementSerializer elementSerializer )
+    {
+        this.offHeapCacheAttributes = cattr;
+        this.cacheName = cattr.getCacheName();
+        this.logCacheName = "Region [" + cacheName + "] ";
+        setElementSerializer( elementSerializer );
+
+        this.slabSize = cattr.getSlabSizeBytes();
+        long count = ( cattr.getMaxBytes() + slabSize - 1 ) / slabSize;
+        int slabCount = (int) Math.max( 1, Math.min( Integer.MAX_VALUE, count ) );
+        this.slabs = new ByteBuffer[slabCount];
+        this.slabSlots = new ArrayList<List<Slot<K>>>( slabCount );
+        for ( int i = 0; i < slabCount; i++ )
+        {
+            slabSlots.add( new ArrayList<Slot<K>>() );
+        }
+
+        if ( log.isInfoEnabled() )
+        {
+            log.info( logCacheName + "Off heap cache with " + slabCount + " slabs of " + slabSize + " bytes" );
+        }
+    }
+
+    /**
+     * @param spool where evicted elements go
+     */
+    public void setSpool( ICacheSpool<K, V> spool )
+    {
+        this.spool = spool;
+    }
+
+    /**
+     * Serializes the element and appends it to the current slab.
+     * <p>
+     * @param ce
+     * @throws IOException
+     */
+    @Override
+    protected void processUpdate( ICacheElement<K, V> ce )
+        throws IOException
+    {
+        if ( !alive )
+        {
+            return;
+        }
+
+        byte[] data = getElementSerializer().serialize( ce );
+
+        lock.writeLock().lock();
+        try
+        {
+            putCount++;
+            removeSlot( index.remove( ce.getKey() ) );
+
+            if ( data.length > slabSize )
+            {
+                // it would never fit, hand it straight on
+                spoolCount++;
+                spool( ce );
+                return;
+            }
+
+            while ( currentSlab < 0 || writeOffset + data.length > slabSize )
+            {
+                nextSlab();
+            }
+
+            Slot<K> slot = new Slot<K>( ce.getKey(), currentSlab, writeOffset, data.length );
+            write( slot, data );
+            index.put( ce.getKey(), slot );
+            liveBytes += data.length;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves on to the next slab. Allocates it if it has never been used, otherwise recycles it.
+     * Must be called under the write lock.
+     */
+    private void nextSlab()
+    {
+        currentSlab = ( currentSlab + 1 ) % slabs.length;
+        writeOffset = 0;
+
+        if ( slabs[currentSlab] == null )
+        {
+            slabs[currentSlab] = ByteBuffer.allocateDirect( slabSize );
+            return;
+        }
+
+        List<Slot<K>> written = slabSlots.get( currentSlab );
+        slabSlots.set( currentSlab, new ArrayList<Slot<K>>() );
+
+        // read out the survivors before writing over them
+        List<byte[]> survivorData = new LinkedList<byte[]>();
+        List<Slot<K>> survivors = new LinkedList<Slot<K>>();
+        for ( Slot<K> slot : written )
+        {
+            if ( !slot.live )
+            {
+                continue;
+            }
+
+            byte[] data = read( slot );
+            if ( slot.referenced )
+            {
+                slot.referenced = false;
+                survivors.add( slot );
+                survivorData.add( data );
+            }
+            else
+            {
+                index.remove( slot.key );
+                removeSlot( slot );
+                spoolCount++;
+                try
+                {
+                    spool( deserialize( data ) );
+                }
+                catch ( IOException e )
+                {
+                    log.error( logCacheName + "Could not read evicted element, key = " + slot.key, e );
+                }
+            }
+        }
+
+        for ( Slot<K> slot : survivors )
+        {
+            slot.slab = currentSlab;
+            slot.offset = writeOffset;
+            write( slot, survivorData.remove( 0 ) );
+            secondChanceCount++;
+        }
+    }
+
+    /**
+     * Copies the data into the current slab at the slot's offset and advances the write offset.
+     * Must be called under the write lock.
+     * <p>
+     * @param slot
+     * @param data
+     */
+    private void write( Slot<K> slot, byte[] data )
+    {
+        ByteBuffer buffer = slabs[slot.slab].duplicate();
+        buffer.position( slot.offset );
+        buffer.put( data );
+        writeOffset = slot.offset + data.length;
+        slabSlots.get( slot.slab ).add( slot );
+    }
+
+    /**
+     * Copies an element's bytes out of its slab. Must be called under the read or write lock.
+     * <p>
+     * @param slot
+     * @return the serialized element
+     */
+    private byte[] read( Slot<K> slot )
+    {
+        ByteBuffer buffer = slabs[slot.slab].duplicate();
+        buffer.position( slot.offset );
+        byte[] data = new byte[slot.length];
+        buffer.get( data );
+        return data;
+    }
+
+    /**
+     * Marks a slot as removed. Its bytes stay in the slab until the slab is recycled. Must be
+     * called under the write lock.
+     * <p>
+     * @param slot may be null
+     */
+    private void removeSlot( Slot<K> slot )
+    {
+        if ( slot != null )
+        {
+            slot.live = false;
+            liveBytes -= slot.length;
+        }
+    }
+
+    /**
+     * Hands an evicted element to the next tier, if there is one.
+     * <p>
+     * @param ce
+     */
+    private void spool( ICacheElement<K, V> ce )
+    {
+        ICacheSpool<K, V> next = spool;
+        if ( next != null )
+        {
+            next.spool( ce );
+        }
+        else if ( log.isDebugEnabled() )
+        {
+            log.debug( logCacheName + "No next tier, dropping key = " + ce.getKey() );
+        }
+    }
+
+    /**
+     * @param data
+     * @return the element
+     * @throws IOException
+     */
+    private ICacheElement<K, V> deserialize( byte[] data )
+        throws IOException
+    {
+        try
+        {
+            return getElementSerializer().deSerialize( data );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            throw new IOException( logCacheName + "Problem reading element. " + e.getMessage() );
+        }
+    }
+
+    /**
+     * Gets an element. Only the copy out of the slab happens under the read lock.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    protected ICacheElement<K, V> processGet( K key )
+        throws IOException
+    {
+        if ( !alive )
+        {
+            return null;
+        }
+
+        byte[] data;
+        lock.readLock().lock();
+        try
+        {
+            Slot<K> slot = index.get( key );
+            if ( slot == null )
+            {
+                missCount.incrementAndGet();
+                return null;
+            }
+            slot.referenced = true;
+            data = read( slot );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        hitCount.incrementAndGet();
+        return deserialize( data );
+    }
+
+    /**
+     * Gets the elements one by one.
+     * <p>
+     * @param keys
+     * @return a map of the elements found
+     * @throws IOException
+     */
+    @Override
+    protected Map<K, ICacheElement<K, V>> processGetMultiple( Set<K> keys )
+        throws IOException
+    {
+        Map<K, ICacheElement<K, V>> elements = new HashMap<K, ICacheElement<K, V>>();
+
+        if ( keys != null && !keys.isEmpty() )
+        {
+            for ( K key : keys )
+            {
+                ICacheElement<K, V> element = processGet( key );
+                if ( element != null )
+                {
+                    elements.put( key, element );
+                }
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Gets the elements whose keys match the pattern.
+     * <p>
+     * @param pattern
+     * @return a map of the elements found
+     * @throws IOException
+     */
+    @Override
+    protected Map<K, ICacheElement<K, V>> processGetMatching( String pattern )
+        throws IOException
+    {
+        Set<K> keys;
+        lock.readLock().lock();
+        try
+        {
+            keys = new HashSet<K>( index.keySet() );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return processGetMultiple( getKeyMatcher().getMatchingKeysFromArray( pattern, keys ) );
+    }
+
+    /**
+     * Removes an element. Handles hierarchical and group removal.
+     * <p>
+     * @param key
+     * @return true if an element was removed
+     * @throws IOException
+     */
+    @Override
+    protected boolean processRemove( K key )
+        throws IOException
+    {
+        boolean removed = false;
+
+        lock.writeLock().lock();
+        try
+        {
+            if ( key instanceof String && key.toString().endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+            {
+                List<K> itemsToRemove = new LinkedList<K>();
+                for ( K k : index.keySet() )
+                {
+                    if ( k instanceof String && k.toString().startsWith( key.toString() ) )
+                    {
+                        itemsToRemove.add( k );
+                    }
+                }
+                removed = removeAll( itemsToRemove );
+            }
+            else if ( key instanceof GroupAttrName && ( (GroupAttrName<?>) key ).attrName == null )
+            {
+                GroupId groupId = ( (GroupAttrName<?>) key ).groupId;
+                List<K> itemsToRemove = new LinkedList<K>();
+                for ( K k : index.keySet() )
+                {
+                    if ( k instanceof GroupAttrName && ( (GroupAttrName<?>) k ).groupId.equals( groupId ) )
+                    {
+                        itemsToRemove.add( k );
+                    }
+                }
+                removed = removeAll( itemsToRemove );
+            }
+            else
+            {
+                Slot<K> slot = index.remove( key );
+                removeSlot( slot );
+                removed = slot != null;
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes the keys. Must be called under the write lock.
+     * <p>
+     * @param keys
+     * @return true if any were removed
+     */
+    private boolean removeAll( List<K> keys )
+    {
+        for ( K k : keys )
+        {
+            removeSlot( index.remove( k ) );
+        }
+        return !keys.isEmpty();
+    }
+
+    /**
+     * Forgets all elements. The slabs are kept for reuse.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    protected void processRemoveAll()
+        throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            index.clear();
+            for ( int i = 0; i < slabs.length; i++ )
+            {
+                slabSlots.set( i, new ArrayList<Slot<K>>() );
+            }
+            currentSlab = -1;
+            writeOffset = 0;
+            liveBytes = 0;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets all elements and lets go of the slabs, so the direct memory can be freed.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    protected void processDispose()
+        throws IOException
+    {
+        alive = false;
+        processRemoveAll();
+
+        lock.writeLock().lock();
+        try
+        {
+            for ( int i = 0; i < slabs.length; i++ )
+            {
+                slabs[i] = null;
+            }
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        log.info( logCacheName + "Disposed off heap cache" );
+    }
+
+    /**
+     * @param groupName
+     * @return the attribute names of the group's elements
+     */
+    public Set<K> getGroupKeys( String groupName )
+    {
+        GroupId groupId = new GroupId( cacheName, groupName );
+        Set<K> keys = new HashSet<K>();
+
+        lock.readLock().lock();
+        try
+        {
+            for ( K k : index.keySet() )
+            {
+                if ( k instanceof GroupAttrName && ( (GroupAttrName<?>) k ).groupId.equals( groupId ) )
+                {
+                    @SuppressWarnings("unchecked") // Type checked with instanceof
+                    GroupAttrName<K> groupAttrName = (GroupAttrName<K>) k;
+                    keys.add( groupAttrName.attrName );
+                }
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return keys;
+    }
+
+    /**
+     * @return the names of the groups with elements in this cache
+     */
+    public Set<String> getGroupNames()
+    {
+        Set<String> names = new HashSet<String>();
+
+        lock.readLock().lock();
+        try
+        {
+            for ( K k : index.keySet() )
+            {
+                if ( k instanceof GroupAttrName )
+                {
+                    names.add( ( (GroupAttrName<?>) k ).groupId.groupName );
+                }
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        return names;
+    }
+
+    /**
+     * @return the number of elements
+     */
+    public int getSize()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return index.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return ALIVE or DISPOSED
+     */
+    public CacheStatus getStatus()
+    {
+        return alive ? CacheStatus.ALIVE : CacheStatus.DISPOSED;
+    }
+
+    /**
+     * @return the region name
+     */
+    public String getCacheName()
+    {
+        return cacheName;
+    }
+
+    /**
+     * @return DISK_CACHE, so the region spools to it
+     */
+    public CacheType getCacheType()
+    {
+        return CacheType.DISK_CACHE;
+    }
+
+    /**
+     * @return the attributes
+     */
+    public AuxiliaryCacheAttributes getAuxiliaryCacheAttributes()
+    {
+        return offHeapCacheAttributes;
+    }
+
+    /**
+     * @return the size of the direct memory
+     */
+    @Override
+    public String getEventLoggingExtraInfo()
+    {
+        return "Off heap " + offHeapCacheAttributes.getMaxBytes() + " bytes";
+    }
+
+    /**
+     * @return the bytes used by the elements in the index
+     */
+    public long getLiveBytes()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return liveBytes;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the stats as a string
+     */
+    public String getStats()
+    {
+        return getStatistics().toString();
+    }
+
+    /**
+     * @return statistics about the cache
+     */
+    public IStats getStatistics()
+    {
+        IStats stats = new Stats();
+        stats.setTypeName( "Off Heap Cache" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        lock.readLock().lock();
+        try
+        {
+            int allocated = 0;
+            for ( ByteBuffer slab : slabs )
+            {
+                if ( slab != null )
+                {
+                    allocated++;
+                }
+            }
+
+            IStatElement se = null;
+
+            se = new StatElement();
+            se.setName( "Index Size" );
+            se.setData( "" + index.size() );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Live Bytes" );
+            se.setData( "" + liveBytes );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Slabs Allocated" );
+            se.setData( "" + allocated + " of " + slabs.length );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Slab Size" );
+            se.setData( "" + slabSize );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Put Count" );
+            se.setData( "" + putCount );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Hit Count" );
+            se.setData( "" + hitCount );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Miss Count" );
+            se.setData( "" + missCount );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Spool Count" );
+            se.setData( "" + spoolCount );
+            elems.add( se );
+
+            se = new StatElement();
+            se.setName( "Second Chance Count" );
+            se.setData( "" + secondChanceCount );
+            elems.add( se );
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+
+    /**
+     * Where an element is stored. The position is changed only under the write lock.
+     */
+    private static final class Slot<K>
+    {
+        /** The key. */
+        final K key;
+
+        /** The slab index. */
+        int slab;
+
+        /** The offset in the slab. */
+        int offset;
+
+        /** The length of the serialized element. */
+        final int length;
+
+        /** False once removed or replaced. */
+        boolean live = true;
+
+        /** Set by reads, cleared when the slab is recycled. */
+        volatile boolean referenced;
+
+        /**
+         * @param key
+         * @param slab
+         * @param offset
+         * @param length
+         */
+        Slot( K key, int slab, int offset, int length )
+        {
+            this.key = key;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
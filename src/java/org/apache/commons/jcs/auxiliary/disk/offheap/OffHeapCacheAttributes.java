@@ -0,0 +1,108 @@
+package org.apache.commons.jcs.auxiliary.disk.offheap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.jcs.auxiliary.AbstractAuxiliaryCacheAttributes;
+import org.apache.commons.jcs.auxiliary.AuxiliaryCacheAttributes;
+
+/**
+ * Configuration for the off heap cache. The sizes are per region.
+ */
+public class OffHeapCacheAttributes
+    extends AbstractAuxiliaryCacheAttributes
+{
+    /** Don't change. */
+    private static final long serialVersionUID = -4250323290787429521L;
+
+    /** The default limit on direct memory per region, 64 MB. */
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /** The default slab size, 4 MB. */
+    private static final int DEFAULT_SLAB_SIZE_BYTES = 4 * 1024 * 1024;
+
+    /** The most direct memory a region may use. */
+    private long maxBytes = DEFAULT_MAX_BYTES;
+
+    /** The size of each direct buffer. Elements larger than this skip the tier. */
+    private int slabSizeBytes = DEFAULT_SLAB_SIZE_BYTES;
+
+    /**
+     * @param maxBytes the most direct memory a region may use
+     */
+    public void setMaxBytes( long maxBytes )
+    {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return the most direct memory a region may use
+     */
+    public long getMaxBytes()
+    {
+        return maxBytes;
+    }
+
+    /**
+     * @param slabSizeBytes the size of each direct buffer
+     */
+    public void setSlabSizeBytes( int slabSizeBytes )
+    {
+        this.slabSizeBytes = slabSizeBytes;
+    }
+
+    /**
+     * @return the size of each direct buffer
+     */
+    public int getSlabSizeBytes()
+    {
+        return slabSizeBytes;
+    }
+
+    /**
+     * Simple clone.
+     * <p>
+     * @return AuxiliaryCacheAttributes
+     */
+    public AuxiliaryCacheAttributes copy()
+    {
+        try
+        {
+            return (AuxiliaryCacheAttributes) this.clone();
+        }
+        catch ( Exception e )
+        {
+            // swallow
+        }
+        return this;
+    }
+
+    /**
+     * @return the attributes
+     */
+    @Override
+    public String toString()
+    {
+        StringBuffer str = new StringBuffer();
+        str.append( "OffHeapCacheAttributes " );
+        str.append( "\n maxBytes = " + maxBytes );
+        str.append( "\n slabSizeBytes = " + slabSizeBytes );
+        return str.toString();
+    }
+}
@@ -0,0 +1,416 @@
+package org.apache.commons.jcs.auxiliary.disk.segmented;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes.SyncMode;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * One file of the segmented disk cache. Records are only ever appended, by one thread at a time,
+ * and read at any time with positional reads.
+ * <p>
+ * A record is a header of three ints, the length of the key, the length of the element or -1 for
+ * a removal, and a CRC32 of both, followed by the serialized key and element. The checksum lets a
+ * restart find where a crash cut off the last write.
+ */
+class Segment
+{
+    /** The logger */
+    private static final Log log = LogFactory.getLog( Segment.class );
+
+    /** The size of the record header. */
+    public static final int HEADER_SIZE_BYTES = 12;
+
+    /** The element length of a removal. */
+    public static final int TOMBSTONE = -1;
+
+    /** The number of the segment. Later segments have higher numbers. */
+    private final int id;
+
+    /** The file. */
+    private final File file;
+
+    /** The data file. */
+    private final FileChannel fc;
+
+    /** When writes are forced to disk. */
+    private final SyncMode syncMode;
+
+    /** The end of the last record. Only changed by the appending thread. */
+    private volatile long end;
+
+    /** The bytes of records that are no longer current. */
+    private final AtomicLong deadBytes = new AtomicLong( 0 );
+
+    /** Whether there are writes that have not been forced yet. */
+    private final AtomicBoolean unsynced = new AtomicBoolean( false );
+
+    /** The number of times the file was forced. */
+    private final AtomicLong syncCount = new AtomicLong( 0 );
+
+    /**
+     * Opens or creates a segment.
+     * <p>
+     * @param id
+     * @param file
+     * @param syncMode when writes are forced to disk
+     * @throws IOException
+     */
+    Segment( int id, File file, SyncMode syncMode )
+        throws FileNotFoundException, IOException
+    {
+        this.id = id;
+        this.file = file;
+        this.syncMode = syncMode;
+        this.fc = new RandomAccessFile( file, "rw" ).getChannel();
+        this.end = fc.size();
+    }
+
+    /**
+     * Appends a record.
+     * <p>
+     * @param key the serialized key
+     * @param value the serialized element, or null for a removal
+     * @return the position of the record
+     * @throws IOException
+     */
+    long append( byte[] key, byte[] value )
+        throws IOException
+    {
+        int valueLength = value == null ? TOMBSTONE : value.length;
+        ByteBuffer buffer = ByteBuffer.allocate( HEADER_SIZE_BYTES + key.length + Math.max( valueLength, 0 ) );
+        buffer.putInt( key.length );
+        buffer.putInt( valueLength );
+        buffer.putInt( checksum( key, value ) );
+        buffer.put( key );
+        if ( value != null )
+        {
+            buffer.put( value );
+        }
+        buffer.flip();
+
+        long pos = end;
+        while ( buffer.hasRemaining() )
+        {
+            fc.write( buffer, pos + buffer.position() );
+        }
+        end = pos + buffer.limit();
+        written();
+        return pos;
+    }
+
+    /**
+     * Reads the record at a position, checking it against its checksum.
+     * <p>
+     * @param pos
+     * @return the record, or null if there is no whole record there
+     * @throws IOException
+     */
+    Record read( long pos )
+        throws IOException
+    {
+        long limit = end;
+        if ( pos + HEADER_SIZE_BYTES > limit )
+        {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE_BYTES );
+        readFully( header, pos );
+        int keyLength = header.getInt();
+        int valueLength = header.getInt();
+        int checksum = header.getInt();
+        if ( keyLength < 0 || valueLength < TOMBSTONE
+            || pos + HEADER_SIZE_BYTES + keyLength + Math.max( valueLength, 0 ) > limit )
+        {
+            return null;
+        }
+
+        byte[] key = new byte[keyLength];
+        byte[] value = valueLength == TOMBSTONE ? null : new byte[valueLength];
+        ByteBuffer body = ByteBuffer.allocate( keyLength + Math.max( valueLength, 0 ) );
+        readFully( body, pos + HEADER_SIZE_BYTES );
+        body.get( key );
+        if ( value != null )
+        {
+            body.get( value );
+        }
+
+        if ( checksum( key, value ) != checksum )
+        {
+            return null;
+        }
+        return new Record( pos, key, value );
+    }
+
+    /**
+     * Reads the element of a record.
+     * <p>
+     * @param ded
+     * @return the serialized element, or null if the record does not match the descriptor
+     * @throws IOException
+     */
+    byte[] readValue( SegmentedDiskElementDescriptor ded )
+        throws IOException
+    {
+        Record record = read( ded.pos );
+        if ( record == null || record.key.length != ded.keyLength || record.value == null
+            || record.value.length != ded.valueLength )
+        {
+            return null;
+        }
+        return record.value;
+    }
+
+    /**
+     * Fills a buffer from the file.
+     * <p>
+     * @param buffer
+     * @param pos
+     * @throws IOException if the file ends first
+     */
+    private void readFully( ByteBuffer buffer, long pos )
+        throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( fc.read( buffer, pos + buffer.position() ) < 0 )
+            {
+                throw new IOException( "Unexpected end of segment " + file );
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @return the CRC32 of the key and the value
+     */
+    private static int checksum( byte[] key, byte[] value )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( key );
+        if ( value != null )
+        {
+            crc.update( value );
+        }
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Cuts the file off after the last whole record, found when opening it.
+     * <p>
+     * @param length
+     * @throws IOException
+     */
+    void truncate( long length )
+        throws IOException
+    {
+        if ( log.isWarnEnabled() )
+        {
+            log.warn( "Truncating segment [" + file + "] from " + end + " to " + length );
+        }
+        fc.truncate( length );
+        end = length;
+    }
+
+    /**
+     * Forces a write to disk right away in the ALWAYS sync mode, otherwise remembers that there is
+     * something to force.
+     * <p>
+     * @throws IOException
+     */
+    private void written()
+        throws IOException
+    {
+        if ( syncMode == SyncMode.ALWAYS )
+        {
+            fc.force( true );
+            syncCount.incrementAndGet();
+        }
+        else
+        {
+            unsynced.set( true );
+        }
+    }
+
+    /**
+     * Forces the writes that have not been forced yet to disk. Does nothing in the NONE sync mode.
+     * <p>
+     * @throws IOException
+     */
+    void sync()
+        throws IOException
+    {
+        if ( syncMode != SyncMode.NONE && unsynced.getAndSet( false ) )
+        {
+            fc.force( true );
+            syncCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Forces the writes to disk whatever the sync mode. Used before a compacted segment is
+     * deleted, so the copies of its records are safe first.
+     * <p>
+     * @throws IOException
+     */
+    void forceSync()
+        throws IOException
+    {
+        unsynced.set( false );
+        fc.force( true );
+        syncCount.incrementAndGet();
+    }
+
+    /**
+     * Closes the file.
+     * <p>
+     * @throws IOException
+     */
+    void close()
+        throws IOException
+    {
+        sync();
+        fc.close();
+    }
+
+    /**
+     * Closes and deletes the file.
+     * <p>
+     * @throws IOException
+     */
+    void delete()
+        throws IOException
+    {
+        fc.close();
+        if ( !file.delete() )
+        {
+            log.warn( "Could not delete segment [" + file + "]" );
+        }
+    }
+
+    /**
+     * @param bytes the length of records that are no longer current
+     */
+    void addDeadBytes( long bytes )
+    {
+        deadBytes.addAndGet( bytes );
+    }
+
+    /**
+     * @return the length of records that are no longer current
+     */
+    long getDeadBytes()
+    {
+        return deadBytes.get();
+    }
+
+    /**
+     * @return the length of the file
+     */
+    long length()
+    {
+        return end;
+    }
+
+    /**
+     * @return the number of the segment
+     */
+    int getId()
+    {
+        return id;
+    }
+
+    /**
+     * @return the number of times the file was forced to disk
+     */
+    long getSyncCount()
+    {
+        return syncCount.get();
+    }
+
+    /**
+     * @return the file path
+     */
+    String getFilePath()
+    {
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * For debugging.
+     * <p>
+     * @return the file, length and dead bytes
+     */
+    @Override
+    public String toString()
+    {
+        return "Segment [" + file.getName() + "] length [" + end + "] dead [" + deadBytes + "]";
+    }
+
+    /**
+     * A record read back from a segment.
+     */
+    static final class Record
+    {
+        /** The position of the record. */
+        final long pos;
+
+        /** The serialized key. */
+        final byte[] key;
+
+        /** The serialized element, null for a removal. */
+        final byte[] value;
+
+        /**
+         * @param pos
+         * @param key
+         * @param value
+         */
+        Record( long pos, byte[] key, byte[] value )
+        {
+            this.pos = pos;
+            this.key = key;
+            this.value = value;
+        }
+
+        /**
+         * @return the length of the whole record, header included
+         */
+        int length()
+        {
+            return HEADER_SIZE_BYTES + key.length + ( value == null ? 0 : value.length );
+        }
+    }
+}
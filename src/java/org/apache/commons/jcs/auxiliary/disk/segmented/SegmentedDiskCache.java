@@ -0,0 +1,1351 @@
+package org.apache.commons.jcs.auxiliary.disk.segmented;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.jcs.auxiliary.AuxiliaryCacheAttributes;
+import org.apache.commons.jcs.auxiliary.disk.AbstractDiskCache;
+import org.apache.commons.jcs.engine.CacheConstants;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.IElementSerializer;
+import org.apache.commons.jcs.engine.behavior.IRequireScheduler;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.control.group.GroupId;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A disk cache that only ever appends to its files. Puts and removes are written one after the
+ * other to the end of the current segment, and a new segment is started once it reaches
+ * MaxSegmentSizeBytes. The keys are kept in memory with the segment and position of their
+ * current record.
+ * <p>
+ * Records that were replaced or removed stay in their segment as dead bytes. A background task
+ * compacts the full segments whose dead share reaches CompactionThresholdPercent: it copies their
+ * live records to the end of the current segment and then deletes them. Gets go on meanwhile, and
+ * puts only wait while a single record is copied.
+ * <p>
+ * There are no key files. On startup the segments are read in order, and the last record for
+ * each key wins. A removal is written as a record without an element. It remembers the oldest
+ * segment that held a record of the key, and compaction keeps it only while a segment from that
+ * one on, older than the removal, is left. Each record has a checksum, so a write cut off by a
+ * crash is found and dropped.
+ * <p>
+ * Once there are more than MaxSegments segments, the oldest are deleted and the elements whose
+ * current record they hold are evicted.
+ */
+public class SegmentedDiskCache<K extends Serializable, V extends Serializable>
+    extends AbstractDiskCache<K, V>
+    implements IRequireScheduler
+{
+    /** Don't change */
+    private static final long serialVersionUID = 1L;
+
+    /** The logger. */
+    private static final Log log = LogFactory.getLog( SegmentedDiskCache.class );
+
+    /** The suffix of the segment files. */
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /** The name to prefix all log messages with. */
+    private final String logCacheName;
+
+    /** The name the segment files start with. */
+    private final String fileName;
+
+    /** The config values. */
+    private final SegmentedDiskCacheAttributes cattr;
+
+    /** The directory of the segment files. */
+    private final File directory;
+
+    /** The current record of each key. */
+    private final ConcurrentHashMap<K, SegmentedDiskElementDescriptor> keyHash =
+        new ConcurrentHashMap<K, SegmentedDiskElementDescriptor>();
+
+    /**
+     * The current removal record of each removed key, as long as it may hide an older record of
+     * the key. These count as live bytes.
+     */
+    private final ConcurrentHashMap<K, SegmentedDiskElementDescriptor> tombstones =
+        new ConcurrentHashMap<K, SegmentedDiskElementDescriptor>();
+
+    /** The segments, oldest first. Guarded by the append lock. */
+    private final List<Segment> segments = new ArrayList<Segment>();
+
+    /** The segment appended to. Guarded by the append lock. */
+    private Segment active;
+
+    /** The number of the next segment. Guarded by the append lock. */
+    private int nextSegmentId = 0;
+
+    /** Serializes the appends and the key map changes that go with them. */
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    /**
+     * Gets and compaction read under the read lock. Deleting a segment, removing everything and
+     * disposing take the write lock, so no one reads a closed file. Always taken before the
+     * append lock.
+     */
+    private final ReentrantReadWriteLock storageLock = new ReentrantReadWriteLock();
+
+    /** Only one compaction at a time. */
+    private final Object compactionLock = new Object();
+
+    /** The scheduled compaction, if any. */
+    private ScheduledFuture<?> compactionTask;
+
+    /** The number of segments compacted. */
+    private final AtomicInteger compactionCount = new AtomicInteger( 0 );
+
+    /** The bytes given back by compaction. */
+    private final AtomicLong compactedBytes = new AtomicLong( 0 );
+
+    /** The number of segments deleted to stay within MaxSegments. */
+    private final AtomicInteger evictedSegmentCount = new AtomicInteger( 0 );
+
+    /**
+     * Constructor for the SegmentedDiskCache object.
+     * <p>
+     * @param cacheAttributes
+     */
+    public SegmentedDiskCache( SegmentedDiskCacheAttributes cacheAttributes )
+    {
+        this( cacheAttributes, null );
+    }
+
+    /**
+     * Opens the segments in the disk path and reads the keys from them.
+     * <p>
+     * @param cacheAttributes
+     * @param elementSerializer used if supplied, the super's super will not set a null
+     */
+    public SegmentedDiskCache( SegmentedDiskCacheAttributes cacheAttributes, IElementSerializer elementSerializer )
+    {
+        super( cacheAttributes );
+        setElementSerializer( elementSerializer );
+
+        this.cattr = cacheAttributes;
+        this.logCacheName = "Region [" + getCacheName() + "] ";
+        this.fileName = getCacheName().replaceAll( "[^a-zA-Z0-9-_\\.]", "_" );
+        this.directory = new File( cattr.getDiskPath() );
+        this.directory.mkdirs();
+
+        if ( log.isInfoEnabled() )
+        {
+            log.info( logCacheName + "Segment directory: [" + directory.getAbsolutePath() + "]" );
+        }
+
+        try
+        {
+            loadSegments();
+            alive = true;
+            evictSegments();
+            if ( log.isInfoEnabled() )
+            {
+                log.info( logCacheName + "Segmented Disk Cache is alive, segments: " + segments.size()
+                    + ", keys: " + keyHash.size() );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure initializing segments in " + directory.getAbsolutePath(), e );
+        }
+    }
+
+    /**
+     * Opens the segment files of the region in order and rebuilds the key map from their
+     * records. Anything after the last whole record of a segment is cut off.
+     * <p>
+     * @throws IOException
+     */
+    private void loadSegments()
+        throws IOException
+    {
+        File[] files = directory.listFiles();
+        List<Segment> found = new ArrayList<Segment>();
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                int id = getSegmentId( file.getName() );
+                if ( id >= 0 )
+                {
+                    found.add( new Segment( id, file, cattr.getSyncMode() ) );
+                }
+            }
+        }
+
+        Collections.sort( found, new Comparator<Segment>()
+        {
+            public int compare( Segment s1, Segment s2 )
+            {
+                return s1.getId() < s2.getId() ? -1 : ( s1.getId() == s2.getId() ? 0 : 1 );
+            }
+        } );
+
+        for ( Segment segment : found )
+        {
+            loadRecords( segment );
+            segments.add( segment );
+            nextSegmentId = segment.getId() + 1;
+        }
+
+        if ( segments.isEmpty() || segments.get( segments.size() - 1 ).length() >= cattr.getMaxSegmentSizeBytes() )
+        {
+            startSegment();
+        }
+        else
+        {
+            active = segments.get( segments.size() - 1 );
+        }
+    }
+
+    /**
+     * Applies the records of a segment to the key map.
+     * <p>
+     * @param segment
+     * @throws IOException
+     */
+    private void loadRecords( Segment segment )
+        throws IOException
+    {
+        long pos = 0;
+        while ( pos < segment.length() )
+        {
+            Segment.Record record = null;
+            try
+            {
+                record = segment.read( pos );
+            }
+            catch ( IOException e )
+            {
+                log.warn( logCacheName + "Failure reading " + segment + " at " + pos, e );
+            }
+
+            if ( record == null )
+            {
+                segment.truncate( pos );
+                break;
+            }
+            pos += record.length();
+
+            K key = deserializeKey( record.key );
+            if ( key == null )
+            {
+                segment.addDeadBytes( record.length() );
+            }
+            else if ( record.value == null )
+            {
+                SegmentedDiskElementDescriptor ded = keyHash.remove( key );
+                SegmentedDiskElementDescriptor tombstone = tombstones.remove( key );
+                if ( ded == null && tombstone == null )
+                {
+                    // hides nothing
+                    segment.addDeadBytes( record.length() );
+                }
+                else
+                {
+                    release( ded );
+                    release( tombstone );
+                    int first = ded != null ? ded.firstSegmentId : tombstone.firstSegmentId;
+                    tombstones.put( key, new SegmentedDiskElementDescriptor( segment, record.pos, record.key.length,
+                                                                             0, first ) );
+                }
+            }
+            else
+            {
+                int first = getFirstSegmentId( key, segment );
+                release( keyHash.put( key, new SegmentedDiskElementDescriptor( segment, record.pos,
+                                                                               record.key.length,
+                                                                               record.value.length, first ) ) );
+                release( tombstones.remove( key ) );
+            }
+        }
+    }
+
+    /**
+     * @param name a file name
+     * @return the segment number if it is a segment file of this region, otherwise -1
+     */
+    private int getSegmentId( String name )
+    {
+        String prefix = fileName + ".";
+        if ( !name.startsWith( prefix ) || !name.endsWith( SEGMENT_SUFFIX ) )
+        {
+            return -1;
+        }
+
+        String id = name.substring( prefix.length(), name.length() - SEGMENT_SUFFIX.length() );
+        if ( id.length() == 0 || id.length() > 9 )
+        {
+            return -1;
+        }
+        for ( int i = 0; i < id.length(); i++ )
+        {
+            if ( !Character.isDigit( id.charAt( i ) ) )
+            {
+                return -1;
+            }
+        }
+        return Integer.parseInt( id );
+    }
+
+    /**
+     * Starts a new segment and makes it the one appended to. The caller holds the append lock, or
+     * is the constructor.
+     * <p>
+     * @throws IOException
+     */
+    private void startSegment()
+        throws IOException
+    {
+        if ( active != null )
+        {
+            active.sync();
+        }
+
+        int id = nextSegmentId++;
+        Segment segment = new Segment( id, new File( directory, fileName + "." + id + SEGMENT_SUFFIX ),
+                                       cattr.getSyncMode() );
+        segments.add( segment );
+        active = segment;
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( logCacheName + "Started " + segment );
+        }
+    }
+
+    /**
+     * Gets the segment to append a record to, starting a new one if the current one is full.
+     * Records larger than a segment get a segment of their own. The caller holds the append lock.
+     * <p>
+     * @param recordLength
+     * @return the segment to append to
+     * @throws IOException
+     */
+    private Segment getSegmentFor( int recordLength )
+        throws IOException
+    {
+        if ( active.length() > 0 && active.length() + recordLength > cattr.getMaxSegmentSizeBytes() )
+        {
+            startSegment();
+        }
+        return active;
+    }
+
+    /**
+     * Counts the record a descriptor points to as dead.
+     * <p>
+     * @param ded the previous descriptor of a key, may be null
+     */
+    private void release( SegmentedDiskElementDescriptor ded )
+    {
+        if ( ded != null )
+        {
+            ded.segment.addDeadBytes( ded.getRecordLength() );
+        }
+    }
+
+    /**
+     * Works out the oldest segment that may hold a record of a key that is about to get a new
+     * record. The caller holds the append lock, or is loading.
+     * <p>
+     * @param key
+     * @param segment the segment the new record goes to
+     * @return the number of the oldest segment with a record of the key
+     */
+    private int getFirstSegmentId( K key, Segment segment )
+    {
+        SegmentedDiskElementDescriptor ded = keyHash.get( key );
+        if ( ded != null )
+        {
+            return ded.firstSegmentId;
+        }
+        SegmentedDiskElementDescriptor tombstone = tombstones.get( key );
+        return tombstone != null ? tombstone.firstSegmentId : segment.getId();
+    }
+
+    /**
+     * Checks whether a removal record may still hide an older record of its key, i.e. whether a
+     * segment from the oldest one that held a record of the key on, and older than the removal,
+     * is left.
+     * <p>
+     * @param tombstone the descriptor of the removal record
+     * @param existing the segments
+     * @return true if the removal record is still needed
+     */
+    private static boolean hidesRecords( SegmentedDiskElementDescriptor tombstone, List<Segment> existing )
+    {
+        for ( Segment segment : existing )
+        {
+            if ( segment.getId() >= tombstone.firstSegmentId && segment.getId() < tombstone.segment.getId() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops the removal records that no longer hide anything, after segments were deleted. Their
+     * bytes become dead.
+     */
+    private void dropObsoleteTombstones()
+    {
+        List<Segment> existing = getSegments();
+        for ( Map.Entry<K, SegmentedDiskElementDescriptor> entry : tombstones.entrySet() )
+        {
+            if ( !hidesRecords( entry.getValue(), existing ) && tombstones.remove( entry.getKey(), entry.getValue() ) )
+            {
+                release( entry.getValue() );
+            }
+        }
+    }
+
+    /**
+     * @param bytes
+     * @return the key, or null if it cannot be read
+     */
+    private K deserializeKey( byte[] bytes )
+    {
+        try
+        {
+            return getElementSerializer().<K>deSerialize( bytes );
+        }
+        catch ( IOException e )
+        {
+            log.warn( logCacheName + "Could not read a key", e );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            log.warn( logCacheName + "Could not read a key", e );
+        }
+        return null;
+    }
+
+    /**
+     * Adds the compaction to the scheduler, if CompactionIntervalSeconds is positive.
+     * <p>
+     * @see org.apache.commons.jcs.engine.behavior.IRequireScheduler#setScheduledExecutorService(java.util.concurrent.ScheduledExecutorService)
+     */
+    public void setScheduledExecutorService( ScheduledExecutorService scheduledExecutor )
+    {
+        if ( cattr.getCompactionIntervalSeconds() > 0 )
+        {
+            compactionTask = scheduledExecutor.scheduleWithFixedDelay(
+                    new Runnable()
+                    {
+                        public void run()
+                        {
+                            compact();
+                        }
+                    },
+                    cattr.getCompactionIntervalSeconds(),
+                    cattr.getCompactionIntervalSeconds(),
+                    TimeUnit.SECONDS );
+        }
+    }
+
+    /**
+     * Gets the element for the key, reading it from the segment its current record is in.
+     * <p>
+     * @param key
+     * @return ICacheElement or null
+     */
+    @Override
+    protected ICacheElement<K, V> processGet( K key )
+    {
+        if ( !alive )
+        {
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( logCacheName + "No longer alive so returning null for key = " + key );
+            }
+            return null;
+        }
+
+        storageLock.readLock().lock();
+        try
+        {
+            SegmentedDiskElementDescriptor ded = keyHash.get( key );
+            if ( ded == null )
+            {
+                return null;
+            }
+
+            byte[] data = ded.segment.readValue( ded );
+            if ( data == null )
+            {
+                log.warn( logCacheName + "Record " + ded + " for key [" + key + "] is corrupt, dropping it" );
+                keyHash.remove( key, ded );
+                return null;
+            }
+            return getElementSerializer().deSerialize( data );
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure getting from disk, key = " + key, e );
+        }
+        catch ( ClassNotFoundException e )
+        {
+            log.error( logCacheName + "Failure getting from disk, key = " + key, e );
+        }
+        finally
+        {
+            storageLock.readLock().unlock();
+        }
+        return null;
+    }
+
+    /**
+     * Gets matching items from the cache.
+     * <p>
+     * @param pattern
+     * @return a map of K key to ICacheElement<K, V> element, or an empty map if there is no
+     *         data in cache matching keys
+     */
+    @Override
+    public Map<K, ICacheElement<K, V>> processGetMatching( String pattern )
+    {
+        Map<K, ICacheElement<K, V>> elements = new HashMap<K, ICacheElement<K, V>>();
+        Set<K> matchingKeys = getKeyMatcher().getMatchingKeysFromArray( pattern, new HashSet<K>( keyHash.keySet() ) );
+
+        for ( K key : matchingKeys )
+        {
+            ICacheElement<K, V> element = processGet( key );
+            if ( element != null )
+            {
+                elements.put( key, element );
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Appends the element to the current segment and points the key at it. The previous record
+     * of the key becomes dead. The element is serialized before the append lock is taken.
+     * <p>
+     * @param element
+     */
+    @Override
+    protected void processUpdate( ICacheElement<K, V> element )
+    {
+        if ( !alive )
+        {
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( logCacheName + "No longer alive; aborting put of key = " + element.getKey() );
+            }
+            return;
+        }
+
+        byte[] key;
+        byte[] value;
+        try
+        {
+            key = getElementSerializer().serialize( element.getKey() );
+            value = getElementSerializer().serialize( element );
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure serializing element, key: " + element.getKey(), e );
+            return;
+        }
+
+        boolean full = false;
+        appendLock.lock();
+        try
+        {
+            if ( alive )
+            {
+                Segment segment = getSegmentFor( Segment.HEADER_SIZE_BYTES + key.length + value.length );
+                int first = getFirstSegmentId( element.getKey(), segment );
+                long pos = segment.append( key, value );
+                release( keyHash.put( element.getKey(), new SegmentedDiskElementDescriptor( segment, pos, key.length,
+                                                                                            value.length, first ) ) );
+                release( tombstones.remove( element.getKey() ) );
+                full = isOverSegmentLimit();
+            }
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure updating element, key: " + element.getKey(), e );
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+
+        if ( full )
+        {
+            evictSegments();
+        }
+    }
+
+    /**
+     * Removes the key, a partial key ending in the name delimiter, or a whole group. A removal
+     * record is appended for each key removed.
+     * <p>
+     * @param key
+     * @return true if removed anything
+     */
+    @Override
+    protected boolean processRemove( K key )
+    {
+        if ( !alive )
+        {
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( logCacheName + "No longer alive so returning false for key = " + key );
+            }
+            return false;
+        }
+
+        List<K> keys = new ArrayList<K>();
+        if ( key instanceof String && key.toString().endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+        {
+            // remove all keys of the same name group.
+            for ( K k : keyHash.keySet() )
+            {
+                if ( k instanceof String && k.toString().startsWith( key.toString() ) )
+                {
+                    keys.add( k );
+                }
+            }
+        }
+        else if ( key instanceof GroupAttrName && ( (GroupAttrName<?>) key ).attrName == null )
+        {
+            // remove all keys of the same name hierarchy.
+            for ( K k : keyHash.keySet() )
+            {
+                if ( k instanceof GroupAttrName
+                    && ( (GroupAttrName<?>) k ).groupId.equals( ( (GroupAttrName<?>) key ).groupId ) )
+                {
+                    keys.add( k );
+                }
+            }
+        }
+        else
+        {
+            keys.add( key );
+        }
+
+        List<byte[]> serializedKeys = new ArrayList<byte[]>( keys.size() );
+        try
+        {
+            for ( K k : keys )
+            {
+                serializedKeys.add( getElementSerializer().serialize( k ) );
+            }
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure serializing key: " + key, e );
+            return false;
+        }
+
+        boolean removed = false;
+        boolean full = false;
+        appendLock.lock();
+        try
+        {
+            for ( int i = 0; i < keys.size(); i++ )
+            {
+                K k = keys.get( i );
+                SegmentedDiskElementDescriptor ded = keyHash.remove( k );
+                if ( ded != null && alive )
+                {
+                    release( ded );
+                    byte[] serialized = serializedKeys.get( i );
+                    Segment segment = getSegmentFor( Segment.HEADER_SIZE_BYTES + serialized.length );
+                    long pos = segment.append( serialized, null );
+                    release( tombstones.put( k, new SegmentedDiskElementDescriptor( segment, pos, serialized.length, 0,
+                                                                                    ded.firstSegmentId ) ) );
+                    removed = true;
+                }
+            }
+            full = isOverSegmentLimit();
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure removing key: " + key, e );
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+
+        if ( full )
+        {
+            evictSegments();
+        }
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( logCacheName + "Disk removal: key [" + key + "] removed = " + removed );
+        }
+        return removed;
+    }
+
+    /**
+     * Deletes all the segments and starts over with an empty one.
+     */
+    @Override
+    protected void processRemoveAll()
+    {
+        storageLock.writeLock().lock();
+        appendLock.lock();
+        try
+        {
+            if ( !alive )
+            {
+                return;
+            }
+
+            keyHash.clear();
+            tombstones.clear();
+            for ( Segment segment : segments )
+            {
+                segment.delete();
+            }
+            segments.clear();
+            active = null;
+            startSegment();
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure removing all", e );
+        }
+        finally
+        {
+            appendLock.unlock();
+            storageLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the compaction and closes the segments.
+     */
+    @Override
+    protected void processDispose()
+    {
+        if ( compactionTask != null )
+        {
+            compactionTask.cancel( false );
+        }
+
+        storageLock.writeLock().lock();
+        appendLock.lock();
+        try
+        {
+            if ( !alive )
+            {
+                log.error( logCacheName + "Not alive and dispose was called, directory: " + directory );
+                return;
+            }
+
+            // Prevents any interaction with the cache while we're shutting down.
+            alive = false;
+
+            for ( Segment segment : segments )
+            {
+                try
+                {
+                    segment.close();
+                }
+                catch ( IOException e )
+                {
+                    log.error( logCacheName + "Failure closing " + segment, e );
+                }
+            }
+        }
+        finally
+        {
+            appendLock.unlock();
+            storageLock.writeLock().unlock();
+        }
+
+        if ( log.isInfoEnabled() )
+        {
+            log.info( logCacheName + "Shutdown complete." );
+        }
+    }
+
+    /**
+     * Compacts the full segments whose dead share has reached CompactionThresholdPercent. This is
+     * what the scheduled task runs.
+     * <p>
+     * @return the number of segments compacted
+     */
+    protected int compact()
+    {
+        synchronized ( compactionLock )
+        {
+            List<Segment> candidates = new ArrayList<Segment>();
+            appendLock.lock();
+            try
+            {
+                for ( Segment segment : segments )
+                {
+                    if ( segment != active && segment.getDeadBytes() * 100 >= segment.length()
+                        * cattr.getCompactionThresholdPercent() )
+                    {
+                        candidates.add( segment );
+                    }
+                }
+            }
+            finally
+            {
+                appendLock.unlock();
+            }
+
+            int count = 0;
+            for ( Segment segment : candidates )
+            {
+                if ( alive && compactSegment( segment ) )
+                {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Copies the live records of a full segment to the end of the current one, then deletes it.
+     * Only the copying of each record holds up puts. The copies are forced to disk before the
+     * segment is deleted, so a crash leaves either the segment or the copies, or both.
+     * <p>
+     * @param segment a full segment
+     * @return true if the segment was deleted
+     */
+    private boolean compactSegment( Segment segment )
+    {
+        long copied = 0;
+        storageLock.readLock().lock();
+        try
+        {
+            appendLock.lock();
+            try
+            {
+                if ( !alive || !segments.contains( segment ) )
+                {
+                    return false;
+                }
+            }
+            finally
+            {
+                appendLock.unlock();
+            }
+
+            long pos = 0;
+            while ( pos < segment.length() )
+            {
+                Segment.Record record = segment.read( pos );
+                if ( record == null )
+                {
+                    throw new IOException( "Could not read " + segment + " at " + pos );
+                }
+                pos += record.length();
+
+                K key = deserializeKey( record.key );
+                if ( key == null )
+                {
+                    continue;
+                }
+
+                appendLock.lock();
+                try
+                {
+                    if ( !alive )
+                    {
+                        return false;
+                    }
+                    copied += copy( segment, record, key );
+                }
+                finally
+                {
+                    appendLock.unlock();
+                }
+            }
+
+            appendLock.lock();
+            try
+            {
+                if ( !alive )
+                {
+                    return false;
+                }
+                active.forceSync();
+                if ( !segments.remove( segment ) )
+                {
+                    // evicted meanwhile, the eviction deletes it
+                    return false;
+                }
+            }
+            finally
+            {
+                appendLock.unlock();
+            }
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure compacting " + segment, e );
+            return false;
+        }
+        finally
+        {
+            storageLock.readLock().unlock();
+        }
+
+        storageLock.writeLock().lock();
+        try
+        {
+            segment.delete();
+        }
+        catch ( IOException e )
+        {
+            log.error( logCacheName + "Failure deleting " + segment, e );
+        }
+        finally
+        {
+            storageLock.writeLock().unlock();
+        }
+
+        compactionCount.incrementAndGet();
+        compactedBytes.addAndGet( segment.length() - copied );
+        if ( log.isInfoEnabled() )
+        {
+            log.info( logCacheName + "Compacted " + segment + ", copied " + copied + " bytes" );
+        }
+        dropObsoleteTombstones();
+        return true;
+    }
+
+    /**
+     * The caller holds the append lock.
+     * <p>
+     * @return true if there are more segments than MaxSegments
+     */
+    private boolean isOverSegmentLimit()
+    {
+        return cattr.getMaxSegments() > 0 && segments.size() > cattr.getMaxSegments();
+    }
+
+    /**
+     * Deletes the oldest segments while there are more than MaxSegments. The elements whose
+     * current record is in them are evicted. Gets only wait for the deletion of the files.
+     */
+    private void evictSegments()
+    {
+        List<Segment> evicted = new ArrayList<Segment>();
+        appendLock.lock();
+        try
+        {
+            while ( alive && isOverSegmentLimit() && segments.get( 0 ) != active )
+            {
+                evicted.add( segments.remove( 0 ) );
+            }
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+
+        if ( evicted.isEmpty() )
+        {
+            return;
+        }
+
+        int evictedKeys = 0;
+        for ( Map.Entry<K, SegmentedDiskElementDescriptor> entry : keyHash.entrySet() )
+        {
+            if ( evicted.contains( entry.getValue().segment ) && keyHash.remove( entry.getKey(), entry.getValue() ) )
+            {
+                evictedKeys++;
+            }
+        }
+
+        storageLock.writeLock().lock();
+        try
+        {
+            for ( Segment segment : evicted )
+            {
+                try
+                {
+                    segment.delete();
+                }
+                catch ( IOException e )
+                {
+                    log.error( logCacheName + "Failure deleting " + segment, e );
+                }
+            }
+        }
+        finally
+        {
+            storageLock.writeLock().unlock();
+        }
+
+        evictedSegmentCount.addAndGet( evicted.size() );
+        if ( log.isInfoEnabled() )
+        {
+            log.info( logCacheName + "Deleted " + evicted.size() + " segments over MaxSegments, evicted "
+                + evictedKeys + " keys" );
+        }
+        dropObsoleteTombstones();
+    }
+
+    /**
+     * Copies a record of a segment being compacted to the current segment if it is still needed.
+     * An element is needed if it is the current record of its key. A removal is needed if it is
+     * the current removal of its key and it still hides an older record. The caller holds the
+     * append lock.
+     * <p>
+     * @param segment
+     * @param record
+     * @param key
+     * @return the number of bytes copied
+     * @throws IOException
+     */
+    private int copy( Segment segment, Segment.Record record, K key )
+        throws IOException
+    {
+        SegmentedDiskElementDescriptor ded = keyHash.get( key );
+        if ( record.value != null )
+        {
+            if ( ded != null && ded.segment == segment && ded.pos == record.pos )
+            {
+                Segment target = getSegmentFor( record.length() );
+                long pos = target.append( record.key, record.value );
+                keyHash.put( key, new SegmentedDiskElementDescriptor( target, pos, record.key.length,
+                                                                      record.value.length, ded.firstSegmentId ) );
+                return record.length();
+            }
+        }
+        else
+        {
+            SegmentedDiskElementDescriptor tombstone = tombstones.get( key );
+            if ( tombstone != null && tombstone.segment == segment && tombstone.pos == record.pos )
+            {
+                if ( hidesRecords( tombstone, segments ) )
+                {
+                    Segment target = getSegmentFor( record.length() );
+                    long pos = target.append( record.key, null );
+                    tombstones.put( key, new SegmentedDiskElementDescriptor( target, pos, record.key.length, 0,
+                                                                             tombstone.firstSegmentId ) );
+                    return record.length();
+                }
+                tombstones.remove( key, tombstone );
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Forces the current segment's writes that have not been forced yet to disk.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    protected void doSync()
+        throws IOException
+    {
+        storageLock.readLock().lock();
+        try
+        {
+            Segment segment = getActiveSegment();
+            if ( alive && segment != null )
+            {
+                segment.sync();
+            }
+        }
+        finally
+        {
+            storageLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the segment appended to
+     */
+    private Segment getActiveSegment()
+    {
+        appendLock.lock();
+        try
+        {
+            return active;
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return a copy of the list of segments, oldest first
+     */
+    private List<Segment> getSegments()
+    {
+        appendLock.lock();
+        try
+        {
+            return new ArrayList<Segment>( segments );
+        }
+        finally
+        {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * This requires a full iteration through the keys.
+     * <p>
+     * @see org.apache.commons.jcs.auxiliary.disk.AbstractDiskCache#getGroupKeys(java.lang.String)
+     */
+    @Override
+    public Set<K> getGroupKeys( String groupName )
+    {
+        GroupId groupId = new GroupId( cacheName, groupName );
+        HashSet<K> keys = new HashSet<K>();
+        for ( K key : keyHash.keySet() )
+        {
+            if ( key instanceof GroupAttrName && ( (GroupAttrName<?>) key ).groupId.equals( groupId ) )
+            {
+                @SuppressWarnings("unchecked") // Type checked with instanceof
+                K newKey = ( (GroupAttrName<K>) key ).attrName;
+                keys.add( newKey );
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * This requires a full iteration through the keys.
+     * <p>
+     * @see org.apache.commons.jcs.auxiliary.disk.AbstractDiskCache#getGroupNames()
+     */
+    @Override
+    public Set<String> getGroupNames()
+    {
+        HashSet<String> names = new HashSet<String>();
+        for ( K key : keyHash.keySet() )
+        {
+            if ( key instanceof GroupAttrName )
+            {
+                names.add( ( (GroupAttrName<?>) key ).groupId.groupName );
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return the number of keys
+     */
+    @Override
+    public int getSize()
+    {
+        return keyHash.size();
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    protected int getSegmentCount()
+    {
+        return getSegments().size();
+    }
+
+    /**
+     * @return the length of all the segments
+     */
+    protected long getDataSize()
+    {
+        long size = 0;
+        for ( Segment segment : getSegments() )
+        {
+            size += segment.length();
+        }
+        return size;
+    }
+
+    /**
+     * @return the length of the records in all the segments that are no longer current
+     */
+    protected long getDeadBytes()
+    {
+        long dead = 0;
+        for ( Segment segment : getSegments() )
+        {
+            dead += segment.getDeadBytes();
+        }
+        return dead;
+    }
+
+    /**
+     * @return the number of segments compacted
+     */
+    protected int getCompactionCount()
+    {
+        return compactionCount.get();
+    }
+
+    /**
+     * @return the number of segments deleted to stay within MaxSegments
+     */
+    protected int getEvictedSegmentCount()
+    {
+        return evictedSegmentCount.get();
+    }
+
+    /**
+     * @return the number of removal records kept to hide older records
+     */
+    protected int getTombstoneCount()
+    {
+        return tombstones.size();
+    }
+
+    /**
+     * @return AuxiliaryCacheAttributes
+     */
+    public AuxiliaryCacheAttributes getAuxiliaryCacheAttributes()
+    {
+        return cattr;
+    }
+
+    /**
+     * Gets basic stats for the disk cache.
+     * <p>
+     * @return String
+     */
+    @Override
+    public String getStats()
+    {
+        return getStatistics().toString();
+    }
+
+    /**
+     * Returns info about the disk cache.
+     * <p>
+     * @see org.apache.commons.jcs.auxiliary.AuxiliaryCache#getStatistics()
+     */
+    @Override
+    public IStats getStatistics()
+    {
+        IStats stats = new Stats();
+        stats.setTypeName( "Segmented Disk Cache" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        IStatElement se = null;
+
+        se = new StatElement();
+        se.setName( "Is Alive" );
+        se.setData( "" + alive );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Key Map Size" );
+        se.setData( "" + keyHash.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Segment Count" );
+        se.setData( "" + getSegmentCount() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Data Size" );
+        se.setData( "" + getDataSize() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Dead Bytes" );
+        se.setData( "" + getDeadBytes() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Compaction Count" );
+        se.setData( "" + compactionCount );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Compacted Bytes" );
+        se.setData( "" + compactedBytes );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Evicted Segment Count" );
+        se.setData( "" + evictedSegmentCount );
+        elems.add( se );
+
+        // get the stats from the super too
+        // get as array, convert to list, add list to our outer list
+        IStats sStats = super.getStatistics();
+        IStatElement[] sSEs = sStats.getStatElements();
+        List<IStatElement> sL = Arrays.asList( sSEs );
+        elems.addAll( sL );
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+
+    /**
+     * This is used by the event logging.
+     * <p>
+     * @return the location of the disk, either path or ip.
+     */
+    @Override
+    protected String getDiskLocation()
+    {
+        return directory.getAbsolutePath();
+    }
+}
@@ -0,0 +1,162 @@
+package org.apache.commons.jcs.auxiliary.disk.segmented;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.jcs.auxiliary.AuxiliaryCacheAttributes;
+import org.apache.commons.jcs.auxiliary.disk.AbstractDiskCacheAttributes;
+
+/**
+ * Configuration for the segmented disk cache.
+ */
+public class SegmentedDiskCacheAttributes
+    extends AbstractDiskCacheAttributes
+{
+    /** Don't change. */
+    private static final long serialVersionUID = 3861709426113519604L;
+
+    /** The default segment size, 64 MB. */
+    private static final int DEFAULT_MAX_SEGMENT_SIZE_BYTES = 64 * 1024 * 1024;
+
+    /** By default a segment is compacted once half of it is dead. */
+    private static final int DEFAULT_COMPACTION_THRESHOLD_PERCENT = 50;
+
+    /** By default the segments are checked every minute. */
+    private static final int DEFAULT_COMPACTION_INTERVAL_SECONDS = 60;
+
+    /** By default a region keeps up to 16 segments, 1 GB with the default segment size. */
+    private static final int DEFAULT_MAX_SEGMENTS = 16;
+
+    /** A new segment is started once the current one reaches this size. */
+    private int maxSegmentSizeBytes = DEFAULT_MAX_SEGMENT_SIZE_BYTES;
+
+    /** The share of dead bytes at which a full segment is compacted. */
+    private int compactionThresholdPercent = DEFAULT_COMPACTION_THRESHOLD_PERCENT;
+
+    /** How often the segments are checked for compaction. */
+    private int compactionIntervalSeconds = DEFAULT_COMPACTION_INTERVAL_SECONDS;
+
+    /** The number of segments above which the oldest are deleted. */
+    private int maxSegments = DEFAULT_MAX_SEGMENTS;
+
+    /**
+     * @param maxSegmentSizeBytes the size at which a new segment is started
+     */
+    public void setMaxSegmentSizeBytes( int maxSegmentSizeBytes )
+    {
+        this.maxSegmentSizeBytes = maxSegmentSizeBytes;
+    }
+
+    /**
+     * @return the size at which a new segment is started
+     */
+    public int getMaxSegmentSizeBytes()
+    {
+        return maxSegmentSizeBytes;
+    }
+
+    /**
+     * @param compactionThresholdPercent the share of dead bytes at which a full segment is
+     *            compacted
+     */
+    public void setCompactionThresholdPercent( int compactionThresholdPercent )
+    {
+        this.compactionThresholdPercent = compactionThresholdPercent;
+    }
+
+    /**
+     * @return the share of dead bytes at which a full segment is compacted
+     */
+    public int getCompactionThresholdPercent()
+    {
+        return compactionThresholdPercent;
+    }
+
+    /**
+     * @param compactionIntervalSeconds how often the segments are checked for compaction. Zero or
+     *            less turns background compaction off.
+     */
+    public void setCompactionIntervalSeconds( int compactionIntervalSeconds )
+    {
+        this.compactionIntervalSeconds = compactionIntervalSeconds;
+    }
+
+    /**
+     * @return how often the segments are checked for compaction
+     */
+    public int getCompactionIntervalSeconds()
+    {
+        return compactionIntervalSeconds;
+    }
+
+    /**
+     * @param maxSegments the number of segments above which the oldest are deleted, evicting the
+     *            elements in them. Zero or less means no limit.
+     */
+    public void setMaxSegments( int maxSegments )
+    {
+        this.maxSegments = maxSegments;
+    }
+
+    /**
+     * @return the number of segments above which the oldest are deleted
+     */
+    public int getMaxSegments()
+    {
+        return maxSegments;
+    }
+
+    /**
+     * Returns a copy of the attributes.
+     * <p>
+     * @return AuxiliaryCacheAttributes
+     */
+    @Override
+    public AuxiliaryCacheAttributes copy()
+    {
+        try
+        {
+            return (AuxiliaryCacheAttributes) this.clone();
+        }
+        catch ( Exception e )
+        {
+            // swallow
+        }
+        return this;
+    }
+
+    /**
+     * Write out the values for debugging purposes.
+     * <p>
+     * @return String
+     */
+    @Override
+    public String toString()
+    {
+        StringBuffer str = new StringBuffer();
+        str.append( "SegmentedDiskCacheAttributes " );
+        str.append( "\n maxSegmentSizeBytes = " + getMaxSegmentSizeBytes() );
+        str.append( "\n compactionThresholdPercent = " + getCompactionThresholdPercent() );
+        str.append( "\n compactionIntervalSeconds = " + getCompactionIntervalSeconds() );
+        str.append( "\n maxSegments = " + getMaxSegments() );
+        str.append( "\n " + super.toString() );
+        return str.toString();
+    }
+}
@@ -0,0 +1,118 @@
+package org.apache.commons.jcs.auxiliary.disk.segmented;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.Hashtable;
+
+import org.apache.commons.jcs.auxiliary.disk.AbstractDiskCacheManager;
+import org.apache.commons.jcs.engine.behavior.IElementSerializer;
+import org.apache.commons.jcs.engine.logging.behavior.ICacheEventLogger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * This is a non singleton. It creates caches on a per region basis.
+ */
+public class SegmentedDiskCacheManager
+    extends AbstractDiskCacheManager
+{
+    /** Don't change */
+    private static final long serialVersionUID = 2304871106384416725L;
+
+    /** The logger */
+    private final static Log log = LogFactory.getLog( SegmentedDiskCacheManager.class );
+
+    /** Each region has an entry here. */
+    private final Hashtable<String, SegmentedDiskCache<? extends Serializable, ? extends Serializable>> caches =
+        new Hashtable<String, SegmentedDiskCache<? extends Serializable, ? extends Serializable>>();
+
+    /** User configurable attributes */
+    private final SegmentedDiskCacheAttributes defaultCacheAttributes;
+
+    /**
+     * Constructor for the SegmentedDiskCacheManager object
+     * <p>
+     * @param defaultCacheAttributes Default attributes for caches managed by the instance.
+     * @param cacheEventLogger
+     * @param elementSerializer
+     */
+    protected SegmentedDiskCacheManager( SegmentedDiskCacheAttributes defaultCacheAttributes,
+                                         ICacheEventLogger cacheEventLogger, IElementSerializer elementSerializer )
+    {
+        this.defaultCacheAttributes = defaultCacheAttributes;
+        setElementSerializer( elementSerializer );
+        setCacheEventLogger( cacheEventLogger );
+    }
+
+    /**
+     * Gets an SegmentedDiskCache for the supplied name using the default attributes.
+     * <p>
+     * @param cacheName Name that will be used when creating attributes.
+     * @return A cache.
+     */
+    public <K extends Serializable, V extends Serializable> SegmentedDiskCache<K, V> getCache( String cacheName )
+    {
+        SegmentedDiskCacheAttributes cacheAttributes = (SegmentedDiskCacheAttributes) defaultCacheAttributes.copy();
+
+        cacheAttributes.setCacheName( cacheName );
+
+        return getCache( cacheAttributes );
+    }
+
+    /**
+     * Get an SegmentedDiskCache for the supplied attributes. Will provide an existing cache for the name
+     * attribute if one has been created, or will create a new cache.
+     * <p>
+     * @param cacheAttributes Attributes the cache should have.
+     * @return A cache, either from the existing set or newly created.
+     */
+    public <K extends Serializable, V extends Serializable> SegmentedDiskCache<K, V> getCache( SegmentedDiskCacheAttributes cacheAttributes )
+    {
+        SegmentedDiskCache<K, V> cache = null;
+
+        String cacheName = cacheAttributes.getCacheName();
+
+        log.debug( "Getting cache named: " + cacheName );
+
+        synchronized ( caches )
+        {
+            // Try to load the cache from the set that have already been
+            // created. This only looks at the name attribute.
+
+            @SuppressWarnings("unchecked") // Need to cast because of common map for all caches
+            SegmentedDiskCache<K, V> segmentedDiskCache = (SegmentedDiskCache<K, V>) caches.get( cacheName );
+            cache = segmentedDiskCache;
+
+            // If it was not found, create a new one using the supplied
+            // attributes
+
+            if ( cache == null )
+            {
+                cache = new SegmentedDiskCache<K, V>( cacheAttributes, getElementSerializer() );
+                cache.setCacheEventLogger( getCacheEventLogger() );
+                caches.put( cacheName, cache );
+            }
+        }
+
+        return cache;
+    }
+}
@@ -0,0 +1,81 @@
+package org.apache.commons.jcs.auxiliary.disk.segmented;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * Where the current record for a key lives. Descriptors are never changed, a moved or replaced
+ * record gets a new one.
+ * <p>
+ * The descriptor of a removal record has a value length of 0. It also remembers the oldest segment
+ * that may still hold an older record of the key, which the removal has to hide.
+ */
+final class SegmentedDiskElementDescriptor
+{
+    /** The segment holding the record. */
+    final Segment segment;
+
+    /** The position of the record in the segment. */
+    final long pos;
+
+    /** The length of the serialized key. */
+    final int keyLength;
+
+    /** The length of the serialized element. */
+    final int valueLength;
+
+    /** The number of the oldest segment that may hold a record of the key. */
+    final int firstSegmentId;
+
+    /**
+     * @param segment
+     * @param pos
+     * @param keyLength
+     * @param valueLength
+     * @param firstSegmentId the number of the oldest segment that may hold a record of the key
+     */
+    SegmentedDiskElementDescriptor( Segment segment, long pos, int keyLength, int valueLength, int firstSegmentId )
+    {
+        this.segment = segment;
+        this.pos = pos;
+        this.keyLength = keyLength;
+        this.valueLength = valueLength;
+        this.firstSegmentId = firstSegmentId;
+    }
+
+    /**
+     * @return the length of the whole record, header included
+     */
+    int getRecordLength()
+    {
+        return Segment.HEADER_SIZE_BYTES + keyLength + valueLength;
+    }
+
+    /**
+     * For debugging.
+     * <p>
+     * @return the segment and position
+     */
+    @Override
+    public String toString()
+    {
+        return "[segment " + segment.getId() + ", pos " + pos + ", len " + getRecordLength() + "]";
+    }
+}
@@ -211,6 +211,34 @@ public class LateralCacheNoWaitFacade<K extends Serializable, V extends Serializ
         }
     }
 
+    /**
+     * Hands the batch to each no wait in one call.
+     * <p>
+     * @param elements
+     * @throws IOException
+     */
+    @Override
+    public void updateMultiple( Map<K, ICacheElement<K, V>> elements )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "updating " + elements.size() + " elements through lateral cache facade, noWaits.length = "
+                + noWaits.length );
+        }
+        try
+        {
+            for ( int i = 0; i < noWaits.length; i++ )
+            {
+                noWaits[i].updateMultiple( elements );
+            }
+        }
+        catch ( Exception ex )
+        {
+            log.error( ex );
+        }
+    }
+
     /**
      * Synchronously reads from the lateral cache.
      * <p>
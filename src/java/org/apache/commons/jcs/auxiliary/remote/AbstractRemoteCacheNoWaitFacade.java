@@ -143,6 +143,44 @@ public abstract class AbstractRemoteCacheNoWaitFacade<K extends Serializable, V
         }
     }
 
+    /**
+     * Hands the batch to each no wait in one call. Fails over like update if a no wait is in error.
+     * <p>
+     * @param elements
+     * @throws IOException
+     */
+    @Override
+    public void updateMultiple( Map<K, ICacheElement<K, V>> elements )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "updating " + elements.size() + " elements through cache facade, noWaits.length = "
+                + noWaits.length );
+        }
+        int i = 0;
+        try
+        {
+            for ( ; i < noWaits.length; i++ )
+            {
+                noWaits[i].updateMultiple( elements );
+            }
+        }
+        catch ( Exception ex )
+        {
+            String message = "Problem updating no wait.  Will initiate failover if the noWait is in error.";
+            log.error( message, ex );
+
+            if ( getCacheEventLogger() != null )
+            {
+                getCacheEventLogger().logError( "RemoteCacheNoWaitFacade", ICacheEventLogger.UPDATE_EVENT,
+                                                message + ":" + ex.getMessage() + " ELEMENTS: " + elements.size() );
+            }
+
+            failover( i );
+        }
+    }
+
     /**
      * Synchronously reads from the remote cache.
      * <p>
@@ -21,10 +21,12 @@ package org.apache.commons.jcs.engine;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
 import org.apache.commons.jcs.engine.behavior.ICacheEventQueue;
 import org.apache.commons.jcs.engine.behavior.ICacheListener;
+import org.apache.commons.jcs.engine.behavior.ICacheMultipleListener;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -155,6 +157,29 @@ public abstract class AbstractCacheEventQueue<K extends Serializable, V extends
         }
     }
 
+    /**
+     * This adds one event for several puts to the queue. When it is processed, the elements will
+     * be put to the listener.
+     * <p>
+     * @param elements
+     * @exception IOException
+     */
+    public synchronized void addPutMultipleEvent( Collection<ICacheElement<K, V>> elements )
+        throws IOException
+    {
+        if ( isWorking() )
+        {
+            put( new PutMultipleEvent( elements ) );
+        }
+        else
+        {
+            if ( log.isWarnEnabled() )
+            {
+                log.warn( "Not enqueuing Put Multiple Event for [" + this + "] because it's non-functional." );
+            }
+        }
+    }
+
     /**
      * This adds a remove event to the queue. When processed the listener's remove method will be
      * called for the key.
@@ -357,6 +382,61 @@ public abstract class AbstractCacheEventQueue<K extends Serializable, V extends
 
     }
 
+    /**
+     * Several elements should be put in the cache.
+     */
+    protected class PutMultipleEvent
+        extends AbstractCacheEvent
+    {
+        /** The elements to put to the listener */
+        private final Collection<ICacheElement<K, V>> elements;
+
+        /**
+         * Constructor for the PutMultipleEvent object.
+         * <p>
+         * @param elements
+         */
+        PutMultipleEvent( Collection<ICacheElement<K, V>> elements )
+        {
+            this.elements = elements;
+        }
+
+        /**
+         * Call put multiple on the listener if it can take them at once, otherwise put on the
+         * listener for each element.
+         * <p>
+         * @exception IOException
+         */
+        @Override
+        protected void doRun()
+            throws IOException
+        {
+            if ( listener instanceof ICacheMultipleListener )
+            {
+                ( (ICacheMultipleListener<K, V>) listener ).handlePutMultiple( elements );
+            }
+            else
+            {
+                for ( ICacheElement<K, V> ice : elements )
+                {
+                    listener.handlePut( ice );
+                }
+            }
+        }
+
+        /**
+         * For debugging.
+         * <p>
+         * @return the number of elements.
+         */
+        @Override
+        public String toString()
+        {
+            return new StringBuffer( "PutMultipleEvent for " ).append( elements.size() ).append( " elements" )
+                .toString();
+        }
+    }
+
     /**
      * An element should be removed from the cache.
      * <p>
@@ -0,0 +1,482 @@
+package org.apache.commons.jcs.engine;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.apache.commons.jcs.engine.behavior.IElementAttributes;
+import org.apache.commons.jcs.engine.control.event.behavior.IElementEventHandler;
+import org.apache.commons.jcs.utils.timing.CacheClock;
+
+/**
+ * Element attributes that keep only the create and last access times per element. Everything else
+ * is read from a template that all the elements of a region share. A region that uses compact
+ * element attributes hands these out instead of a full copy of its defaults, which saves most of
+ * the per element overhead when the values are small.
+ * <p>
+ * The template is immutable. The first setter called on an instance gives it a private copy of
+ * the template, so changing the attributes of one element never affects another. When serialized,
+ * an instance is written as a plain ElementAttributes, so disk and remote caches see the same
+ * format as before.
+ */
+public class CompactElementAttributes
+    implements IElementAttributes, Serializable
+{
+    /** Don't change. */
+    private static final long serialVersionUID = -2386125463874591263L;
+
+    /** The shared template, or a private copy once a setter was called. */
+    private IElementAttributes attributes;
+
+    /** The creation time. */
+    private long createTime;
+
+    /** The last access time. */
+    private long lastAccessTime;
+
+    /**
+     * Creates attributes for a new element, using the template for everything but the times.
+     * <p>
+     * @param template the shared template of the region
+     */
+    public CompactElementAttributes( Template template )
+    {
+        this.attributes = template;
+        this.createTime = CacheClock.currentTimeMillis();
+        this.lastAccessTime = this.createTime;
+    }
+
+    /**
+     * Replaces the shared template with a private copy before a change.
+     * <p>
+     * @return the attributes that may be changed
+     */
+    private IElementAttributes modifiable()
+    {
+        if ( attributes instanceof Template )
+        {
+            attributes = attributes.copy();
+        }
+        return attributes;
+    }
+
+    /**
+     * @return true while this instance still uses the shared template
+     */
+    public boolean isShared()
+    {
+        return attributes instanceof Template;
+    }
+
+    /**
+     * @param mls The new MaxLifeSeconds value
+     */
+    public void setMaxLifeSeconds( long mls )
+    {
+        modifiable().setMaxLifeSeconds( mls );
+    }
+
+    /**
+     * @return The MaxLifeSeconds value
+     */
+    public long getMaxLifeSeconds()
+    {
+        return attributes.getMaxLifeSeconds();
+    }
+
+    /**
+     * @param refreshAheadSeconds the window in seconds, -1 to turn refresh ahead off
+     */
+    public void setRefreshAheadSeconds( long refreshAheadSeconds )
+    {
+        modifiable().setRefreshAheadSeconds( refreshAheadSeconds );
+    }
+
+    /**
+     * @return the window in seconds, -1 if refresh ahead is off
+     */
+    public long getRefreshAheadSeconds()
+    {
+        return attributes.getRefreshAheadSeconds();
+    }
+
+    /**
+     * @param maxStaleSeconds the window in seconds, -1 to expire at the max life
+     */
+    public void setMaxStaleSeconds( long maxStaleSeconds )
+    {
+        modifiable().setMaxStaleSeconds( maxStaleSeconds );
+    }
+
+    /**
+     * @return the window in seconds, -1 if stale elements are not served
+     */
+    public long getMaxStaleSeconds()
+    {
+        return attributes.getMaxStaleSeconds();
+    }
+
+    /**
+     * @param idle The new idleTime value
+     */
+    public void setIdleTime( long idle )
+    {
+        modifiable().setIdleTime( idle );
+    }
+
+    /**
+     * @return The idleTime value
+     */
+    public long getIdleTime()
+    {
+        return attributes.getIdleTime();
+    }
+
+    /**
+     * @param size The new size value
+     */
+    public void setSize( int size )
+    {
+        modifiable().setSize( size );
+    }
+
+    /**
+     * @return The size value
+     */
+    public int getSize()
+    {
+        return attributes.getSize();
+    }
+
+    /**
+     * @return The createTime value
+     */
+    public long getCreateTime()
+    {
+        return createTime;
+    }
+
+    /**
+     * Sets the createTime to now.
+     */
+    public void setCreateTime()
+    {
+        createTime = CacheClock.currentTimeMillis();
+    }
+
+    /**
+     * @return The LastAccess value.
+     */
+    public long getLastAccessTime()
+    {
+        return lastAccessTime;
+    }
+
+    /**
+     * Sets the LastAccessTime to now.
+     */
+    public void setLastAccessTimeNow()
+    {
+        lastAccessTime = CacheClock.currentTimeMillis();
+    }
+
+    /**
+     * This is the (max life + create time) - current time.
+     * <p>
+     * @return The TimeToLiveSeconds value
+     */
+    public long getTimeToLiveSeconds()
+    {
+        long now = CacheClock.currentTimeMillis();
+        return ( ( this.getCreateTime() + ( this.getMaxLifeSeconds() * 1000 ) ) - now ) / 1000;
+    }
+
+    /**
+     * Copies the attributes. The copy shares the template if this instance still does.
+     * <p>
+     * @return a copy of the attributes with new times
+     */
+    public IElementAttributes copy()
+    {
+        if ( attributes instanceof Template )
+        {
+            return new CompactElementAttributes( (Template) attributes );
+        }
+        return attributes.copy();
+    }
+
+    /**
+     * @return The spoolable value
+     */
+    public boolean getIsSpool()
+    {
+        return attributes.getIsSpool();
+    }
+
+    /**
+     * @param val The new isSpool value
+     */
+    public void setIsSpool( boolean val )
+    {
+        modifiable().setIsSpool( val );
+    }
+
+    /**
+     * @return The isLateral value
+     */
+    public boolean getIsLateral()
+    {
+        return attributes.getIsLateral();
+    }
+
+    /**
+     * @param val The new isLateral value
+     */
+    public void setIsLateral( boolean val )
+    {
+        modifiable().setIsLateral( val );
+    }
+
+    /**
+     * @return true if the item can be sent to a remote auxiliary
+     */
+    public boolean getIsRemote()
+    {
+        return attributes.getIsRemote();
+    }
+
+    /**
+     * @param val The new isRemote value
+     */
+    public void setIsRemote( boolean val )
+    {
+        modifiable().setIsRemote( val );
+    }
+
+    /**
+     * @return true if the item cannot expire.
+     */
+    public boolean getIsEternal()
+    {
+        return attributes.getIsEternal();
+    }
+
+    /**
+     * @param val The new isEternal value
+     */
+    public void setIsEternal( boolean val )
+    {
+        modifiable().setIsEternal( val );
+    }
+
+    /**
+     * @param eventHandler The ElementEventHandler to be added to the list.
+     */
+    public void addElementEventHandler( IElementEventHandler eventHandler )
+    {
+        modifiable().addElementEventHandler( eventHandler );
+    }
+
+    /**
+     * @return The elementEventHandlers List of IElementEventHandler objects, or null
+     */
+    public ArrayList<IElementEventHandler> getElementEventHandlers()
+    {
+        return attributes.getElementEventHandlers();
+    }
+
+    /**
+     * @param eventHandlers List of IElementEventHandler objects
+     */
+    public void addElementEventHandlers( ArrayList<IElementEventHandler> eventHandlers )
+    {
+        if ( eventHandlers != null )
+        {
+            modifiable().addElementEventHandlers( eventHandlers );
+        }
+    }
+
+    /**
+     * Writes a plain ElementAttributes with the same values and times in place of this instance.
+     * <p>
+     * @return the attributes to serialize
+     * @throws ObjectStreamException
+     */
+    protected Object writeReplace()
+        throws ObjectStreamException
+    {
+        ElementAttributes attr = (ElementAttributes) attributes.copy();
+        attr.createTime = createTime;
+        attr.lastAccessTime = lastAccessTime;
+        return attr;
+    }
+
+    /**
+     * For logging and debugging the element IElementAttributes.
+     * <p>
+     * @return String info about the values.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuffer dump = new StringBuffer();
+
+        dump.append( "[ IS_LATERAL = " ).append( getIsLateral() );
+        dump.append( ", IS_SPOOL = " ).append( getIsSpool() );
+        dump.append( ", IS_REMOTE = " ).append( getIsRemote() );
+        dump.append( ", IS_ETERNAL = " ).append( getIsEternal() );
+        dump.append( ", MaxLifeSeconds = " ).append( this.getMaxLifeSeconds() );
+        dump.append( ", RefreshAheadSeconds = " ).append( this.getRefreshAheadSeconds() );
+        dump.append( ", MaxStaleSeconds = " ).append( this.getMaxStaleSeconds() );
+        dump.append( ", IdleTime = " ).append( this.getIdleTime() );
+        dump.append( ", CreateTime = " ).append( this.getCreateTime() );
+        dump.append( ", LastAccessTime = " ).append( this.getLastAccessTime() );
+        dump.append( ", getTimeToLiveSeconds() = " ).append( String.valueOf( getTimeToLiveSeconds() ) );
+        dump.append( ", shared = " ).append( isShared() ).append( " ]" );
+
+        return dump.toString();
+    }
+
+    /**
+     * The shared, immutable part of compact element attributes. It is a snapshot of the region's
+     * default attributes taken when they are set. The setters throw UnsupportedOperationException.
+     */
+    public static final class Template
+        extends ElementAttributes
+    {
+        /** Don't change. */
+        private static final long serialVersionUID = 4316204876217416524L;
+
+        /**
+         * Takes a snapshot of the attributes.
+         * <p>
+         * @param attr
+         */
+        public Template( IElementAttributes attr )
+        {
+            IS_SPOOL = attr.getIsSpool();
+            IS_LATERAL = attr.getIsLateral();
+            IS_REMOTE = attr.getIsRemote();
+            IS_ETERNAL = attr.getIsEternal();
+            maxLifeSeconds = attr.getMaxLifeSeconds();
+            refreshAheadSeconds = attr.getRefreshAheadSeconds();
+            maxStaleSeconds = attr.getMaxStaleSeconds();
+            maxIdleTimeSeconds = attr.getIdleTime();
+            size = attr.getSize();
+            if ( attr.getElementEventHandlers() != null )
+            {
+                eventHandlers = new ArrayList<IElementEventHandler>( attr.getElementEventHandlers() );
+            }
+        }
+
+        /**
+         * @param mls
+         */
+        @Override
+        public void setMaxLifeSeconds( long mls )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param refreshAheadSeconds
+         */
+        @Override
+        public void setRefreshAheadSeconds( long refreshAheadSeconds )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param maxStaleSeconds
+         */
+        @Override
+        public void setMaxStaleSeconds( long maxStaleSeconds )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param idle
+         */
+        @Override
+        public void setIdleTime( long idle )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param size
+         */
+        @Override
+        public void setSize( int size )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param val
+         */
+        @Override
+        public void setIsSpool( boolean val )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param val
+         */
+        @Override
+        public void setIsLateral( boolean val )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param val
+         */
+        @Override
+        public void setIsRemote( boolean val )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param val
+         */
+        @Override
+        public void setIsEternal( boolean val )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+
+        /**
+         * @param eventHandler
+         */
+        @Override
+        public void addElementEventHandler( IElementEventHandler eventHandler )
+        {
+            throw new UnsupportedOperationException( "The template is immutable." );
+        }
+    }
+}
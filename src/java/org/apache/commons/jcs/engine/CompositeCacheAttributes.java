@@ -64,6 +64,30 @@ public class CompositeCacheAttributes
     /** Default number to send to disk at a time when memory fills. */
     private static final int DEFAULT_CHUNK_SIZE = 2;
 
+    /** By default updates are serialized on the region. */
+    private static final int DEFAULT_UPDATE_LOCK_STRIPES = 0;
+
+    /** By default getMultiple asks the auxiliaries one after the other. */
+    private static final boolean DEFAULT_USE_PARALLEL_GET_MULTIPLE = false;
+
+    /** By default a parallel getMultiple waits for all of the auxiliaries. */
+    private static final long DEFAULT_GET_MULTIPLE_TIMEOUT_MILLIS = -1;
+
+    /** By default the memory cache is only bounded by the number of objects. */
+    private static final long DEFAULT_MAX_MEMORY_BYTES = -1;
+
+    /** Default shrinker kind */
+    private static final boolean DEFAULT_USE_TIMER_WHEEL_SHRINKER = false;
+
+    /** Default element attribute representation */
+    private static final boolean DEFAULT_USE_COMPACT_ELEMENT_ATTRIBUTES = false;
+
+    /** Default spool admission frequency, 0 spools everything */
+    private static final int DEFAULT_SPOOL_ADMISSION_FREQUENCY = 0;
+
+    /** Default for writing elements to disk as they move to soft references */
+    private static final boolean DEFAULT_SPOOL_SOFT_REFERENCES = false;
+
     /** allow lateral caches */
     private boolean useLateral = DEFAULT_USE_LATERAL;
 
@@ -100,6 +124,33 @@ public class CompositeCacheAttributes
     /** How many to spool to disk at a time. */
     private int spoolChunkSize = DEFAULT_CHUNK_SIZE;
 
+    /** How many key striped locks to use for updates. 0 means the region monitor is used. */
+    private int updateLockStripes = DEFAULT_UPDATE_LOCK_STRIPES;
+
+    /** Whether getMultiple asks the auxiliaries in parallel. */
+    private boolean useParallelGetMultiple = DEFAULT_USE_PARALLEL_GET_MULTIPLE;
+
+    /** How long a parallel getMultiple waits for the auxiliaries. */
+    private long getMultipleTimeoutMillis = DEFAULT_GET_MULTIPLE_TIMEOUT_MILLIS;
+
+    /** The maximum accumulated weight of the elements in memory. -1 means no limit. */
+    private long maxMemoryBytes = DEFAULT_MAX_MEMORY_BYTES;
+
+    /** The name of the class used to weigh elements, null for the serialized size weigher. */
+    private String elementWeigherClassName;
+
+    /** Whether the memory shrinker tracks deadlines on a timing wheel instead of scanning. */
+    private boolean useTimerWheelShrinker = DEFAULT_USE_TIMER_WHEEL_SHRINKER;
+
+    /** Whether elements put with the region defaults share one attributes template. */
+    private boolean useCompactElementAttributes = DEFAULT_USE_COMPACT_ELEMENT_ATTRIBUTES;
+
+    /** How often an element must have been used recently to be spooled. 0 spools everything. */
+    private int spoolAdmissionFrequency = DEFAULT_SPOOL_ADMISSION_FREQUENCY;
+
+    /** Whether the reference memory caches spool elements as they move to the reference area. */
+    private boolean spoolSoftReferences = DEFAULT_SPOOL_SOFT_REFERENCES;
+
     /**
      * Constructor for the CompositeCacheAttributes object
      */
@@ -369,6 +420,200 @@ public class CompositeCacheAttributes
         this.spoolChunkSize = spoolChunkSize;
     }
 
+    /**
+     * Number of key striped locks used to serialize updates to the region.
+     * <p>
+     * @return int
+     */
+    public int getUpdateLockStripes()
+    {
+        return updateLockStripes;
+    }
+
+    /**
+     * Number of key striped locks used to serialize updates to the region. If this is 0 or less,
+     * updates are serialized on the region itself.
+     * <p>
+     * @param updateLockStripes
+     */
+    public void setUpdateLockStripes( int updateLockStripes )
+    {
+        this.updateLockStripes = updateLockStripes;
+    }
+
+    /**
+     * Whether getMultiple looks up the keys missing from memory in the auxiliaries in parallel.
+     * <p>
+     * @return true if the lookups run in parallel
+     */
+    public boolean isUseParallelGetMultiple()
+    {
+        return useParallelGetMultiple;
+    }
+
+    /**
+     * Whether getMultiple looks up the keys missing from memory in the auxiliaries in parallel.
+     * <p>
+     * @param useParallelGetMultiple
+     */
+    public void setUseParallelGetMultiple( boolean useParallelGetMultiple )
+    {
+        this.useParallelGetMultiple = useParallelGetMultiple;
+    }
+
+    /**
+     * How long a parallel getMultiple waits for the auxiliaries. -1 means no deadline.
+     * <p>
+     * @return the deadline in milliseconds
+     */
+    public long getGetMultipleTimeoutMillis()
+    {
+        return getMultipleTimeoutMillis;
+    }
+
+    /**
+     * How long a parallel getMultiple waits for the auxiliaries. Keys that have not been found
+     * when it passes are reported as misses.
+     * <p>
+     * @param getMultipleTimeoutMillis the deadline in milliseconds, -1 for none
+     */
+    public void setGetMultipleTimeoutMillis( long getMultipleTimeoutMillis )
+    {
+        this.getMultipleTimeoutMillis = getMultipleTimeoutMillis;
+    }
+
+    /**
+     * The maximum accumulated weight, normally bytes, of the elements in memory. -1 means the
+     * memory cache is only bounded by MaxObjects.
+     * <p>
+     * @return the weight limit
+     */
+    public long getMaxMemoryBytes()
+    {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * The maximum accumulated weight, normally bytes, of the elements in memory. When it is
+     * exceeded the memory cache spools elements until the weight is back under the limit.
+     * <p>
+     * @param maxMemoryBytes the weight limit, -1 for none
+     */
+    public void setMaxMemoryBytes( long maxMemoryBytes )
+    {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * The class used to weigh elements for MaxMemoryBytes.
+     * <p>
+     * @return the class name of an IElementWeigher, or null for the default
+     */
+    public String getElementWeigherClassName()
+    {
+        return elementWeigherClassName;
+    }
+
+    /**
+     * The class used to weigh elements for MaxMemoryBytes. It must implement IElementWeigher
+     * and have a public no-argument constructor.
+     * <p>
+     * @param elementWeigherClassName
+     */
+    public void setElementWeigherClassName( String elementWeigherClassName )
+    {
+        this.elementWeigherClassName = elementWeigherClassName;
+    }
+
+    /**
+     * Whether the memory shrinker tracks the deadline of each element on a timing wheel, so a run
+     * only looks at the elements that are due, instead of scanning the whole region.
+     * <p>
+     * @return true for the timing wheel
+     */
+    public boolean isUseTimerWheelShrinker()
+    {
+        return useTimerWheelShrinker;
+    }
+
+    /**
+     * Whether the memory shrinker tracks the deadline of each element on a timing wheel. Only
+     * used if UseMemoryShrinker is true.
+     * <p>
+     * @param useTimerWheelShrinker
+     */
+    public void setUseTimerWheelShrinker( boolean useTimerWheelShrinker )
+    {
+        this.useTimerWheelShrinker = useTimerWheelShrinker;
+    }
+
+    /**
+     * Whether elements put with the region's default attributes share one immutable template and
+     * only keep their own timestamps.
+     * <p>
+     * @return true for compact element attributes
+     */
+    public boolean isUseCompactElementAttributes()
+    {
+        return useCompactElementAttributes;
+    }
+
+    /**
+     * Whether elements put with the region's default attributes share one immutable template.
+     * <p>
+     * @param useCompactElementAttributes
+     */
+    public void setUseCompactElementAttributes( boolean useCompactElementAttributes )
+    {
+        this.useCompactElementAttributes = useCompactElementAttributes;
+    }
+
+    /**
+     * How often an element evicted from memory must have been put or read recently to be written
+     * to disk. Elements used less often are dropped. The region estimates the frequencies with a
+     * sketch, so values above 15 act like 15.
+     * <p>
+     * @return the minimum frequency, 0 if every element is spooled
+     */
+    public int getSpoolAdmissionFrequency()
+    {
+        return spoolAdmissionFrequency;
+    }
+
+    /**
+     * How often an element evicted from memory must have been put or read recently to be written
+     * to disk.
+     * <p>
+     * @param spoolAdmissionFrequency the minimum frequency, 0 to spool every element
+     */
+    public void setSpoolAdmissionFrequency( int spoolAdmissionFrequency )
+    {
+        this.spoolAdmissionFrequency = spoolAdmissionFrequency;
+    }
+
+    /**
+     * Whether the soft and weak reference memory caches write an element to disk when it leaves
+     * the strict LRU area for the reference area, so that it is not lost when the garbage
+     * collector clears it.
+     * <p>
+     * @return true to spool elements as they move to the reference area
+     */
+    public boolean isSpoolSoftReferences()
+    {
+        return spoolSoftReferences;
+    }
+
+    /**
+     * Whether the soft and weak reference memory caches write an element to disk when it leaves
+     * the strict LRU area for the reference area.
+     * <p>
+     * @param spoolSoftReferences
+     */
+    public void setSpoolSoftReferences( boolean spoolSoftReferences )
+    {
+        this.spoolSoftReferences = spoolSoftReferences;
+    }
+
     /**
      * @return Returns the diskUsagePattern.
      */
@@ -414,6 +659,15 @@ public class CompositeCacheAttributes
         dump.append( ", maxSpoolPerRun = " ).append( maxSpoolPerRun );
         dump.append( ", diskUsagePattern = " ).append( diskUsagePattern );
         dump.append( ", spoolChunkSize = " ).append( spoolChunkSize );
+        dump.append( ", updateLockStripes = " ).append( updateLockStripes );
+        dump.append( ", useParallelGetMultiple = " ).append( useParallelGetMultiple );
+        dump.append( ", getMultipleTimeoutMillis = " ).append( getMultipleTimeoutMillis );
+        dump.append( ", maxMemoryBytes = " ).append( maxMemoryBytes );
+        dump.append( ", elementWeigherClassName = " ).append( elementWeigherClassName );
+        dump.append( ", useTimerWheelShrinker = " ).append( useTimerWheelShrinker );
+        dump.append( ", useCompactElementAttributes = " ).append( useCompactElementAttributes );
+        dump.append( ", spoolAdmissionFrequency = " ).append( spoolAdmissionFrequency );
+        dump.append( ", spoolSoftReferences = " ).append( spoolSoftReferences );
         dump.append( " ]" );
 
         return dump.toString();
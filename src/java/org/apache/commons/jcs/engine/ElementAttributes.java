@@ -29,6 +29,7 @@ import java.util.ArrayList;
 
 import org.apache.commons.jcs.engine.behavior.IElementAttributes;
 import org.apache.commons.jcs.engine.control.event.behavior.IElementEventHandler;
+import org.apache.commons.jcs.utils.timing.CacheClock;
 
 /**
  * This it the element attribute descriptor class. Each element in the cache has an ElementAttribute
@@ -66,6 +67,12 @@ public class ElementAttributes
     /** Max life seconds */
     public long maxLifeSeconds = -1;
 
+    /** How long before the max life a get triggers a background reload. -1 turns this off. */
+    public long refreshAheadSeconds = -1;
+
+    /** How long past the max life a stale element may be served while it is reloaded. */
+    public long maxStaleSeconds = -1;
+
     /**
      * The maximum time an entry can be idle. Setting this to -1 causes the idle time check to be
      * ignored.
@@ -95,7 +102,7 @@ public class ElementAttributes
      */
     public ElementAttributes()
     {
-        this.createTime = System.currentTimeMillis();
+        this.createTime = CacheClock.currentTimeMillis();
         this.lastAccessTime = this.createTime;
     }
 
@@ -118,6 +125,8 @@ public class ElementAttributes
         IS_REMOTE = attr.IS_REMOTE;
 
         maxLifeSeconds = attr.maxLifeSeconds;
+        refreshAheadSeconds = attr.refreshAheadSeconds;
+        maxStaleSeconds = attr.maxStaleSeconds;
         // time-to-live
         maxIdleTimeSeconds = attr.maxIdleTimeSeconds;
         size = attr.size;
@@ -141,6 +150,8 @@ public class ElementAttributes
             attr.setIsRemote( this.getIsRemote() );
             attr.setIsSpool( this.getIsSpool() );
             attr.setMaxLifeSeconds( this.getMaxLifeSeconds() );
+            attr.setRefreshAheadSeconds( this.getRefreshAheadSeconds() );
+            attr.setMaxStaleSeconds( this.getMaxStaleSeconds() );
             attr.addElementEventHandlers( this.eventHandlers );
             return attr;
         }
@@ -172,7 +183,7 @@ public class ElementAttributes
             ElementAttributes attr = (ElementAttributes) ois.readObject();
             ois.close();
 
-            attr.createTime = System.currentTimeMillis();
+            attr.createTime = CacheClock.currentTimeMillis();
             return attr;
         }
         catch ( IOException e )
@@ -209,6 +220,50 @@ public class ElementAttributes
         return this.maxLifeSeconds;
     }
 
+    /**
+     * Sets the refresh ahead window. If a loader is registered for the region, a get in the last
+     * refreshAheadSeconds of the max life returns the current value and reloads it in the
+     * background.
+     * <p>
+     * @param refreshAheadSeconds the window in seconds, -1 to turn refresh ahead off
+     */
+    public void setRefreshAheadSeconds( long refreshAheadSeconds )
+    {
+        this.refreshAheadSeconds = refreshAheadSeconds;
+    }
+
+    /**
+     * Gets the refresh ahead window.
+     * <p>
+     * @return the window in seconds, -1 if refresh ahead is off
+     */
+    public long getRefreshAheadSeconds()
+    {
+        return this.refreshAheadSeconds;
+    }
+
+    /**
+     * Sets the stale window. If a loader is registered for the region, an element that has
+     * exceeded its max life by no more than maxStaleSeconds is still returned, and it is reloaded
+     * in the background.
+     * <p>
+     * @param maxStaleSeconds the window in seconds, -1 to expire at the max life
+     */
+    public void setMaxStaleSeconds( long maxStaleSeconds )
+    {
+        this.maxStaleSeconds = maxStaleSeconds;
+    }
+
+    /**
+     * Gets the stale window.
+     * <p>
+     * @return the window in seconds, -1 if stale elements are not served
+     */
+    public long getMaxStaleSeconds()
+    {
+        return this.maxStaleSeconds;
+    }
+
     /**
      * Sets the idleTime attribute of the IAttributes object. This is the maximum time the item can
      * be idle in the cache, that is not accessed.
@@ -261,7 +316,7 @@ public class ElementAttributes
      */
     public void setCreateTime()
     {
-        createTime = System.currentTimeMillis();
+        createTime = CacheClock.currentTimeMillis();
     }
 
     /**
@@ -282,7 +337,7 @@ public class ElementAttributes
      */
     public long getTimeToLiveSeconds()
     {
-        long now = System.currentTimeMillis();
+        long now = CacheClock.currentTimeMillis();
         return ( ( this.getCreateTime() + ( this.getMaxLifeSeconds() * 1000 ) ) - now ) / 1000;
     }
 
@@ -301,7 +356,7 @@ public class ElementAttributes
      */
     public void setLastAccessTimeNow()
     {
-        this.lastAccessTime = System.currentTimeMillis();
+        this.lastAccessTime = CacheClock.currentTimeMillis();
     }
 
     /**
@@ -453,6 +508,8 @@ public class ElementAttributes
         dump.append( ", IS_REMOTE = " ).append( IS_REMOTE );
         dump.append( ", IS_ETERNAL = " ).append( IS_ETERNAL );
         dump.append( ", MaxLifeSeconds = " ).append( this.getMaxLifeSeconds() );
+        dump.append( ", RefreshAheadSeconds = " ).append( this.getRefreshAheadSeconds() );
+        dump.append( ", MaxStaleSeconds = " ).append( this.getMaxStaleSeconds() );
         dump.append( ", IdleTime = " ).append( this.getIdleTime() );
         dump.append( ", CreateTime = " ).append( this.getCreateTime() );
         dump.append( ", LastAccessTime = " ).append( this.getLastAccessTime() );
@@ -46,6 +46,17 @@ public interface ICache<K extends Serializable, V extends Serializable>
     void update( ICacheElement<K, V> element )
         throws IOException;
 
+    /**
+     * Puts multiple items to the cache. Disk caches queue the items as a single event; most other
+     * implementations put the items one by one. The facades hand the batch on to each of their
+     * caches in one call.
+     * <p>
+     * @param elements a map of K key to ICacheElement<K, V> element
+     * @throws IOException
+     */
+    void updateMultiple( Map<K, ICacheElement<K, V>> elements )
+        throws IOException;
+
     /**
      * Gets an item from the cache.
      * <p>
@@ -21,6 +21,7 @@ package org.apache.commons.jcs.engine.behavior;
 
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.Collection;
 
 import org.apache.commons.jcs.engine.stats.behavior.IStats;
 
@@ -71,6 +72,17 @@ public interface ICacheEventQueue<K extends Serializable, V extends Serializable
     public void addPutEvent( ICacheElement<K, V> ce )
         throws IOException;
 
+    /**
+     * Adds a single event that puts several elements. A listener that is an
+     * ICacheMultipleListener gets them in one call, any other listener one
+     * by one.
+     * <p>
+     * @param elements
+     * @throws IOException
+     */
+    public void addPutMultipleEvent( Collection<ICacheElement<K, V>> elements )
+        throws IOException;
+
     /**
      * Adds a feature to the RemoveEvent attribute of the ICacheEventQueue
      * object
@@ -0,0 +1,39 @@
+package org.apache.commons.jcs.engine.behavior;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+
+/**
+ * A loader computes the value for a key. It can be registered with a region so that elements can
+ * be refreshed in the background before or shortly after they expire.
+ */
+public interface ICacheLoader<K extends Serializable, V extends Serializable>
+{
+    /**
+     * Loads the value for the key.
+     * <p>
+     * @param key
+     * @return the value, or null if there is none. Null values are not cached.
+     * @throws Exception if the value could not be loaded
+     */
+    V load( K key )
+        throws Exception;
+}
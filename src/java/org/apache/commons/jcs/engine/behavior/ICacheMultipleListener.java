@@ -0,0 +1,41 @@
+package org.apache.commons.jcs.engine.behavior;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Collection;
+
+/**
+ * A cache listener that can handle several puts at once. Event queues hand a put multiple event
+ * to such a listener in one call, and to any other listener one put at a time.
+ */
+public interface ICacheMultipleListener<K extends Serializable, V extends Serializable>
+    extends ICacheListener<K, V>
+{
+    /**
+     * Notifies the subscribers for the update of several cache entries.
+     * <p>
+     * @param items
+     * @throws IOException
+     */
+    public void handlePutMultiple( Collection<ICacheElement<K, V>> items )
+        throws IOException;
+}
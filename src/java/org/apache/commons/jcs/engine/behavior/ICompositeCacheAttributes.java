@@ -243,4 +243,145 @@ public interface ICompositeCacheAttributes
      * @param spoolChunkSize
      */
     void setSpoolChunkSize( int spoolChunkSize );
+
+    /**
+     * Number of key striped locks used to serialize updates to the region. If this is 0 or less,
+     * updates are serialized on the region itself.
+     * <p>
+     * @return int
+     */
+    int getUpdateLockStripes();
+
+    /**
+     * Number of key striped locks used to serialize updates to the region. Updates to keys in
+     * different stripes can then proceed concurrently.
+     * <p>
+     * @param updateLockStripes
+     */
+    void setUpdateLockStripes( int updateLockStripes );
+
+    /**
+     * Whether getMultiple looks up the keys missing from memory in the auxiliaries in parallel.
+     * <p>
+     * @return true if the lookups run in parallel
+     */
+    boolean isUseParallelGetMultiple();
+
+    /**
+     * Whether getMultiple looks up the keys missing from memory in the auxiliaries in parallel.
+     * <p>
+     * @param useParallelGetMultiple
+     */
+    void setUseParallelGetMultiple( boolean useParallelGetMultiple );
+
+    /**
+     * How long a parallel getMultiple waits for the auxiliaries. -1 means no deadline.
+     * <p>
+     * @return the deadline in milliseconds
+     */
+    long getGetMultipleTimeoutMillis();
+
+    /**
+     * How long a parallel getMultiple waits for the auxiliaries. Keys that have not been found
+     * when it passes are reported as misses.
+     * <p>
+     * @param getMultipleTimeoutMillis the deadline in milliseconds, -1 for none
+     */
+    void setGetMultipleTimeoutMillis( long getMultipleTimeoutMillis );
+
+    /**
+     * The maximum accumulated weight, normally bytes, of the elements in memory. -1 means the
+     * memory cache is only bounded by MaxObjects.
+     * <p>
+     * @return the weight limit
+     */
+    long getMaxMemoryBytes();
+
+    /**
+     * The maximum accumulated weight, normally bytes, of the elements in memory. When it is
+     * exceeded the memory cache spools elements until the weight is back under the limit.
+     * <p>
+     * @param maxMemoryBytes the weight limit, -1 for none
+     */
+    void setMaxMemoryBytes( long maxMemoryBytes );
+
+    /**
+     * The class used to weigh elements for MaxMemoryBytes.
+     * <p>
+     * @return the class name of an IElementWeigher, or null for the default
+     */
+    String getElementWeigherClassName();
+
+    /**
+     * The class used to weigh elements for MaxMemoryBytes. It must implement IElementWeigher
+     * and have a public no-argument constructor.
+     * <p>
+     * @param elementWeigherClassName
+     */
+    void setElementWeigherClassName( String elementWeigherClassName );
+
+    /**
+     * Whether the memory shrinker tracks the deadline of each element on a timing wheel, so a run
+     * only looks at the elements that are due, instead of scanning the whole region.
+     * <p>
+     * @return true for the timing wheel
+     */
+    boolean isUseTimerWheelShrinker();
+
+    /**
+     * Whether the memory shrinker tracks the deadline of each element on a timing wheel. Only
+     * used if UseMemoryShrinker is true.
+     * <p>
+     * @param useTimerWheelShrinker
+     */
+    void setUseTimerWheelShrinker( boolean useTimerWheelShrinker );
+
+    /**
+     * Whether elements put with the region's default attributes share one immutable template and
+     * only keep their own timestamps.
+     * <p>
+     * @return true for compact element attributes
+     */
+    boolean isUseCompactElementAttributes();
+
+    /**
+     * Whether elements put with the region's default attributes share one immutable template.
+     * <p>
+     * @param useCompactElementAttributes
+     */
+    void setUseCompactElementAttributes( boolean useCompactElementAttributes );
+
+    /**
+     * How often an element evicted from memory must have been put or read recently to be written
+     * to disk. Elements used less often are dropped. The region estimates the frequencies with a
+     * sketch, so values above 15 act like 15.
+     * <p>
+     * @return the minimum frequency, 0 if every element is spooled
+     */
+    int getSpoolAdmissionFrequency();
+
+    /**
+     * How often an element evicted from memory must have been put or read recently to be written
+     * to disk.
+     * <p>
+     * @param spoolAdmissionFrequency the minimum frequency, 0 to spool every element
+     */
+    void setSpoolAdmissionFrequency( int spoolAdmissionFrequency );
+
+    /**
+     * Whether the soft and weak reference memory caches write an element to disk when it leaves
+     * the strict LRU area for the reference area, so that it is not lost when the garbage
+     * collector clears it.
+     * <p>
+     * @return true to spool elements as they move to the reference area
+     */
+    boolean isSpoolSoftReferences();
+
+    /**
+     * Whether the soft and weak reference memory caches write an element to disk when it leaves
+     * the strict LRU area for the reference area.
+     * <p>
+     * @param spoolSoftReferences
+     */
+    void setSpoolSoftReferences( boolean spoolSoftReferences );
 }
@@ -47,6 +47,38 @@ public interface IElementAttributes
      */
     long getMaxLifeSeconds();
 
+    /**
+     * Sets the refresh ahead window. If a loader is registered for the region, a get in the last
+     * refreshAheadSeconds of the max life returns the current value and reloads it in the
+     * background.
+     * <p>
+     * @param refreshAheadSeconds the window in seconds, -1 to turn refresh ahead off
+     */
+    void setRefreshAheadSeconds( long refreshAheadSeconds );
+
+    /**
+     * Gets the refresh ahead window.
+     * <p>
+     * @return the window in seconds, -1 if refresh ahead is off
+     */
+    long getRefreshAheadSeconds();
+
+    /**
+     * Sets the stale window. If a loader is registered for the region, an element that has
+     * exceeded its max life by no more than maxStaleSeconds is still returned, and it is reloaded
+     * in the background.
+     * <p>
+     * @param maxStaleSeconds the window in seconds, -1 to expire at the max life
+     */
+    void setMaxStaleSeconds( long maxStaleSeconds );
+
+    /**
+     * Gets the stale window.
+     * <p>
+     * @return the window in seconds, -1 if stale elements are not served
+     */
+    long getMaxStaleSeconds();
+
     /**
      * Sets the idleTime attribute of the IAttributes object. This is the maximum time the item can
      * be idle in the cache, that is not accessed.
@@ -0,0 +1,37 @@
+package org.apache.commons.jcs.engine.behavior;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+
+/**
+ * A disk auxiliary that sits between the memory cache and the other disk auxiliaries. Elements
+ * spooled from memory go only to the first spool tier of a region, and the elements it evicts are
+ * spooled to the disk auxiliaries that follow it in the region configuration.
+ */
+public interface ISpoolTier<K extends Serializable, V extends Serializable>
+{
+    /**
+     * Sets where evicted elements go. Called by the region when its auxiliaries are set.
+     * <p>
+     * @param spool the next tier
+     */
+    void setSpool( ICacheSpool<K, V> spool );
+}
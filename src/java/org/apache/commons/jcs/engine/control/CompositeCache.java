@@ -25,18 +25,40 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.commons.jcs.access.exception.CacheException;
 import org.apache.commons.jcs.access.exception.ObjectNotFoundException;
 import org.apache.commons.jcs.auxiliary.AuxiliaryCache;
 import org.apache.commons.jcs.engine.CacheConstants;
+import org.apache.commons.jcs.engine.CacheElement;
 import org.apache.commons.jcs.engine.CacheStatus;
+import org.apache.commons.jcs.engine.CompactElementAttributes;
 import org.apache.commons.jcs.engine.behavior.ICache;
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICacheLoader;
+import org.apache.commons.jcs.engine.behavior.ICacheSpool;
 import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
 import org.apache.commons.jcs.engine.behavior.IElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ISpoolTier;
 import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes.DiskUsagePattern;
 import org.apache.commons.jcs.engine.control.event.ElementEvent;
 import org.apache.commons.jcs.engine.control.event.ElementEventQueue;
@@ -44,11 +66,13 @@ import org.apache.commons.jcs.engine.control.event.behavior.ElementEventType;
 import org.apache.commons.jcs.engine.control.event.behavior.IElementEvent;
 import org.apache.commons.jcs.engine.control.event.behavior.IElementEventHandler;
 import org.apache.commons.jcs.engine.control.event.behavior.IElementEventQueue;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
 import org.apache.commons.jcs.engine.control.group.GroupId;
 import org.apache.commons.jcs.engine.match.KeyMatcherPatternImpl;
 import org.apache.commons.jcs.engine.match.behavior.IKeyMatcher;
 import org.apache.commons.jcs.engine.memory.behavior.IMemoryCache;
 import org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache;
+import org.apache.commons.jcs.engine.memory.shrinking.TimerWheelShrinker;
 import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
 import org.apache.commons.jcs.engine.stats.CacheStats;
 import org.apache.commons.jcs.engine.stats.StatElement;
@@ -56,6 +80,9 @@ import org.apache.commons.jcs.engine.stats.Stats;
 import org.apache.commons.jcs.engine.stats.behavior.ICacheStats;
 import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
 import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.jcs.utils.struct.ConcurrentFrequencySketch;
+import org.apache.commons.jcs.utils.threadpool.ThreadPoolManager;
+import org.apache.commons.jcs.utils.timing.CacheClock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -93,29 +120,41 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     /** Region Elemental Attributes, default. */
     private IElementAttributes attr;
 
+    /** Snapshot of the default element attributes shared by compact element attributes. */
+    private CompactElementAttributes.Template attrTemplate;
+
     /** Cache Attributes, for hub and memory auxiliary. */
     private ICompositeCacheAttributes cacheAttr;
 
+    /** Tracks the expiry of the elements in memory, if the region uses the timer wheel shrinker. */
+    private TimerWheelShrinker<K, V> timerWheelShrinker;
+
     /** How many times update was called. */
-    private int updateCount;
+    private final AtomicInteger updateCount = new AtomicInteger();
 
     /** How many times remove was called. */
-    private int removeCount;
+    private final AtomicInteger removeCount = new AtomicInteger();
 
     /** Memory cache hit count */
-    private int hitCountRam;
+    private final AtomicInteger hitCountRam = new AtomicInteger();
 
     /** Auxiliary cache hit count (number of times found in ANY auxiliary) */
-    private int hitCountAux;
+    private final AtomicInteger hitCountAux = new AtomicInteger();
 
     /** Auxiliary hit counts broken down by auxiliary. */
-    private int[] auxHitCountByIndex;
+    private AtomicIntegerArray auxHitCountByIndex = new AtomicIntegerArray( 0 );
 
     /** Count of misses where element was not found. */
-    private int missCountNotFound = 0;
+    private final AtomicInteger missCountNotFound = new AtomicInteger();
 
     /** Count of misses where element was expired. */
-    private int missCountExpired = 0;
+    private final AtomicInteger missCountExpired = new AtomicInteger();
+
+    /** Number of elements evicted from memory that were dropped instead of spooled */
+    private final AtomicInteger spoolsAvoided = new AtomicInteger();
+
+    /** Estimates how often keys are used, if the region filters what it spools. Lock free. */
+    private volatile ConcurrentFrequencySketch spoolAdmission;
 
     /**
      * The cache hub can only have one memory cache. This could be made more flexible in the future,
@@ -126,6 +165,46 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     /** Key matcher used by the getMatching API */
     protected IKeyMatcher<K> keyMatcher = new KeyMatcherPatternImpl<K>();
 
+    /** Name of the thread pool that runs asynchronous loads. */
+    public static final String LOADER_POOL_NAME = "cache_loader";
+
+    /** Loads in progress by key. Concurrent misses for a key wait on the same load. */
+    private final ConcurrentMap<K, LoadTask> loadsInFlight = new ConcurrentHashMap<K, LoadTask>();
+
+    /** Name of the thread pool that runs parallel getMultiple lookups. */
+    public static final String GET_MULTIPLE_POOL_NAME = "cache_get_multiple";
+
+    /** Runs parallel getMultiple lookups. The pool named above is used if this is null. */
+    private volatile Executor getMultipleExecutor;
+
+    /** Loader used to refresh elements in the background. Refresh ahead is off if this is null. */
+    private volatile ICacheLoader<K, V> cacheLoader;
+
+    /**
+     * Key striped locks used to serialize updates if UpdateLockStripes is configured. If this is
+     * null, updates are serialized on the region. Removes of more than one key hold all of them.
+     */
+    private volatile ReentrantLock[] updateLocks;
+
+    /** The number of key lock stripes, a power of 2. */
+    private static final int KEY_LOCK_STRIPES = 64;
+
+    /**
+     * Read write locks striped by key hash, or by group for the members of a group. Puts hold the
+     * read lock of their key's stripe, removes and putSafe the write lock. Being a fixed array,
+     * they cost a put no allocation.
+     */
+    private final ReentrantReadWriteLock[] keyLocks = createKeyLocks();
+
+    /** The number of remove generation slots, a power of 2. */
+    private static final int REMOVE_GENERATION_SLOTS = 256;
+
+    /**
+     * Counts the removes by hash of the key, or of the group. A get only copies an auxiliary hit
+     * back to memory if no remove of its slot completed since it started looking.
+     */
+    private final AtomicLongArray removeGenerations = new AtomicLongArray( REMOVE_GENERATION_SLOTS );
+
     /**
      * Constructor for the Cache object
      * <p>
@@ -136,10 +215,17 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     public CompositeCache( String cacheName, ICompositeCacheAttributes cattr, IElementAttributes attr )
     {
         this.cacheName = cacheName;
-        this.attr = attr;
+        setElementAttributes( attr );
         this.cacheAttr = cattr;
 
         createMemoryCache( cattr );
+        createUpdateLocks( cattr );
+        createSpoolAdmission( cattr );
+
+        if ( cattr.isUseMemoryShrinker() && cattr.isUseTimerWheelShrinker() )
+        {
+            timerWheelShrinker = new TimerWheelShrinker<K, V>( memCache );
+        }
 
         if ( log.isInfoEnabled() )
         {
@@ -158,7 +244,24 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
 
         if ( auxCaches != null )
         {
-            this.auxHitCountByIndex = new int[auxCaches.length];
+            this.auxHitCountByIndex = new AtomicIntegerArray( auxCaches.length );
+
+            for ( int i = 0; i < auxCaches.length; i++ )
+            {
+                if ( auxCaches[i] instanceof ISpoolTier )
+                {
+                    @SuppressWarnings("unchecked") // The tier caches the same types as the region
+                    ISpoolTier<K, V> tier = (ISpoolTier<K, V>) auxCaches[i];
+                    final int next = i + 1;
+                    tier.setSpool( new ICacheSpool<K, V>()
+                    {
+                        public void spool( ICacheElement<K, V> ce )
+                        {
+                            spoolToDisk( ce, next );
+                        }
+                    } );
+                }
+            }
         }
     }
 
@@ -200,6 +303,10 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      * Put an item into the cache. If it is localOnly, then do no notify remote or lateral
      * auxiliaries.
      * <p>
+     * By default puts are serialized on the region. If UpdateLockStripes is set, only puts to keys
+     * that share a lock stripe are serialized. Either way the put holds the read lock of its key, so
+     * a remove of the key cannot run between the memory and the auxiliary updates.
+     * <p>
      * @param cacheElement the ICacheElement<K, V>
      * @param localOnly Whether the operation should be restricted to local auxiliaries.
      * @exception IOException
@@ -207,31 +314,366 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     protected void update( ICacheElement<K, V> cacheElement, boolean localOnly )
         throws IOException
     {
+        checkUpdateKey( cacheElement.getKey() );
+        recordAccess( cacheElement.getKey() );
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "Updating memory cache " + cacheElement.getKey() );
+        }
+
+        Lock keyLock = getKeyLock( cacheElement.getKey(), false );
+        keyLock.lock();
+        try
+        {
+            update( cacheElement, localOnly, getUpdateLock( cacheElement.getKey() ) );
+        }
+        finally
+        {
+            keyLock.unlock();
+        }
+    }
+
+    /**
+     * Puts an item under the region monitor or the update lock stripe of its key.
+     * <p>
+     * @param cacheElement the ICacheElement<K, V>
+     * @param localOnly Whether the operation should be restricted to local auxiliaries.
+     * @param lock the update lock stripe, or null to serialize on the region
+     * @exception IOException
+     */
+    private void update( ICacheElement<K, V> cacheElement, boolean localOnly, ReentrantLock lock )
+        throws IOException
+    {
+        if ( lock == null )
+        {
+            synchronized ( this )
+            {
+                updateCount.incrementAndGet();
+
+                updateMemory( cacheElement );
+
+                updateAuxiliaries( cacheElement, localOnly );
+            }
+        }
+        else
+        {
+            updateCount.incrementAndGet();
+
+            // Only puts to keys in the same stripe wait here. The stripe is held while the
+            // auxiliaries are updated so they see the puts for a key in the same order as memory.
+            lock.lock();
+            try
+            {
+                updateMemory( cacheElement );
+
+                updateAuxiliaries( cacheElement, localOnly );
+            }
+            finally
+            {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Puts multiple items into the cache. See {@link #updateMultiple(Map, boolean)}.
+     * <p>
+     * @param elements a map of K key to ICacheElement<K, V> element
+     * @throws IOException
+     */
+    public void updateMultiple( Map<K, ICacheElement<K, V>> elements )
+        throws IOException
+    {
+        updateMultiple( elements, false );
+    }
+
+    /**
+     * Puts multiple items into the cache. The memory cache is updated in one pass, then each
+     * auxiliary gets the part of the batch its element attributes allow in a single
+     * updateMultiple call. If it is localOnly, lateral and remote auxiliaries are not updated.
+     * <p>
+     * The whole batch is put under the region monitor, or under all of the lock stripes its keys
+     * fall in if UpdateLockStripes is set. The stripes are taken in index order, so concurrent
+     * batches cannot deadlock. The read locks of all the keys are held as well.
+     * <p>
+     * @param elements a map of K key to ICacheElement<K, V> element
+     * @param localOnly Whether the operation should be restricted to local auxiliaries.
+     * @throws IOException
+     */
+    protected void updateMultiple( Map<K, ICacheElement<K, V>> elements, boolean localOnly )
+        throws IOException
+    {
+        for ( K key : elements.keySet() )
+        {
+            checkUpdateKey( key );
+            recordAccess( key );
+        }
+
+        if ( elements.isEmpty() )
+        {
+            return;
+        }
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "Updating memory cache with " + elements.size() + " elements" );
+        }
+
+        List<Lock> held = getKeyLocks( elements.keySet() );
+        lockAll( held );
+        try
+        {
+            updateMultipleLocked( elements, localOnly );
+        }
+        finally
+        {
+            for ( Lock keyLock : held )
+            {
+                keyLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Puts a batch under the region monitor or its update lock stripes. The caller holds the key
+     * locks.
+     * <p>
+     * @param elements a map of K key to ICacheElement<K, V> element
+     * @param localOnly Whether the operation should be restricted to local auxiliaries.
+     * @throws IOException
+     */
+    private void updateMultipleLocked( Map<K, ICacheElement<K, V>> elements, boolean localOnly )
+        throws IOException
+    {
+        ReentrantLock[] locks = this.updateLocks;
+        if ( locks == null )
+        {
+            synchronized ( this )
+            {
+                updateCount.addAndGet( elements.size() );
+
+                for ( ICacheElement<K, V> element : elements.values() )
+                {
+                    updateMemory( element );
+                }
+
+                updateAuxiliaries( elements, localOnly );
+            }
+        }
+        else
+        {
+            updateCount.addAndGet( elements.size() );
+
+            boolean[] needed = new boolean[locks.length];
+            for ( K key : elements.keySet() )
+            {
+                needed[getStripe( key, locks.length )] = true;
+            }
+
+            int locked = 0;
+            try
+            {
+                for ( ; locked < locks.length; locked++ )
+                {
+                    if ( needed[locked] )
+                    {
+                        locks[locked].lock();
+                    }
+                }
+
+                for ( ICacheElement<K, V> element : elements.values() )
+                {
+                    updateMemory( element );
+                }
+
+                updateAuxiliaries( elements, localOnly );
+            }
+            finally
+            {
+                while ( --locked >= 0 )
+                {
+                    if ( needed[locked] )
+                    {
+                        locks[locked].unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the key lock stripes
+     */
+    private static ReentrantReadWriteLock[] createKeyLocks()
+    {
+        ReentrantReadWriteLock[] locks = new ReentrantReadWriteLock[KEY_LOCK_STRIPES];
+        for ( int i = 0; i < locks.length; i++ )
+        {
+            locks[i] = new ReentrantReadWriteLock();
+        }
+        return locks;
+    }
 
-        if ( cacheElement.getKey() instanceof String
-            && cacheElement.getKey().toString().endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+    /**
+     * Gets the lock that orders the puts and removes of a key. Compound operations on a key, such
+     * as putSafe, hold its write lock. The locks are striped, so keys that share a stripe also
+     * wait for each other. The members of a group use the stripe of the group, since removing a
+     * member removes the whole group from memory.
+     * <p>
+     * @param key
+     * @param write whether to get the write lock rather than the read lock
+     * @return the lock, not yet locked
+     */
+    public Lock getKeyLock( K key, boolean write )
+    {
+        ReentrantReadWriteLock lock = keyLocks[getKeyLockStripe( key )];
+        return write ? lock.writeLock() : lock.readLock();
+    }
+
+    /**
+     * @param key
+     * @return the index of the key lock stripe of the key or its group
+     */
+    private static int getKeyLockStripe( Object key )
+    {
+        Object lockKey = key instanceof GroupAttrName ? ( (GroupAttrName<?>) key ).groupId : key;
+        return getStripe( lockKey, KEY_LOCK_STRIPES );
+    }
+
+    /**
+     * Gets the read locks of a batch of keys, one per stripe.
+     * <p>
+     * @param keys
+     * @return the locks, not yet locked
+     */
+    private List<Lock> getKeyLocks( Set<K> keys )
+    {
+        boolean[] needed = new boolean[KEY_LOCK_STRIPES];
+        for ( K key : keys )
+        {
+            needed[getKeyLockStripe( key )] = true;
+        }
+
+        List<Lock> locks = new ArrayList<Lock>();
+        for ( int i = 0; i < needed.length; i++ )
+        {
+            if ( needed[i] )
+            {
+                locks.add( keyLocks[i].readLock() );
+            }
+        }
+        return locks;
+    }
+
+    /**
+     * Takes several locks. Batches may list the same keys in any order, so the locks are tried
+     * without waiting. If one is busy, the others are let go while waiting for it, and then all of
+     * them are tried again. A thread therefore never waits while holding part of the set.
+     * <p>
+     * @param locks
+     */
+    private static void lockAll( List<Lock> locks )
+    {
+        while ( true )
+        {
+            int locked = 0;
+            while ( locked < locks.size() && locks.get( locked ).tryLock() )
+            {
+                locked++;
+            }
+            if ( locked == locks.size() )
+            {
+                return;
+            }
+
+            Lock busy = locks.get( locked );
+            while ( --locked >= 0 )
+            {
+                locks.get( locked ).unlock();
+            }
+            busy.lock();
+            busy.unlock();
+        }
+    }
+
+    /**
+     * Group attribute keys and keys ending in the name delimiter are reserved.
+     * <p>
+     * @param key
+     * @throws IllegalArgumentException if the key cannot be put
+     */
+    private void checkUpdateKey( K key )
+    {
+        if ( key instanceof String && key.toString().endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
         {
             throw new IllegalArgumentException( "key must not end with " + CacheConstants.NAME_COMPONENT_DELIMITER
                 + " for a put operation" );
         }
-        else if ( cacheElement.getKey() instanceof GroupId )
+        else if ( key instanceof GroupId )
         {
             throw new IllegalArgumentException( "key cannot be a GroupId " + " for a put operation" );
         }
+    }
 
-        if ( log.isDebugEnabled() )
+    /**
+     * Sets up the key striped update locks if the attributes ask for them. The number of stripes
+     * is rounded up to a power of two.
+     * <p>
+     * @param cattr
+     */
+    private void createUpdateLocks( ICompositeCacheAttributes cattr )
+    {
+        int stripes = cattr.getUpdateLockStripes();
+        if ( stripes <= 0 )
         {
-            log.debug( "Updating memory cache " + cacheElement.getKey() );
+            this.updateLocks = null;
+            return;
         }
 
-        synchronized ( this )
+        int size = 1;
+        while ( size < stripes && size < ( 1 << 16 ) )
         {
-            updateCount++;
+            size <<= 1;
+        }
 
-            memCache.update( cacheElement );
+        ReentrantLock[] locks = new ReentrantLock[size];
+        for ( int i = 0; i < size; i++ )
+        {
+            locks[i] = new ReentrantLock();
+        }
+        this.updateLocks = locks;
+    }
 
-            updateAuxiliaries( cacheElement, localOnly );
+    /**
+     * Gets the update lock stripe for the key.
+     * <p>
+     * @param key
+     * @return the lock, or null if updates are serialized on the region
+     */
+    private ReentrantLock getUpdateLock( K key )
+    {
+        ReentrantLock[] locks = this.updateLocks;
+        if ( locks == null )
+        {
+            return null;
         }
+
+        return locks[getStripe( key, locks.length )];
+    }
+
+    /**
+     * @param key
+     * @param stripes the number of stripes, a power of two
+     * @return the index of the stripe for the key
+     */
+    private static int getStripe( Object key, int stripes )
+    {
+        // spread the hash so keys differing only in the high bits land in different stripes
+        int h = key.hashCode();
+        h ^= ( h >>> 20 ) ^ ( h >>> 12 );
+        h ^= ( h >>> 7 ) ^ ( h >>> 4 );
+        return h & ( stripes - 1 );
     }
 
     /**
@@ -356,15 +798,219 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     }
 
     /**
-     * Writes the specified element to any disk auxiliaries. Might want to rename this "overflow" in
-     * case the hub wants to do something else.
-     * <p>
-     * If JCS is not configured to use the disk as a swap, that is if the the
-     * CompositeCacheAttribute diskUsagePattern is not SWAP_ONLY, then the item will not be spooled.
+     * Batch version of {@link #updateAuxiliaries(ICacheElement, boolean)}. Each auxiliary gets one
+     * updateMultiple call with the elements it may receive, if there are any.
+     * <p>
+     * @param elements
+     * @param localOnly
+     * @throws IOException
+     */
+    protected void updateAuxiliaries( Map<K, ICacheElement<K, V>> elements, boolean localOnly )
+        throws IOException
+    {
+        for ( int i = 0; i < auxCaches.length; i++ )
+        {
+            ICache<K, V> aux = auxCaches[i];
+
+            if ( aux == null )
+            {
+                continue;
+            }
+
+            Map<K, ICacheElement<K, V>> batch = new HashMap<K, ICacheElement<K, V>>();
+            for ( Map.Entry<K, ICacheElement<K, V>> entry : elements.entrySet() )
+            {
+                if ( isAuxiliaryUpdateAllowed( aux, entry.getValue(), localOnly ) )
+                {
+                    batch.put( entry.getKey(), entry.getValue() );
+                }
+            }
+
+            if ( batch.isEmpty() )
+            {
+                continue;
+            }
+
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( "Updating " + batch.size() + " elements in auxiliary of type " + aux.getCacheType() );
+            }
+
+            if ( aux.getCacheType() == CacheType.REMOTE_CACHE )
+            {
+                try
+                {
+                    aux.updateMultiple( batch );
+                }
+                catch ( IOException ex )
+                {
+                    log.error( "Failure in updateExclude", ex );
+                }
+            }
+            else
+            {
+                aux.updateMultiple( batch );
+            }
+        }
+    }
+
+    /**
+     * Whether the region and element settings allow an update of the auxiliary. The rules are the
+     * same as in {@link #updateAuxiliaries(ICacheElement, boolean)}.
+     * <p>
+     * @param aux
+     * @param cacheElement
+     * @param localOnly
+     * @return true if the element should be sent to the auxiliary
+     */
+    private boolean isAuxiliaryUpdateAllowed( ICache<K, V> aux, ICacheElement<K, V> cacheElement, boolean localOnly )
+    {
+        IElementAttributes attributes = cacheElement.getElementAttributes();
+        switch ( aux.getCacheType() )
+        {
+            case REMOTE_CACHE:
+                return attributes.getIsRemote() && !localOnly;
+            case LATERAL_CACHE:
+                return cacheAttr.isUseLateral() && attributes.getIsLateral() && !localOnly;
+            case DISK_CACHE:
+                return cacheAttr.isUseDisk() && cacheAttr.getDiskUsagePattern() == DiskUsagePattern.UPDATE
+                    && attributes.getIsSpool();
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes the specified element to any disk auxiliaries. Might want to rename this "overflow" in
+     * case the hub wants to do something else.
+     * <p>
+     * If JCS is not configured to use the disk as a swap, that is if the the
+     * CompositeCacheAttribute diskUsagePattern is not SWAP_ONLY, then the item will not be spooled.
+     * <p>
+     * @param ce The CacheElement
+     */
+    public void spoolToDisk( ICacheElement<K, V> ce )
+    {
+        TimerWheelShrinker<K, V> shrinker = timerWheelShrinker;
+        if ( shrinker != null )
+        {
+            shrinker.deschedule( ce );
+        }
+
+        if ( !isAdmittedToDisk( ce ) )
+        {
+            spoolsAvoided.incrementAndGet();
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( "Not spooling rarely used element: " + ce.getKey() );
+            }
+            return;
+        }
+
+        spoolToDisk( ce, 0 );
+    }
+
+    /**
+     * Decides whether an element evicted from memory is worth writing to disk. If the region has a
+     * SpoolAdmissionFrequency, elements used less often than that recently are rejected. A
+     * rejected element is removed from the disk auxiliaries, so that an older copy cannot be
+     * served in its place.
+     * <p>
+     * @param ce the evicted element
+     * @return true if the element should be spooled
+     */
+    private boolean isAdmittedToDisk( ICacheElement<K, V> ce )
+    {
+        ConcurrentFrequencySketch sketch = spoolAdmission;
+        if ( sketch == null || !ce.getElementAttributes().getIsSpool()
+            || cacheAttr.getDiskUsagePattern() != DiskUsagePattern.SWAP )
+        {
+            return true;
+        }
+
+        if ( sketch.frequency( ce.getKey() ) >= cacheAttr.getSpoolAdmissionFrequency() )
+        {
+            return true;
+        }
+
+        // without a disk the element is dropped anyway, that is not a spool avoided
+        return !removeFromDiskCaches( ce.getKey() );
+    }
+
+    /**
+     * Removes a key from the disk auxiliaries when its element leaves memory without being
+     * spooled, so that an older copy cannot be served in its place. Only a region that uses the
+     * disk as a swap needs this; otherwise every put already reached the disk.
+     * <p>
+     * @param key
+     * @return true if the region uses the disk as a swap and has a disk auxiliary
+     */
+    public boolean removeFromDiskCaches( K key )
+    {
+        if ( cacheAttr.getDiskUsagePattern() != DiskUsagePattern.SWAP )
+        {
+            return false;
+        }
+
+        boolean diskAvailable = false;
+        for ( ICache<K, V> aux : auxCaches )
+        {
+            if ( aux != null && aux.getCacheType() == CacheType.DISK_CACHE )
+            {
+                diskAvailable = true;
+                try
+                {
+                    aux.remove( key );
+                }
+                catch ( IOException ex )
+                {
+                    log.error( "Problem removing unspooled element from disk cache.", ex );
+                }
+            }
+        }
+        return diskAvailable;
+    }
+
+    /**
+     * Counts a use of the key, if the region filters what it spools.
+     * <p>
+     * @param key
+     */
+    private void recordAccess( K key )
+    {
+        ConcurrentFrequencySketch sketch = spoolAdmission;
+        if ( sketch != null )
+        {
+            sketch.increment( key );
+        }
+    }
+
+    /**
+     * Creates the frequency sketch if the region has a SpoolAdmissionFrequency. It is sized for
+     * twice MaxObjects, since it has to remember elements that already left memory.
+     * <p>
+     * @param cattr
+     */
+    private void createSpoolAdmission( ICompositeCacheAttributes cattr )
+    {
+        if ( cattr.getSpoolAdmissionFrequency() > 0 )
+        {
+            spoolAdmission = new ConcurrentFrequencySketch( Math.max( 64, cattr.getMaxObjects() * 2 ) );
+        }
+        else
+        {
+            spoolAdmission = null;
+        }
+    }
+
+    /**
+     * Writes the element to the disk auxiliaries starting at the given index. The first spool tier
+     * takes the element on its own, the disk auxiliaries after it get what the tier evicts.
      * <p>
      * @param ce The CacheElement
+     * @param start the index of the first auxiliary to consider
      */
-    public void spoolToDisk( ICacheElement<K, V> ce )
+    protected void spoolToDisk( ICacheElement<K, V> ce, int start )
     {
         // if the item is not spoolable, return
         if ( !ce.getElementAttributes().getIsSpool() )
@@ -377,7 +1023,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         boolean diskAvailable = false;
 
         // SPOOL TO DISK.
-        for ( int i = 0; i < auxCaches.length; i++ )
+        for ( int i = start; i < auxCaches.length; i++ )
         {
             ICache<K, V> aux = auxCaches[i];
 
@@ -415,6 +1061,12 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                         log.debug( "DiskCache avaialbe, but JCS is not configured to use the DiskCache as a swap." );
                     }
                 }
+
+                if ( aux instanceof ISpoolTier )
+                {
+                    // the auxiliaries after the tier get what it evicts
+                    break;
+                }
             }
         }
 
@@ -454,6 +1106,130 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         return get( key, true );
     }
 
+    /**
+     * Gets the value for the key. If it is not in the cache, the loader is called and the result is
+     * put in the region with the default element attributes.
+     * <p>
+     * Concurrent misses for the same key share one call to the loader. The first caller runs it,
+     * the others wait for its result. Loads for different keys do not wait for each other. A null
+     * result is returned to all waiters but not cached.
+     * <p>
+     * @param key
+     * @param loader computes the value on a miss
+     * @return the cached or loaded value, null if the loader returned null
+     * @throws CacheException if the loader failed or the wait was interrupted
+     */
+    public V get( K key, Callable<V> loader )
+        throws CacheException
+    {
+        ICacheElement<K, V> element = get( key );
+        if ( element != null )
+        {
+            return element.getVal();
+        }
+
+        LoadTask task = new LoadTask( key, loader, null );
+        LoadTask inFlight = loadsInFlight.putIfAbsent( key, task );
+        if ( inFlight == null )
+        {
+            // we won, load in the calling thread
+            task.run();
+            inFlight = task;
+        }
+        else if ( log.isDebugEnabled() )
+        {
+            log.debug( "Waiting for load in progress for key [" + key + "]" );
+        }
+
+        try
+        {
+            return inFlight.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new CacheException( "Interrupted while waiting for load of key [" + key + "]" );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new CacheException( "Failed to load key [" + key + "]", e.getCause() );
+        }
+    }
+
+    /**
+     * Asynchronous version of {@link #get(Serializable, Callable)}. On a hit the returned future is
+     * already done. On a miss the load is run on the loader thread pool, unless a load for the key
+     * is already in progress, in which case its future is returned.
+     * <p>
+     * The loader pool can be configured with the thread_pool.cache_loader properties.
+     * <p>
+     * @param key
+     * @param loader computes the value on a miss
+     * @return a future for the value
+     */
+    public Future<V> getAsync( K key, Callable<V> loader )
+    {
+        ICacheElement<K, V> element = get( key );
+        if ( element != null )
+        {
+            final V value = element.getVal();
+            FutureTask<V> done = new FutureTask<V>( new Callable<V>()
+            {
+                public V call()
+                {
+                    return value;
+                }
+            } );
+            done.run();
+            return done;
+        }
+
+        LoadTask task = new LoadTask( key, loader, null );
+        LoadTask inFlight = loadsInFlight.putIfAbsent( key, task );
+        if ( inFlight != null )
+        {
+            return inFlight;
+        }
+
+        try
+        {
+            getLoaderPool().execute( task );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            loadsInFlight.remove( key, task );
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Registers the loader used to refresh elements in the background. Elements are refreshed if
+     * their attributes define a refresh ahead or stale window.
+     * <p>
+     * @param cacheLoader the loader, or null to turn background refresh off
+     */
+    public void setCacheLoader( ICacheLoader<K, V> cacheLoader )
+    {
+        this.cacheLoader = cacheLoader;
+    }
+
+    /**
+     * @return the loader used for background refresh, or null if none is registered.
+     */
+    public ICacheLoader<K, V> getCacheLoader()
+    {
+        return this.cacheLoader;
+    }
+
+    /**
+     * @return the thread pool used for asynchronous loads.
+     */
+    protected Executor getLoaderPool()
+    {
+        return ThreadPoolManager.getInstance().getPool( LOADER_POOL_NAME );
+    }
+
     /**
      * Look in memory, then disk, remote, or laterally for this item. The order is dependent on the
      * order in the cache.ccf file.
@@ -461,12 +1237,23 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      * Do not try to go remote or laterally for this get if it is localOnly. Otherwise try to go
      * remote or lateral if such an auxiliary is configured for this region.
      * <p>
+     * No region wide lock is held while looking. The memory cache is responsible for its own
+     * thread safety, and the auxiliaries are consulted without blocking other readers of the
+     * region. Only the copy of an auxiliary hit back into memory is coordinated with updates and
+     * removes, see {@link #copyAuxiliaryRetrievedItemToMemory(ICacheElement, long)}.
+     * <p>
+     * A memory hit must not allocate, since it is by far the most frequent call. Keep log messages
+     * behind their guards and do not add wrappers or boxing on that path.
+     * CompositeCacheHitAllocationUnitTest checks this.
+     * <p>
      * @param key
      * @param localOnly
      * @return ICacheElement
      */
     protected ICacheElement<K, V> get( K key, boolean localOnly )
     {
+        recordAccess( key );
+
         ICacheElement<K, V> element = null;
 
         boolean found = false;
@@ -476,139 +1263,210 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
             log.debug( "get: key = " + key + ", localOnly = " + localOnly );
         }
 
-        synchronized (this)
+        try
         {
-            try
-            {
-                // First look in memory cache
-                element = memCache.get( key );
+            // First look in memory cache
+            element = memCache.get( key );
 
-                if ( element != null )
+            if ( element != null )
+            {
+                // Found in memory cache
+                if ( isExpired( element ) )
                 {
-                    // Found in memory cache
-                    if ( isExpired( element ) )
+                    if ( log.isDebugEnabled() )
                     {
-                        if ( log.isDebugEnabled() )
-                        {
-                            log.debug( cacheName + " - Memory cache hit, but element expired" );
-                        }
+                        log.debug( cacheName + " - Memory cache hit, but element expired" );
+                    }
 
-                        missCountExpired++;
+                    missCountExpired.incrementAndGet();
 
-                        remove( key );
+                    remove( key );
 
-                        element = null;
-                    }
-                    else
+                    element = null;
+                }
+                else
+                {
+                    if ( log.isDebugEnabled() )
                     {
-                        if ( log.isDebugEnabled() )
-                        {
-                            log.debug( cacheName + " - Memory cache hit" );
-                        }
-
-                        // Update counters
-                        hitCountRam++;
+                        log.debug( cacheName + " - Memory cache hit" );
                     }
 
-                    found = true;
+                    // Update counters
+                    hitCountRam.incrementAndGet();
                 }
-                else
+
+                found = true;
+            }
+            else
+            {
+                long removeGeneration = getRemoveGeneration( key );
+
+                // Item not found in memory. If local invocation look in aux
+                // caches, even if not local look in disk auxiliaries
+                for ( int i = 0; i < auxCaches.length; i++ )
                 {
-                    // Item not found in memory. If local invocation look in aux
-                    // caches, even if not local look in disk auxiliaries
+                    AuxiliaryCache<K, V> aux = auxCaches[i];
 
-                    for ( int i = 0; i < auxCaches.length; i++ )
+                    if ( aux != null )
                     {
-                        AuxiliaryCache<K, V> aux = auxCaches[i];
+                        CacheType cacheType = aux.getCacheType();
 
-                        if ( aux != null )
+                        if ( !localOnly || cacheType == CacheType.DISK_CACHE )
                         {
-                            CacheType cacheType = aux.getCacheType();
-
-                            if ( !localOnly || cacheType == CacheType.DISK_CACHE )
+                            if ( log.isDebugEnabled() )
                             {
-                                if ( log.isDebugEnabled() )
-                                {
-                                    log.debug( "Attempting to get from aux [" + aux.getCacheName() + "] which is of type: "
-                                        + cacheType );
-                                }
-
-                                try
-                                {
-                                    element = aux.get( key );
-                                }
-                                catch ( IOException e )
-                                {
-                                    log.error( "Error getting from aux", e );
-                                }
+                                log.debug( "Attempting to get from aux [" + aux.getCacheName() + "] which is of type: "
+                                    + cacheType );
                             }
 
-                            if ( log.isDebugEnabled() )
+                            try
                             {
-                                log.debug( "Got CacheElement: " + element );
+                                element = aux.get( key );
                             }
+                            catch ( IOException e )
+                            {
+                                log.error( "Error getting from aux", e );
+                            }
+                        }
 
-                            // Item found in one of the auxiliary caches.
-                            if ( element != null )
+                        if ( log.isDebugEnabled() )
+                        {
+                            log.debug( "Got CacheElement: " + element );
+                        }
+
+                        // Item found in one of the auxiliary caches.
+                        if ( element != null )
+                        {
+                            if ( isExpired( element ) )
                             {
-                                if ( isExpired( element ) )
+                                if ( log.isDebugEnabled() )
                                 {
-                                    if ( log.isDebugEnabled() )
-                                    {
-                                        log.debug( cacheName + " - Aux cache[" + i + "] hit, but element expired." );
-                                    }
+                                    log.debug( cacheName + " - Aux cache[" + i + "] hit, but element expired." );
+                                }
 
-                                    missCountExpired++;
+                                missCountExpired.incrementAndGet();
 
-                                    // This will tell the remotes to remove the item
-                                    // based on the element's expiration policy. The elements attributes
-                                    // associated with the item when it created govern its behavior
-                                    // everywhere.
-                                    remove( key );
+                                // This will tell the remotes to remove the item
+                                // based on the element's expiration policy. The elements attributes
+                                // associated with the item when it created govern its behavior
+                                // everywhere.
+                                remove( key );
 
-                                    element = null;
-                                }
-                                else
+                                element = null;
+                            }
+                            else
+                            {
+                                if ( log.isDebugEnabled() )
                                 {
-                                    if ( log.isDebugEnabled() )
-                                    {
-                                        log.debug( cacheName + " - Aux cache[" + i + "] hit" );
-                                    }
-
-                                    // Update counters
-                                    hitCountAux++;
-                                    auxHitCountByIndex[i]++;
-
-                                    copyAuxiliaryRetrievedItemToMemory( element );
+                                    log.debug( cacheName + " - Aux cache[" + i + "] hit" );
                                 }
 
-                                found = true;
+                                // Update counters
+                                hitCountAux.incrementAndGet();
+                                auxHitCountByIndex.incrementAndGet( i );
 
-                                break;
+                                copyAuxiliaryRetrievedItemToMemory( element, removeGeneration );
                             }
+
+                            found = true;
+
+                            break;
                         }
                     }
                 }
             }
-            catch ( Exception e )
-            {
-                log.error( "Problem encountered getting element.", e );
-            }
+        }
+        catch ( Exception e )
+        {
+            log.error( "Problem encountered getting element.", e );
         }
 
         if ( !found )
         {
-            missCountNotFound++;
+            missCountNotFound.incrementAndGet();
 
             if ( log.isDebugEnabled() )
             {
                 log.debug( cacheName + " - Miss" );
             }
         }
+        else if ( element != null )
+        {
+            refreshIfDue( element );
+        }
 
         return element;
     }
 
+    /**
+     * Starts a background reload of the element if a loader is registered and the element is in
+     * its refresh ahead window or is being served stale. Only one reload per key runs at a time.
+     * The caller gets the current value either way.
+     * <p>
+     * @param element
+     */
+    private void refreshIfDue( ICacheElement<K, V> element )
+    {
+        final ICacheLoader<K, V> loader = this.cacheLoader;
+        if ( loader == null )
+        {
+            return;
+        }
+
+        IElementAttributes attributes = element.getElementAttributes();
+        long maxLifeSeconds = attributes.getMaxLifeSeconds();
+        if ( attributes.getIsEternal() || maxLifeSeconds == -1 )
+        {
+            return;
+        }
+
+        long age = CacheClock.currentTimeMillis() - attributes.getCreateTime();
+        long refreshAt = maxLifeSeconds * 1000;
+        if ( attributes.getRefreshAheadSeconds() > 0 )
+        {
+            refreshAt -= attributes.getRefreshAheadSeconds() * 1000;
+        }
+        else if ( attributes.getMaxStaleSeconds() <= 0 )
+        {
+            return;
+        }
+
+        if ( age <= refreshAt )
+        {
+            return;
+        }
+
+        final K key = element.getKey();
+        LoadTask task = new LoadTask( key, new Callable<V>()
+        {
+            public V call()
+                throws Exception
+            {
+                return loader.load( key );
+            }
+        }, element );
+
+        if ( loadsInFlight.putIfAbsent( key, task ) != null )
+        {
+            return;
+        }
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + " - Refreshing key [" + key + "] in the background" );
+        }
+
+        try
+        {
+            getLoaderPool().execute( task );
+        }
+        catch ( RejectedExecutionException e )
+        {
+            loadsInFlight.remove( key, task );
+            log.warn( "Refresh of key [" + key + "] was rejected by the loader pool" );
+        }
+    }
+
     /**
      * Gets multiple items from the cache based on the given set of keys.
      * <p>
@@ -648,6 +1506,11 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      */
     protected Map<K, ICacheElement<K, V>> getMultiple( Set<K> keys, boolean localOnly )
     {
+        for ( K key : keys )
+        {
+            recordAccess( key );
+        }
+
         Map<K, ICacheElement<K, V>> elements = new HashMap<K, ICacheElement<K, V>>();
 
         if ( log.isDebugEnabled() )
@@ -664,7 +1527,14 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
             if ( elements.size() != keys.size() )
             {
                 Set<K> remainingKeys = pruneKeysFound( keys, elements );
-                elements.putAll( getMultipleFromAuxiliaryCaches( remainingKeys, localOnly ) );
+                if ( cacheAttr.isUseParallelGetMultiple() )
+                {
+                    elements.putAll( getMultipleFromAuxiliaryCachesInParallel( remainingKeys, localOnly ) );
+                }
+                else
+                {
+                    elements.putAll( getMultipleFromAuxiliaryCaches( remainingKeys, localOnly ) );
+                }
             }
         }
         catch ( Exception e )
@@ -675,7 +1545,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         // if we didn't find all the elements, increment the miss count by the number of elements not found
         if ( elements.size() != keys.size() )
         {
-            missCountNotFound += ( keys.size() - elements.size() );
+            missCountNotFound.addAndGet( keys.size() - elements.size() );
 
             if ( log.isDebugEnabled() )
             {
@@ -714,7 +1584,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                         log.debug( cacheName + " - Memory cache hit, but element expired" );
                     }
 
-                    missCountExpired++;
+                    missCountExpired.incrementAndGet();
 
                     remove( element.getKey() );
                     elementsFromMemory.remove( element.getKey() );
@@ -727,7 +1597,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                     }
 
                     // Update counters
-                    hitCountRam++;
+                    hitCountRam.incrementAndGet();
                 }
             }
         }
@@ -745,6 +1615,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     private Map<K, ICacheElement<K, V>> getMultipleFromAuxiliaryCaches( Set<K> keys, boolean localOnly )
         throws IOException
     {
+        long[] generations = getRemoveGenerations();
         Map<K, ICacheElement<K, V>> elements = new HashMap<K, ICacheElement<K, V>>();
         Set<K> remainingKeys = new HashSet<K>( keys );
 
@@ -782,24 +1653,182 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                     log.debug( "Got CacheElements: " + elementsFromAuxiliary );
                 }
 
-                processRetrievedElements( i, elementsFromAuxiliary );
+                processRetrievedElements( i, elementsFromAuxiliary, generations );
+
+                elements.putAll( elementsFromAuxiliary );
+
+                if ( elements.size() == keys.size() )
+                {
+                    break;
+                }
+                else
+                {
+                    remainingKeys = pruneKeysFound( keys, elements );
+                }
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Parallel version of {@link #getMultipleFromAuxiliaryCaches(Set, boolean)}. All eligible
+     * auxiliaries are asked at once. A remote auxiliary gets one getMultiple call, since it sends
+     * the keys to the server in one request. The other auxiliaries answer getMultiple by looping
+     * over single gets, so they get one task per key instead.
+     * <p>
+     * If the GetMultipleTimeoutMillis deadline passes, the lookups that have not started are
+     * cancelled and their keys count as misses. The ones that are running are left to finish and
+     * their results are ignored. They are not interrupted, since an interrupt during a read closes
+     * the FileChannel of the indexed and block disk caches. When several auxiliaries have a key, the first in the list wins,
+     * as with the sequential lookup. Unlike the sequential lookup, later auxiliaries are asked for
+     * keys that an earlier one also has.
+     * <p>
+     * @param keys
+     * @param localOnly
+     * @return the elements found in the auxiliary caches
+     * @throws IOException
+     */
+    private Map<K, ICacheElement<K, V>> getMultipleFromAuxiliaryCachesInParallel( Set<K> keys, boolean localOnly )
+        throws IOException
+    {
+        long[] generations = getRemoveGenerations();
+        Executor executor = getGetMultipleExecutor();
+        List<Map<K, ICacheElement<K, V>>> found = new ArrayList<Map<K, ICacheElement<K, V>>>( auxCaches.length );
+        List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+
+        for ( int i = 0; i < auxCaches.length; i++ )
+        {
+            final AuxiliaryCache<K, V> aux = auxCaches[i];
+            final Map<K, ICacheElement<K, V>> auxFound = new ConcurrentHashMap<K, ICacheElement<K, V>>();
+            found.add( auxFound );
+
+            if ( aux == null || ( localOnly && aux.getCacheType() != CacheType.DISK_CACHE ) )
+            {
+                continue;
+            }
+
+            if ( aux.getCacheType() == CacheType.REMOTE_CACHE )
+            {
+                final Set<K> auxKeys = keys;
+                tasks.add( new FutureTask<Object>( new Callable<Object>()
+                {
+                    public Object call()
+                        throws IOException
+                    {
+                        auxFound.putAll( aux.getMultiple( auxKeys ) );
+                        return null;
+                    }
+                } ) );
+            }
+            else
+            {
+                for ( final K key : keys )
+                {
+                    tasks.add( new FutureTask<Object>( new Callable<Object>()
+                    {
+                        public Object call()
+                            throws IOException
+                        {
+                            ICacheElement<K, V> element = aux.get( key );
+                            if ( element != null )
+                            {
+                                auxFound.put( key, element );
+                            }
+                            return null;
+                        }
+                    } ) );
+                }
+            }
+        }
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + " - Looking up " + keys.size() + " keys with " + tasks.size() + " parallel tasks" );
+        }
 
-                elements.putAll( elementsFromAuxiliary );
+        for ( FutureTask<Object> task : tasks )
+        {
+            try
+            {
+                executor.execute( task );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                task.run();
+            }
+        }
 
-                if ( elements.size() == keys.size() )
+        long timeout = cacheAttr.getGetMultipleTimeoutMillis();
+        long deadline = System.currentTimeMillis() + timeout;
+        for ( FutureTask<Object> task : tasks )
+        {
+            try
+            {
+                if ( timeout < 0 )
                 {
-                    break;
+                    task.get();
                 }
                 else
                 {
-                    remainingKeys = pruneKeysFound( keys, elements );
+                    task.get( Math.max( 0, deadline - System.currentTimeMillis() ), TimeUnit.MILLISECONDS );
                 }
             }
+            catch ( TimeoutException e )
+            {
+                task.cancel( false );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                task.cancel( false );
+            }
+            catch ( ExecutionException e )
+            {
+                log.error( "Error getting from aux", e.getCause() );
+            }
+        }
+
+        Map<K, ICacheElement<K, V>> elements = new HashMap<K, ICacheElement<K, V>>();
+        for ( int i = 0; i < found.size(); i++ )
+        {
+            // take a copy, a late lookup may still be finishing
+            Map<K, ICacheElement<K, V>> elementsFromAuxiliary = new HashMap<K, ICacheElement<K, V>>( found.get( i ) );
+            elementsFromAuxiliary.keySet().removeAll( elements.keySet() );
+
+            if ( !elementsFromAuxiliary.isEmpty() )
+            {
+                processRetrievedElements( i, elementsFromAuxiliary, generations );
+                elements.putAll( elementsFromAuxiliary );
+            }
         }
 
         return elements;
     }
 
+    /**
+     * Sets the executor used for parallel getMultiple lookups.
+     * <p>
+     * @param getMultipleExecutor the executor, or null to use the cache_get_multiple thread pool
+     */
+    public void setGetMultipleExecutor( Executor getMultipleExecutor )
+    {
+        this.getMultipleExecutor = getMultipleExecutor;
+    }
+
+    /**
+     * @return the executor used for parallel getMultiple lookups.
+     */
+    protected Executor getGetMultipleExecutor()
+    {
+        Executor executor = this.getMultipleExecutor;
+        if ( executor == null )
+        {
+            executor = ThreadPoolManager.getInstance().getPool( GET_MULTIPLE_POOL_NAME );
+        }
+        return executor;
+    }
+
     /**
      * Build a map of all the matching elements in all of the auxiliaries and memory.
      * <p>
@@ -900,6 +1929,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     private Map<K, ICacheElement<K, V>> getMatchingFromAuxiliaryCaches( String pattern, boolean localOnly )
         throws IOException
     {
+        long[] generations = getRemoveGenerations();
         Map<K, ICacheElement<K, V>> elements = new HashMap<K, ICacheElement<K, V>>();
 
         for ( int i = auxCaches.length - 1; i >= 0; i-- )
@@ -935,7 +1965,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                         log.debug( "Got CacheElements: " + elementsFromAuxiliary );
                     }
 
-                    processRetrievedElements( i, elementsFromAuxiliary );
+                    processRetrievedElements( i, elementsFromAuxiliary, generations );
 
                     elements.putAll( elementsFromAuxiliary );
                 }
@@ -950,9 +1980,11 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      * <p>
      * @param i - the aux index
      * @param elementsFromAuxiliary
+     * @param generations the remove generations from before the auxiliaries were asked
      * @throws IOException
      */
-    private void processRetrievedElements( int i, Map<K, ICacheElement<K, V>> elementsFromAuxiliary )
+    private void processRetrievedElements( int i, Map<K, ICacheElement<K, V>> elementsFromAuxiliary,
+                                           long[] generations )
         throws IOException
     {
         Iterator<ICacheElement<K, V>> elementFromAuxiliaryIterator = new HashMap<K, ICacheElement<K, V>>( elementsFromAuxiliary ).values().iterator();
@@ -971,7 +2003,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                         log.debug( cacheName + " - Aux cache[" + i + "] hit, but element expired." );
                     }
 
-                    missCountExpired++;
+                    missCountExpired.incrementAndGet();
 
                     // This will tell the remote caches to remove the item
                     // based on the element's expiration policy. The elements attributes
@@ -988,10 +2020,11 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                     }
 
                     // Update counters
-                    hitCountAux++;
-                    auxHitCountByIndex[i]++;
+                    hitCountAux.incrementAndGet();
+                    auxHitCountByIndex.incrementAndGet( i );
 
-                    copyAuxiliaryRetrievedItemToMemory( element );
+                    copyAuxiliaryRetrievedItemToMemory( element,
+                                                        generations[getRemoveGenerationSlot( element.getKey() )] );
                 }
             }
         }
@@ -1001,15 +2034,53 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      * Copies the item to memory if the memory size is greater than 0. Only spool if the memory
      * cache size is greater than 0, else the item will immediately get put into purgatory.
      * <p>
+     * Auxiliary lookups run without any region lock, so a put for the same key may have completed
+     * while the auxiliary was being read. The copy is therefore made under the update lock and is
+     * skipped if memory already holds an element for the key. That way a stale auxiliary value can
+     * never overwrite a newer one.
+     * <p>
+     * A remove of the key may also have completed in the meantime. The copy holds the read lock of
+     * the key, which excludes a remove that is still running, and is skipped if a remove of the
+     * key's slot completed since the lookup started. A removed value is therefore never put back.
+     * <p>
      * @param element
+     * @param removeGeneration the remove generation of the key from before the lookup
      * @throws IOException
      */
-    private void copyAuxiliaryRetrievedItemToMemory( ICacheElement<K, V> element )
+    private void copyAuxiliaryRetrievedItemToMemory( ICacheElement<K, V> element, long removeGeneration )
         throws IOException
     {
         if ( memCache.getCacheAttributes().getMaxObjects() > 0 )
         {
-            memCache.update( element );
+            Lock keyLock = getKeyLock( element.getKey(), false );
+            keyLock.lock();
+            try
+            {
+                ReentrantLock lock = getUpdateLock( element.getKey() );
+                if ( lock == null )
+                {
+                    synchronized ( this )
+                    {
+                        copyToMemoryIfAbsent( element, removeGeneration );
+                    }
+                }
+                else
+                {
+                    lock.lock();
+                    try
+                    {
+                        copyToMemoryIfAbsent( element, removeGeneration );
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+                }
+            }
+            finally
+            {
+                keyLock.unlock();
+            }
         }
         else
         {
@@ -1020,6 +2091,111 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         }
     }
 
+    /**
+     * Puts the element in memory. If the region uses the timer wheel shrinker, the element is
+     * scheduled first, so a memory cache that spools it right away also deschedules it.
+     * <p>
+     * @param element
+     * @throws IOException
+     */
+    private void updateMemory( ICacheElement<K, V> element )
+        throws IOException
+    {
+        TimerWheelShrinker<K, V> shrinker = timerWheelShrinker;
+        if ( shrinker != null )
+        {
+            shrinker.schedule( element );
+        }
+        memCache.update( element );
+    }
+
+    /**
+     * Puts the element in memory unless memory already holds one for the key, or the key may have
+     * been removed since it was looked up. The caller must hold the read lock and the update lock
+     * for the key.
+     * <p>
+     * @param element
+     * @param removeGeneration the remove generation of the key from before the lookup
+     * @throws IOException
+     */
+    private void copyToMemoryIfAbsent( ICacheElement<K, V> element, long removeGeneration )
+        throws IOException
+    {
+        if ( getRemoveGeneration( element.getKey() ) != removeGeneration )
+        {
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( "Skipping memory update, key " + element.getKey() + " may have been removed" );
+            }
+        }
+        else if ( memCache.getQuiet( element.getKey() ) == null )
+        {
+            updateMemory( element );
+        }
+        else if ( log.isDebugEnabled() )
+        {
+            log.debug( "Skipping memory update, a newer element was put for key " + element.getKey() );
+        }
+    }
+
+    /**
+     * Gets the remove generation slot of a key. The members of a group share the slot of the
+     * group, since removing one removes the group from memory.
+     * <p>
+     * @param key
+     * @return the index of the slot
+     */
+    private static int getRemoveGenerationSlot( Object key )
+    {
+        Object slotKey = key instanceof GroupAttrName ? ( (GroupAttrName<?>) key ).groupId : key;
+        return getStripe( slotKey, REMOVE_GENERATION_SLOTS );
+    }
+
+    /**
+     * @param key
+     * @return the number of completed removes in the slot of the key
+     */
+    private long getRemoveGeneration( K key )
+    {
+        return removeGenerations.get( getRemoveGenerationSlot( key ) );
+    }
+
+    /**
+     * Takes a copy of the remove generations before a lookup of several keys.
+     * <p>
+     * @return the generations by slot
+     */
+    private long[] getRemoveGenerations()
+    {
+        long[] generations = new long[REMOVE_GENERATION_SLOTS];
+        for ( int i = 0; i < generations.length; i++ )
+        {
+            generations[i] = removeGenerations.get( i );
+        }
+        return generations;
+    }
+
+    /**
+     * Counts a completed remove. Must be called after the key is gone from memory and the
+     * auxiliaries, while the remove still holds its locks.
+     * <p>
+     * @param key the key, or null if all of the slots are affected
+     */
+    private void countRemove( K key )
+    {
+        if ( key == null )
+        {
+            for ( int i = 0; i < REMOVE_GENERATION_SLOTS; i++ )
+            {
+                removeGenerations.incrementAndGet( i );
+            }
+        }
+        else
+        {
+            removeGenerations.incrementAndGet( getRemoveGenerationSlot( key ) );
+        }
+    }
+
     /**
      * Returns a set of keys that were not found.
      * <p>
@@ -1043,6 +2219,9 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     /**
      * Determine if the element has exceeded its max life.
      * <p>
+     * This is on the path of every memory hit, so it must not allocate. The clock is only read if
+     * the element has a max life or an idle time.
+     * <p>
      * @param element
      * @return true if the element is expired, else false.
      */
@@ -1054,14 +2233,27 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
 
             if ( !attributes.getIsEternal() )
             {
-                long now = System.currentTimeMillis();
+                long maxLifeSeconds = attributes.getMaxLifeSeconds();
+                long idleTime = attributes.getIdleTime();
+                if ( maxLifeSeconds == -1 && idleTime == -1 )
+                {
+                    return false;
+                }
+
+                long now = CacheClock.currentTimeMillis();
 
                 // Remove if maxLifeSeconds exceeded
 
-                long maxLifeSeconds = attributes.getMaxLifeSeconds();
                 long createTime = attributes.getCreateTime();
+                long maxLife = maxLifeSeconds * 1000;
 
-                if ( maxLifeSeconds != -1 && ( now - createTime ) > ( maxLifeSeconds * 1000 ) )
+                // With a loader, stale elements are served while they are refreshed
+                if ( cacheLoader != null && attributes.getMaxStaleSeconds() > 0 )
+                {
+                    maxLife += attributes.getMaxStaleSeconds() * 1000;
+                }
+
+                if ( maxLifeSeconds != -1 && ( now - createTime ) > maxLife )
                 {
                     if ( log.isDebugEnabled() )
                     {
@@ -1072,7 +2264,6 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
 
                     return true;
                 }
-                long idleTime = attributes.getIdleTime();
                 long lastAccessTime = attributes.getLastAccessTime();
 
                 // Remove if maxIdleTime exceeded
@@ -1084,7 +2275,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                 {
                     if ( log.isDebugEnabled() )
                     {
-                        log.info( "Exceeded maxIdle: " + element.getKey() );
+                        log.debug( "Exceeded maxIdle: " + element.getKey() );
                     }
 
                     handleElementEvent( element, ElementEventType.EXCEEDED_IDLETIME_ONREQUEST );
@@ -1226,14 +2417,55 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      * this looks necessary we will need to build in an identifier to specify the source of a
      * removal.
      * <p>
+     * A remove only holds the write lock of its key's stripe, or of the group's for a group key, so
+     * it waits for puts to the keys of that stripe but not for the rest of the region. Hierarchical
+     * removes of keys ending in the name delimiter are still serialized on the region, and hold all
+     * of the update lock stripes so they cannot interleave with a striped put.
+     * <p>
+     * @param key
+     * @param localOnly
+     * @return true if the item was in the cache, else false
+     */
+    protected boolean remove( K key, boolean localOnly )
+    {
+        if ( key instanceof String && key.toString().endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+        {
+            ReentrantLock[] stripes = lockAllStripes();
+            try
+            {
+                synchronized ( this )
+                {
+                    return removeLocked( key, localOnly );
+                }
+            }
+            finally
+            {
+                unlockAllStripes( stripes );
+            }
+        }
+
+        Lock lock = getKeyLock( key, true );
+        lock.lock();
+        try
+        {
+            return removeLocked( key, localOnly );
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes an item from memory and the auxiliaries. The caller holds the lock of the key.
+     * <p>
      * @param key
      * @param localOnly
      * @return true if the item was in the cache, else false
      */
-    protected synchronized boolean remove( K key, boolean localOnly )
+    private boolean removeLocked( K key, boolean localOnly )
     {
-        // not thread safe, but just for debugging and testing.
-        removeCount++;
+        removeCount.incrementAndGet();
 
         boolean removed = false;
 
@@ -1246,6 +2478,11 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
             log.error( e );
         }
 
+        if ( timerWheelShrinker != null )
+        {
+            timerWheelShrinker.deschedule( key );
+        }
+
         // Removes from all auxiliary caches.
         for ( int i = 0; i < auxCaches.length; i++ )
         {
@@ -1284,6 +2521,12 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                 log.error( "Failure removing from aux", ex );
             }
         }
+
+        // a hierarchical remove may affect any slot
+        boolean hierarchical = key instanceof String
+            && key.toString().endsWith( CacheConstants.NAME_COMPONENT_DELIMITER );
+        countRemove( hierarchical ? null : key );
+
         return removed;
     }
 
@@ -1311,19 +2554,46 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     }
 
     /**
-     * Removes all cached items.
+     * Removes all cached items. This holds all of the update lock stripes, so no striped put is in
+     * progress while the region is cleared.
      * <p>
      * @param localOnly must pass in false to get remote and lateral aux's updated. This prevents
      *            looping.
      * @throws IOException
      */
-    protected synchronized void removeAll( boolean localOnly )
+    protected void removeAll( boolean localOnly )
         throws IOException
+    {
+        ReentrantLock[] stripes = lockAllStripes();
+        try
+        {
+            synchronized ( this )
+            {
+                removeAllLocked( localOnly );
+            }
+        }
+        finally
+        {
+            unlockAllStripes( stripes );
+        }
+    }
+
+    /**
+     * Removes all cached items. The caller holds the region and all of the update lock stripes.
+     * <p>
+     * @param localOnly
+     */
+    private void removeAllLocked( boolean localOnly )
     {
         try
         {
             memCache.removeAll();
 
+            if ( timerWheelShrinker != null )
+            {
+                timerWheelShrinker.clear();
+            }
+
             if ( log.isDebugEnabled() )
             {
                 log.debug( "Removed All keys from the memory cache." );
@@ -1356,6 +2626,42 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
                 }
             }
         }
+
+        countRemove( null );
+    }
+
+    /**
+     * Takes all of the update lock stripes, in index order like the batches do.
+     * <p>
+     * @return the stripes taken, or null if updates are serialized on the region
+     */
+    private ReentrantLock[] lockAllStripes()
+    {
+        ReentrantLock[] locks = this.updateLocks;
+        if ( locks != null )
+        {
+            for ( ReentrantLock lock : locks )
+            {
+                lock.lock();
+            }
+        }
+        return locks;
+    }
+
+    /**
+     * Releases the stripes taken by lockAllStripes.
+     * <p>
+     * @param locks the stripes, may be null
+     */
+    private static void unlockAllStripes( ReentrantLock[] locks )
+    {
+        if ( locks != null )
+        {
+            for ( int i = locks.length - 1; i >= 0; i-- )
+            {
+                locks[i].unlock();
+            }
+        }
     }
 
     /**
@@ -1566,7 +2872,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         stats.setRegionName( this.getCacheName() );
 
         // store the composite cache stats first
-        IStatElement[] elems = new StatElement[2];
+        IStatElement[] elems = new StatElement[3];
         elems[0] = new StatElement();
         elems[0].setName( "HitCountRam" );
         elems[0].setData( "" + getHitCountRam() );
@@ -1575,6 +2881,10 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         elems[1].setName( "HitCountAux" );
         elems[1].setData( "" + getHitCountAux() );
 
+        elems[2] = new StatElement();
+        elems[2].setName( "SpoolsAvoided" );
+        elems[2].setData( "" + getSpoolsAvoided() );
+
         // store these local stats
         stats.setStatElements( elems );
 
@@ -1610,12 +2920,20 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      * Gets the default element attribute of the Cache object This returna a copy. It does not
      * return a reference to the attributes.
      * <p>
+     * If the region uses compact element attributes, the copy shares an immutable snapshot of the
+     * defaults and only has its own create and last access times.
+     * <p>
      * @return The attributes value
      */
     public IElementAttributes getElementAttributes()
     {
         if ( attr != null )
         {
+            CompactElementAttributes.Template template = attrTemplate;
+            if ( template != null && cacheAttr != null && cacheAttr.isUseCompactElementAttributes() )
+            {
+                return new CompactElementAttributes( template );
+            }
             return attr.copy();
         }
         return null;
@@ -1629,6 +2947,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     public void setElementAttributes( IElementAttributes attr )
     {
         this.attr = attr;
+        this.attrTemplate = attr != null ? new CompactElementAttributes.Template( attr ) : null;
     }
 
     /**
@@ -1651,6 +2970,8 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         this.cacheAttr = cattr;
         // need a better way to do this, what if it is in error
         this.memCache.initialize( this );
+        createUpdateLocks( cattr );
+        createSpoolAdmission( cattr );
     }
 
     /**
@@ -1715,6 +3036,17 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
         return memCache;
     }
 
+    /**
+     * The shrinker that tracks the expiry of the elements in memory, if the region uses the timer
+     * wheel shrinker. The memory cache schedules it instead of a ShrinkerThread.
+     * <p>
+     * @return the shrinker, or null
+     */
+    public TimerWheelShrinker<K, V> getTimerWheelShrinker()
+    {
+        return timerWheelShrinker;
+    }
+
     /**
      * Number of times a requested item was found in the memory cache.
      * <p>
@@ -1722,7 +3054,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      */
     public int getHitCountRam()
     {
-        return hitCountRam;
+        return hitCountRam.get();
     }
 
     /**
@@ -1731,7 +3063,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      */
     public int getHitCountAux()
     {
-        return hitCountAux;
+        return hitCountAux.get();
     }
 
     /**
@@ -1740,7 +3072,7 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      */
     public int getMissCountNotFound()
     {
-        return missCountNotFound;
+        return missCountNotFound.get();
     }
 
     /**
@@ -1749,7 +3081,17 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
      */
     public int getMissCountExpired()
     {
-        return missCountExpired;
+        return missCountExpired.get();
+    }
+
+    /**
+     * Number of elements evicted from memory that were dropped by the spool admission filter
+     * instead of being written to disk.
+     * @return number of spools avoided.
+     */
+    public int getSpoolsAvoided()
+    {
+        return spoolsAvoided.get();
     }
 
     /**
@@ -1837,33 +3179,33 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     /**
      * @param updateCount The updateCount to set.
      */
-    public synchronized void setUpdateCount( int updateCount )
+    public void setUpdateCount( int updateCount )
     {
-        this.updateCount = updateCount;
+        this.updateCount.set( updateCount );
     }
 
     /**
      * @return Returns the updateCount.
      */
-    public synchronized int getUpdateCount()
+    public int getUpdateCount()
     {
-        return updateCount;
+        return updateCount.get();
     }
 
     /**
      * @param removeCount The removeCount to set.
      */
-    public synchronized void setRemoveCount( int removeCount )
+    public void setRemoveCount( int removeCount )
     {
-        this.removeCount = removeCount;
+        this.removeCount.set( removeCount );
     }
 
     /**
      * @return Returns the removeCount.
      */
-    public synchronized int getRemoveCount()
+    public int getRemoveCount()
     {
-        return removeCount;
+        return removeCount.get();
     }
 
     /**
@@ -1876,4 +3218,89 @@ public class CompositeCache<K extends Serializable, V extends Serializable>
     {
         return getStats();
     }
+
+    /**
+     * A load of a single key. The result is put in the cache before the task completes, and the
+     * task is removed from the in flight map once it is done, so later misses start a new load.
+     * <p>
+     * A refresh replaces the element it was started for and keeps that element's attributes.
+     */
+    private class LoadTask
+        extends FutureTask<V>
+    {
+        /** The key being loaded */
+        private final K key;
+
+        /** Whether this is a background refresh */
+        private final boolean refresh;
+
+        /**
+         * @param key
+         * @param loader
+         * @param stale the element being refreshed, or null for a load on a miss
+         */
+        public LoadTask( final K key, final Callable<V> loader, final ICacheElement<K, V> stale )
+        {
+            super( new Callable<V>()
+            {
+                public V call()
+                    throws Exception
+                {
+                    if ( stale == null )
+                    {
+                        // a load that just finished may have been removed from the map before we got in
+                        ICacheElement<K, V> element = memCache.getQuiet( key );
+                        if ( element != null )
+                        {
+                            return element.getVal();
+                        }
+                    }
+
+                    V value = loader.call();
+                    if ( value != null )
+                    {
+                        CacheElement<K, V> ce = new CacheElement<K, V>( getCacheName(), key, value );
+                        if ( stale == null )
+                        {
+                            ce.setElementAttributes( getElementAttributes() );
+                        }
+                        else
+                        {
+                            ce.setElementAttributes( stale.getElementAttributes().copy() );
+                        }
+                        update( ce );
+                    }
+                    return value;
+                }
+            } );
+            this.key = key;
+            this.refresh = stale != null;
+        }
+
+        /**
+         * Removes this task from the loads in flight. Nobody waits for a refresh, so its failure
+         * is logged here.
+         */
+        @Override
+        protected void done()
+        {
+            loadsInFlight.remove( key, this );
+
+            if ( refresh && !isCancelled() )
+            {
+                try
+                {
+                    get();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                }
+                catch ( ExecutionException e )
+                {
+                    log.warn( "Background refresh of key [" + key + "] failed", e.getCause() );
+                }
+            }
+        }
+    }
 }
@@ -40,8 +40,13 @@ import org.apache.commons.jcs.engine.behavior.IRequireScheduler;
 import org.apache.commons.jcs.engine.logging.behavior.ICacheEventLogger;
 import org.apache.commons.jcs.engine.match.KeyMatcherPatternImpl;
 import org.apache.commons.jcs.engine.match.behavior.IKeyMatcher;
+import org.apache.commons.jcs.engine.memory.MemoryBudget;
+import org.apache.commons.jcs.engine.memory.behavior.IBudgetedMemoryCache;
 import org.apache.commons.jcs.utils.config.OptionConverter;
 import org.apache.commons.jcs.utils.config.PropertySetter;
+import org.apache.commons.jcs.utils.timing.CacheClock;
+import org.apache.commons.jcs.utils.timing.CoarseClock;
+import org.apache.commons.jcs.utils.timing.behavior.IClock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -69,6 +74,12 @@ public class CompositeCacheConfigurator
     /** auxiliary prefix */
     final static String AUXILIARY_PREFIX = "jcs.auxiliary.";
 
+    /** memory budget prefix */
+    final static String MEMORY_BUDGET_PREFIX = "jcs.memorybudget";
+
+    /** coarse clock tick property */
+    final static String CLOCK_TICK_MILLIS = "jcs.clock.TickMillis";
+
     /** .attributes */
     final static String ATTRIBUTE_PREFIX = ".attributes";
 
@@ -146,6 +157,9 @@ public class CompositeCacheConfigurator
         // store props for use by non configured caches
         compositeCacheManager.setConfigurationProperties( properties );
 
+        // set the clock before any element attributes read it
+        parseClock( properties );
+
         // set default value list
         setDefaultAuxValues( properties );
 
@@ -155,6 +169,9 @@ public class CompositeCacheConfigurator
         // set default element attr
         setDefaultElementAttributes( properties );
 
+        // set up the memory budget before any region draws from it
+        parseMemoryBudget( properties );
+
         // set up ssytem caches to be used by non system caches
         // need to make sure there is no circuarity of reference
         parseSystemRegions( properties );
@@ -170,6 +187,34 @@ public class CompositeCacheConfigurator
 
     }
 
+    /**
+     * Set up a CoarseClock as the cache clock if jcs.clock.TickMillis is greater than 0. A coarse
+     * clock set by an earlier configuration is replaced if the tick changed.
+     *<p>
+     * @param props
+     */
+    protected void parseClock( Properties props )
+    {
+        int tickMillis = OptionConverter.toInt( OptionConverter.findAndSubst( CLOCK_TICK_MILLIS, props ), 0 );
+        if ( tickMillis <= 0 )
+        {
+            return;
+        }
+
+        IClock current = CacheClock.getClock();
+        if ( current instanceof CoarseClock )
+        {
+            if ( ( (CoarseClock) current ).getTickMillis() == tickMillis )
+            {
+                return;
+            }
+            ( (CoarseClock) current ).dispose();
+        }
+
+        CacheClock.setClock( new CoarseClock( tickMillis ) );
+        log.info( "setting the cache clock to a coarse clock with a tick of " + tickMillis + " ms" );
+    }
+
     /**
      * Set the default aux list for new caches.
      * <p>
@@ -213,6 +258,34 @@ public class CompositeCacheConfigurator
         log.info( "setting defaultElementAttributes to " + iea );
     }
 
+    /**
+     * Set up the memory budget shared by all regions if jcs.memorybudget.MaxMemoryBytes is
+     * configured. On reconfiguration the existing budget is updated.
+     *<p>
+     * @param props
+     */
+    protected void parseMemoryBudget( Properties props )
+    {
+        MemoryBudget budget = compositeCacheManager.getMemoryBudget();
+        if ( budget != null )
+        {
+            PropertySetter.setProperties( budget, props, MEMORY_BUDGET_PREFIX + "." );
+            return;
+        }
+
+        if ( OptionConverter.findAndSubst( MEMORY_BUDGET_PREFIX + ".MaxMemoryBytes", props ) == null )
+        {
+            return;
+        }
+
+        budget = new MemoryBudget();
+        PropertySetter.setProperties( budget, props, MEMORY_BUDGET_PREFIX + "." );
+        budget.setScheduledExecutorService( compositeCacheManager.getScheduledExecutorService() );
+        compositeCacheManager.setMemoryBudget( budget );
+
+        log.info( "setting memory budget to " + budget.getMaxMemoryBytes() + " bytes" );
+    }
+
     /**
      * Create caches used internally. System status gives them creation priority.
      *<p>
@@ -329,6 +402,12 @@ public class CompositeCacheConfigurator
             ? new CompositeCache<K, V>( regName, parseCompositeCacheAttributes( props, regName, regionPrefix ), ea )
             : new CompositeCache<K, V>( regName, cca, ea );
 
+        MemoryBudget budget = compositeCacheManager.getMemoryBudget();
+        if ( budget != null && cache.getMemoryCache() instanceof IBudgetedMemoryCache )
+        {
+            budget.register( (IBudgetedMemoryCache<K, V>) cache.getMemoryCache() );
+        }
+
         if (value != null)
         {
             // Inject scheduler service
@@ -48,9 +48,14 @@ import org.apache.commons.jcs.engine.behavior.IProvideScheduler;
 import org.apache.commons.jcs.engine.behavior.IShutdownObservable;
 import org.apache.commons.jcs.engine.behavior.IShutdownObserver;
 import org.apache.commons.jcs.engine.behavior.ICacheType.CacheType;
+import org.apache.commons.jcs.engine.memory.MemoryBudget;
+import org.apache.commons.jcs.engine.memory.behavior.IBudgetedMemoryCache;
 import org.apache.commons.jcs.engine.stats.CacheStats;
 import org.apache.commons.jcs.engine.stats.behavior.ICacheStats;
 import org.apache.commons.jcs.utils.threadpool.ThreadPoolManager;
+import org.apache.commons.jcs.utils.timing.CacheClock;
+import org.apache.commons.jcs.utils.timing.CoarseClock;
+import org.apache.commons.jcs.utils.timing.behavior.IClock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -122,6 +127,9 @@ public class CompositeCacheManager
     /** The central background scheduler. */
     private ScheduledExecutorService scheduledExecutor;
 
+    /** The memory budget shared by all regions, null unless configured. */
+    private volatile MemoryBudget memoryBudget;
+
     /** Indicates whether shutdown has been called. */
     private boolean isShutdown = false;
 
@@ -588,6 +596,11 @@ public class CompositeCacheManager
 
         if ( cache != null )
         {
+            MemoryBudget budget = memoryBudget;
+            if ( budget != null && cache.getMemoryCache() instanceof IBudgetedMemoryCache )
+            {
+                budget.deregister( (IBudgetedMemoryCache<?, ?>) cache.getMemoryCache() );
+            }
             cache.dispose( fromRemote );
         }
     }
@@ -622,6 +635,14 @@ public class CompositeCacheManager
             String name = names[i];
             freeCache( name );
         }
+
+        // stop the ticker of a configured coarse clock
+        IClock clock = CacheClock.getClock();
+        if ( clock instanceof CoarseClock )
+        {
+            ( (CoarseClock) clock ).dispose();
+            CacheClock.setClock( null );
+        }
     }
 
     /** */
@@ -751,6 +772,12 @@ public class CompositeCacheManager
 
         // force the array elements into a string.
         StringBuffer buf = new StringBuffer();
+        MemoryBudget budget = memoryBudget;
+        if ( budget != null )
+        {
+            buf.append( "\n---------------------------\n" );
+            buf.append( budget.getStatistics() );
+        }
         int statsLen = stats.length;
         for ( int i = 0; i < statsLen; i++ )
         {
@@ -830,6 +857,26 @@ public class CompositeCacheManager
         return configurationProperties;
     }
 
+    /**
+     * Returns the memory budget shared by all regions.
+     * <p>
+     * @return the budget, or null if jcs.memorybudget.MaxMemoryBytes is not configured
+     */
+    public MemoryBudget getMemoryBudget()
+    {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the memory budget shared by all regions. Only regions created afterwards draw from it.
+     * <p>
+     * @param memoryBudget
+     */
+    public void setMemoryBudget( MemoryBudget memoryBudget )
+    {
+        this.memoryBudget = memoryBudget;
+    }
+
     /**
      * @return the isShutdown
      */
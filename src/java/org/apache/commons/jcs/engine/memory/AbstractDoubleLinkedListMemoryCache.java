@@ -14,6 +14,7 @@ import org.apache.commons.jcs.engine.CacheConstants;
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
 import org.apache.commons.jcs.engine.control.CompositeCache;
 import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.memory.behavior.IBudgetedMemoryCache;
 import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
 import org.apache.commons.jcs.engine.stats.StatElement;
 import org.apache.commons.jcs.engine.stats.Stats;
@@ -33,6 +34,7 @@ import org.apache.commons.logging.LogFactory;
  */
 public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable, V extends Serializable>
     extends AbstractMemoryCache<K, V>
+    implements IBudgetedMemoryCache<K, V>
 {
     /** Don't change. */
     private static final long serialVersionUID = 1422569420563967389L;
@@ -52,6 +54,12 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
     /** number of puts */
     private int putCnt = 0;
 
+    /** accumulated weight of the elements in memory, guarded by this */
+    private long bytesUsed = 0;
+
+    /** the budget shared with other regions, guarded by this */
+    private MemoryBudget memoryBudget;
+
     /**
      * For post reflection creation initialization.
      * <p>
@@ -91,10 +99,15 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
         putCnt++;
         ce.getElementAttributes().setLastAccessTimeNow();
 
+        // weigh outside of the lock, this may serialize the element
+        long weight = weigh( ce );
+
         synchronized ( this )
         {
             // ABSTRACT
             MemoryElementDescriptor<K, V> newNode = adjustListForUpdate( ce );
+            newNode.weight = weight;
+            adjustBytesUsed( weight );
 
             // this must be synchronized
             MemoryElementDescriptor<K, V> oldNode = map.put( newNode.ce.getKey(), newNode );
@@ -103,6 +116,7 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
             if ( oldNode != null && ( newNode.ce.getKey().equals( oldNode.ce.getKey() ) ) )
             {
                 list.remove( oldNode );
+                adjustBytesUsed( -oldNode.weight );
             }
         }
 
@@ -121,13 +135,15 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
         throws IOException;
 
     /**
-     * If the max size has been reached, spool.
+     * If the max size or the max weight has been reached, spool.
      * <p>
      * @throws Error
      */
     private void spoolIfNeeded()
         throws Error
     {
+        spoolIfOverweight();
+
         int size = map.size();
         // If the element limit is reached, we need to spool
 
@@ -164,6 +180,39 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
         }
     }
 
+    /**
+     * If the region is bounded by MaxMemoryBytes, spool from the end of the list until the
+     * accumulated weight is back under the limit. An element that weighs more than the limit on
+     * its own is spooled right away.
+     * <p>
+     * @throws Error
+     */
+    private void spoolIfOverweight()
+        throws Error
+    {
+        long maxBytes = this.cacheAttributes.getMaxMemoryBytes();
+        if ( weigher == null || maxBytes <= 0 )
+        {
+            return;
+        }
+
+        int spooled = 0;
+        synchronized ( this )
+        {
+            while ( bytesUsed > maxBytes && list.size() > 0 )
+            {
+                spoolLastElement();
+                spooled++;
+            }
+        }
+
+        if ( spooled > 0 && log.isDebugEnabled() )
+        {
+            log.debug( "update: Spooled " + spooled + " elements, bytes used: " + getBytesUsed()
+                + ", max bytes: " + maxBytes );
+        }
+    }
+
     /**
      * Get an item from the cache If the item is found, it is removed from the list and added first.
      * <p>
@@ -233,10 +282,14 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
         int freed = 0;
         for ( ; freed < numberToFree; freed++ )
         {
-            ICacheElement<K, V> element = spoolLastElement();
-            if ( element == null )
+            synchronized ( this )
             {
-                break;
+                // spoolLastElement does not tolerate an empty list
+                if ( list.getLast() == null )
+                {
+                    break;
+                }
+                spoolLastElement();
             }
         }
         return freed;
@@ -272,6 +325,7 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
                             + list.getLast().ce.getKey() );
                         verifyCache();
                     }
+                    adjustBytesUsed( -list.getLast().weight );
                 }
                 else
                 {
@@ -330,6 +384,7 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
                     if ( k instanceof String && ( (String) k ).startsWith( key.toString() ) )
                     {
                         list.remove( entry.getValue() );
+                        adjustBytesUsed( -entry.getValue().weight );
                         itr.remove();
                         removed = true;
                     }
@@ -350,6 +405,7 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
                         ((GroupAttrName<?>)k).groupId.equals(((GroupAttrName<?>)key).groupId))
                     {
                         list.remove( entry.getValue() );
+                        adjustBytesUsed( -entry.getValue().weight );
                         itr.remove();
                         removed = true;
                     }
@@ -364,6 +420,7 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
             if ( me != null )
             {
                 list.remove( me );
+                adjustBytesUsed( -me.weight );
                 removed = true;
             }
         }
@@ -383,6 +440,74 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
     {
         map.clear();
         list.removeAll();
+        adjustBytesUsed( -bytesUsed );
+    }
+
+    /**
+     * Changes the accumulated weight and reports it to the budget, if any. Callers must hold the
+     * lock on this.
+     * <p>
+     * @param delta
+     */
+    private void adjustBytesUsed( long delta )
+    {
+        if ( delta != 0 )
+        {
+            bytesUsed += delta;
+            if ( memoryBudget != null )
+            {
+                memoryBudget.adjust( delta );
+            }
+        }
+    }
+
+    /**
+     * Moves the weight held by this cache from the old budget to the new one. Elements are weighed
+     * from now on, even if the region itself is not bounded by MaxMemoryBytes.
+     * <p>
+     * @param budget the shared budget, or null to leave it
+     */
+    public synchronized void setMemoryBudget( MemoryBudget budget )
+    {
+        if ( memoryBudget != null )
+        {
+            memoryBudget.adjust( -bytesUsed );
+        }
+        memoryBudget = budget;
+        if ( budget != null )
+        {
+            if ( weigher == null )
+            {
+                weigher = createWeigher( cacheAttributes );
+            }
+            budget.adjust( bytesUsed );
+        }
+    }
+
+    /**
+     * Returns the last access time of the element at the end of the list, which is spooled next.
+     * <p>
+     * @return the last access time in milliseconds, or -1 if the cache is empty
+     */
+    public synchronized long getColdestAccessTime()
+    {
+        MemoryElementDescriptor<K, V> last = list.getLast();
+        if ( last == null )
+        {
+            return -1;
+        }
+        return last.ce.getElementAttributes().getLastAccessTime();
+    }
+
+    /**
+     * Returns the accumulated weight of the elements in memory. This is always 0 unless the
+     * region is bounded by MaxMemoryBytes.
+     * <p>
+     * @return the bytes used by the elements in memory
+     */
+    public synchronized long getBytesUsed()
+    {
+        return bytesUsed;
     }
 
     // --------------------------- internal methods (linked list implementation)
@@ -733,6 +858,11 @@ public abstract class AbstractDoubleLinkedListMemoryCache<K extends Serializable
         se.setData( "" + missCnt );
         elems.add( se );
 
+        se = new StatElement();
+        se.setName( "Bytes Used" );
+        se.setData( "" + bytesUsed );
+        elems.add( se );
+
         // get an array and put them in the Stats object
         IStatElement[] ses = elems.toArray( new StatElement[0] );
         stats.setStatElements( ses );
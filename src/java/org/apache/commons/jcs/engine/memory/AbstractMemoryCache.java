@@ -37,9 +37,11 @@ import org.apache.commons.jcs.engine.behavior.IRequireScheduler;
 import org.apache.commons.jcs.engine.control.CompositeCache;
 import org.apache.commons.jcs.engine.control.group.GroupAttrName;
 import org.apache.commons.jcs.engine.control.group.GroupId;
+import org.apache.commons.jcs.engine.memory.behavior.IElementWeigher;
 import org.apache.commons.jcs.engine.memory.behavior.IMemoryCache;
 import org.apache.commons.jcs.engine.memory.shrinking.ShrinkerThread;
 import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
+import org.apache.commons.jcs.engine.memory.util.SerializedSizeWeigher;
 import org.apache.commons.jcs.engine.stats.Stats;
 import org.apache.commons.jcs.engine.stats.behavior.IStats;
 import org.apache.commons.logging.Log;
@@ -81,6 +83,9 @@ public abstract class AbstractMemoryCache<K extends Serializable, V extends Seri
     /** How many to spool at a time. */
     protected int chunkSize;
 
+    /** Weighs elements when the region is bounded by weight, otherwise null. */
+    protected volatile IElementWeigher<K, V> weigher;
+
     /**
      * For post reflection creation initialization
      * <p>
@@ -94,9 +99,56 @@ public abstract class AbstractMemoryCache<K extends Serializable, V extends Seri
         map = createMap();
 
         chunkSize = cacheAttributes.getSpoolChunkSize();
+        if ( cacheAttributes.getMaxMemoryBytes() > 0 )
+        {
+            weigher = createWeigher( cacheAttributes );
+        }
         status = CacheStatus.ALIVE;
     }
 
+    /**
+     * Creates the weigher configured for the region. This is only called if the region is bounded
+     * by MaxMemoryBytes or draws from a memory budget, since weighing costs a serialization per put.
+     * <p>
+     * @param cattr
+     * @return the configured weigher, or the serialized size weigher
+     */
+    protected IElementWeigher<K, V> createWeigher( ICompositeCacheAttributes cattr )
+    {
+        String className = cattr.getElementWeigherClassName();
+        if ( className != null )
+        {
+            try
+            {
+                @SuppressWarnings("unchecked") // Need cast
+                IElementWeigher<K, V> newInstance =
+                    (IElementWeigher<K, V>) Class.forName( className.trim() ).newInstance();
+                return newInstance;
+            }
+            catch ( Exception e )
+            {
+                log.warn( "Failed to create weigher [" + className + "], using: SerializedSizeWeigher", e );
+            }
+        }
+
+        return new SerializedSizeWeigher<K, V>();
+    }
+
+    /**
+     * Weighs the element with the region's weigher.
+     * <p>
+     * @param ce
+     * @return the weight, or 0 if the region is not bounded by weight
+     */
+    protected long weigh( ICacheElement<K, V> ce )
+    {
+        if ( weigher == null )
+        {
+            return 0;
+        }
+        return Math.max( 0, weigher.weigh( ce ) );
+    }
+
     /**
      * @see org.apache.commons.jcs.engine.behavior.IRequireScheduler#setScheduledExecutorService(java.util.concurrent.ScheduledExecutorService)
      */
@@ -104,8 +156,13 @@ public abstract class AbstractMemoryCache<K extends Serializable, V extends Seri
     {
         if ( cacheAttributes.isUseMemoryShrinker() )
         {
+            ShrinkerThread<K, V> shrinker = cache != null ? cache.getTimerWheelShrinker() : null;
+            if ( shrinker == null || cache.getMemoryCache() != this )
+            {
+                shrinker = new ShrinkerThread<K, V>(this);
+            }
             scheduledExecutor.scheduleAtFixedRate(
-                    new ShrinkerThread<K, V>(this), 0, cacheAttributes.getShrinkerIntervalSeconds(),
+                    shrinker, 0, cacheAttributes.getShrinkerIntervalSeconds(),
                     TimeUnit.SECONDS);
         }
     }
@@ -0,0 +1,362 @@
+package org.apache.commons.jcs.engine.memory;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.jcs.engine.behavior.IRequireScheduler;
+import org.apache.commons.jcs.engine.memory.behavior.IBudgetedMemoryCache;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A memory budget shared by all the regions of a cache manager.
+ * <p>
+ * Instead of tuning MaxObjects for every region, the regions register their memory caches with
+ * the budget and report the weight of the elements they hold. When the total exceeds
+ * MaxMemoryBytes the globally coldest elements, judged by the last access time of the element
+ * each region would spool next, are spooled until the total is back under the limit. Hot regions
+ * can so grow at the expense of idle ones.
+ * <p>
+ * Enforcement never runs on the thread that put the element, since that thread may hold the lock
+ * of its own region. It is scheduled on the manager's scheduler as soon as the budget is exceeded
+ * and also runs every CheckIntervalSeconds. The total may therefore exceed the budget for a short
+ * time.
+ */
+public class MemoryBudget
+    implements Runnable, IRequireScheduler
+{
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( MemoryBudget.class );
+
+    /** By default the budget is checked every 5 seconds in addition to when it is exceeded. */
+    private static final long DEFAULT_CHECK_INTERVAL_SECONDS = 5;
+
+    /** The maximum accumulated weight of the elements in memory over all regions. */
+    private volatile long maxMemoryBytes = -1;
+
+    /** How often the budget is checked regardless of puts. */
+    private long checkIntervalSeconds = DEFAULT_CHECK_INTERVAL_SECONDS;
+
+    /** The accumulated weight of the elements in memory over all regions. */
+    private final AtomicLong bytesUsed = new AtomicLong();
+
+    /** The number of elements spooled to enforce the budget. */
+    private final AtomicLong spoolCount = new AtomicLong();
+
+    /** Whether an enforcement has been scheduled and not yet started. */
+    private final AtomicBoolean enforcementPending = new AtomicBoolean();
+
+    /** The registered memory caches. */
+    private final Set<IBudgetedMemoryCache<?, ?>> caches = new CopyOnWriteArraySet<IBudgetedMemoryCache<?, ?>>();
+
+    /** Runs the enforcement, null until injected. */
+    private volatile ScheduledExecutorService scheduledExecutor;
+
+    /**
+     * Registers a memory cache with the budget.
+     * <p>
+     * @param cache
+     */
+    public void register( IBudgetedMemoryCache<?, ?> cache )
+    {
+        if ( caches.add( cache ) )
+        {
+            cache.setMemoryBudget( this );
+        }
+    }
+
+    /**
+     * Removes a memory cache from the budget, for instance when its region is freed. The weight
+     * it holds is released.
+     * <p>
+     * @param cache
+     */
+    public void deregister( IBudgetedMemoryCache<?, ?> cache )
+    {
+        if ( caches.remove( cache ) )
+        {
+            cache.setMemoryBudget( null );
+        }
+    }
+
+    /**
+     * Called by the registered caches whenever their accumulated weight changes. If the budget
+     * is exceeded an enforcement is scheduled.
+     * <p>
+     * @param delta the change in bytes
+     */
+    public void adjust( long delta )
+    {
+        long used = bytesUsed.addAndGet( delta );
+        long max = maxMemoryBytes;
+        if ( delta > 0 && max > 0 && used > max )
+        {
+            requestEnforcement();
+        }
+    }
+
+    /**
+     * Schedules an enforcement unless one is already pending.
+     */
+    private void requestEnforcement()
+    {
+        ScheduledExecutorService executor = scheduledExecutor;
+        if ( executor != null && enforcementPending.compareAndSet( false, true ) )
+        {
+            try
+            {
+                executor.execute( this );
+            }
+            catch ( RejectedExecutionException e )
+            {
+                // shutting down, the periodic check is gone as well
+                enforcementPending.set( false );
+            }
+        }
+    }
+
+    /**
+     * Runs the check periodically and keeps the scheduler for the enforcements triggered by puts.
+     * <p>
+     * @see org.apache.commons.jcs.engine.behavior.IRequireScheduler#setScheduledExecutorService(java.util.concurrent.ScheduledExecutorService)
+     */
+    public void setScheduledExecutorService( ScheduledExecutorService scheduledExecutor )
+    {
+        this.scheduledExecutor = scheduledExecutor;
+        if ( checkIntervalSeconds > 0 )
+        {
+            scheduledExecutor.scheduleWithFixedDelay( this, checkIntervalSeconds, checkIntervalSeconds,
+                                                      TimeUnit.SECONDS );
+        }
+    }
+
+    /**
+     * Enforces the budget.
+     * <p>
+     * @see java.lang.Runnable#run()
+     */
+    public void run()
+    {
+        // clear first, so that puts during the enforcement can schedule another one
+        enforcementPending.set( false );
+        try
+        {
+            enforce();
+        }
+        catch ( RuntimeException e )
+        {
+            log.error( "Problem enforcing the memory budget", e );
+        }
+    }
+
+    /**
+     * Spools the globally coldest elements until the accumulated weight is back under the budget.
+     * The next candidate of every region is kept in a priority queue ordered by last access time,
+     * so each spool costs a logarithmic number of comparisons in the number of regions.
+     * <p>
+     * @return the number of elements spooled
+     */
+    public synchronized int enforce()
+    {
+        long max = maxMemoryBytes;
+        if ( max <= 0 || bytesUsed.get() <= max )
+        {
+            return 0;
+        }
+
+        PriorityQueue<Candidate> queue = new PriorityQueue<Candidate>();
+        for ( IBudgetedMemoryCache<?, ?> cache : caches )
+        {
+            long accessTime = cache.getColdestAccessTime();
+            if ( accessTime >= 0 )
+            {
+                queue.add( new Candidate( cache, accessTime ) );
+            }
+        }
+
+        int spooled = 0;
+        while ( bytesUsed.get() > max && !queue.isEmpty() )
+        {
+            Candidate candidate = queue.poll();
+            try
+            {
+                if ( candidate.cache.freeElements( 1 ) == 0 )
+                {
+                    continue;
+                }
+            }
+            catch ( IOException e )
+            {
+                log.warn( "Could not free element in " + candidate.cache.getCompositeCache().getCacheName(), e );
+                continue;
+            }
+
+            spooled++;
+            long accessTime = candidate.cache.getColdestAccessTime();
+            if ( accessTime >= 0 )
+            {
+                candidate.accessTime = accessTime;
+                queue.add( candidate );
+            }
+        }
+
+        spoolCount.addAndGet( spooled );
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "Spooled " + spooled + " elements, bytes used: " + bytesUsed.get() + ", max bytes: " + max );
+        }
+        return spooled;
+    }
+
+    /**
+     * @return the accumulated weight of the elements in memory over all regions
+     */
+    public long getBytesUsed()
+    {
+        return bytesUsed.get();
+    }
+
+    /**
+     * @return the maximum accumulated weight, -1 for none
+     */
+    public long getMaxMemoryBytes()
+    {
+        return maxMemoryBytes;
+    }
+
+    /**
+     * @param maxMemoryBytes the maximum accumulated weight, -1 for none
+     */
+    public void setMaxMemoryBytes( long maxMemoryBytes )
+    {
+        this.maxMemoryBytes = maxMemoryBytes;
+    }
+
+    /**
+     * @return how often the budget is checked regardless of puts
+     */
+    public long getCheckIntervalSeconds()
+    {
+        return checkIntervalSeconds;
+    }
+
+    /**
+     * Must be set before the scheduler is injected.
+     * <p>
+     * @param checkIntervalSeconds how often the budget is checked regardless of puts, 0 for never
+     */
+    public void setCheckIntervalSeconds( long checkIntervalSeconds )
+    {
+        this.checkIntervalSeconds = checkIntervalSeconds;
+    }
+
+    /**
+     * @return the number of elements spooled to enforce the budget
+     */
+    public long getSpoolCount()
+    {
+        return spoolCount.get();
+    }
+
+    /**
+     * @return statistics about the budget
+     */
+    public IStats getStatistics()
+    {
+        IStats stats = new Stats();
+        stats.setTypeName( "Memory Budget" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        IStatElement se = null;
+
+        se = new StatElement();
+        se.setName( "Max Memory Bytes" );
+        se.setData( "" + maxMemoryBytes );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Bytes Used" );
+        se.setData( "" + bytesUsed.get() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Regions" );
+        se.setData( "" + caches.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Spool Count" );
+        se.setData( "" + spoolCount.get() );
+        elems.add( se );
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+
+    /**
+     * The next element a region would spool, ordered by last access time.
+     */
+    private static class Candidate
+        implements Comparable<Candidate>
+    {
+        /** The region's memory cache */
+        final IBudgetedMemoryCache<?, ?> cache;
+
+        /** Last access time of its coldest element */
+        long accessTime;
+
+        /**
+         * @param cache
+         * @param accessTime
+         */
+        Candidate( IBudgetedMemoryCache<?, ?> cache, long accessTime )
+        {
+            this.cache = cache;
+            this.accessTime = accessTime;
+        }
+
+        /**
+         * @param other
+         * @return older first
+         */
+        public int compareTo( Candidate other )
+        {
+            return accessTime < other.accessTime ? -1 : ( accessTime == other.accessTime ? 0 : 1 );
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package org.apache.commons.jcs.engine.memory.arc;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.jcs.engine.CacheConstants;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.memory.AbstractMemoryCache;
+import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.jcs.utils.struct.DoubleLinkedList;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An adaptive replacement cache. ARC is a hybrid of LRU and LFU that adapts to the workload
+ * without tuning and resists scans.
+ * <p>
+ * The cache keeps four lists. T1 holds elements that have been used once recently, T2 elements
+ * that have been used at least twice. B1 and B2 are ghost lists: they hold only the keys of
+ * elements recently spooled from T1 and T2. A put for a key found in B1 means T1 was too small,
+ * so the target size of T1 grows; a put for a key found in B2 makes it shrink. Elements are
+ * spooled from T1 or T2 depending on whether T1 is over its target.
+ * <p>
+ * T1 and T2 together hold at most MaxObjects elements. T1 and B1 together hold at most
+ * MaxObjects keys, and all four lists at most twice MaxObjects, so the ghost lists are bounded by
+ * key count. Since the memory cache only sees puts of elements that were found elsewhere, a get
+ * of a ghost key counts as a miss and the adaptation happens on the following put.
+ * <p>
+ * All operations are constant time and synchronized on the cache, like the other memory caches.
+ * <p>
+ * @see "N. Megiddo, D. Modha: ARC: A Self-Tuning, Low Overhead Replacement Cache. FAST 2003"
+ */
+public class ARCMemoryCache<K extends Serializable, V extends Serializable>
+    extends AbstractMemoryCache<K, V>
+{
+    /** Don't change. */
+    private static final long serialVersionUID = -1803475493591744938L;
+
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( ARCMemoryCache.class );
+
+    /** id of list T1 */
+    protected static final int _T1_ = 1;
+
+    /** id of list T2 */
+    protected static final int _T2_ = 2;
+
+    /** id of list B1 */
+    protected static final int _B1_ = 3;
+
+    /** id of list B2 */
+    protected static final int _B2_ = 4;
+
+    /** Elements used once recently. */
+    private DoubleLinkedList<ARCElementDescriptor<K, V>> t1;
+
+    /** Elements used at least twice recently. */
+    private DoubleLinkedList<ARCElementDescriptor<K, V>> t2;
+
+    /** Keys recently spooled from T1. */
+    private DoubleLinkedList<ARCElementDescriptor<K, V>> b1;
+
+    /** Keys recently spooled from T2. */
+    private DoubleLinkedList<ARCElementDescriptor<K, V>> b2;
+
+    /** The descriptors of the ghost keys in B1 and B2. Resident elements are in the map. */
+    private Map<K, ARCElementDescriptor<K, V>> ghosts;
+
+    /** The maximum number of elements, MaxObjects. */
+    private int maxSize;
+
+    /** The target size of T1. */
+    private int targetT1;
+
+    /** number of hits */
+    private int hitCnt = 0;
+
+    /** number of misses */
+    private int missCnt = 0;
+
+    /** number of puts */
+    private int putCnt = 0;
+
+    /**
+     * For post reflection creation initialization.
+     * <p>
+     * @param hub
+     */
+    @Override
+    public synchronized void initialize( CompositeCache<K, V> hub )
+    {
+        super.initialize( hub );
+        t1 = new DoubleLinkedList<ARCElementDescriptor<K, V>>();
+        t2 = new DoubleLinkedList<ARCElementDescriptor<K, V>>();
+        b1 = new DoubleLinkedList<ARCElementDescriptor<K, V>>();
+        b2 = new DoubleLinkedList<ARCElementDescriptor<K, V>>();
+        ghosts = new HashMap<K, ARCElementDescriptor<K, V>>();
+        maxSize = Math.max( 0, cacheAttributes.getMaxObjects() );
+        targetT1 = maxSize / 2;
+        log.info( "initialized ARCMemoryCache for " + cacheName );
+    }
+
+    /**
+     * @return new Hashtable()
+     */
+    @Override
+    public Map<K, MemoryElementDescriptor<K, V>> createMap()
+    {
+        return new Hashtable<K, MemoryElementDescriptor<K, V>>();
+    }
+
+    /**
+     * Gets an element. A hit moves the element to the front of T2.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    public synchronized ICacheElement<K, V> get( K key )
+        throws IOException
+    {
+        ARCElementDescriptor<K, V> node = node( map.get( key ) );
+        if ( node == null )
+        {
+            missCnt++;
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( cacheName + ": ARCMemoryCache miss for " + key );
+            }
+            return null;
+        }
+
+        hitCnt++;
+        node.ce.getElementAttributes().setLastAccessTimeNow();
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": ARCMemoryCache hit for " + key );
+        }
+
+        if ( node.listNum == _T1_ )
+        {
+            t1.remove( node );
+            node.listNum = _T2_;
+            t2.addFirst( node );
+        }
+        else
+        {
+            t2.makeFirst( node );
+        }
+
+        return node.ce;
+    }
+
+    /**
+     * Puts an element. A new key goes to the front of T1. A key that is resident or in one of the
+     * ghost lists goes to the front of T2, since it has been used twice.
+     * <p>
+     * @param ce
+     * @throws IOException
+     */
+    @Override
+    public void update( ICacheElement<K, V> ce )
+        throws IOException
+    {
+        ce.getElementAttributes().setLastAccessTimeNow();
+
+        synchronized ( this )
+        {
+            putCnt++;
+            K key = ce.getKey();
+
+            ARCElementDescriptor<K, V> old = node( map.get( key ) );
+            if ( old != null )
+            {
+                // a resident element, replace it
+                list( old.listNum ).remove( old );
+                addResident( ce, _T2_ );
+                return;
+            }
+
+            ARCElementDescriptor<K, V> ghost = ghosts.remove( key );
+            if ( ghost != null )
+            {
+                boolean inB2 = ghost.listNum == _B2_;
+                if ( inB2 )
+                {
+                    // B2 hit, favor frequency
+                    targetT1 = Math.max( targetT1 - Math.max( b1.size() / Math.max( 1, b2.size() ), 1 ), 0 );
+                    b2.remove( ghost );
+                }
+                else
+                {
+                    // B1 hit, favor recency
+                    targetT1 = Math.min( targetT1 + Math.max( b2.size() / Math.max( 1, b1.size() ), 1 ), maxSize );
+                    b1.remove( ghost );
+                }
+                replace( inB2 );
+                addResident( ce, _T2_ );
+                return;
+            }
+
+            // a new key
+            if ( maxSize == 0 )
+            {
+                cache.spoolToDisk( ce );
+                return;
+            }
+
+            if ( t1.size() + b1.size() >= maxSize )
+            {
+                if ( t1.size() < maxSize )
+                {
+                    removeGhost( b1.getLast() );
+                    replace( false );
+                }
+                else
+                {
+                    // B1 is empty, drop the end of T1 without keeping its key
+                    spool( t1.getLast(), false );
+                }
+            }
+            else if ( t1.size() + t2.size() + b1.size() + b2.size() >= maxSize )
+            {
+                if ( t1.size() + t2.size() + b1.size() + b2.size() >= 2 * maxSize )
+                {
+                    removeGhost( b2.getLast() );
+                }
+                replace( false );
+            }
+            addResident( ce, _T1_ );
+        }
+    }
+
+    /**
+     * Spools the end of T1 or T2 to make room, if the cache is full. T1 gives up an element if it
+     * is over its target.
+     * <p>
+     * @param inB2 whether the key being put was found in B2
+     */
+    private void replace( boolean inB2 )
+    {
+        if ( t1.size() + t2.size() < maxSize )
+        {
+            // there is room, for instance after removals
+            return;
+        }
+
+        int sizeT1 = t1.size();
+        if ( sizeT1 > 0 && ( sizeT1 > targetT1 || ( inB2 && sizeT1 == targetT1 ) || t2.size() == 0 ) )
+        {
+            spool( t1.getLast(), true );
+        }
+        else if ( t2.size() > 0 )
+        {
+            spool( t2.getLast(), true );
+        }
+    }
+
+    /**
+     * Removes a resident element, hands it to the region for spooling and, if asked, remembers its
+     * key in the matching ghost list.
+     * <p>
+     * @param node a node in T1 or T2
+     * @param keepGhost whether to remember the key
+     */
+    private void spool( ARCElementDescriptor<K, V> node, boolean keepGhost )
+    {
+        list( node.listNum ).remove( node );
+        map.remove( node.key );
+
+        if ( keepGhost )
+        {
+            // a fresh node, so the ghost does not hold on to the value
+            int ghostList = node.listNum == _T1_ ? _B1_ : _B2_;
+            ARCElementDescriptor<K, V> ghost = new ARCElementDescriptor<K, V>( null, node.key, ghostList );
+            list( ghostList ).addFirst( ghost );
+            ghosts.put( node.key, ghost );
+        }
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": Spooling element, key: " + node.key );
+        }
+        cache.spoolToDisk( node.ce );
+    }
+
+    /**
+     * Forgets a ghost key.
+     * <p>
+     * @param ghost a node in B1 or B2, may be null
+     */
+    private void removeGhost( ARCElementDescriptor<K, V> ghost )
+    {
+        if ( ghost != null )
+        {
+            list( ghost.listNum ).remove( ghost );
+            ghosts.remove( ghost.key );
+        }
+    }
+
+    /**
+     * Adds an element to the front of T1 or T2.
+     * <p>
+     * @param ce
+     * @param listNum
+     */
+    private void addResident( ICacheElement<K, V> ce, int listNum )
+    {
+        ARCElementDescriptor<K, V> node = new ARCElementDescriptor<K, V>( ce, ce.getKey(), listNum );
+        list( listNum ).addFirst( node );
+        map.put( ce.getKey(), node );
+    }
+
+    /**
+     * Removes an item from the cache. This method handles hierarchical removal. If the key is a
+     * String and ends with the CacheConstants.NAME_COMPONENT_DELIMITER, then all items with keys
+     * starting with the argument String will be removed. Matching ghost keys are forgotten as
+     * well.
+     * <p>
+     * @param key
+     * @return true if a resident element was removed
+     * @throws IOException
+     */
+    @Override
+    public synchronized boolean remove( K key )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "removing item for key: " + key );
+        }
+
+        boolean removed = false;
+
+        if ( ( key instanceof String && ( (String) key ).endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+            || key instanceof GroupAttrName )
+        {
+            for (Iterator<Map.Entry<K, MemoryElementDescriptor<K, V>>> itr = map.entrySet().iterator(); itr.hasNext(); )
+            {
+                Map.Entry<K, MemoryElementDescriptor<K, V>> entry = itr.next();
+                if ( matches( entry.getKey(), key ) )
+                {
+                    ARCElementDescriptor<K, V> node = node( entry.getValue() );
+                    list( node.listNum ).remove( node );
+                    itr.remove();
+                    removed = true;
+                }
+            }
+
+            for (Iterator<Map.Entry<K, ARCElementDescriptor<K, V>>> itr = ghosts.entrySet().iterator(); itr.hasNext(); )
+            {
+                Map.Entry<K, ARCElementDescriptor<K, V>> entry = itr.next();
+                if ( matches( entry.getKey(), key ) )
+                {
+                    list( entry.getValue().listNum ).remove( entry.getValue() );
+                    itr.remove();
+                }
+            }
+        }
+        else
+        {
+            // remove single item.
+            ARCElementDescriptor<K, V> node = node( map.remove( key ) );
+            if ( node != null )
+            {
+                list( node.listNum ).remove( node );
+                removed = true;
+            }
+            removeGhost( ghosts.get( key ) );
+        }
+
+        return removed;
+    }
+
+    /**
+     * Whether a key falls under a hierarchical or group removal.
+     * <p>
+     * @param k the key of an element
+     * @param key the key passed to remove
+     * @return true if the element should be removed
+     */
+    private boolean matches( K k, K key )
+    {
+        if ( key instanceof String )
+        {
+            return k instanceof String && ( (String) k ).startsWith( key.toString() );
+        }
+        return k instanceof GroupAttrName
+            && ( (GroupAttrName<?>) k ).groupId.equals( ( (GroupAttrName<?>) key ).groupId );
+    }
+
+    /**
+     * Removes all elements and forgets the ghost keys.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    public synchronized void removeAll()
+        throws IOException
+    {
+        map.clear();
+        ghosts.clear();
+        t1.removeAll();
+        t2.removeAll();
+        b1.removeAll();
+        b2.removeAll();
+    }
+
+    /**
+     * Spools elements from T1 if it is over its target, otherwise from T2. Their keys are kept in
+     * the ghost lists.
+     * <p>
+     * @param numberToFree
+     * @return the number that were spooled
+     * @throws IOException
+     */
+    public synchronized int freeElements( int numberToFree )
+        throws IOException
+    {
+        int freed = 0;
+        for ( ; freed < numberToFree; freed++ )
+        {
+            ARCElementDescriptor<K, V> victim;
+            if ( t1.size() > 0 && ( t1.size() > targetT1 || t2.size() == 0 ) )
+            {
+                victim = t1.getLast();
+            }
+            else
+            {
+                victim = t2.getLast();
+            }
+
+            if ( victim == null )
+            {
+                break;
+            }
+            spool( victim, true );
+        }
+        trimGhosts();
+        return freed;
+    }
+
+    /**
+     * Keeps the ghost lists within their bounds after elements were spooled outside of a put.
+     */
+    private void trimGhosts()
+    {
+        while ( t1.size() + b1.size() > maxSize && b1.size() > 0 )
+        {
+            removeGhost( b1.getLast() );
+        }
+        while ( t1.size() + t2.size() + b1.size() + b2.size() > 2 * maxSize && b2.size() > 0 )
+        {
+            removeGhost( b2.getLast() );
+        }
+    }
+
+    /**
+     * Get a set of the keys for all elements in the memory cache. Ghost keys are not included.
+     * <p>
+     * @return a copy of the key set
+     */
+    @Override
+    public synchronized Set<K> getKeySet()
+    {
+        return new LinkedHashSet<K>( map.keySet() );
+    }
+
+    /**
+     * @return statistics about the cache, including the size of each list
+     */
+    @Override
+    public synchronized IStats getStatistics()
+    {
+        IStats stats = new Stats();
+        stats.setTypeName( "ARC Memory Cache" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        IStatElement se = null;
+
+        se = new StatElement();
+        se.setName( "T1 Size" );
+        se.setData( "" + t1.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "T2 Size" );
+        se.setData( "" + t2.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "B1 Size" );
+        se.setData( "" + b1.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "B2 Size" );
+        se.setData( "" + b2.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Target T1 Size" );
+        se.setData( "" + targetT1 );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Map Size" );
+        se.setData( "" + map.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Put Count" );
+        se.setData( "" + putCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Hit Count" );
+        se.setData( "" + hitCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Miss Count" );
+        se.setData( "" + missCnt );
+        elems.add( se );
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+
+    /**
+     * At the start this will be 1/2 the max.
+     * <p>
+     * @return the target size of T1
+     */
+    protected synchronized int getTargetT1()
+    {
+        return targetT1;
+    }
+
+    /**
+     * Returns the size of the list.
+     * <p>
+     * @param listNumber
+     * @return -1 if the list is unknown.
+     */
+    protected synchronized int getListSize( int listNumber )
+    {
+        switch ( listNumber )
+        {
+            case _T1_:
+            case _T2_:
+            case _B1_:
+            case _B2_:
+                return list( listNumber ).size();
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @param listNum
+     * @return the list with the id
+     */
+    private DoubleLinkedList<ARCElementDescriptor<K, V>> list( int listNum )
+    {
+        switch ( listNum )
+        {
+            case _T1_:
+                return t1;
+            case _T2_:
+                return t2;
+            case _B1_:
+                return b1;
+            default:
+                return b2;
+        }
+    }
+
+    /**
+     * All descriptors in the map are created by this class.
+     * <p>
+     * @param me
+     * @return the descriptor with its list id
+     */
+    private ARCElementDescriptor<K, V> node( MemoryElementDescriptor<K, V> me )
+    {
+        return (ARCElementDescriptor<K, V>) me;
+    }
+
+    /**
+     * A descriptor that knows which list it is in. Ghost descriptors have no element, only a key.
+     */
+    private static class ARCElementDescriptor<K extends Serializable, V extends Serializable>
+        extends MemoryElementDescriptor<K, V>
+    {
+        /** Don't change */
+        private static final long serialVersionUID = -6271920830449238031L;
+
+        /** Its key */
+        final K key;
+
+        /** Where this is located, guarded by the cache */
+        int listNum;
+
+        /**
+         * @param ce the element, null for a ghost
+         * @param key
+         * @param listNum
+         */
+        ARCElementDescriptor( ICacheElement<K, V> ce, K key, int listNum )
+        {
+            super( ce );
+            this.key = key;
+            this.listNum = listNum;
+        }
+    }
+}
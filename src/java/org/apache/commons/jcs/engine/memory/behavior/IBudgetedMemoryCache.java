@@ -0,0 +1,57 @@
+package org.apache.commons.jcs.engine.memory.behavior;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+
+import org.apache.commons.jcs.engine.memory.MemoryBudget;
+
+/**
+ * A memory cache that can draw from a MemoryBudget shared by all regions of a cache manager.
+ * <p>
+ * The cache reports changes of its accumulated weight to the budget. When the budget is exceeded
+ * it asks the caches for the last access time of the element they would spool next and frees
+ * the globally coldest elements first.
+ */
+public interface IBudgetedMemoryCache<K extends Serializable, V extends Serializable>
+    extends IMemoryCache<K, V>
+{
+    /**
+     * Sets the budget this cache draws from. The cache moves the weight it currently holds from
+     * the old budget, if any, to the new one.
+     * <p>
+     * @param budget the shared budget, or null to leave it
+     */
+    void setMemoryBudget( MemoryBudget budget );
+
+    /**
+     * Returns the accumulated weight of the elements in memory.
+     * <p>
+     * @return the bytes used by the elements in memory
+     */
+    long getBytesUsed();
+
+    /**
+     * Returns the last access time of the element that would be spooled next.
+     * <p>
+     * @return the last access time in milliseconds, or -1 if the cache is empty
+     */
+    long getColdestAccessTime();
+}
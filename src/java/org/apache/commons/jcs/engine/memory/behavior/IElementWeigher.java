@@ -0,0 +1,43 @@
+package org.apache.commons.jcs.engine.memory.behavior;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+
+/**
+ * Weighs cache elements for memory caches that are bounded by MaxMemoryBytes rather than only by
+ * the number of elements.
+ * <p>
+ * The weight of an element is computed once, when it is put into the memory cache, so it should
+ * not depend on state that changes while the element is in memory. Implementations must be
+ * thread safe and have a public no-argument constructor.
+ */
+public interface IElementWeigher<K extends Serializable, V extends Serializable>
+{
+    /**
+     * Returns the weight of the element, normally an estimate of its size in bytes.
+     * <p>
+     * @param ce the element to weigh
+     * @return the weight, never negative
+     */
+    long weigh( ICacheElement<K, V> ce );
+}
@@ -0,0 +1,510 @@
+package org.apache.commons.jcs.engine.memory.lru;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.jcs.engine.CacheConstants;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.memory.AbstractMemoryCache;
+import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.jcs.utils.struct.DoubleLinkedList;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An LRU memory cache without a cache wide monitor. The keys are partitioned by hash into a
+ * number of segments, each with its own LRU list and its own lock, so gets and puts on different
+ * segments do not contend. The map is a ConcurrentHashMap, so misses, quiet gets and the size do
+ * not lock at all.
+ * <p>
+ * Each segment holds at most its share of MaxObjects and spools its own least recently used
+ * element when it is full. The order is therefore only least recently used within a segment, which
+ * is close to the order of the LRUMemoryCache as long as the keys hash evenly. To keep the
+ * segments from getting too small, there is one segment per MIN_SEGMENT_SIZE elements, up to
+ * twice the number of processors rounded up to a power of two, and at most MAX_SEGMENTS.
+ * <p>
+ * freeElements, used by the shrinker and the memory budget, spools the oldest tail among the
+ * segments, so it frees elements in the global LRU order.
+ */
+public class ConcurrentLRUMemoryCache<K extends Serializable, V extends Serializable>
+    extends AbstractMemoryCache<K, V>
+{
+    /** Don't change. */
+    private static final long serialVersionUID = 3402937424526318471L;
+
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( ConcurrentLRUMemoryCache.class );
+
+    /** The most segments a region is split into. */
+    public static final int MAX_SEGMENTS = 64;
+
+    /** The fewest elements a segment should hold. */
+    public static final int MIN_SEGMENT_SIZE = 32;
+
+    /** The segments, the length is a power of two. */
+    private Segment<K, V>[] segments;
+
+    /** Mask to pick a segment from a hash. */
+    private int segmentMask;
+
+    /** number of hits */
+    private final AtomicInteger hitCnt = new AtomicInteger();
+
+    /** number of misses */
+    private final AtomicInteger missCnt = new AtomicInteger();
+
+    /** number of puts */
+    private final AtomicInteger putCnt = new AtomicInteger();
+
+    /**
+     * For post reflection creation initialization.
+     * <p>
+     * @param hub
+     */
+    @Override
+    @SuppressWarnings("unchecked") // No generic arrays in java
+    public synchronized void initialize( CompositeCache<K, V> hub )
+    {
+        super.initialize( hub );
+
+        int maxObjects = Math.max( 0, cacheAttributes.getMaxObjects() );
+        int count = segmentCount( maxObjects, Runtime.getRuntime().availableProcessors() );
+
+        segments = new Segment[count];
+        int segmentSize = ( maxObjects + count - 1 ) / count;
+        for ( int i = 0; i < count; i++ )
+        {
+            segments[i] = new Segment<K, V>( segmentSize );
+        }
+        segmentMask = count - 1;
+
+        log.info( "initialized ConcurrentLRUMemoryCache for " + cacheName + " with " + count + " segments" );
+    }
+
+    /**
+     * Works out how many segments to use.
+     * <p>
+     * @param maxObjects the size of the region
+     * @param processors the number of processors
+     * @return a power of two between 1 and MAX_SEGMENTS
+     */
+    protected static int segmentCount( int maxObjects, int processors )
+    {
+        int count = 1;
+        while ( count < MAX_SEGMENTS && count < processors * 2 && ( count * 2 ) * MIN_SEGMENT_SIZE <= maxObjects )
+        {
+            count *= 2;
+        }
+        return count;
+    }
+
+    /**
+     * @return new ConcurrentHashMap()
+     */
+    @Override
+    public Map<K, MemoryElementDescriptor<K, V>> createMap()
+    {
+        return new ConcurrentHashMap<K, MemoryElementDescriptor<K, V>>();
+    }
+
+    /**
+     * @param key
+     * @return the segment that owns the key
+     */
+    private Segment<K, V> segmentFor( Object key )
+    {
+        int h = key.hashCode();
+        // spread the high bits, the segments use the low ones
+        h ^= ( h >>> 20 ) ^ ( h >>> 12 );
+        h ^= ( h >>> 7 ) ^ ( h >>> 4 );
+        return segments[h & segmentMask];
+    }
+
+    /**
+     * Gets an element. A miss does not lock, a hit locks only the segment of the key to move the
+     * element to the front of its list.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    public ICacheElement<K, V> get( K key )
+        throws IOException
+    {
+        MemoryElementDescriptor<K, V> me = map.get( key );
+        if ( me != null )
+        {
+            Segment<K, V> segment = segmentFor( key );
+            synchronized ( segment )
+            {
+                // it may have been removed or replaced since we looked
+                if ( map.get( key ) == me )
+                {
+                    segment.list.makeFirst( me );
+                }
+            }
+
+            hitCnt.incrementAndGet();
+            me.ce.getElementAttributes().setLastAccessTimeNow();
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( cacheName + ": ConcurrentLRUMemoryCache hit for " + key );
+            }
+            return me.ce;
+        }
+
+        missCnt.incrementAndGet();
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": ConcurrentLRUMemoryCache miss for " + key );
+        }
+        return null;
+    }
+
+    /**
+     * Puts an element at the front of the list of its segment. If the segment is full, its least
+     * recently used element is spooled.
+     * <p>
+     * @param ce
+     * @throws IOException
+     */
+    @Override
+    public void update( ICacheElement<K, V> ce )
+        throws IOException
+    {
+        putCnt.incrementAndGet();
+        ce.getElementAttributes().setLastAccessTimeNow();
+
+        K key = ce.getKey();
+        MemoryElementDescriptor<K, V> me = new MemoryElementDescriptor<K, V>( ce );
+        Segment<K, V> segment = segmentFor( key );
+
+        synchronized ( segment )
+        {
+            segment.list.addFirst( me );
+            MemoryElementDescriptor<K, V> old = map.put( key, me );
+            if ( old != null )
+            {
+                segment.list.remove( old );
+            }
+
+            while ( segment.list.size() > segment.maxSize )
+            {
+                spool( segment, segment.list.getLast() );
+            }
+        }
+    }
+
+    /**
+     * Removes the element from its segment and hands it to the region for spooling. The caller
+     * must hold the lock of the segment.
+     * <p>
+     * @param segment
+     * @param me the element to spool
+     */
+    private void spool( Segment<K, V> segment, MemoryElementDescriptor<K, V> me )
+    {
+        segment.list.remove( me );
+        map.remove( me.ce.getKey() );
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": Spooling element, key: " + me.ce.getKey() );
+        }
+        cache.spoolToDisk( me.ce );
+    }
+
+    /**
+     * Removes an item from the cache. This method handles hierarchical removal. If the key is a
+     * String and ends with the CacheConstants.NAME_COMPONENT_DELIMITER, then all items with keys
+     * starting with the argument String will be removed.
+     * <p>
+     * @param key
+     * @return true if an element was removed
+     * @throws IOException
+     */
+    @Override
+    public boolean remove( K key )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "removing item for key: " + key );
+        }
+
+        boolean removed = false;
+
+        if ( ( key instanceof String && ( (String) key ).endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+            || key instanceof GroupAttrName )
+        {
+            for (Iterator<Map.Entry<K, MemoryElementDescriptor<K, V>>> itr = map.entrySet().iterator(); itr.hasNext(); )
+            {
+                Map.Entry<K, MemoryElementDescriptor<K, V>> entry = itr.next();
+                if ( matches( entry.getKey(), key ) )
+                {
+                    removed |= remove( entry.getKey(), entry.getValue() );
+                }
+            }
+        }
+        else
+        {
+            // remove single item.
+            Segment<K, V> segment = segmentFor( key );
+            synchronized ( segment )
+            {
+                MemoryElementDescriptor<K, V> me = map.remove( key );
+                if ( me != null )
+                {
+                    segment.list.remove( me );
+                    removed = true;
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes the element if it is still the one mapped to the key.
+     * <p>
+     * @param key
+     * @param me
+     * @return true if it was removed
+     */
+    private boolean remove( K key, MemoryElementDescriptor<K, V> me )
+    {
+        Segment<K, V> segment = segmentFor( key );
+        synchronized ( segment )
+        {
+            if ( map.remove( key, me ) )
+            {
+                segment.list.remove( me );
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a key falls under a hierarchical or group removal.
+     * <p>
+     * @param k the key of an element
+     * @param key the key passed to remove
+     * @return true if the element should be removed
+     */
+    private boolean matches( K k, K key )
+    {
+        if ( key instanceof String )
+        {
+            return k instanceof String && ( (String) k ).startsWith( key.toString() );
+        }
+        return k instanceof GroupAttrName
+            && ( (GroupAttrName<?>) k ).groupId.equals( ( (GroupAttrName<?>) key ).groupId );
+    }
+
+    /**
+     * Removes all elements, one segment at a time.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    public void removeAll()
+        throws IOException
+    {
+        for ( Segment<K, V> segment : segments )
+        {
+            synchronized ( segment )
+            {
+                MemoryElementDescriptor<K, V> me;
+                while ( ( me = segment.list.removeLast() ) != null )
+                {
+                    map.remove( me.ce.getKey(), me );
+                }
+            }
+        }
+    }
+
+    /**
+     * Spools the least recently used elements. Each round spools the tail of the segment whose
+     * tail was accessed longest ago.
+     * <p>
+     * @param numberToFree
+     * @return the number that were spooled
+     * @throws IOException
+     */
+    public int freeElements( int numberToFree )
+        throws IOException
+    {
+        int freed = 0;
+        for ( ; freed < numberToFree; freed++ )
+        {
+            Segment<K, V> oldest = null;
+            long oldestTime = Long.MAX_VALUE;
+            for ( Segment<K, V> segment : segments )
+            {
+                MemoryElementDescriptor<K, V> last = segment.list.getLast();
+                if ( last != null )
+                {
+                    long time = last.ce.getElementAttributes().getLastAccessTime();
+                    if ( time < oldestTime )
+                    {
+                        oldest = segment;
+                        oldestTime = time;
+                    }
+                }
+            }
+
+            if ( oldest == null )
+            {
+                break;
+            }
+
+            synchronized ( oldest )
+            {
+                // the tail may have moved, spool whatever is last now
+                MemoryElementDescriptor<K, V> last = oldest.list.getLast();
+                if ( last == null )
+                {
+                    freed--;
+                    continue;
+                }
+                spool( oldest, last );
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Get a set of the keys for all elements in the memory cache.
+     * <p>
+     * @return a copy of the key set
+     */
+    @Override
+    public Set<K> getKeySet()
+    {
+        return new LinkedHashSet<K>( map.keySet() );
+    }
+
+    /**
+     * @return the number of segments
+     */
+    public int getSegmentCount()
+    {
+        return segments.length;
+    }
+
+    /**
+     * Adds up the sizes of the segment lists, for testing. They should match the map size when
+     * the cache is quiet.
+     * <p>
+     * @return the number of elements in the lists
+     */
+    protected int getListSize()
+    {
+        int size = 0;
+        for ( Segment<K, V> segment : segments )
+        {
+            size += segment.list.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return statistics about the cache
+     */
+    @Override
+    public IStats getStatistics()
+    {
+        IStats stats = new Stats();
+        stats.setTypeName( "Concurrent LRU Memory Cache" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        IStatElement se = null;
+
+        se = new StatElement();
+        se.setName( "Segments" );
+        se.setData( "" + segments.length );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Map Size" );
+        se.setData( "" + map.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Put Count" );
+        se.setData( "" + putCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Hit Count" );
+        se.setData( "" + hitCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Miss Count" );
+        se.setData( "" + missCnt );
+        elems.add( se );
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+
+    /**
+     * A part of the region with its own LRU list. The segment is its own lock.
+     */
+    private static final class Segment<K extends Serializable, V extends Serializable>
+    {
+        /** The elements of this segment, most recently used first. */
+        final DoubleLinkedList<MemoryElementDescriptor<K, V>> list =
+            new DoubleLinkedList<MemoryElementDescriptor<K, V>>();
+
+        /** The most elements this segment holds. */
+        final int maxSize;
+
+        /**
+         * @param maxSize
+         */
+        Segment( int maxSize )
+        {
+            this.maxSize = maxSize;
+        }
+    }
+}
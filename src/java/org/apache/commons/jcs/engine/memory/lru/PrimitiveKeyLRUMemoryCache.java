@@ -0,0 +1,717 @@
+package org.apache.commons.jcs.engine.memory.lru;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.memory.AbstractMemoryCache;
+import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An LRU memory cache for regions whose keys are Longs or Integers. It keeps no map entries,
+ * descriptors or list nodes. Each element sits in a slot of a few parallel arrays: the key as a
+ * long, the element, and the previous and next slot in the LRU list. The index is an open
+ * addressing hash table of slot numbers with linear probing. Per element this costs a few words
+ * in arrays instead of three objects.
+ * <p>
+ * The arrays start small and double as the region fills, up to MaxObjects. Removed slots are
+ * reused. All access is synchronized on the cache, like the LRUMemoryCache.
+ * <p>
+ * Any other kind of key is rejected by update with an IllegalArgumentException, so group and
+ * hierarchical removal never match anything. The region is bounded by MaxObjects only.
+ */
+public class PrimitiveKeyLRUMemoryCache<K extends Serializable, V extends Serializable>
+    extends AbstractMemoryCache<K, V>
+{
+    /** Don't change. */
+    private static final long serialVersionUID = -1938476236512839471L;
+
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( PrimitiveKeyLRUMemoryCache.class );
+
+    /** The number of slots allocated at first. */
+    private static final int INITIAL_SLOTS = 16;
+
+    /** Marks the end of the LRU list and of the free list. */
+    private static final int NONE = -1;
+
+    /** The most elements held, from MaxObjects. */
+    private int maxObjects;
+
+    /** The key of each slot. */
+    private long[] keys;
+
+    /** The element of each slot, null if free. */
+    private ICacheElement<K, V>[] elements;
+
+    /** The slot used more recently than each slot. */
+    private int[] prev;
+
+    /** The slot used less recently than each slot, or the next free slot. */
+    private int[] next;
+
+    /** The most recently used slot. */
+    private int head = NONE;
+
+    /** The least recently used slot. */
+    private int tail = NONE;
+
+    /** The first free slot below used. */
+    private int free = NONE;
+
+    /** The number of slots ever handed out. Slots from here on are free. */
+    private int used;
+
+    /** The number of elements. */
+    private int size;
+
+    /** The index. Each entry is a slot plus one, 0 means empty. */
+    private int[] table;
+
+    /** The index length minus one. */
+    private int mask;
+
+    /** number of hits */
+    private int hitCnt;
+
+    /** number of misses */
+    private int missCnt;
+
+    /** number of puts */
+    private int putCnt;
+
+    /**
+     * For post reflection creation initialization.
+     * <p>
+     * @param hub
+     */
+    @Override
+    public synchronized void initialize( CompositeCache<K, V> hub )
+    {
+        super.initialize( hub );
+        maxObjects = Math.max( 0, cacheAttributes.getMaxObjects() );
+        allocate( Math.min( INITIAL_SLOTS, Math.max( 1, maxObjects ) ) );
+        log.info( "initialized PrimitiveKeyLRUMemoryCache for " + cacheName );
+    }
+
+    /**
+     * The elements are not kept in a map.
+     * <p>
+     * @return an empty map
+     */
+    @Override
+    public Map<K, MemoryElementDescriptor<K, V>> createMap()
+    {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Allocates empty arrays.
+     * <p>
+     * @param slots
+     */
+    @SuppressWarnings("unchecked") // No generic arrays in java
+    private void allocate( int slots )
+    {
+        keys = new long[slots];
+        elements = new ICacheElement[slots];
+        prev = new int[slots];
+        next = new int[slots];
+        table = new int[tableSize( slots )];
+        mask = table.length - 1;
+        head = NONE;
+        tail = NONE;
+        free = NONE;
+        used = 0;
+        size = 0;
+    }
+
+    /**
+     * @param slots
+     * @return a power of two at least twice the number of slots
+     */
+    private static int tableSize( int slots )
+    {
+        int n = 2;
+        while ( n < slots * 2 )
+        {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * Doubles the slot arrays, up to maxObjects, and rebuilds the index.
+     */
+    @SuppressWarnings("unchecked") // No generic arrays in java
+    private void grow()
+    {
+        int slots = (int) Math.min( (long) keys.length * 2, Math.max( 1, maxObjects ) );
+
+        long[] newKeys = new long[slots];
+        System.arraycopy( keys, 0, newKeys, 0, used );
+        ICacheElement<K, V>[] newElements = new ICacheElement[slots];
+        System.arraycopy( elements, 0, newElements, 0, used );
+        int[] newPrev = new int[slots];
+        System.arraycopy( prev, 0, newPrev, 0, used );
+        int[] newNext = new int[slots];
+        System.arraycopy( next, 0, newNext, 0, used );
+
+        keys = newKeys;
+        elements = newElements;
+        prev = newPrev;
+        next = newNext;
+
+        table = new int[tableSize( slots )];
+        mask = table.length - 1;
+        for ( int slot = 0; slot < used; slot++ )
+        {
+            if ( elements[slot] != null )
+            {
+                int i = hash( keys[slot] ) & mask;
+                while ( table[i] != 0 )
+                {
+                    i = ( i + 1 ) & mask;
+                }
+                table[i] = slot + 1;
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @return true if the key can be stored
+     */
+    private static boolean isPrimitiveKey( Object key )
+    {
+        return key instanceof Long || key instanceof Integer;
+    }
+
+    /**
+     * @param key a Long or an Integer
+     * @return the value as a long
+     */
+    private static long toLong( Object key )
+    {
+        return ( (Number) key ).longValue();
+    }
+
+    /**
+     * @param k
+     * @return a well mixed hash of the key
+     */
+    private static int hash( long k )
+    {
+        long h = k * 0x9E3779B97F4A7C15L;
+        return (int) ( h ^ ( h >>> 32 ) );
+    }
+
+    /**
+     * Looks up the position of a key in the index. An Integer and a Long with the same value are
+     * different keys.
+     * <p>
+     * @param key
+     * @return the position in the table, or -1 if absent
+     */
+    private int indexOf( Object key )
+    {
+        long k = toLong( key );
+        int i = hash( k ) & mask;
+        int entry;
+        while ( ( entry = table[i] ) != 0 )
+        {
+            int slot = entry - 1;
+            if ( keys[slot] == k && elements[slot].getKey().equals( key ) )
+            {
+                return i;
+            }
+            i = ( i + 1 ) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Clears a position in the index and moves later entries of the same run back, so lookups
+     * never need tombstones.
+     * <p>
+     * @param pos
+     */
+    private void deleteIndex( int pos )
+    {
+        int hole = pos;
+        int i = pos;
+        table[hole] = 0;
+        while ( true )
+        {
+            i = ( i + 1 ) & mask;
+            int entry = table[i];
+            if ( entry == 0 )
+            {
+                return;
+            }
+            int home = hash( keys[entry - 1] ) & mask;
+            // move the entry if its home is not between the hole and its position
+            boolean move = hole <= i ? ( home <= hole || home > i ) : ( home <= hole && home > i );
+            if ( move )
+            {
+                table[hole] = entry;
+                table[i] = 0;
+                hole = i;
+            }
+        }
+    }
+
+    /**
+     * Takes a slot out of the LRU list.
+     * <p>
+     * @param slot
+     */
+    private void unlink( int slot )
+    {
+        int p = prev[slot];
+        int n = next[slot];
+        if ( p == NONE )
+        {
+            head = n;
+        }
+        else
+        {
+            next[p] = n;
+        }
+        if ( n == NONE )
+        {
+            tail = p;
+        }
+        else
+        {
+            prev[n] = p;
+        }
+    }
+
+    /**
+     * Puts a slot at the front of the LRU list.
+     * <p>
+     * @param slot
+     */
+    private void linkFirst( int slot )
+    {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if ( head == NONE )
+        {
+            tail = slot;
+        }
+        else
+        {
+            prev[head] = slot;
+        }
+        head = slot;
+    }
+
+    /**
+     * Frees a slot whose position in the index is known.
+     * <p>
+     * @param pos the position in the index
+     * @return the element that was in the slot
+     */
+    private ICacheElement<K, V> removeAt( int pos )
+    {
+        int slot = table[pos] - 1;
+        ICacheElement<K, V> ce = elements[slot];
+        deleteIndex( pos );
+        unlink( slot );
+        elements[slot] = null;
+        next[slot] = free;
+        free = slot;
+        size--;
+        return ce;
+    }
+
+    /**
+     * Removes the least recently used element and hands it to the region for spooling.
+     */
+    private void spoolLast()
+    {
+        ICacheElement<K, V> ce = removeAt( indexOf( elements[tail].getKey() ) );
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": Spooling element, key: " + ce.getKey() );
+        }
+        cache.spoolToDisk( ce );
+    }
+
+    /**
+     * Gets an element and makes it the most recently used.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    public synchronized ICacheElement<K, V> get( K key )
+        throws IOException
+    {
+        int pos = isPrimitiveKey( key ) ? indexOf( key ) : -1;
+        if ( pos < 0 )
+        {
+            missCnt++;
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( cacheName + ": PrimitiveKeyLRUMemoryCache miss for " + key );
+            }
+            return null;
+        }
+
+        int slot = table[pos] - 1;
+        if ( slot != head )
+        {
+            unlink( slot );
+            linkFirst( slot );
+        }
+
+        hitCnt++;
+        ICacheElement<K, V> ce = elements[slot];
+        ce.getElementAttributes().setLastAccessTimeNow();
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": PrimitiveKeyLRUMemoryCache hit for " + key );
+        }
+        return ce;
+    }
+
+    /**
+     * Gets an element without changing its position or last access time.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    public synchronized ICacheElement<K, V> getQuiet( K key )
+        throws IOException
+    {
+        int pos = isPrimitiveKey( key ) ? indexOf( key ) : -1;
+        return pos < 0 ? null : elements[table[pos] - 1];
+    }
+
+    /**
+     * Puts an element first in the list. If the region is full, the least recently used element
+     * is spooled.
+     * <p>
+     * @param ce
+     * @throws IOException
+     * @throws IllegalArgumentException if the key is not a Long or an Integer
+     */
+    @Override
+    public synchronized void update( ICacheElement<K, V> ce )
+        throws IOException
+    {
+        K key = ce.getKey();
+        if ( !isPrimitiveKey( key ) )
+        {
+            throw new IllegalArgumentException( cacheName + ": PrimitiveKeyLRUMemoryCache only takes Long or Integer keys, not "
+                + ( key == null ? null : key.getClass().getName() ) );
+        }
+
+        putCnt++;
+        ce.getElementAttributes().setLastAccessTimeNow();
+
+        int pos = indexOf( key );
+        if ( pos >= 0 )
+        {
+            int slot = table[pos] - 1;
+            elements[slot] = ce;
+            if ( slot != head )
+            {
+                unlink( slot );
+                linkFirst( slot );
+            }
+            return;
+        }
+
+        if ( maxObjects == 0 )
+        {
+            cache.spoolToDisk( ce );
+            return;
+        }
+
+        while ( size >= maxObjects )
+        {
+            spoolLast();
+        }
+
+        int slot;
+        if ( free != NONE )
+        {
+            slot = free;
+            free = next[slot];
+        }
+        else
+        {
+            if ( used == keys.length )
+            {
+                grow();
+            }
+            slot = used++;
+        }
+
+        long k = toLong( key );
+        keys[slot] = k;
+        elements[slot] = ce;
+        linkFirst( slot );
+
+        int i = hash( k ) & mask;
+        while ( table[i] != 0 )
+        {
+            i = ( i + 1 ) & mask;
+        }
+        table[i] = slot + 1;
+        size++;
+    }
+
+    /**
+     * Removes an element. Keys that are not Longs or Integers are never stored, so group and
+     * hierarchical removes find nothing.
+     * <p>
+     * @param key
+     * @return true if an element was removed
+     * @throws IOException
+     */
+    @Override
+    public synchronized boolean remove( K key )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "removing item for key: " + key );
+        }
+
+        int pos = isPrimitiveKey( key ) ? indexOf( key ) : -1;
+        if ( pos < 0 )
+        {
+            return false;
+        }
+        removeAt( pos );
+        return true;
+    }
+
+    /**
+     * Removes all elements and gives the arrays back.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    public synchronized void removeAll()
+        throws IOException
+    {
+        allocate( Math.min( INITIAL_SLOTS, Math.max( 1, maxObjects ) ) );
+    }
+
+    /**
+     * Spools the least recently used elements.
+     * <p>
+     * @param numberToFree
+     * @return the number that were spooled
+     * @throws IOException
+     */
+    public synchronized int freeElements( int numberToFree )
+        throws IOException
+    {
+        int freed = 0;
+        while ( freed < numberToFree && tail != NONE )
+        {
+            spoolLast();
+            freed++;
+        }
+        return freed;
+    }
+
+    /**
+     * @return the number of elements
+     */
+    @Override
+    public synchronized int getSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of slots allocated
+     */
+    public synchronized int getCapacity()
+    {
+        return keys.length;
+    }
+
+    /**
+     * Gets the keys, most recently used first.
+     * <p>
+     * @return a copy of the key set
+     */
+    @Override
+    public synchronized Set<K> getKeySet()
+    {
+        Set<K> keySet = new LinkedHashSet<K>();
+        for ( int slot = head; slot != NONE; slot = next[slot] )
+        {
+            keySet.add( elements[slot].getKey() );
+        }
+        return keySet;
+    }
+
+    /**
+     * Iterates over a snapshot of the elements, most recently used first. Removing through the
+     * iterator does not change the cache.
+     * <p>
+     * @return an iterator over the snapshot
+     */
+    @Override
+    public synchronized Iterator<Map.Entry<K, MemoryElementDescriptor<K, V>>> getIterator()
+    {
+        Map<K, MemoryElementDescriptor<K, V>> snapshot = new LinkedHashMap<K, MemoryElementDescriptor<K, V>>();
+        for ( int slot = head; slot != NONE; slot = next[slot] )
+        {
+            snapshot.put( elements[slot].getKey(), new MemoryElementDescriptor<K, V>( elements[slot] ) );
+        }
+        return snapshot.entrySet().iterator();
+    }
+
+    /**
+     * Group keys are not Longs or Integers, so there are none.
+     * <p>
+     * @param groupName
+     * @return an empty set
+     */
+    @Override
+    public Set<K> getGroupKeys( String groupName )
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Group keys are not Longs or Integers, so there are none.
+     * <p>
+     * @return an empty set
+     */
+    @Override
+    public Set<String> getGroupNames()
+    {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Dump the cache entries from first to last for debugging.
+     */
+    @Override
+    public synchronized void dumpMap()
+    {
+        log.debug( "dumpingMap" );
+        for ( int slot = head; slot != NONE; slot = next[slot] )
+        {
+            log.debug( "dumpMap> key=" + elements[slot].getKey() + ", val=" + elements[slot].getVal() );
+        }
+    }
+
+    /**
+     * Counts the slots reachable through the index and through the list, for testing. Both
+     * should equal the size.
+     * <p>
+     * @return the two counts
+     */
+    protected synchronized int[] verifyCounts()
+    {
+        int indexed = 0;
+        for ( int entry : table )
+        {
+            if ( entry != 0 && indexOf( elements[entry - 1].getKey() ) >= 0 )
+            {
+                indexed++;
+            }
+        }
+        int listed = 0;
+        for ( int slot = head; slot != NONE; slot = next[slot] )
+        {
+            listed++;
+        }
+        return new int[] { indexed, listed };
+    }
+
+    /**
+     * @return statistics about the cache
+     */
+    @Override
+    public synchronized IStats getStatistics()
+    {
+        IStats stats = new Stats();
+        stats.setTypeName( "Primitive Key LRU Memory Cache" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        IStatElement se = null;
+
+        se = new StatElement();
+        se.setName( "List Size" );
+        se.setData( "" + size );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Slots" );
+        se.setData( "" + keys.length );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Put Count" );
+        se.setData( "" + putCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Hit Count" );
+        se.setData( "" + hitCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Miss Count" );
+        se.setData( "" + missCnt );
+        elems.add( se );
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+}
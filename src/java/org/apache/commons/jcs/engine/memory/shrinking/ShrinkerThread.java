@@ -31,6 +31,7 @@ import org.apache.commons.jcs.engine.control.event.behavior.ElementEventType;
 import org.apache.commons.jcs.engine.control.event.behavior.IElementEvent;
 import org.apache.commons.jcs.engine.control.event.behavior.IElementEventHandler;
 import org.apache.commons.jcs.engine.memory.behavior.IMemoryCache;
+import org.apache.commons.jcs.utils.timing.CacheClock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -46,16 +47,16 @@ public class ShrinkerThread<K extends Serializable, V extends Serializable>
     private final static Log log = LogFactory.getLog( ShrinkerThread.class );
 
     /** The MemoryCache instance which this shrinker is watching */
-    private final IMemoryCache<K, V> cache;
+    protected final IMemoryCache<K, V> cache;
 
     /** Maximum memory idle time for the whole cache */
-    private final long maxMemoryIdleTime;
+    protected final long maxMemoryIdleTime;
 
     /** Maximum number of items to spool per run. Default is -1, or no limit. */
-    private final int maxSpoolPerRun;
+    protected final int maxSpoolPerRun;
 
     /** Should we limit the number spooled per run. If so, the maxSpoolPerRun will be used. */
-    private boolean spoolLimit = false;
+    protected boolean spoolLimit = false;
 
     /**
      * Constructor for the ShrinkerThread object.
@@ -147,7 +148,7 @@ public class ShrinkerThread<K extends Serializable, V extends Serializable>
 
                 boolean remove = false;
 
-                long now = System.currentTimeMillis();
+                long now = CacheClock.currentTimeMillis();
 
                 // If the element is not eternal, check if it should be
                 // removed and remove it if so.
@@ -239,9 +240,10 @@ public class ShrinkerThread<K extends Serializable, V extends Serializable>
 
         final long maxLifeSeconds = attributes.getMaxLifeSeconds();
         final long createTime = attributes.getCreateTime();
+        final long maxLife = getMaxLife( attributes );
 
         // Check if maxLifeSeconds has been exceeded
-        if ( maxLifeSeconds != -1 && now - createTime > maxLifeSeconds * 1000 )
+        if ( maxLifeSeconds != -1 && now - createTime > maxLife )
         {
             if ( log.isInfoEnabled() )
             {
@@ -272,6 +274,25 @@ public class ShrinkerThread<K extends Serializable, V extends Serializable>
         return false;
     }
 
+    /**
+     * The time after creation at which an element is removed.
+     * <p>
+     * @param attributes the attributes of the element
+     * @return MaxLifeSeconds in milliseconds, plus MaxStaleSeconds if the region can refresh
+     */
+    protected long getMaxLife( IElementAttributes attributes )
+    {
+        long maxLife = attributes.getMaxLifeSeconds() * 1000;
+
+        // Leave stale elements alone while the region can refresh them
+        if ( attributes.getMaxStaleSeconds() > 0 && cache.getCompositeCache() != null
+            && cache.getCompositeCache().getCacheLoader() != null )
+        {
+            maxLife += attributes.getMaxStaleSeconds() * 1000;
+        }
+        return maxLife;
+    }
+
     /**
      * Handle any events registered for the given element of the given event type.
      * <p>
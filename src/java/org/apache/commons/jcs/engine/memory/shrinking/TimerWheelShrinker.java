@@ -0,0 +1,356 @@
+package org.apache.commons.jcs.engine.memory.shrinking;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.IElementAttributes;
+import org.apache.commons.jcs.engine.memory.behavior.IMemoryCache;
+import org.apache.commons.jcs.utils.struct.TimerWheel;
+import org.apache.commons.jcs.utils.timing.CacheClock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A memory shrinker that only looks at the elements that are due. The region schedules each
+ * element it puts in memory on a timing wheel, at the earliest time it could exceed its max life,
+ * its idle time or the region's MaxMemoryIdleTimeSeconds, and deschedules it when it is removed
+ * or spooled. Each run advances the wheel and applies the same checks as the ShrinkerThread to the
+ * elements that came due. Elements that were used in the meantime are scheduled again.
+ * <p>
+ * A run therefore costs time proportional to the number of elements due, not to the size of the
+ * region, and the memory cache is only locked for the elements that are removed. Elements removed
+ * through a hierarchical or group remove stay on the wheel until they are due and are then
+ * dropped.
+ * <p>
+ * Every put schedules its element, so the wheel is split by key hash into shards with a lock
+ * each. Puts of different keys rarely wait for each other, and a run only locks one shard at a
+ * time while it advances them.
+ */
+public class TimerWheelShrinker<K extends Serializable, V extends Serializable>
+    extends ShrinkerThread<K, V>
+{
+    /** The logger */
+    private final static Log log = LogFactory.getLog( TimerWheelShrinker.class );
+
+    /** The shards, by key hash. The length is a power of two. */
+    private final Shard<K, V>[] shards;
+
+    /**
+     * Constructor for the TimerWheelShrinker object. It uses twice as many shards as there are
+     * processors.
+     * <p>
+     * @param cache The MemoryCache which the new shrinker should watch.
+     */
+    @SuppressWarnings("unchecked") // No generic arrays in java
+    public TimerWheelShrinker( IMemoryCache<K, V> cache )
+    {
+        super( cache );
+
+        int count = 1;
+        while ( count < 2 * Runtime.getRuntime().availableProcessors() && count < 256 )
+        {
+            count <<= 1;
+        }
+
+        long now = CacheClock.currentTimeMillis();
+        this.shards = new Shard[count];
+        for ( int i = 0; i < count; i++ )
+        {
+            shards[i] = new Shard<K, V>( now );
+        }
+    }
+
+    /**
+     * Schedules an element that is being put in memory, replacing any earlier element for the key.
+     * <p>
+     * @param ce
+     */
+    public void schedule( ICacheElement<K, V> ce )
+    {
+        long deadline = getDeadline( ce );
+        Shard<K, V> shard = getShard( ce.getKey() );
+        synchronized ( shard )
+        {
+            TimerWheel.Node<ICacheElement<K, V>> old = shard.nodes.remove( ce.getKey() );
+            if ( old != null )
+            {
+                shard.wheel.deschedule( old );
+            }
+
+            if ( deadline != Long.MAX_VALUE )
+            {
+                shard.nodes.put( ce.getKey(), shard.wheel.schedule( ce, deadline ) );
+            }
+        }
+    }
+
+    /**
+     * Deschedules an element that left memory. Does nothing if a newer element was put for the key.
+     * <p>
+     * @param ce
+     */
+    public void deschedule( ICacheElement<K, V> ce )
+    {
+        Shard<K, V> shard = getShard( ce.getKey() );
+        synchronized ( shard )
+        {
+            TimerWheel.Node<ICacheElement<K, V>> node = shard.nodes.get( ce.getKey() );
+            if ( node != null && node.getValue() == ce )
+            {
+                shard.nodes.remove( ce.getKey() );
+                shard.wheel.deschedule( node );
+            }
+        }
+    }
+
+    /**
+     * Deschedules whatever element is scheduled for the key.
+     * <p>
+     * @param key
+     */
+    public void deschedule( K key )
+    {
+        Shard<K, V> shard = getShard( key );
+        synchronized ( shard )
+        {
+            TimerWheel.Node<ICacheElement<K, V>> node = shard.nodes.remove( key );
+            if ( node != null )
+            {
+                shard.wheel.deschedule( node );
+            }
+        }
+    }
+
+    /**
+     * Deschedules everything.
+     */
+    public void clear()
+    {
+        for ( Shard<K, V> shard : shards )
+        {
+            synchronized ( shard )
+            {
+                shard.nodes.clear();
+                shard.wheel.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements on the wheel
+     */
+    public int getScheduledCount()
+    {
+        int count = 0;
+        for ( Shard<K, V> shard : shards )
+        {
+            synchronized ( shard )
+            {
+                count += shard.wheel.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of shards the wheel is split into
+     */
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+
+    /**
+     * Gets the shard for a key.
+     * <p>
+     * @param key
+     * @return the shard
+     */
+    private Shard<K, V> getShard( Object key )
+    {
+        // spread the hash so keys differing only in the high bits land in different shards
+        int h = key.hashCode();
+        h ^= ( h >>> 20 ) ^ ( h >>> 12 );
+        h ^= ( h >>> 7 ) ^ ( h >>> 4 );
+        return shards[h & ( shards.length - 1 )];
+    }
+
+    /**
+     * Works out when an element should next be checked.
+     * <p>
+     * @param ce
+     * @return the earliest time it may have to be removed or spooled, or Long.MAX_VALUE if never
+     */
+    protected long getDeadline( ICacheElement<K, V> ce )
+    {
+        IElementAttributes attributes = ce.getElementAttributes();
+        long lastAccessTime = attributes.getLastAccessTime();
+        long deadline = Long.MAX_VALUE;
+
+        if ( !attributes.getIsEternal() )
+        {
+            if ( attributes.getMaxLifeSeconds() != -1 )
+            {
+                deadline = Math.min( deadline, attributes.getCreateTime() + getMaxLife( attributes ) + 1 );
+            }
+            if ( attributes.getIdleTime() != -1 )
+            {
+                deadline = Math.min( deadline, lastAccessTime + attributes.getIdleTime() * 1000 + 1 );
+            }
+        }
+
+        if ( maxMemoryIdleTime != -1 )
+        {
+            deadline = Math.min( deadline, lastAccessTime + maxMemoryIdleTime + 1 );
+        }
+
+        return deadline;
+    }
+
+    /**
+     * Checks the elements that are due now.
+     */
+    @Override
+    protected void shrink()
+    {
+        shrink( CacheClock.currentTimeMillis() );
+    }
+
+    /**
+     * Advances the wheel and checks the elements that came due. Elements that are neither removed
+     * nor spooled are scheduled again. If MaxSpoolPerRun is reached, the elements left to spool
+     * wait for the next run.
+     * <p>
+     * @param now the current time
+     */
+    protected void shrink( long now )
+    {
+        List<ICacheElement<K, V>> due = new ArrayList<ICacheElement<K, V>>();
+        for ( Shard<K, V> shard : shards )
+        {
+            synchronized ( shard )
+            {
+                for ( ICacheElement<K, V> ce : shard.wheel.advance( now ) )
+                {
+                    TimerWheel.Node<ICacheElement<K, V>> node = shard.nodes.get( ce.getKey() );
+                    if ( node != null && node.getValue() == ce )
+                    {
+                        shard.nodes.remove( ce.getKey() );
+                    }
+                    due.add( ce );
+                }
+            }
+        }
+
+        if ( log.isDebugEnabled() && cache.getCompositeCache() != null )
+        {
+            log.debug( "Shrinking memory cache for: " + cache.getCompositeCache().getCacheName() + ", due: "
+                + due.size() );
+        }
+
+        int spoolCount = 0;
+        for ( ICacheElement<K, V> ce : due )
+        {
+            try
+            {
+                if ( cache.getQuiet( ce.getKey() ) != ce )
+                {
+                    // replaced, removed or spooled since it was scheduled
+                    continue;
+                }
+
+                IElementAttributes attributes = ce.getElementAttributes();
+
+                if ( !attributes.getIsEternal() && checkForRemoval( ce, now ) )
+                {
+                    cache.remove( ce.getKey() );
+                    continue;
+                }
+
+                if ( maxMemoryIdleTime != -1 && attributes.getLastAccessTime() + maxMemoryIdleTime < now )
+                {
+                    if ( !spoolLimit || spoolCount < maxSpoolPerRun )
+                    {
+                        if ( log.isDebugEnabled() )
+                        {
+                            log.debug( "Exceeded memory idle time: " + ce.getKey() );
+                        }
+
+                        spoolCount++;
+                        cache.remove( ce.getKey() );
+                        cache.waterfal( ce );
+                        continue;
+                    }
+                }
+
+                reschedule( ce );
+            }
+            catch ( Throwable t )
+            {
+                log.info( "Unexpected trouble in shrink cycle", t );
+            }
+        }
+    }
+
+    /**
+     * Schedules an element again unless a newer one was put for its key in the meantime.
+     * <p>
+     * @param ce
+     */
+    private void reschedule( ICacheElement<K, V> ce )
+    {
+        long deadline = getDeadline( ce );
+        Shard<K, V> shard = getShard( ce.getKey() );
+        synchronized ( shard )
+        {
+            if ( !shard.nodes.containsKey( ce.getKey() ) && deadline != Long.MAX_VALUE )
+            {
+                shard.nodes.put( ce.getKey(), shard.wheel.schedule( ce, deadline ) );
+            }
+        }
+    }
+
+    /**
+     * A part of the wheel with the nodes of its keys. Guarded by itself.
+     */
+    private static class Shard<K extends Serializable, V extends Serializable>
+    {
+        /** The elements by deadline. */
+        final TimerWheel<ICacheElement<K, V>> wheel;
+
+        /** The node of each scheduled key. */
+        final Map<K, TimerWheel.Node<ICacheElement<K, V>>> nodes =
+            new HashMap<K, TimerWheel.Node<ICacheElement<K, V>>>();
+
+        /**
+         * @param now the current time
+         */
+        Shard( long now )
+        {
+            this.wheel = new TimerWheel<ICacheElement<K, V>>( now );
+        }
+    }
+}
@@ -0,0 +1,658 @@
+package org.apache.commons.jcs.engine.memory.soft;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.jcs.engine.CacheConstants;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.control.group.GroupId;
+import org.apache.commons.jcs.engine.memory.AbstractMemoryCache;
+import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.jcs.utils.struct.DoubleLinkedList;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A memory cache with two areas. The strict area is an LRU of at most MaxObjects elements held
+ * by strong references. Elements that fall off its end are not spooled but move to the reference
+ * area, where they are only held by soft references. The garbage collector clears those when it
+ * needs the memory, so the region can use spare heap as an elastic overflow without risking an
+ * OutOfMemoryError.
+ * <p>
+ * A hit in the reference area moves the element back to the front of the strict area. Cleared
+ * references are taken off a ReferenceQueue at the start of every operation and counted. An
+ * element the collector reclaimed is lost, unless SpoolSoftReferences is set. Then every element
+ * is written to disk when it moves to the reference area, so the disk already has it when the
+ * collector clears it. Otherwise it is removed from the disk of a swap region as it moves, so a
+ * get after the collector cleared it cannot find an older value there.
+ * <p>
+ * freeElements, used by the shrinker and the memory budget, empties the reference area first,
+ * oldest first, and then spools from the end of the strict area.
+ * <p>
+ * All access is synchronized on the cache, like the LRUMemoryCache.
+ */
+public class SoftReferenceMemoryCache<K extends Serializable, V extends Serializable>
+    extends AbstractMemoryCache<K, V>
+{
+    /** Don't change. */
+    private static final long serialVersionUID = 5281948473025461376L;
+
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( SoftReferenceMemoryCache.class );
+
+    /** The strict area, most recently used first. The map of the parent indexes it. */
+    private DoubleLinkedList<MemoryElementDescriptor<K, V>> list;
+
+    /** The reference area, in the order the elements moved there. */
+    private Map<K, Reference<ICacheElement<K, V>>> references;
+
+    /** Cleared references end up here. */
+    private transient ReferenceQueue<ICacheElement<K, V>> queue;
+
+    /** Whether elements are spooled as they move to the reference area. */
+    private boolean spoolOnDemote;
+
+    /** number of hits in the strict area */
+    private int hitCnt;
+
+    /** number of hits in the reference area */
+    private int referenceHitCnt;
+
+    /** number of misses */
+    private int missCnt;
+
+    /** number of puts */
+    private int putCnt;
+
+    /** number of elements the garbage collector reclaimed */
+    private int collectedCnt;
+
+    /**
+     * For post reflection creation initialization.
+     * <p>
+     * @param hub
+     */
+    @Override
+    public synchronized void initialize( CompositeCache<K, V> hub )
+    {
+        super.initialize( hub );
+        list = new DoubleLinkedList<MemoryElementDescriptor<K, V>>();
+        references = new LinkedHashMap<K, Reference<ICacheElement<K, V>>>();
+        queue = new ReferenceQueue<ICacheElement<K, V>>();
+        spoolOnDemote = cacheAttributes.isSpoolSoftReferences();
+        log.info( "initialized " + getClass().getName() + " for " + cacheName );
+    }
+
+    /**
+     * @return new Hashtable()
+     */
+    @Override
+    public Map<K, MemoryElementDescriptor<K, V>> createMap()
+    {
+        return new Hashtable<K, MemoryElementDescriptor<K, V>>();
+    }
+
+    /**
+     * Creates the reference that holds an element in the reference area.
+     * <p>
+     * @param ce
+     * @param refQueue
+     * @return a soft reference to the element
+     */
+    protected Reference<ICacheElement<K, V>> createReference( ICacheElement<K, V> ce,
+                                                              ReferenceQueue<ICacheElement<K, V>> refQueue )
+    {
+        return new KeyedSoftReference<K, V>( ce, refQueue );
+    }
+
+    /**
+     * Removes the references the garbage collector cleared. The caller must hold the lock.
+     */
+    @SuppressWarnings("unchecked") // only keyed references are put on the queue
+    private void drainQueue()
+    {
+        Reference<? extends ICacheElement<K, V>> ref;
+        while ( ( ref = queue.poll() ) != null )
+        {
+            K key = ( (KeyedReference<K>) ref ).getKey();
+            // a newer reference or a strict element may have replaced it
+            if ( references.get( key ) == ref )
+            {
+                references.remove( key );
+                collectedCnt++;
+                if ( log.isDebugEnabled() )
+                {
+                    log.debug( cacheName + ": element reclaimed by the garbage collector: " + key );
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the last element of the strict area to the reference area, spooling it first if so
+     * configured. Otherwise it is removed from disk, since the collector may clear it before it
+     * is spooled and the disk may hold an older value of the key.
+     */
+    private void demoteLast()
+    {
+        MemoryElementDescriptor<K, V> last = list.removeLast();
+        map.remove( last.ce.getKey() );
+        if ( spoolOnDemote )
+        {
+            cache.spoolToDisk( last.ce );
+        }
+        else
+        {
+            cache.removeFromDiskCaches( last.ce.getKey() );
+        }
+        references.put( last.ce.getKey(), createReference( last.ce, queue ) );
+    }
+
+    /**
+     * Puts an element at the front of the strict area and moves what no longer fits to the
+     * reference area.
+     * <p>
+     * @param ce
+     * @throws IOException
+     */
+    @Override
+    public synchronized void update( ICacheElement<K, V> ce )
+        throws IOException
+    {
+        drainQueue();
+        putCnt++;
+        ce.getElementAttributes().setLastAccessTimeNow();
+
+        addFirst( ce );
+    }
+
+    /**
+     * Adds an element to the front of the strict area, replacing any element for its key in
+     * either area. The caller must hold the lock.
+     * <p>
+     * @param ce
+     */
+    private void addFirst( ICacheElement<K, V> ce )
+    {
+        K key = ce.getKey();
+        Reference<ICacheElement<K, V>> ref = references.remove( key );
+        if ( ref != null )
+        {
+            ref.clear();
+        }
+
+        MemoryElementDescriptor<K, V> me = new MemoryElementDescriptor<K, V>( ce );
+        list.addFirst( me );
+        MemoryElementDescriptor<K, V> old = map.put( key, me );
+        if ( old != null )
+        {
+            list.remove( old );
+        }
+
+        int maxObjects = Math.max( 0, cacheAttributes.getMaxObjects() );
+        while ( list.size() > maxObjects )
+        {
+            demoteLast();
+        }
+    }
+
+    /**
+     * Gets an element. A hit in the reference area moves it back to the strict area.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    public synchronized ICacheElement<K, V> get( K key )
+        throws IOException
+    {
+        drainQueue();
+
+        MemoryElementDescriptor<K, V> me = map.get( key );
+        if ( me != null )
+        {
+            hitCnt++;
+            list.makeFirst( me );
+            me.ce.getElementAttributes().setLastAccessTimeNow();
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( cacheName + ": SoftReferenceMemoryCache hit for " + key );
+            }
+            return me.ce;
+        }
+
+        Reference<ICacheElement<K, V>> ref = references.get( key );
+        ICacheElement<K, V> ce = ref != null ? ref.get() : null;
+        if ( ce != null )
+        {
+            referenceHitCnt++;
+            ce.getElementAttributes().setLastAccessTimeNow();
+            addFirst( ce );
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( cacheName + ": SoftReferenceMemoryCache reference hit for " + key );
+            }
+            return ce;
+        }
+
+        if ( ref != null )
+        {
+            // cleared but not queued yet
+            references.remove( key );
+            collectedCnt++;
+        }
+
+        missCnt++;
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": SoftReferenceMemoryCache miss for " + key );
+        }
+        return null;
+    }
+
+    /**
+     * Gets an element from either area without moving it.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    public synchronized ICacheElement<K, V> getQuiet( K key )
+        throws IOException
+    {
+        MemoryElementDescriptor<K, V> me = map.get( key );
+        if ( me != null )
+        {
+            return me.ce;
+        }
+        Reference<ICacheElement<K, V>> ref = references.get( key );
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * Removes an element from either area. This handles hierarchical and group removal.
+     * <p>
+     * @param key
+     * @return true if an element was removed
+     * @throws IOException
+     */
+    @Override
+    public synchronized boolean remove( K key )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "removing item for key: " + key );
+        }
+
+        drainQueue();
+        boolean removed = false;
+
+        if ( ( key instanceof String && ( (String) key ).endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+            || key instanceof GroupAttrName )
+        {
+            for ( Iterator<Map.Entry<K, MemoryElementDescriptor<K, V>>> itr = map.entrySet().iterator(); itr.hasNext(); )
+            {
+                Map.Entry<K, MemoryElementDescriptor<K, V>> entry = itr.next();
+                if ( matches( entry.getKey(), key ) )
+                {
+                    list.remove( entry.getValue() );
+                    itr.remove();
+                    removed = true;
+                }
+            }
+            for ( Iterator<Map.Entry<K, Reference<ICacheElement<K, V>>>> itr = references.entrySet().iterator(); itr.hasNext(); )
+            {
+                Map.Entry<K, Reference<ICacheElement<K, V>>> entry = itr.next();
+                if ( matches( entry.getKey(), key ) )
+                {
+                    entry.getValue().clear();
+                    itr.remove();
+                    removed = true;
+                }
+            }
+        }
+        else
+        {
+            MemoryElementDescriptor<K, V> me = map.remove( key );
+            if ( me != null )
+            {
+                list.remove( me );
+                removed = true;
+            }
+            Reference<ICacheElement<K, V>> ref = references.remove( key );
+            if ( ref != null )
+            {
+                ref.clear();
+                removed = true;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Whether a key falls under a hierarchical or group removal.
+     * <p>
+     * @param k the key of an element
+     * @param key the key passed to remove
+     * @return true if the element should be removed
+     */
+    private boolean matches( K k, K key )
+    {
+        if ( key instanceof String )
+        {
+            return k instanceof String && ( (String) k ).startsWith( key.toString() );
+        }
+        return k instanceof GroupAttrName
+            && ( (GroupAttrName<?>) k ).groupId.equals( ( (GroupAttrName<?>) key ).groupId );
+    }
+
+    /**
+     * Removes all elements from both areas.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    public synchronized void removeAll()
+        throws IOException
+    {
+        list.removeAll();
+        map.clear();
+        for ( Reference<ICacheElement<K, V>> ref : references.values() )
+        {
+            ref.clear();
+        }
+        references.clear();
+        drainQueue();
+    }
+
+    /**
+     * Frees elements, first from the reference area, oldest first, then from the end of the
+     * strict area. They are spooled unless they already were when they moved to the reference
+     * area.
+     * <p>
+     * @param numberToFree
+     * @return the number that were freed
+     * @throws IOException
+     */
+    public synchronized int freeElements( int numberToFree )
+        throws IOException
+    {
+        drainQueue();
+
+        int freed = 0;
+        for ( Iterator<Reference<ICacheElement<K, V>>> itr = references.values().iterator(); freed < numberToFree
+            && itr.hasNext(); )
+        {
+            Reference<ICacheElement<K, V>> ref = itr.next();
+            itr.remove();
+            ICacheElement<K, V> ce = ref.get();
+            ref.clear();
+            if ( ce != null )
+            {
+                if ( !spoolOnDemote )
+                {
+                    cache.spoolToDisk( ce );
+                }
+                freed++;
+            }
+        }
+
+        while ( freed < numberToFree && list.size() > 0 )
+        {
+            MemoryElementDescriptor<K, V> last = list.removeLast();
+            map.remove( last.ce.getKey() );
+            cache.spoolToDisk( last.ce );
+            freed++;
+        }
+        return freed;
+    }
+
+    /**
+     * Counts the elements of both areas. References the collector cleared but did not queue yet
+     * may still be counted.
+     * <p>
+     * @return the number of elements
+     */
+    @Override
+    public synchronized int getSize()
+    {
+        drainQueue();
+        return map.size() + references.size();
+    }
+
+    /**
+     * @return the number of elements in the strict area
+     */
+    public synchronized int getStrictSize()
+    {
+        return list.size();
+    }
+
+    /**
+     * @return the number of elements in the reference area
+     */
+    public synchronized int getReferenceSize()
+    {
+        drainQueue();
+        return references.size();
+    }
+
+    /**
+     * @return the number of elements the garbage collector reclaimed
+     */
+    public synchronized int getCollectedCount()
+    {
+        drainQueue();
+        return collectedCnt;
+    }
+
+    /**
+     * Gets the keys of both areas, the strict area first.
+     * <p>
+     * @return a copy of the key set
+     */
+    @Override
+    public synchronized Set<K> getKeySet()
+    {
+        drainQueue();
+        Set<K> keys = new LinkedHashSet<K>( map.keySet() );
+        keys.addAll( references.keySet() );
+        return keys;
+    }
+
+    /**
+     * Iterates over a snapshot of the elements that are still reachable. Removing through the
+     * iterator does not change the cache.
+     * <p>
+     * @return an iterator over the snapshot
+     */
+    @Override
+    public synchronized Iterator<Map.Entry<K, MemoryElementDescriptor<K, V>>> getIterator()
+    {
+        Map<K, MemoryElementDescriptor<K, V>> snapshot = new LinkedHashMap<K, MemoryElementDescriptor<K, V>>( map );
+        for ( Map.Entry<K, Reference<ICacheElement<K, V>>> entry : references.entrySet() )
+        {
+            ICacheElement<K, V> ce = entry.getValue().get();
+            if ( ce != null )
+            {
+                snapshot.put( entry.getKey(), new MemoryElementDescriptor<K, V>( ce ) );
+            }
+        }
+        return snapshot.entrySet().iterator();
+    }
+
+    /**
+     * @param groupName
+     * @return group keys in either area
+     */
+    @Override
+    public Set<K> getGroupKeys( String groupName )
+    {
+        GroupId groupId = new GroupId( getCacheName(), groupName );
+        HashSet<K> keys = new HashSet<K>();
+        for ( K k : getKeySet() )
+        {
+            if ( k instanceof GroupAttrName && ( (GroupAttrName<K>) k ).groupId.equals( groupId ) )
+            {
+                keys.add( ( (GroupAttrName<K>) k ).attrName );
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return the group names in either area
+     */
+    @Override
+    public Set<String> getGroupNames()
+    {
+        HashSet<String> names = new HashSet<String>();
+        for ( K k : getKeySet() )
+        {
+            if ( k instanceof GroupAttrName )
+            {
+                names.add( ( (GroupAttrName<K>) k ).groupId.groupName );
+            }
+        }
+        return names;
+    }
+
+    /**
+     * @return statistics about the cache
+     */
+    @Override
+    public synchronized IStats getStatistics()
+    {
+        drainQueue();
+
+        IStats stats = new Stats();
+        stats.setTypeName( "Soft Reference Memory Cache" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        IStatElement se = null;
+
+        se = new StatElement();
+        se.setName( "List Size" );
+        se.setData( "" + list.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Reference Size" );
+        se.setData( "" + references.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Put Count" );
+        se.setData( "" + putCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Hit Count" );
+        se.setData( "" + hitCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Reference Hit Count" );
+        se.setData( "" + referenceHitCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Miss Count" );
+        se.setData( "" + missCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Collected Count" );
+        se.setData( "" + collectedCnt );
+        elems.add( se );
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+
+    /**
+     * A reference that remembers the key of its element, so it can be removed from the map once
+     * the collector clears it.
+     */
+    protected interface KeyedReference<K>
+    {
+        /**
+         * @return the key of the element
+         */
+        K getKey();
+    }
+
+    /**
+     * A soft reference to an element that knows its key.
+     */
+    protected static class KeyedSoftReference<K extends Serializable, V extends Serializable>
+        extends SoftReference<ICacheElement<K, V>>
+        implements KeyedReference<K>
+    {
+        /** The key of the element. */
+        private final K key;
+
+        /**
+         * @param ce
+         * @param refQueue
+         */
+        public KeyedSoftReference( ICacheElement<K, V> ce, ReferenceQueue<ICacheElement<K, V>> refQueue )
+        {
+            super( ce, refQueue );
+            this.key = ce.getKey();
+        }
+
+        /**
+         * @return the key of the element
+         */
+        public K getKey()
+        {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.apache.commons.jcs.engine.memory.soft;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+
+/**
+ * A SoftReferenceMemoryCache whose reference area holds the elements by weak references. The
+ * garbage collector clears those at its next cycle whether memory is short or not, so the
+ * reference area only keeps elements that are still in use elsewhere in the application.
+ */
+public class WeakReferenceMemoryCache<K extends Serializable, V extends Serializable>
+    extends SoftReferenceMemoryCache<K, V>
+{
+    /** Don't change. */
+    private static final long serialVersionUID = -4128373019475529163L;
+
+    /**
+     * @param ce
+     * @param refQueue
+     * @return a weak reference to the element
+     */
+    @Override
+    protected Reference<ICacheElement<K, V>> createReference( ICacheElement<K, V> ce,
+                                                              ReferenceQueue<ICacheElement<K, V>> refQueue )
+    {
+        return new KeyedWeakReference<K, V>( ce, refQueue );
+    }
+
+    /**
+     * A weak reference to an element that knows its key.
+     */
+    protected static class KeyedWeakReference<K extends Serializable, V extends Serializable>
+        extends WeakReference<ICacheElement<K, V>>
+        implements KeyedReference<K>
+    {
+        /** The key of the element. */
+        private final K key;
+
+        /**
+         * @param ce
+         * @param refQueue
+         */
+        public KeyedWeakReference( ICacheElement<K, V> ce, ReferenceQueue<ICacheElement<K, V>> refQueue )
+        {
+            super( ce, refQueue );
+            this.key = ce.getKey();
+        }
+
+        /**
+         * @return the key of the element
+         */
+        public K getKey()
+        {
+            return key;
+        }
+    }
+}
@@ -0,0 +1,566 @@
+package org.apache.commons.jcs.engine.memory.tinylfu;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.jcs.engine.CacheConstants;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.memory.AbstractMemoryCache;
+import org.apache.commons.jcs.engine.memory.util.MemoryElementDescriptor;
+import org.apache.commons.jcs.engine.stats.StatElement;
+import org.apache.commons.jcs.engine.stats.Stats;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.engine.stats.behavior.IStats;
+import org.apache.commons.jcs.utils.struct.DoubleLinkedList;
+import org.apache.commons.jcs.utils.struct.FrequencySketch;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A W-TinyLFU memory cache. It is scan resistant: a burst of elements that are used once, such
+ * as a nightly batch job reading through a region, does not flush the elements that are used
+ * often.
+ * <p>
+ * New elements enter a small LRU window of 1% of MaxObjects. Elements leaving the window are
+ * candidates for the main area, a segmented LRU with a probation segment and a protected segment
+ * of 80% of the main area. When the region is full, the candidate competes with the element at
+ * the end of the probation segment. The one that has been used less often recently, as estimated
+ * by a {@link FrequencySketch} of all gets and puts, is spooled. An element read while in
+ * probation moves to the protected segment; the protected segment overflows into probation.
+ * <p>
+ * All operations are constant time, the halving of the sketch being amortized over the puts and
+ * gets. Like the other memory caches, this one uses a single lock per region.
+ */
+public class TinyLFUMemoryCache<K extends Serializable, V extends Serializable>
+    extends AbstractMemoryCache<K, V>
+{
+    /** Don't change. */
+    private static final long serialVersionUID = 2474938417539712846L;
+
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( TinyLFUMemoryCache.class );
+
+    /** The share of MaxObjects used by the admission window, in percent. */
+    private static final int WINDOW_PERCENT = 1;
+
+    /** The share of the main area used by the protected segment, in percent. */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /** Elements that have recently entered the cache. */
+    private DoubleLinkedList<TinyLFUElementDescriptor<K, V>> window;
+
+    /** Elements of the main area that have not been read since they entered it. */
+    private DoubleLinkedList<TinyLFUElementDescriptor<K, V>> probation;
+
+    /** Elements of the main area that have been read since they entered it. */
+    private DoubleLinkedList<TinyLFUElementDescriptor<K, V>> protectedSegment;
+
+    /** Estimates the recent frequency of keys. */
+    private FrequencySketch sketch;
+
+    /** The maximum size of the window. */
+    private int maxWindow;
+
+    /** The maximum size of the protected segment. */
+    private int maxProtected;
+
+    /** number of hits */
+    private int hitCnt = 0;
+
+    /** number of misses */
+    private int missCnt = 0;
+
+    /** number of puts */
+    private int putCnt = 0;
+
+    /** number of candidates that lost against the probation victim */
+    private int rejectedCnt = 0;
+
+    /**
+     * For post reflection creation initialization.
+     * <p>
+     * @param hub
+     */
+    @Override
+    public synchronized void initialize( CompositeCache<K, V> hub )
+    {
+        super.initialize( hub );
+        window = new DoubleLinkedList<TinyLFUElementDescriptor<K, V>>();
+        probation = new DoubleLinkedList<TinyLFUElementDescriptor<K, V>>();
+        protectedSegment = new DoubleLinkedList<TinyLFUElementDescriptor<K, V>>();
+
+        int maxObjects = Math.max( 0, cacheAttributes.getMaxObjects() );
+        maxWindow = Math.max( 1, maxObjects * WINDOW_PERCENT / 100 );
+        maxProtected = (int) ( (long) Math.max( 0, maxObjects - maxWindow ) * PROTECTED_PERCENT / 100 );
+        sketch = new FrequencySketch( maxObjects );
+
+        log.info( "initialized TinyLFUMemoryCache for " + cacheName + ", window size " + maxWindow
+            + ", protected size " + maxProtected );
+    }
+
+    /**
+     * @return new Hashtable()
+     */
+    @Override
+    public Map<K, MemoryElementDescriptor<K, V>> createMap()
+    {
+        return new Hashtable<K, MemoryElementDescriptor<K, V>>();
+    }
+
+    /**
+     * Puts an element into the admission window and spools if the region is full.
+     * <p>
+     * @param ce
+     * @throws IOException
+     */
+    @Override
+    public void update( ICacheElement<K, V> ce )
+        throws IOException
+    {
+        ce.getElementAttributes().setLastAccessTimeNow();
+
+        synchronized ( this )
+        {
+            putCnt++;
+            K key = ce.getKey();
+            sketch.increment( key );
+
+            TinyLFUElementDescriptor<K, V> oldNode = node( map.get( key ) );
+            if ( oldNode != null )
+            {
+                // replace in place, the element keeps its segment
+                TinyLFUElementDescriptor<K, V> newNode = new TinyLFUElementDescriptor<K, V>( ce, oldNode.segment );
+                DoubleLinkedList<TinyLFUElementDescriptor<K, V>> list = segmentList( oldNode.segment );
+                list.remove( oldNode );
+                list.addFirst( newNode );
+                map.put( key, newNode );
+                return;
+            }
+
+            TinyLFUElementDescriptor<K, V> newNode = new TinyLFUElementDescriptor<K, V>( ce, TinyLFUElementDescriptor.WINDOW );
+            window.addFirst( newNode );
+            map.put( key, newNode );
+
+            TinyLFUElementDescriptor<K, V> candidate = null;
+            if ( window.size() > maxWindow )
+            {
+                candidate = window.removeLast();
+                candidate.segment = TinyLFUElementDescriptor.PROBATION;
+                probation.addFirst( candidate );
+            }
+
+            evictIfNeeded( candidate );
+        }
+    }
+
+    /**
+     * Spools until the region is within MaxObjects. The candidate that just left the window is
+     * compared with the end of the probation segment and the less frequent one is spooled.
+     * <p>
+     * @param candidate the element that just left the window, or null
+     */
+    private void evictIfNeeded( TinyLFUElementDescriptor<K, V> candidate )
+    {
+        int maxObjects = cacheAttributes.getMaxObjects();
+        while ( map.size() > maxObjects )
+        {
+            TinyLFUElementDescriptor<K, V> victim = probation.getLast();
+            if ( candidate != null && victim != null && victim != candidate )
+            {
+                // ties favor the element already in the main area
+                if ( sketch.frequency( candidate.ce.getKey() ) > sketch.frequency( victim.ce.getKey() ) )
+                {
+                    spool( victim );
+                }
+                else
+                {
+                    spool( candidate );
+                    rejectedCnt++;
+                    candidate = null;
+                }
+            }
+            else
+            {
+                TinyLFUElementDescriptor<K, V> next = nextVictim();
+                if ( next == null )
+                {
+                    break;
+                }
+                if ( next == candidate )
+                {
+                    candidate = null;
+                }
+                spool( next );
+            }
+        }
+    }
+
+    /**
+     * Returns the element to spool when there is no admission decision to make: the end of the
+     * probation segment, then of the window, then of the protected segment.
+     * <p>
+     * @return the victim, or null if the cache is empty
+     */
+    private TinyLFUElementDescriptor<K, V> nextVictim()
+    {
+        TinyLFUElementDescriptor<K, V> victim = probation.getLast();
+        if ( victim == null )
+        {
+            victim = window.getLast();
+        }
+        if ( victim == null )
+        {
+            victim = protectedSegment.getLast();
+        }
+        return victim;
+    }
+
+    /**
+     * Removes the element from memory and hands it to the region for spooling.
+     * <p>
+     * @param node
+     */
+    private void spool( TinyLFUElementDescriptor<K, V> node )
+    {
+        segmentList( node.segment ).remove( node );
+        map.remove( node.ce.getKey() );
+
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": Spooling element, key: " + node.ce.getKey() );
+        }
+        cache.spoolToDisk( node.ce );
+    }
+
+    /**
+     * Gets an element and records the access. An element in probation is promoted to the
+     * protected segment.
+     * <p>
+     * @param key
+     * @return the element or null
+     * @throws IOException
+     */
+    @Override
+    public synchronized ICacheElement<K, V> get( K key )
+        throws IOException
+    {
+        sketch.increment( key );
+
+        TinyLFUElementDescriptor<K, V> node = node( map.get( key ) );
+        if ( node == null )
+        {
+            missCnt++;
+            if ( log.isDebugEnabled() )
+            {
+                log.debug( cacheName + ": TinyLFUMemoryCache miss for " + key );
+            }
+            return null;
+        }
+
+        hitCnt++;
+        node.ce.getElementAttributes().setLastAccessTimeNow();
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( cacheName + ": TinyLFUMemoryCache hit for " + key );
+        }
+
+        switch ( node.segment )
+        {
+            case TinyLFUElementDescriptor.WINDOW:
+                window.makeFirst( node );
+                break;
+
+            case TinyLFUElementDescriptor.PROBATION:
+                probation.remove( node );
+                node.segment = TinyLFUElementDescriptor.PROTECTED;
+                protectedSegment.addFirst( node );
+                while ( protectedSegment.size() > maxProtected )
+                {
+                    TinyLFUElementDescriptor<K, V> demoted = protectedSegment.removeLast();
+                    demoted.segment = TinyLFUElementDescriptor.PROBATION;
+                    probation.addFirst( demoted );
+                }
+                break;
+
+            default:
+                protectedSegment.makeFirst( node );
+                break;
+        }
+
+        return node.ce;
+    }
+
+    /**
+     * Removes an item from the cache. This method handles hierarchical removal. If the key is a
+     * String and ends with the CacheConstants.NAME_COMPONENT_DELIMITER, then all items with keys
+     * starting with the argument String will be removed.
+     * <p>
+     * @param key
+     * @return true if the removal was successful
+     * @throws IOException
+     */
+    @Override
+    public synchronized boolean remove( K key )
+        throws IOException
+    {
+        if ( log.isDebugEnabled() )
+        {
+            log.debug( "removing item for key: " + key );
+        }
+
+        boolean removed = false;
+
+        // handle partial removal
+        if ( key instanceof String && ( (String) key ).endsWith( CacheConstants.NAME_COMPONENT_DELIMITER ) )
+        {
+            // remove all keys of the same name hierarchy.
+            for (Iterator<Map.Entry<K, MemoryElementDescriptor<K, V>>> itr = map.entrySet().iterator(); itr.hasNext(); )
+            {
+                Map.Entry<K, MemoryElementDescriptor<K, V>> entry = itr.next();
+                K k = entry.getKey();
+
+                if ( k instanceof String && ( (String) k ).startsWith( key.toString() ) )
+                {
+                    unlink( node( entry.getValue() ) );
+                    itr.remove();
+                    removed = true;
+                }
+            }
+        }
+        else if ( key instanceof GroupAttrName )
+        {
+            // remove all keys of the same name hierarchy.
+            for (Iterator<Map.Entry<K, MemoryElementDescriptor<K, V>>> itr = map.entrySet().iterator(); itr.hasNext(); )
+            {
+                Map.Entry<K, MemoryElementDescriptor<K, V>> entry = itr.next();
+                K k = entry.getKey();
+
+                if ( k instanceof GroupAttrName &&
+                    ((GroupAttrName<?>)k).groupId.equals(((GroupAttrName<?>)key).groupId))
+                {
+                    unlink( node( entry.getValue() ) );
+                    itr.remove();
+                    removed = true;
+                }
+            }
+        }
+        else
+        {
+            // remove single item.
+            TinyLFUElementDescriptor<K, V> node = node( map.remove( key ) );
+            if ( node != null )
+            {
+                unlink( node );
+                removed = true;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Removes all elements. The frequency estimates are kept.
+     * <p>
+     * @throws IOException
+     */
+    @Override
+    public synchronized void removeAll()
+        throws IOException
+    {
+        map.clear();
+        window.removeAll();
+        probation.removeAll();
+        protectedSegment.removeAll();
+    }
+
+    /**
+     * Spools elements in the order they would be evicted when the region is full.
+     * <p>
+     * @param numberToFree
+     * @return the number that were spooled
+     * @throws IOException
+     */
+    public synchronized int freeElements( int numberToFree )
+        throws IOException
+    {
+        int freed = 0;
+        for ( ; freed < numberToFree; freed++ )
+        {
+            TinyLFUElementDescriptor<K, V> victim = nextVictim();
+            if ( victim == null )
+            {
+                break;
+            }
+            spool( victim );
+        }
+        return freed;
+    }
+
+    /**
+     * Get a set of the keys for all elements in the memory cache
+     * <p>
+     * @return a copy of the key set
+     */
+    @Override
+    public synchronized Set<K> getKeySet()
+    {
+        return new LinkedHashSet<K>( map.keySet() );
+    }
+
+    /**
+     * @return statistics about the cache, including the size of each segment
+     */
+    @Override
+    public synchronized IStats getStatistics()
+    {
+        IStats stats = new Stats();
+        stats.setTypeName( "TinyLFU Memory Cache" );
+
+        ArrayList<IStatElement> elems = new ArrayList<IStatElement>();
+
+        IStatElement se = null;
+
+        se = new StatElement();
+        se.setName( "Map Size" );
+        se.setData( "" + map.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Window Size" );
+        se.setData( "" + window.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Probation Size" );
+        se.setData( "" + probation.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Protected Size" );
+        se.setData( "" + protectedSegment.size() );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Put Count" );
+        se.setData( "" + putCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Hit Count" );
+        se.setData( "" + hitCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Miss Count" );
+        se.setData( "" + missCnt );
+        elems.add( se );
+
+        se = new StatElement();
+        se.setName( "Rejected Count" );
+        se.setData( "" + rejectedCnt );
+        elems.add( se );
+
+        // get an array and put them in the Stats object
+        IStatElement[] ses = elems.toArray( new StatElement[0] );
+        stats.setStatElements( ses );
+
+        return stats;
+    }
+
+    /**
+     * Removes the node from the list of its segment.
+     * <p>
+     * @param node
+     */
+    private void unlink( TinyLFUElementDescriptor<K, V> node )
+    {
+        segmentList( node.segment ).remove( node );
+    }
+
+    /**
+     * @param segment
+     * @return the list holding the segment
+     */
+    private DoubleLinkedList<TinyLFUElementDescriptor<K, V>> segmentList( int segment )
+    {
+        switch ( segment )
+        {
+            case TinyLFUElementDescriptor.WINDOW:
+                return window;
+            case TinyLFUElementDescriptor.PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    /**
+     * All descriptors in the map are created by this class.
+     * <p>
+     * @param me
+     * @return the descriptor with its segment
+     */
+    private TinyLFUElementDescriptor<K, V> node( MemoryElementDescriptor<K, V> me )
+    {
+        return (TinyLFUElementDescriptor<K, V>) me;
+    }
+
+    /**
+     * A descriptor that knows which segment it is in.
+     */
+    private static class TinyLFUElementDescriptor<K extends Serializable, V extends Serializable>
+        extends MemoryElementDescriptor<K, V>
+    {
+        /** Don't change */
+        private static final long serialVersionUID = -2271383453617312093L;
+
+        /** In the admission window */
+        static final int WINDOW = 0;
+
+        /** In the probation segment of the main area */
+        static final int PROBATION = 1;
+
+        /** In the protected segment of the main area */
+        static final int PROTECTED = 2;
+
+        /** The segment the element is in, guarded by the cache */
+        int segment;
+
+        /**
+         * @param ce
+         * @param segment
+         */
+        TinyLFUElementDescriptor( ICacheElement<K, V> ce, int segment )
+        {
+            super( ce );
+            this.segment = segment;
+        }
+    }
+}
@@ -36,6 +36,9 @@ public class MemoryElementDescriptor<K extends Serializable, V extends Serializa
     /** The CacheElement wrapped by this descriptor */
     public ICacheElement<K, V> ce;
 
+    /** The weight of the element, set by memory caches that are bounded by MaxMemoryBytes. */
+    public long weight;
+
     /**
      * Constructs a usable MemoryElementDescriptor.
      * <p>
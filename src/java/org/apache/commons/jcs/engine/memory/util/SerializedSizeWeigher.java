@@ -0,0 +1,71 @@
+package org.apache.commons.jcs.engine.memory.util;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.io.Serializable;
+
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.IElementSerializer;
+import org.apache.commons.jcs.engine.memory.behavior.IElementWeigher;
+import org.apache.commons.jcs.utils.serialization.StandardSerializer;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The default weigher. It uses the length of the serialized key and value as the weight.
+ * <p>
+ * This is what the element would occupy on disk or on the wire rather than its exact heap
+ * footprint, but it is proportional to it for most object graphs and costs no more than a spool.
+ * Elements that cannot be serialized weigh 0 and are only bounded by MaxObjects.
+ */
+public class SerializedSizeWeigher<K extends Serializable, V extends Serializable>
+    implements IElementWeigher<K, V>
+{
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( SerializedSizeWeigher.class );
+
+    /** Used to measure the elements. */
+    private final IElementSerializer serializer = new StandardSerializer();
+
+    /**
+     * Serializes the key and the value and returns the sum of their lengths.
+     * <p>
+     * @param ce
+     * @return the serialized size in bytes
+     */
+    public long weigh( ICacheElement<K, V> ce )
+    {
+        try
+        {
+            long weight = serializer.serialize( ce.getKey() ).length;
+            if ( ce.getVal() != null )
+            {
+                weight += serializer.serialize( ce.getVal() ).length;
+            }
+            return weight;
+        }
+        catch ( IOException e )
+        {
+            log.warn( "Could not weigh element with key [" + ce.getKey() + "]", e );
+            return 0;
+        }
+    }
+}
@@ -20,11 +20,11 @@ package org.apache.commons.jcs.utils.access;
  */
 
 import java.io.Serializable;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.locks.Lock;
 
 import org.apache.commons.jcs.JCS;
 import org.apache.commons.jcs.access.exception.CacheException;
+import org.apache.commons.jcs.utils.locking.KeyedReadWriteLock;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -99,9 +99,9 @@ public class JCSWorker<K extends Serializable, V extends Serializable>
     private JCS<K, V> cache;
 
     /**
-     * Map to hold who's doing work presently.
+     * Locks by region and key. A worker holds the lock while it gets or does the work.
      */
-    private static volatile Map<String, JCSWorkerHelper> map = new HashMap<String, JCSWorkerHelper>();
+    private static final KeyedReadWriteLock<String> locks = new KeyedReadWriteLock<String>();
 
     /**
      * Region for the JCS cache.
@@ -189,6 +189,9 @@ public class JCSWorker<K extends Serializable, V extends Serializable>
      * work and subsequent calls to a CachedWorker with identical
      * region/key/group will wait on the results of this call. It will call the
      * JCSWorkerHelper.doWork() if the cache misses, and will put the result.
+     * <p>
+     * The get and the work are done holding the lock of the region and key, so
+     * workers for other keys never wait.
      * @param aKey
      * @param aGroup
      * @param aHelper
@@ -201,41 +204,16 @@ public class JCSWorker<K extends Serializable, V extends Serializable>
         throws Exception
     {
         V result = null;
-        // long start = 0;
-        // long dbTime = 0;
-        JCSWorkerHelper helper = null;
 
-        synchronized ( map )
+        Lock lock = locks.writeLock( getRegion() + aKey );
+        if ( !lock.tryLock() )
         {
-            // Check to see if we already have a thread doing this work.
-            helper = map.get( getRegion() + aKey );
-            if ( helper == null )
+            if ( logger.isDebugEnabled() )
             {
-                // If not, add ourselves as the Worker so
-                // calls in another thread will use this worker's result
-                map.put( getRegion() + aKey, aHelper );
+                logger.debug( "Found a worker already doing this work (" + getRegion() + ":" + aKey + ")." );
             }
+            lock.lock();
         }
-        if ( helper != null )
-        {
-            synchronized ( helper )
-            {
-                if ( logger.isDebugEnabled() )
-                {
-                    logger.debug( "Found a worker already doing this work (" + getRegion() + ":" + aKey + ")." );
-                }
-                if ( !helper.isFinished() )
-                {
-                    helper.wait();
-                }
-                if ( logger.isDebugEnabled() )
-                {
-                    logger.debug( "Another thread finished our work for us. Using those results instead. ("
-                        + getRegion() + ":" + aKey + ")." );
-                }
-            }
-        }
-        // Do the work
         try
         {
             if ( logger.isDebugEnabled() )
@@ -243,7 +221,8 @@ public class JCSWorker<K extends Serializable, V extends Serializable>
                 logger.debug( getRegion() + " is doing the work." );
             }
 
-            // Try to get the item from the cache
+            // Try to get the item from the cache. If another worker held the
+            // lock, this finds its result.
             if ( aGroup != null )
             {
                 result = cache.getFromGroup( aKey, aGroup );
@@ -281,20 +260,8 @@ public class JCSWorker<K extends Serializable, V extends Serializable>
             {
                 logger.debug( getRegion() + ":" + aKey + " entered finally." );
             }
-            synchronized ( map )
-            {
-                // Remove ourselves as the worker.
-                if ( helper == null )
-                {
-                    map.remove( getRegion() + aKey );
-                }
-                synchronized ( aHelper )
-                {
-                    aHelper.setFinished( true );
-                    // Wake everyone waiting on us
-                    aHelper.notifyAll();
-                }
-            }
+            aHelper.setFinished( true );
+            lock.unlock();
         }
     }
 }
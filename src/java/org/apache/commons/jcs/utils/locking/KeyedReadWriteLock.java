@@ -0,0 +1,302 @@
+package org.apache.commons.jcs.utils.locking;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read write locks by key. Threads that lock different keys never wait for each other, so a
+ * compound operation on one key, such as a check followed by a put, can be made atomic without
+ * locking the whole region.
+ * <p>
+ * A ReentrantReadWriteLock is created when a key is first locked and dropped when the last thread
+ * that uses it lets go, so the number of locks held in memory is bounded by the number of keys
+ * locked at the same time. Each lock is counted by the threads that acquired or are waiting for
+ * it. A thread that finds a lock whose count already dropped to zero retries with a new one.
+ * <p>
+ * The locks are reentrant and a thread holding the write lock of a key may also take its read
+ * lock. Conditions are not supported. This is based on the KeyedReadWriteLock in the yajcache
+ * sandbox, with reference counting in place of weak references, so an unused lock is removed at
+ * once rather than at the next garbage collection.
+ */
+public class KeyedReadWriteLock<K>
+{
+    /** The locks in use, by key. */
+    private final ConcurrentMap<K, Entry> locks = new ConcurrentHashMap<K, Entry>();
+
+    /** Whether the locks are fair. */
+    private final boolean fair;
+
+    /** The number of locks created. */
+    private final AtomicInteger createCount = new AtomicInteger( 0 );
+
+    /**
+     * Creates a facility with non fair locks.
+     */
+    public KeyedReadWriteLock()
+    {
+        this( false );
+    }
+
+    /**
+     * @param fair whether the locks should be fair
+     */
+    public KeyedReadWriteLock( boolean fair )
+    {
+        this.fair = fair;
+    }
+
+    /**
+     * Gets the read lock of a key. The returned lock may be kept and used repeatedly.
+     * <p>
+     * @param key
+     * @return the read lock of the key
+     */
+    public Lock readLock( K key )
+    {
+        return new KeyLock( key, false );
+    }
+
+    /**
+     * Gets the write lock of a key. The returned lock may be kept and used repeatedly.
+     * <p>
+     * @param key
+     * @return the write lock of the key
+     */
+    public Lock writeLock( K key )
+    {
+        return new KeyLock( key, true );
+    }
+
+    /**
+     * @return the number of keys that are locked or waited for
+     */
+    public int size()
+    {
+        return locks.size();
+    }
+
+    /**
+     * @return the number of locks created so far
+     */
+    public int getCreateCount()
+    {
+        return createCount.get();
+    }
+
+    /**
+     * Gets the lock of a key, creating it if needed, and counts the calling thread as a user.
+     * <p>
+     * @param key
+     * @return the entry of the key
+     */
+    private Entry acquire( K key )
+    {
+        while ( true )
+        {
+            Entry entry = locks.get( key );
+            if ( entry == null )
+            {
+                Entry created = new Entry();
+                entry = locks.putIfAbsent( key, created );
+                if ( entry == null )
+                {
+                    createCount.incrementAndGet();
+                    return created;
+                }
+            }
+
+            synchronized ( entry )
+            {
+                if ( entry.users > 0 )
+                {
+                    entry.users++;
+                    return entry;
+                }
+            }
+            // released by its last user, which removes it from the map
+        }
+    }
+
+    /**
+     * Uncounts a user and drops the lock when it was the last.
+     * <p>
+     * @param key
+     * @param entry
+     */
+    private void release( K key, Entry entry )
+    {
+        synchronized ( entry )
+        {
+            if ( --entry.users == 0 )
+            {
+                locks.remove( key, entry );
+            }
+        }
+    }
+
+    /**
+     * A lock and the number of threads using it. The count is guarded by the entry.
+     */
+    private final class Entry
+        extends ReentrantReadWriteLock
+    {
+        /** Don't change. */
+        private static final long serialVersionUID = 1L;
+
+        /** The number of threads that hold or wait for the lock. Zero once dropped. */
+        private int users = 1;
+
+        /** Creates the lock with the fairness of the facility. */
+        Entry()
+        {
+            super( fair );
+        }
+    }
+
+    /**
+     * The read or write lock of a key. It looks the key's entry up each time it is locked, so it
+     * does not keep the entry alive between uses.
+     */
+    private final class KeyLock
+        implements Lock
+    {
+        /** The key. */
+        private final K key;
+
+        /** Whether this is the write lock. */
+        private final boolean write;
+
+        /**
+         * @param key
+         * @param write
+         */
+        KeyLock( K key, boolean write )
+        {
+            this.key = key;
+            this.write = write;
+        }
+
+        /**
+         * @param entry
+         * @return the read or write half of the entry
+         */
+        private Lock of( Entry entry )
+        {
+            return write ? entry.writeLock() : entry.readLock();
+        }
+
+        /** Acquires the lock. */
+        public void lock()
+        {
+            of( acquire( key ) ).lock();
+        }
+
+        /**
+         * Acquires the lock unless the thread is interrupted.
+         * <p>
+         * @throws InterruptedException
+         */
+        public void lockInterruptibly()
+            throws InterruptedException
+        {
+            Entry entry = acquire( key );
+            try
+            {
+                of( entry ).lockInterruptibly();
+            }
+            catch ( InterruptedException e )
+            {
+                release( key, entry );
+                throw e;
+            }
+        }
+
+        /**
+         * @return whether the lock was acquired
+         */
+        public boolean tryLock()
+        {
+            Entry entry = acquire( key );
+            if ( of( entry ).tryLock() )
+            {
+                return true;
+            }
+            release( key, entry );
+            return false;
+        }
+
+        /**
+         * @param time
+         * @param unit
+         * @return whether the lock was acquired in time
+         * @throws InterruptedException
+         */
+        public boolean tryLock( long time, TimeUnit unit )
+            throws InterruptedException
+        {
+            Entry entry = acquire( key );
+            boolean locked = false;
+            try
+            {
+                locked = of( entry ).tryLock( time, unit );
+                return locked;
+            }
+            finally
+            {
+                if ( !locked )
+                {
+                    release( key, entry );
+                }
+            }
+        }
+
+        /**
+         * Releases the lock. The entry cannot have been dropped, since this thread still counts
+         * as a user.
+         */
+        public void unlock()
+        {
+            Entry entry = locks.get( key );
+            if ( entry == null )
+            {
+                throw new IllegalMonitorStateException( "Key is not locked: " + key );
+            }
+            of( entry ).unlock();
+            release( key, entry );
+        }
+
+        /**
+         * @return never
+         * @throws UnsupportedOperationException always
+         */
+        public Condition newCondition()
+        {
+            throw new UnsupportedOperationException( "Conditions are not supported by keyed locks." );
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package org.apache.commons.jcs.utils.struct;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread safe version of the {@link FrequencySketch}, for callers that count on hot paths where
+ * a lock would serialize the threads.
+ * <p>
+ * The counters are the same 4-bit counters packed sixteen to a long, but they are kept in an
+ * AtomicLongArray and incremented with compare-and-set. The halving is done by the thread whose
+ * increment reaches the sample size, one long at a time, so increments from other threads may
+ * land before or after the halving of their long. Since the counts are only estimates, this is
+ * accepted; a count is never lost, nor is a counter ever above 15.
+ */
+public class ConcurrentFrequencySketch
+{
+    /** Seeds for the four rows, large odd constants. */
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L };
+
+    /** Clears the high bit of every counter after a shift, i.e. halves them. */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** The low bit of every counter. */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /** The counters, sixteen per long. */
+    private final AtomicLongArray table;
+
+    /** The table length minus 1, the length is a power of two. */
+    private final int tableMask;
+
+    /** The number of increments after which the counters are halved. */
+    private final int sampleSize;
+
+    /** The number of increments since the last halving. */
+    private final AtomicInteger size = new AtomicInteger();
+
+    /** Set while a thread halves the counters, so that only one does. */
+    private final AtomicBoolean resetting = new AtomicBoolean();
+
+    /**
+     * Creates a sketch sized for the expected number of distinct keys.
+     * <p>
+     * @param maximumSize the expected number of distinct keys, usually the cache capacity
+     */
+    public ConcurrentFrequencySketch( int maximumSize )
+    {
+        int maximum = Math.max( 1, Math.min( maximumSize, 1 << 30 ) );
+        int length = 1;
+        while ( length < maximum )
+        {
+            length <<= 1;
+        }
+
+        table = new AtomicLongArray( length );
+        tableMask = length - 1;
+        sampleSize = ( maximum > Integer.MAX_VALUE / 10 ) ? Integer.MAX_VALUE : 10 * maximum;
+    }
+
+    /**
+     * Returns the estimated number of times the key was seen, at most 15.
+     * <p>
+     * @param key
+     * @return the estimated frequency
+     */
+    public int frequency( Object key )
+    {
+        int hash = spread( key.hashCode() );
+        int start = ( hash & 3 ) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for ( int i = 0; i < 4; i++ )
+        {
+            int index = indexOf( hash, i );
+            int count = (int) ( ( table.get( index ) >>> ( ( start + i ) << 2 ) ) & 0xfL );
+            frequency = Math.min( frequency, count );
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the estimated frequency of the key, unless it is already at the maximum.
+     * <p>
+     * @param key
+     */
+    public void increment( Object key )
+    {
+        int hash = spread( key.hashCode() );
+        int start = ( hash & 3 ) << 2;
+
+        boolean added = false;
+        for ( int i = 0; i < 4; i++ )
+        {
+            int index = indexOf( hash, i );
+            added |= incrementAt( index, start + i );
+        }
+
+        if ( added && size.incrementAndGet() >= sampleSize && resetting.compareAndSet( false, true ) )
+        {
+            try
+            {
+                reset();
+            }
+            finally
+            {
+                resetting.set( false );
+            }
+        }
+    }
+
+    /**
+     * Increments the counter at the given position if it is not saturated.
+     * <p>
+     * @param i the index of the long
+     * @param j the counter within the long, 0 to 15
+     * @return whether the counter was incremented
+     */
+    private boolean incrementAt( int i, int j )
+    {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        while ( true )
+        {
+            long current = table.get( i );
+            if ( ( current & mask ) == mask )
+            {
+                return false;
+            }
+            if ( table.compareAndSet( i, current, current + ( 1L << offset ) ) )
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Halves all counters. The number of increments is adjusted for the counters that were odd,
+     * whose halves are rounded down. Increments counted by other threads meanwhile are kept.
+     */
+    protected void reset()
+    {
+        int before = size.get();
+        int odd = 0;
+        for ( int i = 0; i < table.length(); i++ )
+        {
+            while ( true )
+            {
+                long current = table.get( i );
+                if ( table.compareAndSet( i, current, ( current >>> 1 ) & RESET_MASK ) )
+                {
+                    odd += Long.bitCount( current & ONE_MASK );
+                    break;
+                }
+            }
+        }
+        int after = ( before - ( odd >>> 2 ) ) >>> 1;
+        size.addAndGet( after - before );
+    }
+
+    /**
+     * Returns the index of the long holding the key's counter for a row.
+     * <p>
+     * @param hash the spread hash of the key
+     * @param row 0 to 3
+     * @return the index into the table
+     */
+    private int indexOf( int hash, int row )
+    {
+        long h = ( hash + SEEDS[row] ) * SEEDS[row];
+        h += h >>> 32;
+        return ( (int) h ) & tableMask;
+    }
+
+    /**
+     * Applies a supplemental hash, since many hash codes differ only in their high bits.
+     * <p>
+     * @param hashCode
+     * @return the spread hash
+     */
+    private static int spread( int hashCode )
+    {
+        int h = hashCode;
+        h = ( ( h >>> 16 ) ^ h ) * 0x45d9f3b;
+        h = ( ( h >>> 16 ) ^ h ) * 0x45d9f3b;
+        return ( h >>> 16 ) ^ h;
+    }
+
+    /**
+     * @return the number of increments since the counters were last halved
+     */
+    public int getSampleCount()
+    {
+        return size.get();
+    }
+}
@@ -0,0 +1,203 @@
+package org.apache.commons.jcs.utils.struct;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+/**
+ * A count-min sketch that estimates how often keys have been seen recently, in a fixed amount of
+ * memory.
+ * <p>
+ * Each key maps to one 4-bit counter in each of four rows. The estimate is the minimum of the
+ * four counters, which is never below the true count (up to 15) but may be above it when keys
+ * collide. The counters of all rows are packed sixteen to a long, and the four counters of a key
+ * are taken from the same group of four in each long, so an increment touches four longs.
+ * <p>
+ * To let the estimates follow a changing workload, all counters are halved once the number of
+ * increments reaches ten times the expected number of distinct keys. This keeps the cost of an
+ * increment constant when amortized over the increments.
+ * <p>
+ * This class is not thread safe. Callers must synchronize.
+ */
+public class FrequencySketch
+{
+    /** Seeds for the four rows, large odd constants. */
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L };
+
+    /** Clears the high bit of every counter after a shift, i.e. halves them. */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /** The low bit of every counter. */
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    /** The counters, sixteen per long. */
+    private long[] table;
+
+    /** The table length minus 1, the length is a power of two. */
+    private int tableMask;
+
+    /** The number of increments after which the counters are halved. */
+    private int sampleSize;
+
+    /** The number of increments since the last halving. */
+    private int size;
+
+    /**
+     * Creates a sketch sized for the expected number of distinct keys.
+     * <p>
+     * @param maximumSize the expected number of distinct keys, usually the cache capacity
+     */
+    public FrequencySketch( int maximumSize )
+    {
+        ensureCapacity( maximumSize );
+    }
+
+    /**
+     * Resizes the sketch for a new number of distinct keys. The counts are lost.
+     * <p>
+     * @param maximumSize the expected number of distinct keys
+     */
+    public void ensureCapacity( int maximumSize )
+    {
+        int maximum = Math.max( 1, Math.min( maximumSize, 1 << 30 ) );
+        int length = 1;
+        while ( length < maximum )
+        {
+            length <<= 1;
+        }
+
+        table = new long[length];
+        tableMask = length - 1;
+        sampleSize = ( maximum > Integer.MAX_VALUE / 10 ) ? Integer.MAX_VALUE : 10 * maximum;
+        size = 0;
+    }
+
+    /**
+     * Returns the estimated number of times the key was seen, at most 15.
+     * <p>
+     * @param key
+     * @return the estimated frequency
+     */
+    public int frequency( Object key )
+    {
+        int hash = spread( key.hashCode() );
+        int start = ( hash & 3 ) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for ( int i = 0; i < 4; i++ )
+        {
+            int index = indexOf( hash, i );
+            int count = (int) ( ( table[index] >>> ( ( start + i ) << 2 ) ) & 0xfL );
+            frequency = Math.min( frequency, count );
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments the estimated frequency of the key, unless it is already at the maximum.
+     * <p>
+     * @param key
+     */
+    public void increment( Object key )
+    {
+        int hash = spread( key.hashCode() );
+        int start = ( hash & 3 ) << 2;
+
+        boolean added = false;
+        for ( int i = 0; i < 4; i++ )
+        {
+            int index = indexOf( hash, i );
+            added |= incrementAt( index, start + i );
+        }
+
+        if ( added && ++size >= sampleSize )
+        {
+            reset();
+        }
+    }
+
+    /**
+     * Increments the counter at the given position if it is not saturated.
+     * <p>
+     * @param i the index of the long
+     * @param j the counter within the long, 0 to 15
+     * @return whether the counter was incremented
+     */
+    private boolean incrementAt( int i, int j )
+    {
+        int offset = j << 2;
+        long mask = 0xfL << offset;
+        if ( ( table[i] & mask ) != mask )
+        {
+            table[i] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves all counters. The number of increments is adjusted for the counters that were odd,
+     * whose halves are rounded down.
+     */
+    protected void reset()
+    {
+        int odd = 0;
+        for ( int i = 0; i < table.length; i++ )
+        {
+            odd += Long.bitCount( table[i] & ONE_MASK );
+            table[i] = ( table[i] >>> 1 ) & RESET_MASK;
+        }
+        size = ( size - ( odd >>> 2 ) ) >>> 1;
+    }
+
+    /**
+     * Returns the index of the long holding the key's counter for a row.
+     * <p>
+     * @param hash the spread hash of the key
+     * @param row 0 to 3
+     * @return the index into the table
+     */
+    private int indexOf( int hash, int row )
+    {
+        long h = ( hash + SEEDS[row] ) * SEEDS[row];
+        h += h >>> 32;
+        return ( (int) h ) & tableMask;
+    }
+
+    /**
+     * Applies a supplemental hash, since many hash codes differ only in their high bits.
+     * <p>
+     * @param hashCode
+     * @return the spread hash
+     */
+    private static int spread( int hashCode )
+    {
+        int h = hashCode;
+        h = ( ( h >>> 16 ) ^ h ) * 0x45d9f3b;
+        h = ( ( h >>> 16 ) ^ h ) * 0x45d9f3b;
+        return ( h >>> 16 ) ^ h;
+    }
+
+    /**
+     * @return the number of increments since the counters were last halved
+     */
+    public int getSampleCount()
+    {
+        return size;
+    }
+}
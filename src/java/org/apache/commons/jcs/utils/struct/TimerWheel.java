@@ -0,0 +1,319 @@
+package org.apache.commons.jcs.utils.struct;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel that hands back values once their deadline in milliseconds has
+ * passed. Scheduling and descheduling are constant time, and advancing the wheel only touches the
+ * buckets whose time has come, so the work is proportional to the number of values that expire
+ * plus the ones that move down a level.
+ * <p>
+ * There are five levels. The first has 64 buckets of about a second each, the second 64 buckets of
+ * about a minute, the third 32 buckets of about an hour, the fourth 4 buckets of about a day and
+ * a half, and the last is a single overflow bucket. A value is put on the level whose span covers
+ * its remaining time. When the bucket of a higher level comes due, its values either expire or
+ * move down to a finer level. A value expires at the first advance into the next second after
+ * its deadline.
+ * <p>
+ * This class is not thread safe. Callers must synchronize.
+ */
+public class TimerWheel<T>
+{
+    /** The number of buckets on each level. */
+    private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+    /** The bucket width on each level is 2 to this power milliseconds. */
+    private static final int[] SHIFT = { 10, 16, 22, 27, 29 };
+
+    /** The buckets, each a circular list with a sentinel. */
+    private final Node<T>[][] wheel;
+
+    /** The time of the last advance. */
+    private long time;
+
+    /** The number of scheduled values. */
+    private int size;
+
+    /**
+     * Creates an empty wheel.
+     * <p>
+     * @param now the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked") // No generic arrays in java
+    public TimerWheel( long now )
+    {
+        this.time = now;
+        this.wheel = new Node[BUCKETS.length][];
+        for ( int i = 0; i < BUCKETS.length; i++ )
+        {
+            wheel[i] = new Node[BUCKETS[i]];
+            for ( int j = 0; j < BUCKETS[i]; j++ )
+            {
+                wheel[i][j] = new Node<T>( null, 0 );
+            }
+        }
+    }
+
+    /**
+     * Schedules a value.
+     * <p>
+     * @param value
+     * @param deadline the time in milliseconds after which the value expires
+     * @return the node, used to reschedule or deschedule the value
+     */
+    public Node<T> schedule( T value, long deadline )
+    {
+        Node<T> node = new Node<T>( value, deadline );
+        link( findBucket( deadline ), node );
+        size++;
+        return node;
+    }
+
+    /**
+     * Moves a scheduled value to a new deadline.
+     * <p>
+     * @param node a node returned by schedule
+     * @param deadline
+     */
+    public void reschedule( Node<T> node, long deadline )
+    {
+        if ( node.next != null )
+        {
+            unlink( node );
+            node.deadline = deadline;
+            link( findBucket( deadline ), node );
+        }
+    }
+
+    /**
+     * Removes a scheduled value. Does nothing if it already expired or was descheduled.
+     * <p>
+     * @param node a node returned by schedule
+     */
+    public void deschedule( Node<T> node )
+    {
+        if ( node.next != null )
+        {
+            unlink( node );
+            size--;
+        }
+    }
+
+    /**
+     * Moves the wheel to the current time.
+     * <p>
+     * @param now the current time in milliseconds
+     * @return the values whose deadline has passed, in no particular order
+     */
+    public List<T> advance( long now )
+    {
+        List<T> expired = new ArrayList<T>();
+
+        long previous = time;
+        time = now;
+        for ( int i = 0; i < SHIFT.length; i++ )
+        {
+            long previousTicks = previous >>> SHIFT[i];
+            long currentTicks = now >>> SHIFT[i];
+            if ( currentTicks - previousTicks <= 0 )
+            {
+                // the coarser levels cannot have moved either
+                break;
+            }
+            expire( i, previousTicks, currentTicks - previousTicks, expired );
+        }
+
+        return expired;
+    }
+
+    /**
+     * Empties the buckets of a level that have come due. Values past their deadline expire, the
+     * others are scheduled again, which moves them to a finer level.
+     * <p>
+     * @param level
+     * @param previousTicks the tick of the level at the last advance
+     * @param delta the number of ticks since then
+     * @param expired collects the expired values
+     */
+    private void expire( int level, long previousTicks, long delta, List<T> expired )
+    {
+        Node<T>[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min( delta + 1, buckets.length );
+        int start = (int) ( previousTicks & mask );
+
+        for ( int i = start; i < start + steps; i++ )
+        {
+            Node<T> sentinel = buckets[i & mask];
+            Node<T> node = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+
+            while ( node != sentinel )
+            {
+                Node<T> next = node.next;
+                node.prev = null;
+                node.next = null;
+
+                if ( node.deadline <= time )
+                {
+                    size--;
+                    expired.add( node.value );
+                }
+                else
+                {
+                    link( findBucket( node.deadline ), node );
+                }
+                node = next;
+            }
+        }
+    }
+
+    /**
+     * Finds the bucket for a deadline, on the finest level whose span covers the remaining time.
+     * Deadlines that have already passed go in the current bucket so the next advance sees them.
+     * <p>
+     * @param deadline
+     * @return the sentinel of the bucket
+     */
+    private Node<T> findBucket( long deadline )
+    {
+        long due = Math.max( deadline, time );
+        long duration = due - time;
+        int last = BUCKETS.length - 1;
+        for ( int i = 0; i < last; i++ )
+        {
+            if ( duration < 1L << SHIFT[i + 1] )
+            {
+                long ticks = due >>> SHIFT[i];
+                return wheel[i][(int) ( ticks & ( BUCKETS[i] - 1 ) )];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    /**
+     * Adds a node at the end of a bucket.
+     * <p>
+     * @param sentinel
+     * @param node
+     */
+    private void link( Node<T> sentinel, Node<T> node )
+    {
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    /**
+     * Takes a node out of its bucket.
+     * <p>
+     * @param node
+     */
+    private void unlink( Node<T> node )
+    {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Forgets all scheduled values.
+     */
+    public void clear()
+    {
+        for ( Node<T>[] buckets : wheel )
+        {
+            for ( Node<T> sentinel : buckets )
+            {
+                Node<T> node = sentinel.next;
+                while ( node != sentinel )
+                {
+                    Node<T> next = node.next;
+                    node.prev = null;
+                    node.next = null;
+                    node = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+        size = 0;
+    }
+
+    /**
+     * @return the number of scheduled values
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * A scheduled value.
+     */
+    public static final class Node<T>
+    {
+        /** The value. */
+        private final T value;
+
+        /** The deadline in milliseconds. */
+        private long deadline;
+
+        /** The previous node in the bucket, null when not scheduled. */
+        private Node<T> prev;
+
+        /** The next node in the bucket, null when not scheduled. */
+        private Node<T> next;
+
+        /**
+         * @param value
+         * @param deadline
+         */
+        Node( T value, long deadline )
+        {
+            this.value = value;
+            this.deadline = deadline;
+            this.prev = this;
+            this.next = this;
+        }
+
+        /**
+         * @return the value
+         */
+        public T getValue()
+        {
+            return value;
+        }
+
+        /**
+         * @return the deadline in milliseconds
+         */
+        public long getDeadline()
+        {
+            return deadline;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.apache.commons.jcs.utils.timing;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.jcs.utils.timing.behavior.IClock;
+
+/**
+ * Holds the clock the cache uses for element create and access times and for expiration. It is
+ * the SystemClock unless another one is set. The clock is shared by all regions in the JVM, since
+ * the element attributes that record the times are not tied to a region.
+ * <p>
+ * The cache manager sets a CoarseClock if jcs.clock.TickMillis is configured. Tests can set a
+ * clock they advance by hand.
+ */
+public final class CacheClock
+{
+    /** The default clock. */
+    private static final IClock SYSTEM_CLOCK = new SystemClock();
+
+    /** The clock in use. */
+    private static volatile IClock clock = SYSTEM_CLOCK;
+
+    /** Static only. */
+    private CacheClock()
+    {
+        // static only
+    }
+
+    /**
+     * @return the current time in milliseconds according to the clock in use
+     */
+    public static long currentTimeMillis()
+    {
+        return clock.currentTimeMillis();
+    }
+
+    /**
+     * @return the clock in use
+     */
+    public static IClock getClock()
+    {
+        return clock;
+    }
+
+    /**
+     * Sets the clock. The previous clock is not disposed.
+     * <p>
+     * @param newClock the clock, or null for the SystemClock
+     */
+    public static void setClock( IClock newClock )
+    {
+        clock = newClock != null ? newClock : SYSTEM_CLOCK;
+    }
+}
@@ -0,0 +1,126 @@
+package org.apache.commons.jcs.utils.timing;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.commons.jcs.utils.timing.behavior.IClock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A clock that is advanced by a daemon thread every tick. Reading it is a volatile read, which is
+ * much cheaper than System.currentTimeMillis() on many platforms, at the cost of being up to a
+ * tick behind. Create and access times and expiration are then only accurate to a tick, which is
+ * fine since element lifetimes are configured in seconds.
+ * <p>
+ * The thread runs until dispose is called.
+ */
+public class CoarseClock
+    implements IClock
+{
+    /** The logger. */
+    private final static Log log = LogFactory.getLog( CoarseClock.class );
+
+    /** The time at the last tick. */
+    private volatile long now = System.currentTimeMillis();
+
+    /** The time between ticks in milliseconds. */
+    private final long tickMillis;
+
+    /** The ticker. */
+    private final Thread ticker;
+
+    /** Whether the clock is still running. */
+    private volatile boolean alive = true;
+
+    /**
+     * Creates and starts the clock.
+     * <p>
+     * @param tickMillis the time between ticks in milliseconds, at least 1
+     */
+    public CoarseClock( long tickMillis )
+    {
+        if ( tickMillis < 1 )
+        {
+            throw new IllegalArgumentException( "tickMillis must be at least 1: " + tickMillis );
+        }
+        this.tickMillis = tickMillis;
+
+        ticker = new Thread( "JCS-CoarseClock" )
+        {
+            @Override
+            public void run()
+            {
+                tick();
+            }
+        };
+        ticker.setDaemon( true );
+        ticker.start();
+
+        if ( log.isInfoEnabled() )
+        {
+            log.info( "Started coarse clock with a tick of " + tickMillis + " ms." );
+        }
+    }
+
+    /**
+     * Updates the time until the clock is disposed.
+     */
+    private void tick()
+    {
+        while ( alive )
+        {
+            try
+            {
+                Thread.sleep( tickMillis );
+            }
+            catch ( InterruptedException e )
+            {
+                // disposed, or spurious; the loop checks
+            }
+            now = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return the time at the last tick
+     */
+    public long currentTimeMillis()
+    {
+        return now;
+    }
+
+    /**
+     * @return the time between ticks in milliseconds
+     */
+    public long getTickMillis()
+    {
+        return tickMillis;
+    }
+
+    /**
+     * Stops the ticker. The clock keeps the time of its last tick.
+     */
+    public void dispose()
+    {
+        alive = false;
+        ticker.interrupt();
+    }
+}
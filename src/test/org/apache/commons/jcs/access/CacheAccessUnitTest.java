@@ -19,10 +19,16 @@ package org.apache.commons.jcs.access;
  * under the License.
  */
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -360,4 +366,174 @@ public class CacheAccessUnitTest
             assertTrue( "Should be a cache element.", value instanceof ICacheElement );
         }
     }
+
+    /**
+     * Verify that concurrent misses for a key share one call to the loader and all see its value.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetWithLoader_ConcurrentMissesLoadOnce()
+        throws Exception
+    {
+        final CacheAccess<String, String> access = CacheAccess.getAccess( "testGetWithLoader_ConcurrentMissesLoadOnce" );
+        final String key = "hotkey";
+
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch loaderEntered = new CountDownLatch( 1 );
+        final CountDownLatch loaderRelease = new CountDownLatch( 1 );
+        final Callable<String> loader = new Callable<String>()
+        {
+            public String call()
+                throws Exception
+            {
+                loads.incrementAndGet();
+                loaderEntered.countDown();
+                loaderRelease.await( 10, TimeUnit.SECONDS );
+                return "loaded";
+            }
+        };
+
+        int numThreads = 10;
+        final String[] results = new String[numThreads];
+        Thread[] threads = new Thread[numThreads];
+        for ( int i = 0; i < numThreads; i++ )
+        {
+            final int index = i;
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        results[index] = access.get( key, loader );
+                    }
+                    catch ( CacheException e )
+                    {
+                        // leave the result null
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        assertTrue( "The loader should have been called", loaderEntered.await( 10, TimeUnit.SECONDS ) );
+        // give the other threads a chance to pile up behind the load
+        Thread.sleep( 100 );
+        loaderRelease.countDown();
+        for ( int i = 0; i < numThreads; i++ )
+        {
+            threads[i].join();
+        }
+
+        assertEquals( "The loader should only run once", 1, loads.get() );
+        for ( int i = 0; i < numThreads; i++ )
+        {
+            assertEquals( "Wrong value for thread " + i, "loaded", results[i] );
+        }
+        assertEquals( "The loaded value should be cached", "loaded", access.get( key ) );
+    }
+
+    /**
+     * Verify that a loader failure is reported and nothing is cached, and that the next call loads
+     * again.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetWithLoader_LoaderFails()
+        throws Exception
+    {
+        CacheAccess<String, String> access = CacheAccess.getAccess( "testGetWithLoader_LoaderFails" );
+        String key = "mykey";
+
+        try
+        {
+            access.get( key, new Callable<String>()
+            {
+                public String call()
+                    throws Exception
+                {
+                    throw new IllegalStateException( "boom" );
+                }
+            } );
+            fail( "The loader failure should have been reported." );
+        }
+        catch ( CacheException e )
+        {
+            assertTrue( "Wrong cause.", e.getCause() instanceof IllegalStateException );
+        }
+        assertNull( "Nothing should be cached.", access.get( key ) );
+
+        String result = access.get( key, new Callable<String>()
+        {
+            public String call()
+            {
+                return "second";
+            }
+        } );
+        assertEquals( "The second load should run.", "second", result );
+    }
+
+    /**
+     * Verify that the async get loads on a miss and returns a completed future on a hit.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetAsync()
+        throws Exception
+    {
+        CacheAccess<String, String> access = CacheAccess.getAccess( "testGetAsync" );
+        String key = "mykey";
+        Callable<String> loader = new Callable<String>()
+        {
+            public String call()
+            {
+                return "async";
+            }
+        };
+
+        Future<String> miss = access.getAsync( key, loader );
+        assertEquals( "Wrong loaded value.", "async", miss.get( 10, TimeUnit.SECONDS ) );
+        assertEquals( "The loaded value should be cached.", "async", access.get( key ) );
+
+        access.put( key, "put" );
+        Future<String> hit = access.getAsync( key, loader );
+        assertTrue( "A hit should be done right away.", hit.isDone() );
+        assertEquals( "Wrong cached value.", "put", hit.get() );
+    }
+
+    /**
+     * Verify that putAll puts every entry and rejects null values.
+     * <p>
+     * @throws Exception
+     */
+    public void testPutAll()
+        throws Exception
+    {
+        CacheAccess<String, String> access = CacheAccess.getAccess( "testPutAll" );
+
+        Map<String, String> entries = new HashMap<String, String>();
+        for ( int i = 0; i < 20; i++ )
+        {
+            entries.put( "key" + i, "value" + i );
+        }
+
+        access.putAll( entries );
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            assertEquals( "Wrong value for key" + i, "value" + i, access.get( "key" + i ) );
+        }
+
+        entries.put( "nullValue", null );
+        try
+        {
+            access.putAll( entries );
+            fail( "Should not have been able to put a null value." );
+        }
+        catch ( CacheException e )
+        {
+            assertTrue( "Should have the word null in the error message.", e.getMessage().indexOf( "null" ) != -1 );
+        }
+    }
 }
@@ -14,6 +14,7 @@ import org.apache.commons.jcs.TestLogConfigurationUtil;
 import org.apache.commons.jcs.auxiliary.AuxiliaryCacheAttributes;
 import org.apache.commons.jcs.auxiliary.disk.AbstractDiskCache;
 import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes;
+import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes.SyncMode;
 import org.apache.commons.jcs.auxiliary.disk.indexed.IndexedDiskCacheAttributes;
 import org.apache.commons.jcs.engine.CacheElement;
 import org.apache.commons.jcs.engine.CacheStatus;
@@ -148,6 +149,45 @@ public class AbstractDiskCacheUnitTest
         assertNull( "Item should not be in the map.", diskCache.get( key ) );
     }
 
+    /**
+     * Verify that a batch is written as one event and synced once in the BATCH sync mode.
+     * <p>
+     * @throws Exception
+     */
+    public void testUpdateMultiple_syncsOnce()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testUpdateMultiple_syncsOnce";
+        IDiskCacheAttributes diskCacheAttributes = new IndexedDiskCacheAttributes();
+        diskCacheAttributes.setCacheName( cacheName );
+        diskCacheAttributes.setSyncMode( SyncMode.BATCH );
+        diskCacheAttributes.setSyncIntervalMillis( 60000 );
+
+        AbstractDiskCacheTestInstance<String, String> diskCache = new AbstractDiskCacheTestInstance<String, String>( diskCacheAttributes );
+
+        int count = 1000;
+        Map<String, ICacheElement<String, String>> elements = new HashMap<String, ICacheElement<String, String>>();
+        for ( int i = 0; i < count; i++ )
+        {
+            String key = "key" + i;
+            elements.put( key, new CacheElement<String, String>( cacheName, key, "value" + i, new ElementAttributes() ) );
+        }
+
+        // DO WORK
+        diskCache.updateMultiple( elements );
+        for ( int i = 0; i < 100 && diskCache.syncCount == 0; i++ )
+        {
+            Thread.sleep( 50 );
+        }
+        Thread.sleep( 100 );
+
+        // VERIFY
+        assertEquals( "Wrong number of syncs.", 1, diskCache.syncCount );
+        assertEquals( "All the elements should be written.", count, diskCache.getSize() );
+        assertEquals( "Wrong value.", "value7", diskCache.get( "key7" ).getVal() );
+    }
+
     /** Concrete, testable instance. */
     protected static class AbstractDiskCacheTestInstance<K extends Serializable, V extends Serializable>
         extends AbstractDiskCache<K, V>
@@ -158,6 +198,9 @@ public class AbstractDiskCacheUnitTest
         /** used by the abstract aux class */
         protected IDiskCacheAttributes diskCacheAttributes;
 
+        /** The number of times doSync was called */
+        protected volatile int syncCount = 0;
+
         /**
          * Creates the disk cache.
          * <p>
@@ -282,6 +325,15 @@ public class AbstractDiskCacheUnitTest
             map.put( cacheElement.getKey(), cacheElement );
         }
 
+        /**
+         * Counts the syncs.
+         */
+        @Override
+        protected void doSync()
+        {
+            syncCount++;
+        }
+
         /**
          * @return null
          */
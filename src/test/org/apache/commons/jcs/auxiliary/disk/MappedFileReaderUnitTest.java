@@ -0,0 +1,159 @@
+package org.apache.commons.jcs.auxiliary.disk;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the memory mapped reader.
+ */
+public class MappedFileReaderUnitTest
+    extends TestCase
+{
+    /** The file. */
+    private FileChannel fc;
+
+    /**
+     * Creates an empty file.
+     * <p>
+     * @throws Exception
+     */
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        File dir = new File( "target/test-sandbox/mapped" );
+        dir.mkdirs();
+        File file = new File( dir, getName() + ".data" );
+        file.delete();
+        fc = new RandomAccessFile( file, "rw" ).getChannel();
+    }
+
+    /**
+     * Closes the file.
+     * <p>
+     * @throws Exception
+     */
+    @Override
+    protected void tearDown()
+        throws Exception
+    {
+        fc.close();
+    }
+
+    /**
+     * Writes bytes counting up from a value.
+     * <p>
+     * @param position
+     * @param length
+     * @throws Exception
+     */
+    private void write( long position, int length )
+        throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+        for ( int i = 0; i < length; i++ )
+        {
+            buffer.put( (byte) ( position + i ) );
+        }
+        buffer.flip();
+        fc.write( buffer, position );
+    }
+
+    /**
+     * Verify a region reads back what was written, and that the mapping grows with the file.
+     * <p>
+     * @throws Exception
+     */
+    public void testSlice_Grows()
+        throws Exception
+    {
+        // SETUP
+        MappedFileReader reader = new MappedFileReader( fc, 64 );
+        write( 0, 100 );
+
+        // DO WORK
+        ByteBuffer first = reader.slice( 10, 20 );
+        write( 100, 100 );
+        ByteBuffer second = reader.slice( 150, 10 );
+
+        // VERIFY
+        assertEquals( "Wrong length.", 20, first.remaining() );
+        assertEquals( "Wrong data.", 10, first.get() );
+        assertEquals( "Wrong length.", 10, second.remaining() );
+        assertEquals( "Wrong data.", (byte) 150, second.get() );
+        assertEquals( "Should have mapped the file.", 200, reader.getMappedBytes() );
+        assertEquals( "Should have remapped once per growth.", 2, reader.getRemapCount() );
+    }
+
+    /**
+     * Regions past the end of the file or across a window cannot be read through the mapping, and
+     * the file should not grow.
+     * <p>
+     * @throws Exception
+     */
+    public void testSlice_NotMapped()
+        throws Exception
+    {
+        // SETUP
+        MappedFileReader reader = new MappedFileReader( fc, 64 );
+        write( 0, 100 );
+
+        // DO WORK
+        ByteBuffer pastEnd = reader.slice( 90, 20 );
+        ByteBuffer across = reader.slice( 60, 10 );
+        ByteBuffer inSecond = reader.slice( 64, 36 );
+
+        // VERIFY
+        assertNull( "Past the end.", pastEnd );
+        assertNull( "Across windows.", across );
+        assertNotNull( "Within a window.", inSecond );
+        assertEquals( "Should not grow the file.", 100, fc.size() );
+    }
+
+    /**
+     * After the file is truncated and reset, the mapping should follow the new contents.
+     * <p>
+     * @throws Exception
+     */
+    public void testReset()
+        throws Exception
+    {
+        // SETUP
+        MappedFileReader reader = new MappedFileReader( fc, 64 );
+        write( 0, 100 );
+        assertNotNull( "Should map.", reader.slice( 0, 64 ) );
+
+        // DO WORK
+        reader.reset();
+        fc.truncate( 10 );
+
+        // VERIFY
+        assertEquals( "Should have dropped the mapping.", 0, reader.getMappedBytes() );
+        assertNull( "Past the new end.", reader.slice( 0, 100 ) );
+        assertEquals( "Wrong data.", 5, reader.slice( 5, 1 ).get() );
+    }
+}
@@ -20,10 +20,12 @@ package org.apache.commons.jcs.auxiliary.disk.block;
  */
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Random;
 
 import junit.framework.TestCase;
 
+import org.apache.commons.jcs.auxiliary.disk.behavior.IDiskCacheAttributes.SyncMode;
 import org.apache.commons.jcs.auxiliary.disk.block.BlockDisk;
 import org.apache.commons.jcs.utils.serialization.StandardSerializer;
 
@@ -368,4 +370,108 @@ public class BlockDiskUnitTest
         // VERIFY 
         assertEquals( "Wrong item retured.", string, result );
     }
+
+    /**
+     * An element whose blocks are not all consecutive should be written in runs and read back
+     * whole.
+     * <p>
+     * @throws Exception
+     */
+    public void testWriteAndRead_FragmentedBlocks()
+        throws Exception
+    {
+        // SETUP
+        String fileName = "testWriteAndRead_FragmentedBlocks";
+        File file = new File( rafDir, fileName + ".data" );
+        file.delete();
+        int blockSizeBytes = 100;
+        BlockDisk disk = new BlockDisk( file, blockSizeBytes, new StandardSerializer() );
+        disk.write( new byte[10] );
+        int[] second = disk.write( new byte[10] );
+        disk.write( new byte[10] );
+        disk.freeBlocks( second );
+
+        byte[] data = new byte[500];
+        new Random( 7 ).nextBytes( data );
+
+        // DO WORK
+        int[] blocks = disk.write( data );
+        byte[] result = (byte[]) disk.read( blocks );
+
+        // VERIFY
+        assertEquals( "Should reuse the free block first.", second[0], blocks[0] );
+        assertEquals( "Should continue after the used blocks.", 3, blocks[1] );
+        assertTrue( "Wrong data.", Arrays.equals( data, result ) );
+    }
+
+    /**
+     * Verify when each sync mode forces the file.
+     * <p>
+     * @throws Exception
+     */
+    public void testWrite_SyncModes()
+        throws Exception
+    {
+        // SETUP
+        File file = new File( rafDir, "testWrite_SyncModes.data" );
+        file.delete();
+        BlockDisk always = new BlockDisk( file, 64, new StandardSerializer(), SyncMode.ALWAYS );
+        File file2 = new File( rafDir, "testWrite_SyncModes2.data" );
+        file2.delete();
+        BlockDisk batch = new BlockDisk( file2, 64, new StandardSerializer(), SyncMode.BATCH );
+        File file3 = new File( rafDir, "testWrite_SyncModes3.data" );
+        file3.delete();
+        BlockDisk none = new BlockDisk( file3, 64, new StandardSerializer(), SyncMode.NONE );
+
+        // DO WORK
+        for ( int i = 0; i < 3; i++ )
+        {
+            always.write( new byte[1000] );
+            batch.write( new byte[1000] );
+            none.write( new byte[1000] );
+        }
+        batch.sync();
+        batch.sync();
+        none.sync();
+
+        // VERIFY
+        assertEquals( "Should force once per element.", 3, always.getSyncCount() );
+        assertEquals( "Should force once per batch.", 1, batch.getSyncCount() );
+        assertEquals( "Should never force.", 0, none.getSyncCount() );
+    }
+
+    /**
+     * Blocks read through the memory mapping should match what was written, including blocks
+     * appended after the first read and blocks written after a reset.
+     * <p>
+     * @throws Exception
+     */
+    public void testWriteAndRead_MemoryMapped()
+        throws Exception
+    {
+        // SETUP
+        File file = new File( rafDir, "testWriteAndRead_MemoryMapped.data" );
+        file.delete();
+        BlockDisk disk = new BlockDisk( file, 100, new StandardSerializer(), SyncMode.NONE, true );
+        byte[] data = new byte[500];
+        new Random( 11 ).nextBytes( data );
+
+        // DO WORK
+        int[] first = disk.write( "first" );
+        assertEquals( "Wrong value.", "first", disk.read( first ) );
+        long mapped = disk.getMappedBytes();
+        int[] second = disk.write( data );
+        byte[] result = (byte[]) disk.read( second );
+
+        // VERIFY
+        assertTrue( "Should have mapped the file.", mapped > 0 );
+        assertTrue( "Should have mapped the growth.", disk.getMappedBytes() > mapped );
+        assertTrue( "Wrong data.", Arrays.equals( data, result ) );
+
+        disk.reset();
+        assertEquals( "Should have dropped the mapping.", 0, disk.getMappedBytes() );
+        int[] third = disk.write( "third" );
+        assertEquals( "Wrong value after a reset.", "third", disk.read( third ) );
+        disk.close();
+    }
 }
@@ -19,9 +19,11 @@ package org.apache.commons.jcs.auxiliary.disk.indexed;
  * under the License.
  */
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import junit.framework.TestCase;
@@ -38,6 +40,8 @@ import org.apache.commons.jcs.engine.behavior.ICacheElement;
 import org.apache.commons.jcs.engine.behavior.IElementAttributes;
 import org.apache.commons.jcs.engine.control.group.GroupAttrName;
 import org.apache.commons.jcs.engine.control.group.GroupId;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+import org.apache.commons.jcs.utils.serialization.StandardSerializer;
 import org.apache.commons.jcs.utils.timing.SleepUtil;
 
 /**
@@ -1014,4 +1018,448 @@ public class IndexDiskCacheUnitTest
         int binSize = diskCache.getRecyleBinSize();
         assertEquals( "Should be one in the bin.", 1, binSize );
     }
+
+    /**
+     * In the BATCH sync mode, a burst of puts through the event queue should be forced to disk far
+     * less often than once per element.
+     * <p>
+     * @throws Exception
+     */
+    public void testUpdate_BatchSync()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testUpdate_BatchSync";
+        IndexedDiskCacheAttributes cattr = new IndexedDiskCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setMaxKeySize( 1000 );
+        cattr.setDiskPath( "target/test-sandbox/IndexDiskCacheUnitTest" );
+        cattr.setSyncModeName( "batch" );
+        cattr.setSyncIntervalMillis( 60000 );
+        IndexedDiskCache<String, String> diskCache = new IndexedDiskCache<String, String>( cattr );
+        diskCache.processRemoveAll();
+
+        // DO WORK
+        int cnt = 500;
+        for ( int i = 0; i < cnt; i++ )
+        {
+            diskCache.update( new CacheElement<String, String>( cacheName, "key:" + i, "data:" + i ) );
+        }
+        for ( int i = 0; i < 100 && diskCache.getSize() < cnt; i++ )
+        {
+            SleepUtil.sleepAtLeast( 50 );
+        }
+        SleepUtil.sleepAtLeast( 100 );
+
+        // VERIFY
+        assertEquals( "Wrong size.", cnt, diskCache.getSize() );
+        assertTrue( "Should have forced at least once.", diskCache.getSyncCount() >= 1 );
+        assertTrue( "Should have forced in batches: " + diskCache.getSyncCount(), diskCache.getSyncCount() < cnt );
+        for ( int i = 0; i < cnt; i++ )
+        {
+            assertEquals( "Wrong value.", "data:" + i, diskCache.get( "key:" + i ).getVal() );
+        }
+    }
+
+    /**
+     * In the NONE sync mode, the data file should never be forced.
+     * <p>
+     * @throws IOException
+     */
+    public void testProcessUpdate_NoSync()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testProcessUpdate_NoSync";
+        IndexedDiskCacheAttributes cattr = new IndexedDiskCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setMaxKeySize( 100 );
+        cattr.setDiskPath( "target/test-sandbox/IndexDiskCacheUnitTest" );
+        cattr.setSyncModeName( "NONE" );
+        IndexedDiskCache<String, String> diskCache = new IndexedDiskCache<String, String>( cattr );
+
+        // DO WORK
+        for ( int i = 0; i < 10; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "key:" + i, "data:" + i ) );
+        }
+        diskCache.doSync();
+
+        // VERIFY
+        assertEquals( "Should not have forced.", 0, diskCache.getSyncCount() );
+        assertEquals( "Wrong value.", "data:9", diskCache.processGet( "key:9" ).getVal() );
+    }
+
+    /**
+     * With memory mapped reads, elements should read back after being appended, replaced,
+     * moved by an optimization and after the file was truncated.
+     * <p>
+     * @throws IOException
+     */
+    public void testProcessGet_MemoryMappedReads()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testProcessGet_MemoryMappedReads";
+        IndexedDiskCacheAttributes cattr = new IndexedDiskCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setMaxKeySize( 100 );
+        cattr.setDiskPath( "target/test-sandbox/IndexDiskCacheUnitTest" );
+        cattr.setUseMemoryMappedReads( true );
+        IndexedDiskCache<String, String> diskCache = new IndexedDiskCache<String, String>( cattr );
+        diskCache.processRemoveAll();
+
+        // DO WORK
+        for ( int i = 0; i < 10; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "key:" + i, "data:" + i ) );
+        }
+        assertEquals( "Wrong value.", "data:0", diskCache.processGet( "key:0" ).getVal() );
+        long mapped = diskCache.getMappedBytes();
+        for ( int i = 10; i < 20; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "key:" + i, "data:" + i ) );
+        }
+        diskCache.processUpdate( new CacheElement<String, String>( cacheName, "key:5", "new:5" ) );
+
+        // VERIFY
+        assertEquals( "Should read the appended element.", "data:19", diskCache.processGet( "key:19" ).getVal() );
+        assertTrue( "Should have mapped the growth.", diskCache.getMappedBytes() > mapped );
+        assertEquals( "Should read the replaced element.", "new:5", diskCache.processGet( "key:5" ).getVal() );
+
+        for ( int i = 0; i < 10; i++ )
+        {
+            diskCache.processRemove( "key:" + i );
+        }
+        diskCache.optimizeFile();
+        for ( int i = 10; i < 20; i++ )
+        {
+            assertEquals( "Wrong value after optimizing.", "data:" + i, diskCache.processGet( "key:" + i ).getVal() );
+        }
+        assertTrue( "The mapping should not reach past the file.",
+                    diskCache.getMappedBytes() <= diskCache.getDataFileSize() );
+
+        diskCache.processRemoveAll();
+        assertEquals( "Should have dropped the mapping.", 0, diskCache.getMappedBytes() );
+        diskCache.processUpdate( new CacheElement<String, String>( cacheName, "key:1", "data:1" ) );
+        assertEquals( "Should read after a reset.", "data:1", diskCache.processGet( "key:1" ).getVal() );
+    }
+
+    /**
+     * Writers put and remove overlapping keys with values of varying sizes while readers read
+     * them. Since the records are written outside the lock, readers must still only ever see whole
+     * records, and no slot may be handed out twice.
+     * <p>
+     * @throws Exception
+     */
+    public void testProcessUpdate_ConcurrentReadersSeeWholeRecords()
+        throws Exception
+    {
+        // SETUP
+        final String cacheName = "testProcessUpdate_ConcurrentReaders";
+        IndexedDiskCacheAttributes cattr = new IndexedDiskCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setMaxKeySize( 100 );
+        cattr.setDiskPath( "target/test-sandbox/IndexDiskCacheUnitTest" );
+        cattr.setSyncModeName( "NONE" );
+        final IndexedDiskCache<String, String> diskCache = new IndexedDiskCache<String, String>( cattr );
+        diskCache.processRemoveAll();
+
+        final int keys = 40;
+        final Throwable[] errors = new Throwable[8];
+        Thread[] threads = new Thread[errors.length];
+
+        // DO WORK
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int id = t;
+            final boolean writer = t % 2 == 0;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random( id );
+                    try
+                    {
+                        for ( int i = 0; i < 2000; i++ )
+                        {
+                            String key = "key" + random.nextInt( keys );
+                            if ( writer && random.nextInt( 10 ) == 0 )
+                            {
+                                diskCache.processRemove( key );
+                            }
+                            else if ( writer )
+                            {
+                                diskCache.processUpdate( new CacheElement<String, String>( cacheName, key,
+                                    createValue( key, random.nextInt( 500 ) ) ) );
+                            }
+                            else
+                            {
+                                ICacheElement<String, String> ce = diskCache.processGet( key );
+                                if ( ce != null )
+                                {
+                                    verifyValue( key, ce.getVal() );
+                                }
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        errors[id] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        // VERIFY
+        for ( Throwable error : errors )
+        {
+            if ( error != null )
+            {
+                throw new AssertionError( error );
+            }
+        }
+        for ( int i = 0; i < keys; i++ )
+        {
+            ICacheElement<String, String> ce = diskCache.processGet( "key" + i );
+            if ( ce != null )
+            {
+                verifyValue( "key" + i, ce.getVal() );
+            }
+        }
+    }
+
+    /**
+     * @param key
+     * @param length
+     * @return a value that records its key and length
+     */
+    private static String createValue( String key, int length )
+    {
+        StringBuffer value = new StringBuffer( key ).append( ':' ).append( length ).append( ':' );
+        for ( int i = 0; i < length; i++ )
+        {
+            value.append( 'x' );
+        }
+        return value.toString();
+    }
+
+    /**
+     * Checks that a value was made by createValue for the key.
+     * <p>
+     * @param key
+     * @param value
+     */
+    private static void verifyValue( String key, String value )
+    {
+        String[] parts = value.split( ":" );
+        assertEquals( "Wrong key in value.", key, parts[0] );
+        int length = Integer.parseInt( parts[1] );
+        assertEquals( "Torn value.", createValue( key, length ), value );
+    }
+
+    /**
+     * Move a small record into a gap while the records after it have not been moved yet. Only the
+     * record should be copied, the ones after it must stay intact.
+     * <p>
+     * @throws Exception
+     */
+    public void testMove_SmallRecordFollowedByOthers()
+        throws Exception
+    {
+        // SETUP
+        File dir = new File( "target/test-sandbox/IndexDiskCacheUnitTest" );
+        dir.mkdirs();
+        StandardSerializer serializer = new StandardSerializer();
+        IndexedDisk disk = new IndexedDisk( new File( dir, "testMove.data" ), serializer );
+        disk.reset();
+
+        IndexedDiskElementDescriptor[] deds = new IndexedDiskElementDescriptor[4];
+        long pos = 0;
+        for ( int i = 0; i < deds.length; i++ )
+        {
+            byte[] data = serializer.serialize( "record " + i );
+            deds[i] = new IndexedDiskElementDescriptor( pos, data.length );
+            disk.write( deds[i], data );
+            pos += IndexedDisk.HEADER_SIZE_BYTES + data.length;
+        }
+
+        // DO WORK
+        // the first record was removed, pack the others into its space
+        disk.move( deds[1], 0 );
+        String afterFirstMove = disk.readObject( deds[2] );
+        disk.move( deds[2], deds[1].pos + IndexedDisk.HEADER_SIZE_BYTES + deds[1].len );
+        disk.move( deds[3], deds[2].pos + IndexedDisk.HEADER_SIZE_BYTES + deds[2].len );
+
+        // VERIFY
+        assertEquals( "The next record should be intact.", "record 2", afterFirstMove );
+        for ( int i = 1; i < deds.length; i++ )
+        {
+            assertEquals( "Wrong record.", "record " + i, disk.readObject( deds[i] ) );
+        }
+        disk.close();
+    }
+
+    /**
+     * Creates a cache with gaps between its records: every other one of 100 records of different
+     * sizes is removed.
+     * <p>
+     * @param cacheName
+     * @param batchSize
+     * @return the cache
+     * @throws Exception
+     */
+    private IndexedDiskCache<String, String> createFragmentedCache( String cacheName, int batchSize )
+        throws Exception
+    {
+        IndexedDiskCacheAttributes cattr = new IndexedDiskCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setMaxKeySize( -1 );
+        cattr.setOptimizeBatchSize( batchSize );
+        cattr.setOptimizeOnShutdown( false );
+        cattr.setDiskPath( "target/test-sandbox/IndexDiskCacheUnitTest" );
+        IndexedDiskCache<String, String> diskCache = new IndexedDiskCache<String, String>( cattr );
+        diskCache.processRemoveAll();
+
+        for ( int i = 0; i < 100; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, i + ":key", createFragmentValue( i ) ) );
+        }
+        for ( int i = 0; i < 100; i += 2 )
+        {
+            diskCache.processRemove( i + ":key" );
+        }
+        return diskCache;
+    }
+
+    /**
+     * @param i
+     * @return a value whose size depends on i
+     */
+    private static String createFragmentValue( int i )
+    {
+        StringBuffer value = new StringBuffer( "data " + i );
+        for ( int j = 0; j < i * 7 % 100; j++ )
+        {
+            value.append( '.' );
+        }
+        return value.toString();
+    }
+
+    /**
+     * Optimize in small steps while another thread reads. Every record should stay readable and
+     * the progress should be reported.
+     * <p>
+     * @throws Exception
+     */
+    public void testOptimizeFile_InBatches()
+        throws Exception
+    {
+        // SETUP
+        final IndexedDiskCache<String, String> diskCache = createFragmentedCache( "testOptimizeFile_InBatches", 3 );
+        long sizeBeforeOptimization = diskCache.getDataFileSize();
+
+        final boolean[] done = new boolean[1];
+        final Throwable[] error = new Throwable[1];
+        Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    while ( !done[0] )
+                    {
+                        for ( int i = 1; i < 100; i += 2 )
+                        {
+                            ICacheElement<String, String> ce = diskCache.processGet( i + ":key" );
+                            if ( ce == null || !createFragmentValue( i ).equals( ce.getVal() ) )
+                            {
+                                throw new IllegalStateException( "Wrong value for " + i );
+                            }
+                        }
+                    }
+                }
+                catch ( Throwable e )
+                {
+                    error[0] = e;
+                }
+            }
+        };
+        reader.start();
+
+        // DO WORK
+        try
+        {
+            diskCache.optimizeFile();
+        }
+        finally
+        {
+            done[0] = true;
+            reader.join();
+        }
+
+        // VERIFY
+        if ( error[0] != null )
+        {
+            throw new AssertionError( error[0] );
+        }
+        assertTrue( "The file should be smaller.", diskCache.getDataFileSize() < sizeBeforeOptimization );
+        for ( int i = 1; i < 100; i += 2 )
+        {
+            assertEquals( "Wrong value.", createFragmentValue( i ), diskCache.processGet( i + ":key" ).getVal() );
+        }
+
+        assertEquals( "Wrong record count.", 50, diskCache.getOptimizationRecordCount() );
+        assertEquals( "Should have packed all records.", 50, diskCache.getOptimizationRecordsPacked() );
+        assertTrue( "Should have moved bytes.", diskCache.getOptimizationBytesMoved() > 0 );
+        assertTrue( "Should report a throughput.", diskCache.getOptimizationBytesPerSecond() > 0 );
+
+        boolean found = false;
+        for ( IStatElement se : diskCache.getStatistics().getStatElements() )
+        {
+            if ( "Optimization Progress".equals( se.getName() ) )
+            {
+                found = true;
+                assertEquals( "Wrong progress.", "50/50", se.getData() );
+            }
+        }
+        assertTrue( "Should have the progress stat.", found );
+    }
+
+    /**
+     * The keys should be saved once the records are moved. A cache opened on the files without
+     * the first one being disposed, as after a crash, should read the right records.
+     * <p>
+     * @throws Exception
+     */
+    public void testOptimizeFile_KeysSavedAfterwards()
+        throws Exception
+    {
+        // SETUP
+        IndexedDiskCache<String, String> diskCache = createFragmentedCache( "testOptimizeFile_KeysSaved", 7 );
+
+        // DO WORK
+        diskCache.optimizeFile();
+
+        IndexedDiskCacheAttributes cattr = new IndexedDiskCacheAttributes();
+        cattr.setCacheName( "testOptimizeFile_KeysSaved" );
+        cattr.setMaxKeySize( -1 );
+        cattr.setDiskPath( "target/test-sandbox/IndexDiskCacheUnitTest" );
+        IndexedDiskCache<String, String> restarted = new IndexedDiskCache<String, String>( cattr );
+
+        // VERIFY
+        assertEquals( "Wrong size.", 50, restarted.getSize() );
+        for ( int i = 1; i < 100; i += 2 )
+        {
+            assertEquals( "Wrong value.", createFragmentValue( i ), restarted.processGet( i + ":key" ).getVal() );
+        }
+        assertNull( "Should have been removed.", restarted.processGet( "0:key" ) );
+    }
 }
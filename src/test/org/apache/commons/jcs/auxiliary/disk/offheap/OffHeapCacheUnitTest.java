@@ -0,0 +1,245 @@
+package org.apache.commons.jcs.auxiliary.disk.offheap;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.auxiliary.AuxiliaryCache;
+import org.apache.commons.jcs.auxiliary.disk.indexed.IndexedDiskCache;
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICacheSpool;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.CompositeCacheManager;
+import org.apache.commons.jcs.utils.serialization.StandardSerializer;
+
+/**
+ * Tests for the off heap cache.
+ */
+public class OffHeapCacheUnitTest
+    extends TestCase
+{
+    /** Collects the evicted elements. */
+    private final Map<String, String> spooled = new HashMap<String, String>();
+
+    /**
+     * Creates a cache that records what it evicts.
+     * <p>
+     * @param cacheName
+     * @param maxBytes
+     * @param slabSizeBytes
+     * @return the cache
+     */
+    private OffHeapCache<String, String> createCache( String cacheName, long maxBytes, int slabSizeBytes )
+    {
+        OffHeapCacheAttributes cattr = new OffHeapCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setMaxBytes( maxBytes );
+        cattr.setSlabSizeBytes( slabSizeBytes );
+
+        OffHeapCache<String, String> cache = new OffHeapCache<String, String>( cattr, new StandardSerializer() );
+        cache.setSpool( new ICacheSpool<String, String>()
+        {
+            public void spool( ICacheElement<String, String> ce )
+            {
+                spooled.put( ce.getKey(), ce.getVal() );
+            }
+        } );
+        return cache;
+    }
+
+    /**
+     * Verify that an element comes back out of direct memory.
+     * <p>
+     * @throws Exception
+     */
+    public void testPutGet()
+        throws Exception
+    {
+        // SETUP
+        OffHeapCache<String, String> cache = createCache( "testPutGet", 1024 * 1024, 64 * 1024 );
+
+        // DO WORK
+        cache.update( new CacheElement<String, String>( "testPutGet", "key", "value" ) );
+
+        // VERIFY
+        assertEquals( "Wrong value.", "value", cache.get( "key" ).getVal() );
+        assertNull( "Should miss.", cache.get( "nope" ) );
+        assertEquals( "Wrong size.", 1, cache.getSize() );
+        assertTrue( "Should count the bytes.", cache.getLiveBytes() > 0 );
+    }
+
+    /**
+     * Put more than fits. Every element should either be in the cache or have been handed to the
+     * next tier.
+     * <p>
+     * @throws Exception
+     */
+    public void testEvictionSpoolsToNextTier()
+        throws Exception
+    {
+        // SETUP
+        OffHeapCache<String, String> cache = createCache( "testEviction", 4096, 1024 );
+
+        // DO WORK
+        int items = 200;
+        for ( int i = 0; i < items; i++ )
+        {
+            cache.update( new CacheElement<String, String>( "testEviction", i + ":key", "data " + i ) );
+        }
+
+        // VERIFY
+        assertTrue( "Should have evicted some.", spooled.size() > 0 );
+        assertEquals( "Every element should be somewhere.", items, cache.getSize() + spooled.size() );
+        for ( int i = 0; i < items; i++ )
+        {
+            ICacheElement<String, String> ce = cache.get( i + ":key" );
+            String value = ce != null ? ce.getVal() : spooled.get( i + ":key" );
+            assertEquals( "Wrong value for " + i, "data " + i, value );
+        }
+        assertEquals( "The first element should have been evicted.", "data 0", spooled.get( "0:key" ) );
+    }
+
+    /**
+     * An element read since it was written should survive the recycling of its slab.
+     * <p>
+     * @throws Exception
+     */
+    public void testReadElementsGetSecondChance()
+        throws Exception
+    {
+        // SETUP
+        OffHeapCache<String, String> cache = createCache( "testSecondChance", 4096, 1024 );
+        cache.update( new CacheElement<String, String>( "testSecondChance", "hot", "hot data" ) );
+        cache.update( new CacheElement<String, String>( "testSecondChance", "cold", "cold data" ) );
+        assertNotNull( "Should have the element.", cache.get( "hot" ) );
+
+        // DO WORK
+        for ( int i = 0; spooled.get( "cold" ) == null; i++ )
+        {
+            cache.update( new CacheElement<String, String>( "testSecondChance", i + ":key", "data " + i ) );
+        }
+
+        // VERIFY
+        assertNotNull( "The read element should still be there.", cache.get( "hot" ) );
+        assertFalse( "The read element should not be spooled.", spooled.containsKey( "hot" ) );
+    }
+
+    /**
+     * Elements larger than a slab should go straight to the next tier.
+     * <p>
+     * @throws Exception
+     */
+    public void testOversizedElementGoesStraightOn()
+        throws Exception
+    {
+        // SETUP
+        OffHeapCache<String, String> cache = createCache( "testOversized", 4096, 1024 );
+        StringBuffer big = new StringBuffer();
+        for ( int i = 0; i < 2000; i++ )
+        {
+            big.append( 'x' );
+        }
+
+        // DO WORK
+        cache.update( new CacheElement<String, String>( "testOversized", "big", big.toString() ) );
+
+        // VERIFY
+        assertNull( "Should not be stored.", cache.get( "big" ) );
+        assertEquals( "Should be handed on.", big.toString(), spooled.get( "big" ) );
+    }
+
+    /**
+     * Verify replacement, hierarchical removal and remove all.
+     * <p>
+     * @throws Exception
+     */
+    public void testReplaceAndRemove()
+        throws Exception
+    {
+        // SETUP
+        OffHeapCache<String, String> cache = createCache( "testRemove", 1024 * 1024, 64 * 1024 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            cache.update( new CacheElement<String, String>( "testRemove", "a:" + i, "data " + i ) );
+            cache.update( new CacheElement<String, String>( "testRemove", "b:" + i, "data " + i ) );
+        }
+        long bytes = cache.getLiveBytes();
+        cache.update( new CacheElement<String, String>( "testRemove", "b:1", "data 9" ) );
+
+        // DO WORK
+        boolean removed = cache.remove( "a:" );
+
+        // VERIFY
+        assertEquals( "Replacing should not add bytes.", bytes, cache.getLiveBytes() + bytes / 2 );
+        assertTrue( "Should have removed.", removed );
+        assertEquals( "Wrong size.", 10, cache.getSize() );
+        assertEquals( "Should have the new value.", "data 9", cache.get( "b:1" ).getVal() );
+
+        cache.removeAll();
+        assertEquals( "Wrong size.", 0, cache.getSize() );
+        assertEquals( "Wrong bytes.", 0, cache.getLiveBytes() );
+        assertNull( "Should be gone.", cache.get( "b:1" ) );
+    }
+
+    /**
+     * Put through a region with a tiny memory cache. Everything should be readable, and the disk
+     * should only get what the off heap tier evicted.
+     * <p>
+     * @throws Exception
+     */
+    public void testSpoolChainThroughHub()
+        throws Exception
+    {
+        // SETUP
+        CompositeCacheManager cacheMgr = CompositeCacheManager.getUnconfiguredInstance();
+        cacheMgr.configure( "/TestOffHeapCache.ccf" );
+        CompositeCache<String, String> region = cacheMgr.getCache( "testSpoolChainThroughHub" );
+
+        AuxiliaryCache<String, String>[] auxCaches = region.getAuxCaches();
+        assertTrue( "Wrong first auxiliary.", auxCaches[0] instanceof OffHeapCache );
+        assertTrue( "Wrong second auxiliary.", auxCaches[1] instanceof IndexedDiskCache );
+        OffHeapCache<String, String> offHeap = (OffHeapCache<String, String>) auxCaches[0];
+        auxCaches[1].removeAll();
+
+        // DO WORK
+        int items = 500;
+        for ( int i = 0; i < items; i++ )
+        {
+            CacheElement<String, String> ce = new CacheElement<String, String>( region.getCacheName(), i + ":key", "data " + i );
+            ce.setElementAttributes( region.getElementAttributes() );
+            region.update( ce );
+        }
+
+        // VERIFY
+        assertTrue( "The off heap tier should hold some.", offHeap.getSize() > 0 );
+        assertNotNull( "Should be off heap.", offHeap.get( ( items - 11 ) + ":key" ) );
+        assertNull( "The disk should not have elements still off heap.", auxCaches[1].get( ( items - 11 ) + ":key" ) );
+        for ( int i = 0; i < items; i++ )
+        {
+            ICacheElement<String, String> ce = region.get( i + ":key" );
+            assertNotNull( "Missing " + i, ce );
+            assertEquals( "Wrong value.", "data " + i, ce.getVal() );
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package org.apache.commons.jcs.auxiliary.disk.segmented;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.auxiliary.AuxiliaryCache;
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.CompositeCacheManager;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.control.group.GroupId;
+import org.apache.commons.jcs.utils.timing.SleepUtil;
+
+/**
+ * Tests for the segmented disk cache.
+ */
+public class SegmentedDiskCacheUnitTest
+    extends TestCase
+{
+    /** The directory of the segments. */
+    private static final String DISK_PATH = "target/test-sandbox/SegmentedDiskCacheUnitTest";
+
+    /**
+     * Creates a cache with small segments, no background compaction and no segment limit,
+     * removing the segments of an earlier run first.
+     * <p>
+     * @param cacheName
+     * @param clear whether to delete the segments of the region first
+     * @return the cache
+     */
+    private SegmentedDiskCache<String, String> createCache( String cacheName, boolean clear )
+    {
+        return createCache( cacheName, clear, 0 );
+    }
+
+    /**
+     * Creates a cache with small segments and no background compaction, removing the segments of
+     * an earlier run first.
+     * <p>
+     * @param cacheName
+     * @param clear whether to delete the segments of the region first
+     * @param maxSegments
+     * @return the cache
+     */
+    private SegmentedDiskCache<String, String> createCache( String cacheName, boolean clear, int maxSegments )
+    {
+        if ( clear )
+        {
+            File[] files = new File( DISK_PATH ).listFiles();
+            for ( int i = 0; files != null && i < files.length; i++ )
+            {
+                if ( files[i].getName().startsWith( cacheName + "." ) )
+                {
+                    files[i].delete();
+                }
+            }
+        }
+
+        SegmentedDiskCacheAttributes cattr = new SegmentedDiskCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setDiskPath( DISK_PATH );
+        cattr.setMaxSegmentSizeBytes( 2048 );
+        cattr.setCompactionIntervalSeconds( 0 );
+        cattr.setMaxSegments( maxSegments );
+        cattr.setSyncModeName( "NONE" );
+        return new SegmentedDiskCache<String, String>( cattr );
+    }
+
+    /**
+     * Verify puts, replacements and the kinds of removal.
+     * <p>
+     * @throws Exception
+     */
+    public void testPutGetRemove()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testPutGetRemove";
+        SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true );
+
+        // DO WORK
+        for ( int i = 0; i < 10; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "a:" + i, "data " + i ) );
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "b:" + i, "data " + i ) );
+        }
+        diskCache.processUpdate( new CacheElement<String, String>( cacheName, "b:1", "new 1" ) );
+        boolean removedOne = diskCache.processRemove( "b:2" );
+        boolean removedPartial = diskCache.processRemove( "a:" );
+
+        // VERIFY
+        assertTrue( "Should have removed the key.", removedOne );
+        assertTrue( "Should have removed the partial key.", removedPartial );
+        assertEquals( "Wrong size.", 9, diskCache.getSize() );
+        assertEquals( "Should have the new value.", "new 1", diskCache.processGet( "b:1" ).getVal() );
+        assertEquals( "Wrong value.", "data 3", diskCache.processGet( "b:3" ).getVal() );
+        assertNull( "Should be removed.", diskCache.processGet( "b:2" ) );
+        assertNull( "Should be removed.", diskCache.processGet( "a:1" ) );
+        assertTrue( "Should have started more segments.", diskCache.getSegmentCount() > 1 );
+        assertTrue( "Should count the replaced and removed records.", diskCache.getDeadBytes() > 0 );
+    }
+
+    /**
+     * Verify group keys and group removal.
+     * <p>
+     * @throws Exception
+     */
+    public void testGroups()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testGroups";
+        SegmentedDiskCacheAttributes cattr = new SegmentedDiskCacheAttributes();
+        cattr.setCacheName( cacheName );
+        cattr.setDiskPath( DISK_PATH );
+        cattr.setCompactionIntervalSeconds( 0 );
+        SegmentedDiskCache<GroupAttrName<String>, String> diskCache =
+            new SegmentedDiskCache<GroupAttrName<String>, String>( cattr );
+        diskCache.processRemoveAll();
+        GroupId groupId = new GroupId( cacheName, "group" );
+        for ( int i = 0; i < 5; i++ )
+        {
+            GroupAttrName<String> key = new GroupAttrName<String>( groupId, "attr" + i );
+            diskCache.processUpdate( new CacheElement<GroupAttrName<String>, String>( cacheName, key, "data " + i ) );
+        }
+
+        // DO WORK
+        int groupKeys = diskCache.getGroupKeys( "group" ).size();
+        boolean hasGroup = diskCache.getGroupNames().contains( "group" );
+        diskCache.processRemove( new GroupAttrName<String>( groupId, null ) );
+
+        // VERIFY
+        assertEquals( "Wrong number of group keys.", 5, groupKeys );
+        assertTrue( "Should have the group name.", hasGroup );
+        assertEquals( "Should have removed the group.", 0, diskCache.getSize() );
+        assertTrue( "Should have no groups left.", diskCache.getGroupNames().isEmpty() );
+    }
+
+    /**
+     * Elements and removals should survive a restart.
+     * <p>
+     * @throws Exception
+     */
+    public void testReload()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testReload";
+        SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true );
+        for ( int i = 0; i < 50; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, i + ":key", "data " + i ) );
+        }
+        diskCache.processUpdate( new CacheElement<String, String>( cacheName, "7:key", "new 7" ) );
+        diskCache.processRemove( "8:key" );
+        diskCache.processDispose();
+
+        // DO WORK
+        SegmentedDiskCache<String, String> reloaded = createCache( cacheName, false );
+
+        // VERIFY
+        assertEquals( "Wrong size.", 49, reloaded.getSize() );
+        assertEquals( "Should have the last value.", "new 7", reloaded.processGet( "7:key" ).getVal() );
+        assertNull( "Should stay removed.", reloaded.processGet( "8:key" ) );
+        assertEquals( "Wrong value.", "data 49", reloaded.processGet( "49:key" ).getVal() );
+        assertEquals( "Should count the same dead bytes.", diskCache.getDeadBytes(), reloaded.getDeadBytes() );
+    }
+
+    /**
+     * Replace most of the elements. Compaction should delete the segments that are mostly dead,
+     * keep all the current values, and keep removed keys removed across a restart.
+     * <p>
+     * @throws Exception
+     */
+    public void testCompact()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testCompact";
+        SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true );
+        int items = 100;
+        for ( int i = 0; i < items; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, i + ":key", "data " + i ) );
+        }
+        for ( int i = 0; i < items; i++ )
+        {
+            if ( i % 10 != 0 )
+            {
+                diskCache.processUpdate( new CacheElement<String, String>( cacheName, i + ":key", "new " + i ) );
+            }
+        }
+        diskCache.processRemove( "20:key" );
+        long size = diskCache.getDataSize();
+        int segments = diskCache.getSegmentCount();
+
+        // DO WORK
+        int compacted = diskCache.compact();
+
+        // VERIFY
+        assertTrue( "Should have compacted.", compacted > 0 );
+        assertEquals( "Wrong count.", compacted, diskCache.getCompactionCount() );
+        assertTrue( "Should be smaller.", diskCache.getDataSize() < size );
+        assertTrue( "Should have fewer segments.", diskCache.getSegmentCount() < segments );
+        verifyCompacted( diskCache, items );
+
+        diskCache.processDispose();
+        SegmentedDiskCache<String, String> reloaded = createCache( cacheName, false );
+        assertEquals( "Wrong size after a restart.", items - 1, reloaded.getSize() );
+        verifyCompacted( reloaded, items );
+    }
+
+    /**
+     * @param diskCache
+     * @param items
+     */
+    private void verifyCompacted( SegmentedDiskCache<String, String> diskCache, int items )
+    {
+        for ( int i = 0; i < items; i++ )
+        {
+            ICacheElement<String, String> ce = diskCache.processGet( i + ":key" );
+            if ( i == 20 )
+            {
+                assertNull( "Should stay removed.", ce );
+            }
+            else
+            {
+                assertEquals( "Wrong value.", ( i % 10 != 0 ? "new " : "data " ) + i, ce.getVal() );
+            }
+        }
+    }
+
+    /**
+     * Removals of keys written after a segment that stays mostly live should be dropped by
+     * compaction once the records they hide are gone, instead of being copied forever.
+     * <p>
+     * @throws Exception
+     */
+    public void testCompact_DropsTombstones()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testCompact_DropsTombstones";
+        SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true );
+        for ( int i = 0; i < 10; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "keep:" + i, "data " + i ) );
+        }
+        for ( int i = 0; i < 50; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "temp:" + i, "data " + i ) );
+        }
+        diskCache.processRemove( "temp:" );
+        assertEquals( "Wrong number of removals.", 50, diskCache.getTombstoneCount() );
+
+        // DO WORK
+        for ( int i = 0; i < 10 && diskCache.compact() > 0; i++ )
+        {
+            // until nothing is left to compact
+        }
+
+        // VERIFY
+        assertEquals( "Should have dropped the removals.", 0, diskCache.getTombstoneCount() );
+        for ( int i = 0; i < 10; i++ )
+        {
+            assertEquals( "Wrong value.", "data " + i, diskCache.processGet( "keep:" + i ).getVal() );
+        }
+
+        diskCache.processDispose();
+        SegmentedDiskCache<String, String> reloaded = createCache( cacheName, false );
+        assertEquals( "Wrong size after a restart.", 10, reloaded.getSize() );
+        assertNull( "Should stay removed.", reloaded.processGet( "temp:7" ) );
+    }
+
+    /**
+     * A removal should be kept while an older segment holds a record of the key, even after the
+     * segment of the last record it hid is compacted.
+     * <p>
+     * @throws Exception
+     */
+    public void testCompact_KeepsTombstoneForOlderRecord()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testCompact_KeepsTombstoneForOlderRecord";
+        SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true );
+        diskCache.processUpdate( new CacheElement<String, String>( cacheName, "key", "old" ) );
+        for ( int i = 0; i < 10; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "keep:" + i, "data " + i ) );
+        }
+        diskCache.processUpdate( new CacheElement<String, String>( cacheName, "key", "new" ) );
+        for ( int i = 0; i < 10; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, "fill:" + i, "data " + i ) );
+        }
+        diskCache.processRemove( "key" );
+        diskCache.processRemove( "fill:" );
+
+        // DO WORK
+        for ( int i = 0; i < 10 && diskCache.compact() > 0; i++ )
+        {
+            // until nothing is left to compact
+        }
+        diskCache.processDispose();
+        SegmentedDiskCache<String, String> reloaded = createCache( cacheName, false );
+
+        // VERIFY
+        assertNull( "The old record should stay hidden.", reloaded.processGet( "key" ) );
+        assertEquals( "Wrong size after a restart.", 10, reloaded.getSize() );
+    }
+
+    /**
+     * Once there are more than MaxSegments segments, the oldest should be deleted and the
+     * elements in them evicted.
+     * <p>
+     * @throws Exception
+     */
+    public void testMaxSegments_EvictsOldest()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testMaxSegments_EvictsOldest";
+        SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true, 3 );
+
+        // DO WORK
+        for ( int i = 0; i < 100; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, i + ":key", "data " + i ) );
+        }
+
+        // VERIFY
+        assertTrue( "Too many segments: " + diskCache.getSegmentCount(), diskCache.getSegmentCount() <= 3 );
+        assertTrue( "Should have evicted segments.", diskCache.getEvictedSegmentCount() > 0 );
+        assertTrue( "Should have evicted keys.", diskCache.getSize() < 100 );
+        assertNull( "The oldest should be evicted.", diskCache.processGet( "0:key" ) );
+        assertEquals( "The newest should be kept.", "data 99", diskCache.processGet( "99:key" ).getVal() );
+
+        int size = diskCache.getSize();
+        diskCache.processDispose();
+        SegmentedDiskCache<String, String> reloaded = createCache( cacheName, false, 3 );
+        assertEquals( "Wrong size after a restart.", size, reloaded.getSize() );
+    }
+
+    /**
+     * A record cut off by a crash should be dropped on restart, without losing the ones before it.
+     * <p>
+     * @throws Exception
+     */
+    public void testTornWriteDropped()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testTornWriteDropped";
+        SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true );
+        for ( int i = 0; i < 5; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, i + ":key", "data " + i ) );
+        }
+        diskCache.processDispose();
+
+        File segment = new File( DISK_PATH, cacheName + ".0.seg" );
+        long length = segment.length();
+        RandomAccessFile raf = new RandomAccessFile( segment, "rw" );
+        raf.seek( length );
+        raf.writeInt( 10 );
+        raf.writeInt( 100 );
+        raf.write( new byte[20] );
+        raf.close();
+
+        // DO WORK
+        SegmentedDiskCache<String, String> reloaded = createCache( cacheName, false );
+
+        // VERIFY
+        assertEquals( "Wrong size.", 5, reloaded.getSize() );
+        assertEquals( "Wrong value.", "data 4", reloaded.processGet( "4:key" ).getVal() );
+        assertEquals( "Should have cut off the torn record.", length, segment.length() );
+    }
+
+    /**
+     * Writers and readers work while segments are compacted. Every value read must be the one last
+     * put for its key.
+     * <p>
+     * @throws Exception
+     */
+    public void testCompactWhileInUse()
+        throws Exception
+    {
+        // SETUP
+        final String cacheName = "testCompactWhileInUse";
+        final SegmentedDiskCache<String, String> diskCache = createCache( cacheName, true );
+        final int keys = 200;
+        for ( int i = 0; i < keys; i++ )
+        {
+            diskCache.processUpdate( new CacheElement<String, String>( cacheName, i + ":key", i + ":0" ) );
+        }
+        final Throwable[] errors = new Throwable[2];
+        final String[] expected = new String[keys];
+        for ( int i = 0; i < keys; i++ )
+        {
+            expected[i] = i + ":0";
+        }
+
+        // DO WORK
+        Thread writer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Random random = new Random( 1 );
+                    for ( int i = 1; i < 3000; i++ )
+                    {
+                        int key = random.nextInt( keys );
+                        expected[key] = key + ":" + i;
+                        diskCache.processUpdate( new CacheElement<String, String>( cacheName, key + ":key", expected[key] ) );
+                    }
+                }
+                catch ( Throwable t )
+                {
+                    errors[0] = t;
+                }
+            }
+        };
+        Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Random random = new Random( 2 );
+                    for ( int i = 0; i < 3000; i++ )
+                    {
+                        int key = random.nextInt( keys );
+                        ICacheElement<String, String> ce = diskCache.processGet( key + ":key" );
+                        if ( ce == null || !ce.getVal().startsWith( key + ":" ) )
+                        {
+                            throw new IllegalStateException( "Wrong value for " + key + ": " + ce );
+                        }
+                    }
+                }
+                catch ( Throwable t )
+                {
+                    errors[1] = t;
+                }
+            }
+        };
+        writer.start();
+        reader.start();
+        int compacted = 0;
+        while ( writer.isAlive() || reader.isAlive() )
+        {
+            compacted += diskCache.compact();
+        }
+        writer.join();
+        reader.join();
+        compacted += diskCache.compact();
+
+        // VERIFY
+        for ( Throwable error : errors )
+        {
+            if ( error != null )
+            {
+                throw new AssertionError( error );
+            }
+        }
+        assertTrue( "Should have compacted.", compacted > 0 );
+        assertEquals( "Wrong size.", keys, diskCache.getSize() );
+        for ( int i = 0; i < keys; i++ )
+        {
+            assertEquals( "Should have the last value.", expected[i], diskCache.processGet( i + ":key" ).getVal() );
+        }
+
+        diskCache.processDispose();
+        SegmentedDiskCache<String, String> reloaded = createCache( cacheName, false );
+        for ( int i = 0; i < keys; i++ )
+        {
+            assertEquals( "The restart should see the last values.", expected[i],
+                          reloaded.processGet( i + ":key" ).getVal() );
+        }
+    }
+
+    /**
+     * Replace the elements of a configured cache a few times. It should compact in the background,
+     * and everything should stay readable through the region.
+     * <p>
+     * @throws Exception
+     */
+    public void testBackgroundCompaction()
+        throws Exception
+    {
+        // SETUP
+        CompositeCacheManager cacheMgr = CompositeCacheManager.getUnconfiguredInstance();
+        cacheMgr.configure( "/TestSegmentedDiskCache.ccf" );
+        CompositeCache<String, String> region = cacheMgr.getCache( "testBackgroundCompaction" );
+        AuxiliaryCache<String, String>[] auxCaches = region.getAuxCaches();
+        assertTrue( "Wrong auxiliary.", auxCaches[0] instanceof SegmentedDiskCache );
+        SegmentedDiskCache<String, String> diskCache = (SegmentedDiskCache<String, String>) auxCaches[0];
+        diskCache.removeAll();
+
+        // DO WORK
+        int items = 100;
+        for ( int round = 0; round < 5; round++ )
+        {
+            for ( int i = 0; i < items; i++ )
+            {
+                diskCache.processUpdate( new CacheElement<String, String>( region.getCacheName(), i + ":key", "data " + round ) );
+            }
+        }
+        for ( int i = 0; i < 100 && diskCache.getCompactionCount() == 0; i++ )
+        {
+            SleepUtil.sleepAtLeast( 50 );
+        }
+
+        // VERIFY
+        assertTrue( "Should have compacted in the background.", diskCache.getCompactionCount() > 0 );
+        for ( int i = 0; i < items; i++ )
+        {
+            assertEquals( "Wrong value.", "data 4", region.get( i + ":key" ).getVal() );
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.apache.commons.jcs.engine;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.behavior.IElementAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Tests for the compact element attributes.
+ */
+public class CompactElementAttributesUnitTest
+    extends TestCase
+{
+    /**
+     * @return a template with a max life of 100 seconds
+     */
+    private CompactElementAttributes.Template createTemplate()
+    {
+        ElementAttributes defaults = new ElementAttributes();
+        defaults.setIsEternal( false );
+        defaults.setMaxLifeSeconds( 100 );
+        defaults.setIdleTime( 50 );
+        defaults.setIsLateral( false );
+        return new CompactElementAttributes.Template( defaults );
+    }
+
+    /** Verify that the values come from the template and the times are per element. */
+    public void testReadsTemplate()
+    {
+        // SETUP
+        CompactElementAttributes.Template template = createTemplate();
+
+        // DO WORK
+        CompactElementAttributes attr = new CompactElementAttributes( template );
+
+        // VERIFY
+        assertTrue( "Should share the template.", attr.isShared() );
+        assertFalse( "Wrong eternal.", attr.getIsEternal() );
+        assertEquals( "Wrong max life.", 100, attr.getMaxLifeSeconds() );
+        assertEquals( "Wrong idle time.", 50, attr.getIdleTime() );
+        assertFalse( "Wrong lateral.", attr.getIsLateral() );
+        assertTrue( "Wrong spool.", attr.getIsSpool() );
+        assertTrue( "Should have a create time.", attr.getCreateTime() > 0 );
+        assertEquals( "Wrong last access time.", attr.getCreateTime(), attr.getLastAccessTime() );
+    }
+
+    /** Verify that a change only applies to the element that made it. */
+    public void testSetterCopiesTemplate()
+    {
+        // SETUP
+        CompactElementAttributes.Template template = createTemplate();
+        CompactElementAttributes first = new CompactElementAttributes( template );
+        CompactElementAttributes second = new CompactElementAttributes( template );
+
+        // DO WORK
+        first.setMaxLifeSeconds( 5 );
+
+        // VERIFY
+        assertFalse( "Should have its own copy.", first.isShared() );
+        assertEquals( "Wrong max life.", 5, first.getMaxLifeSeconds() );
+        assertEquals( "Wrong idle time after the copy.", 50, first.getIdleTime() );
+        assertTrue( "The other should still share.", second.isShared() );
+        assertEquals( "The other should be unchanged.", 100, second.getMaxLifeSeconds() );
+        assertEquals( "The template should be unchanged.", 100, template.getMaxLifeSeconds() );
+    }
+
+    /** Verify that the template cannot be changed. */
+    public void testTemplateIsImmutable()
+    {
+        // SETUP
+        CompactElementAttributes.Template template = createTemplate();
+
+        // DO WORK
+        try
+        {
+            template.setMaxLifeSeconds( 5 );
+            fail( "Should not be able to change the template." );
+        }
+        catch ( UnsupportedOperationException e )
+        {
+            // expected
+        }
+
+        // VERIFY
+        assertEquals( "The template should be unchanged.", 100, template.getMaxLifeSeconds() );
+    }
+
+    /**
+     * Verify that serialization writes plain element attributes with the same values and times.
+     * <p>
+     * @throws Exception
+     */
+    public void testSerializesAsElementAttributes()
+        throws Exception
+    {
+        // SETUP
+        CompactElementAttributes attr = new CompactElementAttributes( createTemplate() );
+        attr.setLastAccessTimeNow();
+
+        // DO WORK
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream( baos );
+        oos.writeObject( attr );
+        oos.close();
+        ObjectInputStream ois = new ObjectInputStream( new ByteArrayInputStream( baos.toByteArray() ) );
+        Object result = ois.readObject();
+        ois.close();
+
+        // VERIFY
+        assertEquals( "Wrong class.", ElementAttributes.class, result.getClass() );
+        IElementAttributes read = (IElementAttributes) result;
+        assertEquals( "Wrong max life.", 100, read.getMaxLifeSeconds() );
+        assertEquals( "Wrong create time.", attr.getCreateTime(), read.getCreateTime() );
+        assertEquals( "Wrong last access time.", attr.getLastAccessTime(), read.getLastAccessTime() );
+    }
+
+    /** Verify that a region hands out compact attributes only when configured to. */
+    public void testRegionDefaults()
+    {
+        // SETUP
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        ElementAttributes defaults = new ElementAttributes();
+        defaults.setMaxLifeSeconds( 100 );
+        CompositeCache<String, String> region =
+            new CompositeCache<String, String>( "testRegionDefaults", cattr, defaults );
+        assertEquals( "Wrong class without the option.", ElementAttributes.class,
+                      region.getElementAttributes().getClass() );
+
+        // DO WORK
+        cattr.setUseCompactElementAttributes( true );
+        IElementAttributes first = region.getElementAttributes();
+        IElementAttributes second = region.getElementAttributes();
+
+        // VERIFY
+        assertTrue( "Should be compact.", first instanceof CompactElementAttributes );
+        assertNotSame( "Each element gets its own instance.", first, second );
+        assertEquals( "Wrong max life.", 100, first.getMaxLifeSeconds() );
+
+        defaults.setMaxLifeSeconds( 7 );
+        assertEquals( "Later changes to the defaults are not seen.", 100,
+                      region.getElementAttributes().getMaxLifeSeconds() );
+    }
+}
@@ -301,6 +301,78 @@ public class CompositeCacheDiskUsageUnitTest
         assertEquals( "Wrong element updated with lateral.", inputElement, mockLateral.lastUpdatedItem );
     }
 
+    /**
+     * Configure a spool admission frequency of 2. An element put once and evicted should be
+     * dropped and counted, and removed from the disk so that no older copy survives.
+     * <p>
+     * @throws IOException
+     */
+    public void testSpoolAdmission_RejectsRarelyUsed()
+        throws IOException
+    {
+        // SETUP
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setDiskUsagePattern( ICompositeCacheAttributes.DiskUsagePattern.SWAP );
+        cattr.setSpoolAdmissionFrequency( 2 );
+
+        CompositeCache<String, String> cache =
+            new CompositeCache<String, String>( "testSpoolAdmission", cattr, new ElementAttributes() );
+
+        MockAuxCache<String, String> mock = new MockAuxCache<String, String>();
+        mock.cacheType = CacheType.DISK_CACHE;
+
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, String>[] auxArray = new AuxiliaryCache[] { mock };
+        cache.setAuxCaches( auxArray );
+
+        ICacheElement<String, String> inputElement = new CacheElement<String, String>( "testSpoolAdmission", "key", "value" );
+        cache.update( inputElement );
+
+        // DO WORK
+        cache.spoolToDisk( inputElement );
+
+        // VERIFY
+        assertEquals( "Should not be written to disk.", 0, mock.updateCount );
+        assertEquals( "Should be removed from disk.", 1, mock.removeCount );
+        assertEquals( "Wrong number of spools avoided.", 1, cache.getSpoolsAvoided() );
+    }
+
+    /**
+     * Configure a spool admission frequency of 2. An element put and read should be spooled.
+     * <p>
+     * @throws IOException
+     */
+    public void testSpoolAdmission_AdmitsFrequentlyUsed()
+        throws IOException
+    {
+        // SETUP
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setDiskUsagePattern( ICompositeCacheAttributes.DiskUsagePattern.SWAP );
+        cattr.setSpoolAdmissionFrequency( 2 );
+
+        CompositeCache<String, String> cache =
+            new CompositeCache<String, String>( "testSpoolAdmission", cattr, new ElementAttributes() );
+
+        MockAuxCache<String, String> mock = new MockAuxCache<String, String>();
+        mock.cacheType = CacheType.DISK_CACHE;
+
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, String>[] auxArray = new AuxiliaryCache[] { mock };
+        cache.setAuxCaches( auxArray );
+
+        ICacheElement<String, String> inputElement = new CacheElement<String, String>( "testSpoolAdmission", "key", "value" );
+        cache.update( inputElement );
+        cache.get( "key" );
+
+        // DO WORK
+        cache.spoolToDisk( inputElement );
+
+        // VERIFY
+        assertEquals( "Should be written to disk.", 1, mock.updateCount );
+        assertEquals( "Should not be removed from disk.", 0, mock.removeCount );
+        assertEquals( "Wrong number of spools avoided.", 0, cache.getSpoolsAvoided() );
+    }
+
     /**
      * Used to test the disk cache functionality.
      * <p>
@@ -321,6 +393,9 @@ public class CompositeCacheDiskUsageUnitTest
         /** The type that should be returned from getCacheType. */
         public CacheType cacheType = CacheType.DISK_CACHE;
 
+        /** The number of times remove was called. */
+        public int removeCount = 0;
+
         /** Resets counters and catchers. */
         public void reset()
         {
@@ -370,6 +445,7 @@ public class CompositeCacheDiskUsageUnitTest
         public boolean remove( K key )
             throws IOException
         {
+            removeCount++;
             return false;
         }
 
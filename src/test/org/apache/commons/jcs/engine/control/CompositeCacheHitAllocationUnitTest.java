@@ -0,0 +1,238 @@
+package org.apache.commons.jcs.engine.control;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.memory.arc.ARCMemoryCache;
+import org.apache.commons.jcs.engine.memory.lru.ConcurrentLRUMemoryCache;
+import org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache;
+import org.apache.commons.jcs.engine.memory.tinylfu.TinyLFUMemoryCache;
+
+/**
+ * Verifies that a memory hit allocates nothing. The bytes allocated by the test thread are read
+ * from the ThreadMXBean, which only some JVMs support. On others the tests pass without checking.
+ */
+public class CompositeCacheHitAllocationUnitTest
+    extends TestCase
+{
+    /** Number of gets to warm up with and then to measure. */
+    private static final int GETS = 100000;
+
+    /** Number of keys in the region. */
+    private static final int KEYS = 100;
+
+    /**
+     * Verify the hit path of the LRU memory cache.
+     * <p>
+     * @throws Exception
+     */
+    public void testLRUMemoryCacheHit()
+        throws Exception
+    {
+        verifyNoAllocation( LRUMemoryCache.class.getName(), false );
+    }
+
+    /**
+     * Verify the hit path of the LRU memory cache with compact element attributes.
+     * <p>
+     * @throws Exception
+     */
+    public void testLRUMemoryCacheHitCompactAttributes()
+        throws Exception
+    {
+        verifyNoAllocation( LRUMemoryCache.class.getName(), true );
+    }
+
+    /**
+     * Verify the hit path of the concurrent LRU memory cache.
+     * <p>
+     * @throws Exception
+     */
+    public void testConcurrentLRUMemoryCacheHit()
+        throws Exception
+    {
+        verifyNoAllocation( ConcurrentLRUMemoryCache.class.getName(), false );
+    }
+
+    /**
+     * Verify the hit path of the TinyLFU memory cache.
+     * <p>
+     * @throws Exception
+     */
+    public void testTinyLFUMemoryCacheHit()
+        throws Exception
+    {
+        verifyNoAllocation( TinyLFUMemoryCache.class.getName(), false );
+    }
+
+    /**
+     * Verify the hit path of the ARC memory cache.
+     * <p>
+     * @throws Exception
+     */
+    public void testARCMemoryCacheHit()
+        throws Exception
+    {
+        verifyNoAllocation( ARCMemoryCache.class.getName(), false );
+    }
+
+    /**
+     * Verify that a put only allocates what the LRU memory cache needs to hold the element, and
+     * nothing for locking its key.
+     * <p>
+     * @throws Exception
+     */
+    public void testLRUMemoryCacheUpdate()
+        throws Exception
+    {
+        // SETUP
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Method allocated = getAllocatedBytesMethod( bean );
+        if ( allocated == null )
+        {
+            return;
+        }
+
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMaxObjects( KEYS * 2 );
+        cattr.setMemoryCacheName( LRUMemoryCache.class.getName() );
+        CompositeCache<String, String> cache =
+            new CompositeCache<String, String>( "testUpdateAllocation", cattr, new ElementAttributes() );
+        CacheElement<String, String>[] elements = createElements( cache );
+        for ( int i = 0; i < GETS; i++ )
+        {
+            cache.update( elements[i % KEYS] );
+        }
+        Long threadId = Long.valueOf( Thread.currentThread().getId() );
+
+        // DO WORK
+        long before = ( (Long) allocated.invoke( bean, threadId ) ).longValue();
+        for ( int i = 0; i < GETS; i++ )
+        {
+            cache.update( elements[i % KEYS] );
+        }
+        long after = ( (Long) allocated.invoke( bean, threadId ) ).longValue();
+
+        // VERIFY
+        // the memory cache allocates a descriptor per put
+        assertTrue( "Allocated " + ( after - before ) + " bytes for " + GETS + " puts.", after - before < GETS * 64L );
+    }
+
+    /**
+     * @param cache
+     * @return an element for each key, with the attributes of the region
+     */
+    @SuppressWarnings("unchecked") // No generic arrays in java
+    private CacheElement<String, String>[] createElements( CompositeCache<String, String> cache )
+    {
+        CacheElement<String, String>[] elements = new CacheElement[KEYS];
+        for ( int i = 0; i < KEYS; i++ )
+        {
+            elements[i] = new CacheElement<String, String>( cache.getCacheName(), i + ":key", "data " + i );
+            elements[i].setElementAttributes( cache.getElementAttributes() );
+        }
+        return elements;
+    }
+
+    /**
+     * Fills a region with expiring elements, warms up the hit path and then measures it.
+     * <p>
+     * @param memoryCacheName
+     * @param compactAttributes
+     * @throws Exception
+     */
+    private void verifyNoAllocation( String memoryCacheName, boolean compactAttributes )
+        throws Exception
+    {
+        // SETUP
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Method allocated = getAllocatedBytesMethod( bean );
+        if ( allocated == null )
+        {
+            return;
+        }
+
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMaxObjects( KEYS * 2 );
+        cattr.setMemoryCacheName( memoryCacheName );
+        cattr.setUseCompactElementAttributes( compactAttributes );
+        ElementAttributes attr = new ElementAttributes();
+        attr.setIsEternal( false );
+        attr.setMaxLifeSeconds( 3600 );
+        attr.setIdleTime( 1800 );
+
+        CompositeCache<String, String> cache = new CompositeCache<String, String>( "testHitAllocation", cattr, attr );
+        String[] keys = new String[KEYS];
+        for ( int i = 0; i < KEYS; i++ )
+        {
+            keys[i] = i + ":key";
+            CacheElement<String, String> ce = new CacheElement<String, String>( cache.getCacheName(), keys[i], "data " + i );
+            ce.setElementAttributes( cache.getElementAttributes() );
+            cache.update( ce );
+        }
+        for ( int i = 0; i < GETS; i++ )
+        {
+            assertNotNull( "Should hit.", cache.get( keys[i % KEYS] ) );
+        }
+        Long threadId = Long.valueOf( Thread.currentThread().getId() );
+
+        // DO WORK
+        long before = ( (Long) allocated.invoke( bean, threadId ) ).longValue();
+        for ( int i = 0; i < GETS; i++ )
+        {
+            cache.get( keys[i % KEYS] );
+        }
+        long after = ( (Long) allocated.invoke( bean, threadId ) ).longValue();
+
+        // VERIFY
+        // the reads themselves may allocate a few bytes
+        assertTrue( "Allocated " + ( after - before ) + " bytes for " + GETS + " hits.", after - before < GETS / 10 );
+    }
+
+    /**
+     * @param bean
+     * @return the getThreadAllocatedBytes(long) method if this JVM supports it, else null
+     */
+    private Method getAllocatedBytesMethod( ThreadMXBean bean )
+    {
+        try
+        {
+            // the extension interface is public, unlike the class that implements it
+            Method method = Class.forName( "com.sun.management.ThreadMXBean" )
+                .getMethod( "getThreadAllocatedBytes", long.class );
+            Long test = (Long) method.invoke( bean, Long.valueOf( Thread.currentThread().getId() ) );
+            return test.longValue() >= 0 ? method : null;
+        }
+        catch ( Exception e )
+        {
+            return null;
+        }
+    }
+}
@@ -20,16 +20,29 @@ package org.apache.commons.jcs.engine.control;
  */
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.jcs.auxiliary.AuxiliaryCache;
 import org.apache.commons.jcs.auxiliary.MockAuxiliaryCache;
+import org.apache.commons.jcs.auxiliary.disk.indexed.IndexedDiskCache;
+import org.apache.commons.jcs.auxiliary.disk.indexed.IndexedDiskCacheAttributes;
 import org.apache.commons.jcs.engine.CacheElement;
 import org.apache.commons.jcs.engine.CompositeCacheAttributes;
 import org.apache.commons.jcs.engine.ElementAttributes;
 import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICacheLoader;
 import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
 import org.apache.commons.jcs.engine.behavior.IElementAttributes;
 import org.apache.commons.jcs.engine.behavior.ICacheType.CacheType;
@@ -242,4 +255,846 @@ public class CompositeCacheUnitTest
         // VERIFY
         assertEquals( "Wrong number of calls", 1, diskMock.getMatchingCallCount );
     }
+
+    /**
+     * Verify that a memory hit is not blocked by a slow auxiliary lookup for another key, and that
+     * the hit and miss counters are kept for both.
+     * <p>
+     * @throws Exception
+     */
+    public void testGet_MemoryHitNotBlockedBySlowAuxiliary()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testGet_MemoryHitNotBlockedBySlowAuxiliary";
+        String memoryCacheClassName = "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( memoryCacheClassName );
+        cattr.setMaxObjects( 100 );
+
+        IElementAttributes attr = new ElementAttributes();
+
+        final CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, attr );
+
+        final CountDownLatch auxEntered = new CountDownLatch( 1 );
+        final CountDownLatch auxRelease = new CountDownLatch( 1 );
+        MockAuxiliaryCache<String, Integer> diskMock = new MockAuxiliaryCache<String, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public ICacheElement<String, Integer> get( String key )
+                throws IOException
+            {
+                auxEntered.countDown();
+                try
+                {
+                    auxRelease.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    // ignore
+                }
+                return null;
+            }
+        };
+        diskMock.cacheType = CacheType.DISK_CACHE;
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { diskMock };
+        cache.setAuxCaches( aux );
+
+        cache.update( new CacheElement<String, Integer>( cacheName, "inMemory", Integer.valueOf( 1 ) ), false );
+
+        Thread slowReader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                cache.get( "notInMemory" );
+            }
+        };
+        slowReader.start();
+        assertTrue( "The auxiliary should have been called", auxEntered.await( 10, TimeUnit.SECONDS ) );
+
+        // DO WORK
+        long start = System.currentTimeMillis();
+        ICacheElement<String, Integer> result = cache.get( "inMemory" );
+        long elapsed = System.currentTimeMillis() - start;
+
+        auxRelease.countDown();
+        slowReader.join();
+
+        // VERIFY
+        assertNotNull( "Should have found the element in memory", result );
+        assertTrue( "Memory hit should not wait for the auxiliary, took " + elapsed, elapsed < 5000 );
+        assertEquals( "Wrong ram hit count", 1, cache.getHitCountRam() );
+        assertEquals( "Wrong miss count", 1, cache.getMissCountNotFound() );
+    }
+
+    /**
+     * With update lock striping a put that is stuck in a slow auxiliary should only hold up its
+     * own stripe. A put to another key should go through and be visible right away.
+     * <p>
+     * @throws Exception
+     */
+    public void testUpdate_StripedNotBlockedBySlowAuxiliary()
+        throws Exception
+    {
+        // SETUP
+        final String cacheName = "testUpdate_StripedNotBlockedBySlowAuxiliary";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 100 );
+        cattr.setUpdateLockStripes( 1024 );
+
+        IElementAttributes attr = new ElementAttributes();
+
+        final CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, attr );
+
+        final CountDownLatch auxEntered = new CountDownLatch( 1 );
+        final CountDownLatch auxRelease = new CountDownLatch( 1 );
+        MockAuxiliaryCache<String, Integer> lateralMock = new MockAuxiliaryCache<String, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void update( ICacheElement<String, Integer> ce )
+                throws IOException
+            {
+                if ( "slow".equals( ce.getKey() ) )
+                {
+                    auxEntered.countDown();
+                    try
+                    {
+                        auxRelease.await( 10, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException e )
+                    {
+                        // ignore
+                    }
+                }
+            }
+        };
+        lateralMock.cacheType = CacheType.LATERAL_CACHE;
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { lateralMock };
+        cache.setAuxCaches( aux );
+
+        Thread slowWriter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    cache.update( new CacheElement<String, Integer>( cacheName, "slow", Integer.valueOf( 1 ) ) );
+                }
+                catch ( IOException e )
+                {
+                    // ignore
+                }
+            }
+        };
+        slowWriter.start();
+        assertTrue( "The auxiliary should have been called", auxEntered.await( 10, TimeUnit.SECONDS ) );
+
+        // DO WORK
+        long start = System.currentTimeMillis();
+        cache.update( new CacheElement<String, Integer>( cacheName, "fast", Integer.valueOf( 2 ) ) );
+        long elapsed = System.currentTimeMillis() - start;
+
+        // VERIFY
+        assertNotNull( "The slow put should be published to memory before the fan out", cache.get( "slow" ) );
+        assertNotNull( "The fast put should be in memory", cache.get( "fast" ) );
+
+        auxRelease.countDown();
+        slowWriter.join();
+
+        assertTrue( "Put to another stripe should not wait for the auxiliary, took " + elapsed, elapsed < 5000 );
+        assertEquals( "Wrong update count", 2, cache.getUpdateCount() );
+    }
+
+    /**
+     * With update lock striping a removeAll should wait for a striped put that is still updating
+     * the auxiliaries, so the put cannot leave an element behind in memory or an auxiliary.
+     * <p>
+     * @throws Exception
+     */
+    public void testRemoveAll_WaitsForStripedUpdate()
+        throws Exception
+    {
+        // SETUP
+        final String cacheName = "testRemoveAll_WaitsForStripedUpdate";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 100 );
+        cattr.setUpdateLockStripes( 16 );
+
+        final CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, new ElementAttributes() );
+
+        final CountDownLatch auxEntered = new CountDownLatch( 1 );
+        final CountDownLatch auxRelease = new CountDownLatch( 1 );
+        final StringBuffer calls = new StringBuffer();
+        MockAuxiliaryCache<String, Integer> lateralMock = new MockAuxiliaryCache<String, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void update( ICacheElement<String, Integer> ce )
+                throws IOException
+            {
+                auxEntered.countDown();
+                try
+                {
+                    auxRelease.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    // ignore
+                }
+                calls.append( "update " );
+            }
+
+            @Override
+            public void removeAll()
+                throws IOException
+            {
+                calls.append( "removeAll " );
+            }
+        };
+        lateralMock.cacheType = CacheType.LATERAL_CACHE;
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { lateralMock };
+        cache.setAuxCaches( aux );
+
+        Thread slowWriter = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    cache.update( new CacheElement<String, Integer>( cacheName, "slow", Integer.valueOf( 1 ) ) );
+                }
+                catch ( IOException e )
+                {
+                    // ignore
+                }
+            }
+        };
+        slowWriter.start();
+        assertTrue( "The auxiliary should have been called", auxEntered.await( 10, TimeUnit.SECONDS ) );
+
+        // DO WORK
+        Thread remover = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    cache.removeAll();
+                }
+                catch ( IOException e )
+                {
+                    // ignore
+                }
+            }
+        };
+        remover.start();
+        remover.join( 200 );
+        boolean removedEarly = !remover.isAlive();
+
+        auxRelease.countDown();
+        slowWriter.join();
+        remover.join();
+
+        // VERIFY
+        assertFalse( "The removeAll should wait for the put", removedEarly );
+        assertEquals( "Wrong order of auxiliary calls", "update removeAll ", calls.toString() );
+        assertNull( "The put should have been removed from memory", cache.get( "slow" ) );
+    }
+
+    /**
+     * An auxiliary that keeps its elements in a map.
+     */
+    private static class MapAuxiliaryCache
+        extends MockAuxiliaryCache<String, Integer>
+    {
+        /** Don't change. */
+        private static final long serialVersionUID = 1L;
+
+        /** The elements. */
+        final Map<String, ICacheElement<String, Integer>> map =
+            new ConcurrentHashMap<String, ICacheElement<String, Integer>>();
+
+        @Override
+        public void update( ICacheElement<String, Integer> ce )
+        {
+            map.put( ce.getKey(), ce );
+        }
+
+        @Override
+        public ICacheElement<String, Integer> get( String key )
+            throws IOException
+        {
+            return map.get( key );
+        }
+
+        @Override
+        public boolean remove( String key )
+        {
+            return map.remove( key ) != null;
+        }
+    }
+
+    /**
+     * A remove that completes while a get is reading the auxiliary should not have its value put
+     * back into memory by the get.
+     * <p>
+     * @throws Exception
+     */
+    public void testGet_RemoveDuringAuxiliaryLookup()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testGet_RemoveDuringAuxiliaryLookup";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 100 );
+
+        final CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, new ElementAttributes() );
+
+        final CountDownLatch auxEntered = new CountDownLatch( 1 );
+        final CountDownLatch auxRelease = new CountDownLatch( 1 );
+        MapAuxiliaryCache slowAux = new MapAuxiliaryCache()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public ICacheElement<String, Integer> get( String key )
+                throws IOException
+            {
+                ICacheElement<String, Integer> element = super.get( key );
+                auxEntered.countDown();
+                try
+                {
+                    auxRelease.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    // ignore
+                }
+                return element;
+            }
+        };
+        slowAux.cacheType = CacheType.LATERAL_CACHE;
+        slowAux.update( new CacheElement<String, Integer>( cacheName, "key", Integer.valueOf( 1 ) ) );
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { slowAux };
+        cache.setAuxCaches( aux );
+
+        final ICacheElement<?, ?>[] got = new ICacheElement[1];
+        Thread reader = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                got[0] = cache.get( "key" );
+            }
+        };
+        reader.start();
+        assertTrue( "The auxiliary should have been called", auxEntered.await( 10, TimeUnit.SECONDS ) );
+
+        // DO WORK
+        boolean removed = cache.remove( "key" );
+        auxRelease.countDown();
+        reader.join();
+
+        // VERIFY
+        assertTrue( "Should have removed from the auxiliary", removed );
+        assertNotNull( "The get should still return what it read", got[0] );
+        assertNull( "The removed value should not be back in memory", cache.getMemoryCache().getQuiet( "key" ) );
+    }
+
+    /**
+     * Gets, puts and removes of the same keys from several threads. Afterwards every element in
+     * memory should also be in the auxiliary, with the same value. A get that puts a removed value
+     * back into memory breaks this.
+     * <p>
+     * @throws Exception
+     */
+    public void testGet_ConcurrentWithRemove()
+        throws Exception
+    {
+        // SETUP
+        final String cacheName = "testGet_ConcurrentWithRemove";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 1000 );
+        cattr.setUpdateLockStripes( 16 );
+
+        final CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, new ElementAttributes() );
+        final MapAuxiliaryCache lateral = new MapAuxiliaryCache();
+        lateral.cacheType = CacheType.LATERAL_CACHE;
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { lateral };
+        cache.setAuxCaches( aux );
+
+        final int keys = 20;
+        final Throwable[] errors = new Throwable[6];
+        Thread[] threads = new Thread[errors.length];
+
+        // DO WORK
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int id = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random( id );
+                    try
+                    {
+                        for ( int i = 0; i < 20000; i++ )
+                        {
+                            String key = "key" + random.nextInt( keys );
+                            int op = random.nextInt( 10 );
+                            if ( op < 5 )
+                            {
+                                cache.get( key );
+                            }
+                            else if ( op < 7 )
+                            {
+                                cache.update( new CacheElement<String, Integer>( cacheName, key, Integer.valueOf( i ) ) );
+                            }
+                            else if ( op < 9 )
+                            {
+                                cache.remove( key );
+                            }
+                            else
+                            {
+                                // leave the element only in the auxiliary, so the next get copies it back
+                                cache.getMemoryCache().remove( key );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        errors[id] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        // VERIFY
+        for ( Throwable error : errors )
+        {
+            if ( error != null )
+            {
+                throw new AssertionError( error );
+            }
+        }
+        for ( int i = 0; i < keys; i++ )
+        {
+            ICacheElement<String, Integer> inMemory = cache.getMemoryCache().getQuiet( "key" + i );
+            if ( inMemory != null )
+            {
+                ICacheElement<String, Integer> inAux = lateral.map.get( "key" + i );
+                assertNotNull( "A removed element was put back into memory for key" + i, inAux );
+                assertEquals( "Memory and the auxiliary disagree for key" + i, inAux.getVal(), inMemory.getVal() );
+            }
+        }
+    }
+
+    /**
+     * A get inside the refresh ahead window should return the current value and reload it once in
+     * the background.
+     * <p>
+     * @throws Exception
+     */
+    public void testGet_RefreshAhead()
+        throws Exception
+    {
+        // SETUP
+        final CompositeCache<String, String> cache = createRefreshCache( "testGet_RefreshAhead" );
+        final AtomicInteger loads = new AtomicInteger();
+        cache.setCacheLoader( new ICacheLoader<String, String>()
+        {
+            public String load( String key )
+            {
+                loads.incrementAndGet();
+                return "fresh";
+            }
+        } );
+
+        ElementAttributes attr = new ElementAttributes();
+        attr.setIsEternal( false );
+        attr.setMaxLifeSeconds( 10 );
+        attr.setRefreshAheadSeconds( 5 );
+        CacheElement<String, String> element = new CacheElement<String, String>( "testGet_RefreshAhead", "key", "old" );
+        element.setElementAttributes( attr );
+        cache.update( element );
+        attr.createTime = System.currentTimeMillis() - 6000;
+
+        // DO WORK
+        ICacheElement<String, String> result = cache.get( "key" );
+
+        // VERIFY
+        assertEquals( "Should get the current value right away", "old", result.getVal() );
+        assertEquals( "Should have been refreshed", "fresh", waitForValue( cache, "key", "fresh" ) );
+        assertEquals( "Wrong number of loads", 1, loads.get() );
+        assertEquals( "Refresh should keep the element attributes", 5,
+                      cache.get( "key" ).getElementAttributes().getRefreshAheadSeconds() );
+    }
+
+    /**
+     * An element past its max life but inside the stale window should be served and reloaded. It
+     * should expire as usual if no loader is registered.
+     * <p>
+     * @throws Exception
+     */
+    public void testGet_ServeStale()
+        throws Exception
+    {
+        // SETUP
+        CompositeCache<String, String> cache = createRefreshCache( "testGet_ServeStale" );
+
+        ElementAttributes attr = new ElementAttributes();
+        attr.setIsEternal( false );
+        attr.setMaxLifeSeconds( 1 );
+        attr.setMaxStaleSeconds( 60 );
+        CacheElement<String, String> element = new CacheElement<String, String>( "testGet_ServeStale", "key", "old" );
+        element.setElementAttributes( attr );
+        cache.update( element );
+        attr.createTime = System.currentTimeMillis() - 2000;
+
+        cache.setCacheLoader( new ICacheLoader<String, String>()
+        {
+            public String load( String key )
+            {
+                return "fresh";
+            }
+        } );
+
+        // DO WORK
+        ICacheElement<String, String> result = cache.get( "key" );
+
+        // VERIFY
+        assertNotNull( "Stale element should be served", result );
+        assertEquals( "Should get the stale value", "old", result.getVal() );
+        assertEquals( "Should have been refreshed", "fresh", waitForValue( cache, "key", "fresh" ) );
+
+        // without a loader the stale window does not apply
+        cache.setCacheLoader( null );
+        ElementAttributes refreshed = (ElementAttributes) cache.getMemoryCache().getQuiet( "key" ).getElementAttributes();
+        refreshed.createTime = System.currentTimeMillis() - 2000;
+        assertNull( "Should expire without a loader", cache.get( "key" ) );
+    }
+
+    /**
+     * @param cacheName
+     * @return a cache with an LRU memory cache and no auxiliaries
+     */
+    private CompositeCache<String, String> createRefreshCache( String cacheName )
+    {
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 100 );
+        return new CompositeCache<String, String>( cacheName, cattr, new ElementAttributes() );
+    }
+
+    /**
+     * Polls memory until the key has the expected value or a few seconds have passed.
+     * <p>
+     * @param cache
+     * @param key
+     * @param expected
+     * @return the last value seen
+     * @throws Exception
+     */
+    private String waitForValue( CompositeCache<String, String> cache, String key, String expected )
+        throws Exception
+    {
+        String value = null;
+        for ( int i = 0; i < 100; i++ )
+        {
+            ICacheElement<String, String> element = cache.getMemoryCache().getQuiet( key );
+            value = element == null ? null : element.getVal();
+            if ( expected.equals( value ) )
+            {
+                break;
+            }
+            Thread.sleep( 50 );
+        }
+        return value;
+    }
+
+    /**
+     * Verify that a batch is put in memory and handed to each auxiliary in one call, with only the
+     * elements the auxiliary may receive.
+     * <p>
+     * @throws Exception
+     */
+    public void testUpdateMultiple_BatchesAuxiliaries()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testUpdateMultiple_BatchesAuxiliaries";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 100 );
+        cattr.setDiskUsagePattern( ICompositeCacheAttributes.DiskUsagePattern.UPDATE );
+        cattr.setUpdateLockStripes( 8 );
+
+        CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, new ElementAttributes() );
+
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger batched = new AtomicInteger();
+        MockAuxiliaryCache<String, Integer> diskMock = new MockAuxiliaryCache<String, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void updateMultiple( Map<String, ICacheElement<String, Integer>> elements )
+            {
+                batches.incrementAndGet();
+                batched.addAndGet( elements.size() );
+            }
+        };
+        diskMock.cacheType = CacheType.DISK_CACHE;
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { diskMock };
+        cache.setAuxCaches( aux );
+
+        Map<String, ICacheElement<String, Integer>> elements = new HashMap<String, ICacheElement<String, Integer>>();
+        for ( int i = 0; i < 50; i++ )
+        {
+            CacheElement<String, Integer> element = new CacheElement<String, Integer>( cacheName, "key" + i, Integer.valueOf( i ) );
+            ElementAttributes attr = new ElementAttributes();
+            // every tenth element may not go to disk
+            attr.setIsSpool( i % 10 != 0 );
+            element.setElementAttributes( attr );
+            elements.put( element.getKey(), element );
+        }
+
+        // DO WORK
+        cache.updateMultiple( elements );
+
+        // VERIFY
+        assertEquals( "Wrong memory size", 50, cache.getMemoryCache().getSize() );
+        assertEquals( "Wrong value", Integer.valueOf( 7 ), cache.get( "key7" ).getVal() );
+        assertEquals( "Wrong update count", 50, cache.getUpdateCount() );
+        assertEquals( "The disk should get one batch", 1, batches.get() );
+        assertEquals( "The disk should only get spoolable elements", 45, batched.get() );
+    }
+
+    /**
+     * Verify that a parallel getMultiple looks up the keys concurrently, and that the first
+     * auxiliary wins when two have the same key.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetMultiple_Parallel()
+        throws Exception
+    {
+        // SETUP
+        final String cacheName = "testGetMultiple_Parallel";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 100 );
+        cattr.setUseParallelGetMultiple( true );
+        cattr.setGetMultipleTimeoutMillis( 10000 );
+
+        CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, new ElementAttributes() );
+        ExecutorService executor = Executors.newFixedThreadPool( 10 );
+        cache.setGetMultipleExecutor( executor );
+
+        final int numKeys = 5;
+        // every get waits until all of them have started, which only works if they run in parallel
+        final CountDownLatch allStarted = new CountDownLatch( numKeys );
+        MockAuxiliaryCache<String, Integer> first = new MockAuxiliaryCache<String, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public ICacheElement<String, Integer> get( String key )
+            {
+                allStarted.countDown();
+                try
+                {
+                    allStarted.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    return null;
+                }
+                return new CacheElement<String, Integer>( cacheName, key, Integer.valueOf( 1 ) );
+            }
+        };
+        first.cacheType = CacheType.DISK_CACHE;
+        MockAuxiliaryCache<String, Integer> second = new MockAuxiliaryCache<String, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public ICacheElement<String, Integer> get( String key )
+            {
+                return new CacheElement<String, Integer>( cacheName, key, Integer.valueOf( 2 ) );
+            }
+        };
+        second.cacheType = CacheType.DISK_CACHE;
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { first, second };
+        cache.setAuxCaches( aux );
+
+        Set<String> keys = new HashSet<String>();
+        for ( int i = 0; i < numKeys; i++ )
+        {
+            keys.add( "key" + i );
+        }
+
+        // DO WORK
+        long start = System.currentTimeMillis();
+        Map<String, ICacheElement<String, Integer>> result = cache.getMultiple( keys );
+        long elapsed = System.currentTimeMillis() - start;
+        executor.shutdown();
+
+        // VERIFY
+        assertEquals( "Wrong number of results", numKeys, result.size() );
+        assertTrue( "The lookups should have run in parallel, took " + elapsed, elapsed < 5000 );
+        for ( ICacheElement<String, Integer> element : result.values() )
+        {
+            assertEquals( "The first auxiliary should win", Integer.valueOf( 1 ), element.getVal() );
+        }
+        assertEquals( "Wrong aux hit count", numKeys, cache.getHitCountAux() );
+    }
+
+    /**
+     * Verify that a parallel getMultiple gives up on slow auxiliaries at the deadline.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetMultiple_ParallelDeadline()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testGetMultiple_ParallelDeadline";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 100 );
+        cattr.setUseParallelGetMultiple( true );
+        cattr.setGetMultipleTimeoutMillis( 200 );
+
+        CompositeCache<String, Integer> cache = new CompositeCache<String, Integer>( cacheName, cattr, new ElementAttributes() );
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        cache.setGetMultipleExecutor( executor );
+
+        final CountDownLatch release = new CountDownLatch( 1 );
+        MockAuxiliaryCache<String, Integer> slow = new MockAuxiliaryCache<String, Integer>()
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public ICacheElement<String, Integer> get( String key )
+            {
+                try
+                {
+                    release.await( 10, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    // cancelled
+                }
+                return null;
+            }
+        };
+        slow.cacheType = CacheType.DISK_CACHE;
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, Integer>[] aux = new AuxiliaryCache[] { slow };
+        cache.setAuxCaches( aux );
+
+        Set<String> keys = new HashSet<String>();
+        keys.add( "a" );
+        keys.add( "b" );
+
+        // DO WORK
+        long start = System.currentTimeMillis();
+        Map<String, ICacheElement<String, Integer>> result = cache.getMultiple( keys );
+        long elapsed = System.currentTimeMillis() - start;
+        release.countDown();
+        executor.shutdown();
+
+        // VERIFY
+        assertTrue( "Should have nothing", result.isEmpty() );
+        assertTrue( "Should have given up at the deadline, took " + elapsed, elapsed < 5000 );
+        assertEquals( "Wrong miss count", 2, cache.getMissCountNotFound() );
+    }
+
+    /**
+     * Give up on a parallel getMultiple against an indexed disk cache while its reads are still
+     * running. The late reads must not be interrupted, since that would close the data file, so a
+     * following get should still find the elements.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetMultiple_ParallelDeadlineKeepsDiskUsable()
+        throws Exception
+    {
+        // SETUP
+        String cacheName = "testGetMultiple_ParallelDeadlineKeepsDiskUsable";
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMemoryCacheName( "org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache" );
+        cattr.setMaxObjects( 0 );
+        cattr.setUseParallelGetMultiple( true );
+        cattr.setGetMultipleTimeoutMillis( 1 );
+
+        CompositeCache<String, String> cache = new CompositeCache<String, String>( cacheName, cattr, new ElementAttributes() );
+        ExecutorService executor = Executors.newFixedThreadPool( 8 );
+        cache.setGetMultipleExecutor( executor );
+
+        IndexedDiskCacheAttributes diskAttr = new IndexedDiskCacheAttributes();
+        diskAttr.setCacheName( cacheName );
+        diskAttr.setDiskPath( "target/test-sandbox/CompositeCacheUnitTest" );
+        IndexedDiskCache<String, String> disk = new IndexedDiskCache<String, String>( diskAttr );
+        disk.removeAll();
+
+        int numKeys = 500;
+        Set<String> keys = new HashSet<String>();
+        for ( int i = 0; i < numKeys; i++ )
+        {
+            disk.update( new CacheElement<String, String>( cacheName, "key" + i, "data" + i ) );
+            keys.add( "key" + i );
+        }
+        // reopen, so the elements are read from the file rather than from purgatory
+        disk.dispose();
+        disk = new IndexedDiskCache<String, String>( diskAttr );
+        assertEquals( "Wrong disk size", numKeys, disk.getSize() );
+
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, String>[] aux = new AuxiliaryCache[] { disk };
+        cache.setAuxCaches( aux );
+
+        // DO WORK
+        for ( int i = 0; i < 5; i++ )
+        {
+            cache.getMultiple( keys );
+        }
+        executor.shutdown();
+        assertTrue( "The late reads should finish", executor.awaitTermination( 10, TimeUnit.SECONDS ) );
+
+        // VERIFY
+        for ( int i = 0; i < numKeys; i++ )
+        {
+            ICacheElement<String, String> element = cache.get( "key" + i );
+            assertNotNull( "The disk cache should still work, missing key" + i, element );
+            assertEquals( "Wrong value", "data" + i, element.getVal() );
+        }
+    }
 }
@@ -0,0 +1,210 @@
+package org.apache.commons.jcs.engine.memory;
+
+import java.io.IOException;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.CompositeCacheManager;
+import org.apache.commons.jcs.engine.memory.behavior.IBudgetedMemoryCache;
+import org.apache.commons.jcs.engine.memory.behavior.IElementWeigher;
+
+/** Unit tests for the memory budget shared by regions. */
+public class MemoryBudgetUnitTest
+    extends TestCase
+{
+    /** Weighs every element at 10 bytes. */
+    public static class TenByteWeigher
+        implements IElementWeigher<String, String>
+    {
+        /**
+         * @param ce
+         * @return 10
+         */
+        public long weigh( ICacheElement<String, String> ce )
+        {
+            return 10;
+        }
+    }
+
+    /**
+     * Creates a region with an lru memory cache that weighs elements at 10 bytes.
+     * <p>
+     * @param cacheName
+     * @return the region
+     */
+    private CompositeCache<String, String> createCache( String cacheName )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( 100 );
+        attributes.setElementWeigherClassName( TenByteWeigher.class.getName() );
+        return new CompositeCache<String, String>( cacheName, attributes, new ElementAttributes() );
+    }
+
+    /**
+     * Puts elements into the memory cache of the region.
+     * <p>
+     * @param cache
+     * @param prefix
+     * @param count
+     * @throws IOException
+     */
+    private void put( CompositeCache<String, String> cache, String prefix, int count )
+        throws IOException
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            cache.getMemoryCache().update(
+                new CacheElement<String, String>( cache.getCacheName(), prefix + i, "value" + i ) );
+        }
+    }
+
+    /**
+     * Verify that the elements of an idle region are spooled before those of a busy one.
+     * <p>
+     * @throws Exception
+     */
+    public void testEnforce_SpoolsGloballyColdest()
+        throws Exception
+    {
+        // SETUP
+        MemoryBudget budget = new MemoryBudget();
+        budget.setMaxMemoryBytes( 100 );
+        CompositeCache<String, String> idle = createCache( "idle" );
+        CompositeCache<String, String> busy = createCache( "busy" );
+        budget.register( (IBudgetedMemoryCache<String, String>) idle.getMemoryCache() );
+        budget.register( (IBudgetedMemoryCache<String, String>) busy.getMemoryCache() );
+
+        put( idle, "idle", 5 );
+        Thread.sleep( 20 );
+        put( busy, "busy", 10 );
+        assertEquals( "Wrong bytes used before", 150, budget.getBytesUsed() );
+
+        // DO WORK
+        int spooled = budget.enforce();
+
+        // VERIFY
+        assertEquals( "Wrong number spooled", 5, spooled );
+        assertEquals( "Idle region should be empty", 0, idle.getMemoryCache().getSize() );
+        assertEquals( "Busy region should be untouched", 10, busy.getMemoryCache().getSize() );
+        assertEquals( "Wrong bytes used after", 100, budget.getBytesUsed() );
+        assertEquals( "Wrong spool count", 5, budget.getSpoolCount() );
+    }
+
+    /**
+     * Verify that reading elements keeps them in memory at the expense of another region.
+     * <p>
+     * @throws Exception
+     */
+    public void testEnforce_RecentlyUsedSurvive()
+        throws Exception
+    {
+        // SETUP
+        MemoryBudget budget = new MemoryBudget();
+        budget.setMaxMemoryBytes( 60 );
+        CompositeCache<String, String> first = createCache( "first" );
+        CompositeCache<String, String> second = createCache( "second" );
+        budget.register( (IBudgetedMemoryCache<String, String>) first.getMemoryCache() );
+        budget.register( (IBudgetedMemoryCache<String, String>) second.getMemoryCache() );
+
+        put( first, "first", 5 );
+        Thread.sleep( 20 );
+        put( second, "second", 5 );
+        Thread.sleep( 20 );
+        for ( int i = 0; i < 5; i++ )
+        {
+            first.getMemoryCache().get( "first" + i );
+        }
+
+        // DO WORK
+        budget.enforce();
+
+        // VERIFY
+        assertEquals( "First region should be untouched", 5, first.getMemoryCache().getSize() );
+        assertEquals( "Second region should have lost 4", 1, second.getMemoryCache().getSize() );
+        assertNotNull( "Most recent of the second region should survive", second.getMemoryCache().get( "second4" ) );
+    }
+
+    /**
+     * Verify that a region leaving the budget releases its weight.
+     * <p>
+     * @throws Exception
+     */
+    public void testDeregister_ReleasesWeight()
+        throws Exception
+    {
+        // SETUP
+        MemoryBudget budget = new MemoryBudget();
+        budget.setMaxMemoryBytes( 1000 );
+        CompositeCache<String, String> cache = createCache( "leaving" );
+        IBudgetedMemoryCache<String, String> memCache = (IBudgetedMemoryCache<String, String>) cache.getMemoryCache();
+        budget.register( memCache );
+        put( cache, "key", 3 );
+        assertEquals( "Wrong bytes used", 30, budget.getBytesUsed() );
+
+        // DO WORK
+        budget.deregister( memCache );
+        put( cache, "other", 3 );
+
+        // VERIFY
+        assertEquals( "Should have released the weight", 0, budget.getBytesUsed() );
+    }
+
+    /**
+     * Verify that a configured budget is enforced in the background when puts exceed it.
+     * <p>
+     * @throws Exception
+     */
+    public void testConfigure_EnforcedOnPut()
+        throws Exception
+    {
+        // SETUP
+        Properties props = new Properties();
+        props.put( "jcs.default", "" );
+        props.put( "jcs.default.cacheattributes.MaxObjects", "1000" );
+        props.put( "jcs.default.cacheattributes.ElementWeigherClassName", TenByteWeigher.class.getName() );
+        props.put( "jcs.memorybudget.MaxMemoryBytes", "100" );
+        props.put( "jcs.memorybudget.CheckIntervalSeconds", "0" );
+
+        CompositeCacheManager manager = new CompositeCacheManager()
+        {
+            // use a private instance, not the singleton
+        };
+        manager.configure( props );
+
+        try
+        {
+            MemoryBudget budget = manager.getMemoryBudget();
+            assertNotNull( "Should have a budget", budget );
+            CompositeCache<String, String> first = manager.getCache( "first" );
+            CompositeCache<String, String> second = manager.getCache( "second" );
+
+            // DO WORK
+            for ( int i = 0; i < 20; i++ )
+            {
+                first.update( new CacheElement<String, String>( "first", "key" + i, "value" + i ) );
+                second.update( new CacheElement<String, String>( "second", "key" + i, "value" + i ) );
+            }
+
+            // VERIFY
+            for ( int i = 0; i < 100 && budget.getBytesUsed() > 100; i++ )
+            {
+                Thread.sleep( 20 );
+            }
+            assertTrue( "Should be back under budget: " + budget.getBytesUsed(), budget.getBytesUsed() <= 100 );
+            assertEquals( "Wrong bytes used in regions", budget.getBytesUsed(),
+                          ( (IBudgetedMemoryCache<String, String>) first.getMemoryCache() ).getBytesUsed()
+                              + ( (IBudgetedMemoryCache<String, String>) second.getMemoryCache() ).getBytesUsed() );
+        }
+        finally
+        {
+            manager.shutDown();
+        }
+    }
+}
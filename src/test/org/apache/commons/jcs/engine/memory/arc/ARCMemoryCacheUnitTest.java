@@ -0,0 +1,309 @@
+package org.apache.commons.jcs.engine.memory.arc;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.JCS;
+import org.apache.commons.jcs.access.CacheAccess;
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Tests for the ARCMemoryCache.
+ * <p>
+ * @author Aaron Smuts
+ */
+public class ARCMemoryCacheUnitTest
+    extends TestCase
+{
+    /**
+     * Creates an initialized cache.
+     * <p>
+     * @param cacheName
+     * @param maxObjects
+     * @return the memory cache
+     */
+    private ARCMemoryCache<String, String> createCache( String cacheName, int maxObjects )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( maxObjects );
+        attributes.setMemoryCacheName( ARCMemoryCache.class.getName() );
+
+        ARCMemoryCache<String, String> arc = new ARCMemoryCache<String, String>();
+        arc.initialize( new CompositeCache<String, String>( cacheName, attributes, new ElementAttributes() ) );
+        return arc;
+    }
+
+    /**
+     * Puts items into the cache.
+     * <p>
+     * @param arc
+     * @param from
+     * @param to exclusive
+     * @throws IOException
+     */
+    private void put( ARCMemoryCache<String, String> arc, int from, int to )
+        throws IOException
+    {
+        for ( int i = from; i < to; i++ )
+        {
+            arc.update( new CacheElement<String, String>( "arc", i + ":key", "data " + i ) );
+        }
+    }
+
+    /**
+     * Put a few items on through the hub, verify that the first ones were spooled and the last
+     * ones are there.
+     * <p>
+     * @throws Exception
+     */
+    public void testPutGetThroughHub()
+        throws Exception
+    {
+        JCS.setConfigFilename( "/TestARCCache.ccf" );
+        CacheAccess<String, String> cache = JCS.getInstance( "testPutGetThroughHub" );
+
+        int max = cache.getCacheAttributes().getMaxObjects();
+        int items = max * 2;
+
+        for ( int i = 0; i < items; i++ )
+        {
+            cache.put( i + ":key", "myregion" + " data " + i );
+        }
+
+        // Test that first items are not in the cache
+        for ( int i = max - 1; i >= 0; i-- )
+        {
+            assertNull( "Should not have value for key [" + i + ":key" + "] in the cache.", cache.get( i + ":key" ) );
+        }
+
+        // Test that last items are in cache
+        for ( int i = max; i < items; i++ )
+        {
+            assertEquals( "myregion" + " data " + i, cache.get( i + ":key" ) );
+        }
+    }
+
+    /**
+     * Put half the max and verify the key set and the initial target.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetKeySet()
+        throws Exception
+    {
+        ARCMemoryCache<String, String> arc = createCache( "testGetKeySet", 10 );
+
+        put( arc, 0, 5 );
+
+        assertEquals( "Wrong number of keys.", 5, arc.getKeySet().size() );
+        assertEquals( "Target t1 should be 1/2 until ghost hits.", 5, arc.getTargetT1() );
+    }
+
+    /**
+     * Put the max and then get the first element. It should now be in t2.
+     * <p>
+     * @throws Exception
+     */
+    public void testHitInT1AtMax()
+        throws Exception
+    {
+        ARCMemoryCache<String, String> arc = createCache( "testHitInT1AtMax", 10 );
+        put( arc, 0, 10 );
+        assertEquals( "Wrong number of items in T1.", 10, arc.getListSize( ARCMemoryCache._T1_ ) );
+
+        assertNotNull( "Should have the element.", arc.get( 0 + ":key" ) );
+        assertNotNull( "Should have the element.", arc.get( 0 + ":key" ) );
+
+        assertEquals( "T1 should have lost one item.", 9, arc.getListSize( ARCMemoryCache._T1_ ) );
+        assertEquals( "T2 should have one item.", 1, arc.getListSize( ARCMemoryCache._T2_ ) );
+    }
+
+    /**
+     * Fills T2 and then puts new elements. Once T1 is over its target the spooled keys are kept
+     * in B1.
+     * <p>
+     * @param arc
+     * @throws IOException
+     */
+    private void fillWithGhosts( ARCMemoryCache<String, String> arc )
+        throws IOException
+    {
+        put( arc, 0, 10 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            arc.get( i + ":key" );
+        }
+        put( arc, 10, 20 );
+    }
+
+    /**
+     * Putting a key found in B1 is a ghost hit: it goes to T2 and the target of T1 grows.
+     * <p>
+     * @throws Exception
+     */
+    public void testGhostHitInB1()
+        throws Exception
+    {
+        ARCMemoryCache<String, String> arc = createCache( "testGhostHitInB1", 10 );
+        fillWithGhosts( arc );
+
+        assertEquals( "Wrong size", 10, arc.getSize() );
+        assertNull( "Should have been spooled", arc.get( 10 + ":key" ) );
+        assertTrue( "B1 should hold spooled keys", arc.getListSize( ARCMemoryCache._B1_ ) > 0 );
+        int target = arc.getTargetT1();
+
+        put( arc, 10, 11 );
+
+        assertEquals( "Wrong size", 10, arc.getSize() );
+        assertTrue( "Target should have grown", arc.getTargetT1() > target );
+        assertNotNull( "Should have the element", arc.get( 10 + ":key" ) );
+    }
+
+    /**
+     * Verify that elements used twice survive a scan of elements used once.
+     * <p>
+     * @throws Exception
+     */
+    public void testScanResistant()
+        throws Exception
+    {
+        ARCMemoryCache<String, String> arc = createCache( "testScanResistant", 100 );
+        put( arc, 0, 50 );
+        for ( int i = 0; i < 50; i++ )
+        {
+            arc.get( i + ":key" );
+        }
+
+        put( arc, 1000, 2000 );
+
+        int survivors = 0;
+        for ( int i = 0; i < 50; i++ )
+        {
+            if ( arc.getQuiet( i + ":key" ) != null )
+            {
+                survivors++;
+            }
+        }
+        assertTrue( "Frequent elements should survive the scan: " + survivors, survivors >= 45 );
+    }
+
+    /**
+     * Verify removal, including removal of ghost keys, and freeElements.
+     * <p>
+     * @throws Exception
+     */
+    public void testRemoveAndFree()
+        throws Exception
+    {
+        ARCMemoryCache<String, String> arc = createCache( "testRemoveAndFree", 10 );
+        fillWithGhosts( arc );
+        int ghosts = arc.getListSize( ARCMemoryCache._B1_ ) + arc.getListSize( ARCMemoryCache._B2_ );
+
+        assertTrue( "Should remove", arc.remove( 19 + ":key" ) );
+        assertFalse( "Should not remove a ghost as an element", arc.remove( 10 + ":key" ) );
+        assertEquals( "Ghost should be forgotten", ghosts - 1,
+                      arc.getListSize( ARCMemoryCache._B1_ ) + arc.getListSize( ARCMemoryCache._B2_ ) );
+        assertEquals( "Wrong size", 9, arc.getSize() );
+
+        assertEquals( "Should free 3", 3, arc.freeElements( 3 ) );
+        assertEquals( "Wrong size", 6, arc.getSize() );
+        assertEquals( "Should free the rest", 6, arc.freeElements( 100 ) );
+        assertTrue( "Ghosts should stay bounded",
+                    arc.getListSize( ARCMemoryCache._B1_ ) + arc.getListSize( ARCMemoryCache._B2_ ) <= 20 );
+
+        arc.removeAll();
+        assertEquals( "Wrong size", 0, arc.getSize() );
+        assertEquals( "Ghosts should be cleared", 0, arc.getListSize( ARCMemoryCache._B1_ ) );
+    }
+
+    /**
+     * Hammer the cache from several threads and verify that the lists stay within their bounds.
+     * <p>
+     * @throws Exception
+     */
+    public void testConcurrentAccess_Bounded()
+        throws Exception
+    {
+        final int max = 100;
+        final ARCMemoryCache<String, String> arc = createCache( "testConcurrentAccess_Bounded", max );
+
+        Thread[] threads = new Thread[8];
+        final Throwable[] failure = new Throwable[1];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int seed = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random( seed );
+                    try
+                    {
+                        for ( int i = 0; i < 20000; i++ )
+                        {
+                            String key = random.nextInt( 400 ) + ":key";
+                            int op = random.nextInt( 10 );
+                            if ( op < 5 )
+                            {
+                                arc.get( key );
+                            }
+                            else if ( op < 9 )
+                            {
+                                arc.update( new CacheElement<String, String>( "arc", key, "data" ) );
+                            }
+                            else
+                            {
+                                arc.remove( key );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t].join();
+        }
+
+        assertNull( "Should not fail: " + failure[0], failure[0] );
+        int t1 = arc.getListSize( ARCMemoryCache._T1_ );
+        int t2 = arc.getListSize( ARCMemoryCache._T2_ );
+        int b1 = arc.getListSize( ARCMemoryCache._B1_ );
+        int b2 = arc.getListSize( ARCMemoryCache._B2_ );
+        assertEquals( "Lists and map out of step", arc.getSize(), t1 + t2 );
+        assertTrue( "Too many elements", t1 + t2 <= max );
+        assertTrue( "Too many keys in T1 and B1", t1 + b1 <= max );
+        assertTrue( "Too many keys", t1 + t2 + b1 + b2 <= 2 * max );
+    }
+}
@@ -0,0 +1,179 @@
+package org.apache.commons.jcs.engine.memory.arc;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.memory.AbstractMemoryCache;
+import org.apache.commons.jcs.engine.memory.lru.LRUMemoryCache;
+
+/**
+ * Compares the hit ratio and the speed of the ARC and the LRU on a scan heavy and a loop heavy
+ * trace. Each miss is followed by a put, as it is when the region finds the element elsewhere.
+ */
+public class ARCvsLRUPerformanceTest
+    extends TestCase
+{
+    /** size of the caches */
+    int maxObjects = 1000;
+
+    /** times to run each trace */
+    int loops = 20;
+
+    /**
+     * Scans of keys that are used once between uses of a hot set. The LRU loses the hot set on
+     * every scan.
+     * <p>
+     * @throws Exception
+     */
+    public void testScanHeavyTrace()
+        throws Exception
+    {
+        float lru = runScanHeavy( new LRUMemoryCache<String, String>(), "LRU" );
+        float arc = runScanHeavy( new ARCMemoryCache<String, String>(), "ARC" );
+
+        assertTrue( "ARC hit ratio " + arc + " should beat the LRU " + lru, arc > lru );
+    }
+
+    /**
+     * A loop over more keys than fit. The LRU always evicts the key needed next.
+     * <p>
+     * @throws Exception
+     */
+    public void testLoopHeavyTrace()
+        throws Exception
+    {
+        float lru = runLoopHeavy( new LRUMemoryCache<String, String>(), "LRU" );
+        float arc = runLoopHeavy( new ARCMemoryCache<String, String>(), "ARC" );
+
+        assertTrue( "ARC hit ratio " + arc + " should not be below the LRU " + lru, arc >= lru );
+    }
+
+    /**
+     * @param memoryCache
+     * @param name
+     * @return the hit ratio
+     * @throws Exception
+     */
+    private float runScanHeavy( AbstractMemoryCache<String, String> memoryCache, String name )
+        throws Exception
+    {
+        initialize( memoryCache, name + "scan" );
+        int hot = maxObjects / 2;
+        int scan = maxObjects * 2;
+        int next = 0;
+
+        long hits = 0;
+        long requests = 0;
+        long start = System.currentTimeMillis();
+        for ( int j = 0; j < loops; j++ )
+        {
+            for ( int round = 0; round < 3; round++ )
+            {
+                for ( int i = 0; i < hot; i++ )
+                {
+                    hits += access( memoryCache, "hot:" + i );
+                    requests++;
+                }
+            }
+            for ( int i = 0; i < scan; i++ )
+            {
+                hits += access( memoryCache, "scan:" + next++ );
+                requests++;
+            }
+        }
+        return report( name + " scan heavy", hits, requests, System.currentTimeMillis() - start );
+    }
+
+    /**
+     * @param memoryCache
+     * @param name
+     * @return the hit ratio
+     * @throws Exception
+     */
+    private float runLoopHeavy( AbstractMemoryCache<String, String> memoryCache, String name )
+        throws Exception
+    {
+        initialize( memoryCache, name + "loop" );
+        int loopSize = maxObjects * 3 / 2;
+
+        long hits = 0;
+        long requests = 0;
+        long start = System.currentTimeMillis();
+        for ( int j = 0; j < loops; j++ )
+        {
+            for ( int i = 0; i < loopSize; i++ )
+            {
+                hits += access( memoryCache, "loop:" + i );
+                requests++;
+            }
+        }
+        return report( name + " loop heavy", hits, requests, System.currentTimeMillis() - start );
+    }
+
+    /**
+     * @param memoryCache
+     * @param cacheName
+     */
+    private void initialize( AbstractMemoryCache<String, String> memoryCache, String cacheName )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( maxObjects );
+        memoryCache.initialize( new CompositeCache<String, String>( cacheName, attributes, new ElementAttributes() ) );
+    }
+
+    /**
+     * Gets the key and puts it on a miss.
+     * <p>
+     * @param memoryCache
+     * @param key
+     * @return 1 for a hit, 0 for a miss
+     * @throws Exception
+     */
+    private int access( AbstractMemoryCache<String, String> memoryCache, String key )
+        throws Exception
+    {
+        if ( memoryCache.get( key ) != null )
+        {
+            return 1;
+        }
+        memoryCache.update( new CacheElement<String, String>( "trace", key, key ) );
+        return 0;
+    }
+
+    /**
+     * @param name
+     * @param hits
+     * @param requests
+     * @param time
+     * @return the hit ratio
+     */
+    private float report( String name, long hits, long requests, long time )
+    {
+        float ratio = (float) hits / requests;
+        System.out.println( name + ": hit ratio = " + ratio + ", requests = " + requests + ", time = " + time + " ms" );
+        return ratio;
+    }
+}
@@ -0,0 +1,139 @@
+package org.apache.commons.jcs.engine.memory.lru;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Test which exercises the ConcurrentLRUMemoryCache. Several threads share one region and put,
+ * get and remove overlapping keys. Afterwards the segment lists must agree with the map.
+ */
+public class ConcurrentLRUMemoryCacheConcurrentUnitTest
+    extends TestCase
+{
+    /** The size of the region. */
+    private static final int MAX_OBJECTS = 1000;
+
+    /** The number of distinct keys, more than the region holds. */
+    private static final int KEYS = 3000;
+
+    /** The number of threads. */
+    private static final int THREADS = 8;
+
+    /** Operations per thread. */
+    private static final int OPERATIONS = 20000;
+
+    /**
+     * Puts, gets and removes from several threads at once.
+     * <p>
+     * @throws Exception
+     */
+    public void testConcurrentAccess()
+        throws Exception
+    {
+        // SETUP
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( MAX_OBJECTS );
+        attributes.setMemoryCacheName( ConcurrentLRUMemoryCache.class.getName() );
+
+        final ConcurrentLRUMemoryCache<String, String> lru = new ConcurrentLRUMemoryCache<String, String>();
+        lru.initialize( new CompositeCache<String, String>( "testConcurrentAccess", attributes, new ElementAttributes() ) );
+
+        final Throwable[] errors = new Throwable[THREADS];
+        Thread[] threads = new Thread[THREADS];
+
+        // DO WORK
+        for ( int t = 0; t < THREADS; t++ )
+        {
+            final int id = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    Random random = new Random( id );
+                    try
+                    {
+                        for ( int i = 0; i < OPERATIONS; i++ )
+                        {
+                            String key = random.nextInt( KEYS ) + ":key";
+                            int op = random.nextInt( 10 );
+                            if ( op < 6 )
+                            {
+                                ICacheElement<String, String> ce = lru.get( key );
+                                if ( ce != null && !ce.getVal().equals( "data " + key ) )
+                                {
+                                    throw new IllegalStateException( "Wrong value for " + key + ": " + ce.getVal() );
+                                }
+                            }
+                            else if ( op < 9 )
+                            {
+                                lru.update( new CacheElement<String, String>( "lru", key, "data " + key ) );
+                            }
+                            else
+                            {
+                                lru.remove( key );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        errors[id] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        // VERIFY
+        for ( Throwable error : errors )
+        {
+            if ( error != null )
+            {
+                throw new AssertionError( error );
+            }
+        }
+        assertTrue( "Too many elements: " + lru.getSize(), lru.getSize() <= MAX_OBJECTS );
+        assertEquals( "The lists and the map disagree.", lru.getSize(), lru.getListSize() );
+
+        for ( String key : lru.getKeySet() )
+        {
+            assertEquals( "Wrong value.", "data " + key, lru.getQuiet( key ).getVal() );
+        }
+
+        lru.removeAll();
+        assertEquals( "Should be empty.", 0, lru.getSize() );
+        assertEquals( "Lists should be empty.", 0, lru.getListSize() );
+    }
+}
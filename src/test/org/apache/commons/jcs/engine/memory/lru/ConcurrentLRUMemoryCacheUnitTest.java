@@ -0,0 +1,236 @@
+package org.apache.commons.jcs.engine.memory.lru;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.JCS;
+import org.apache.commons.jcs.access.CacheAccess;
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Tests for the ConcurrentLRUMemoryCache.
+ */
+public class ConcurrentLRUMemoryCacheUnitTest
+    extends TestCase
+{
+    /**
+     * Creates an initialized cache.
+     * <p>
+     * @param cacheName
+     * @param maxObjects
+     * @return the memory cache
+     */
+    private ConcurrentLRUMemoryCache<String, String> createCache( String cacheName, int maxObjects )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( maxObjects );
+        attributes.setMemoryCacheName( ConcurrentLRUMemoryCache.class.getName() );
+
+        ConcurrentLRUMemoryCache<String, String> lru = new ConcurrentLRUMemoryCache<String, String>();
+        lru.initialize( new CompositeCache<String, String>( cacheName, attributes, new ElementAttributes() ) );
+        return lru;
+    }
+
+    /**
+     * Puts items into the cache.
+     * <p>
+     * @param lru
+     * @param from
+     * @param to exclusive
+     * @throws IOException
+     */
+    private void put( ConcurrentLRUMemoryCache<String, String> lru, int from, int to )
+        throws IOException
+    {
+        for ( int i = from; i < to; i++ )
+        {
+            lru.update( new CacheElement<String, String>( "lru", i + ":key", "data " + i ) );
+        }
+    }
+
+    /**
+     * Verify that segments are only added while each holds at least MIN_SEGMENT_SIZE elements.
+     */
+    public void testSegmentCount()
+    {
+        assertEquals( "Small regions should not be split.", 1, ConcurrentLRUMemoryCache.segmentCount( 10, 8 ) );
+        assertEquals( "Wrong count for 100 objects.", 2, ConcurrentLRUMemoryCache.segmentCount( 100, 8 ) );
+        assertEquals( "Should be limited by the processors.", 8, ConcurrentLRUMemoryCache.segmentCount( 100000, 4 ) );
+        assertEquals( "Should be limited by MAX_SEGMENTS.", ConcurrentLRUMemoryCache.MAX_SEGMENTS,
+                      ConcurrentLRUMemoryCache.segmentCount( 100000, 1024 ) );
+        assertEquals( "Empty regions should have one segment.", 1, ConcurrentLRUMemoryCache.segmentCount( 0, 8 ) );
+    }
+
+    /**
+     * Put twice the max through the hub. The region is small enough to have one segment, so the
+     * first half should be gone and the second half there.
+     * <p>
+     * @throws Exception
+     */
+    public void testPutGetThroughHub()
+        throws Exception
+    {
+        JCS.setConfigFilename( "/TestConcurrentLRUCache.ccf" );
+        CacheAccess<String, String> cache = JCS.getInstance( "testPutGetThroughHub" );
+
+        int max = cache.getCacheAttributes().getMaxObjects();
+        int items = max * 2;
+
+        for ( int i = 0; i < items; i++ )
+        {
+            cache.put( i + ":key", "myregion" + " data " + i );
+        }
+
+        // Test that first items are not in the cache
+        for ( int i = max - 1; i >= 0; i-- )
+        {
+            assertNull( "Should not have value for key [" + i + ":key" + "] in the cache.", cache.get( i + ":key" ) );
+        }
+
+        // Test that last items are in cache
+        for ( int i = max; i < items; i++ )
+        {
+            assertEquals( "myregion" + " data " + i, cache.get( i + ":key" ) );
+        }
+    }
+
+    /**
+     * Get the oldest element of a full cache, then put another one. The second oldest should be
+     * spooled instead.
+     * <p>
+     * @throws Exception
+     */
+    public void testGetMovesToFront()
+        throws Exception
+    {
+        // SETUP
+        ConcurrentLRUMemoryCache<String, String> lru = createCache( "testGetMovesToFront", 10 );
+        put( lru, 0, 10 );
+
+        // DO WORK
+        assertNotNull( "Should have the element.", lru.get( "0:key" ) );
+        put( lru, 10, 11 );
+
+        // VERIFY
+        assertEquals( "Wrong size.", 10, lru.getSize() );
+        assertNotNull( "The used element should be kept.", lru.getQuiet( "0:key" ) );
+        assertNull( "The least recently used element should be spooled.", lru.getQuiet( "1:key" ) );
+    }
+
+    /**
+     * Fill a region with several segments well past its max. No segment may grow past its share.
+     * <p>
+     * @throws Exception
+     */
+    public void testSizeIsBounded()
+        throws Exception
+    {
+        // SETUP
+        int max = 1000;
+        ConcurrentLRUMemoryCache<String, String> lru = createCache( "testSizeIsBounded", max );
+
+        // DO WORK
+        put( lru, 0, max * 5 );
+        put( lru, 0, max );
+
+        // VERIFY
+        assertTrue( "Too many elements: " + lru.getSize(), lru.getSize() <= max );
+        assertEquals( "The lists and the map disagree.", lru.getSize(), lru.getListSize() );
+        assertTrue( "Most of the last puts should be there: " + lru.getSize(), lru.getSize() > max / 2 );
+    }
+
+    /**
+     * Verify hierarchical removal and that replacing an element does not leave the old one in a
+     * list.
+     * <p>
+     * @throws Exception
+     */
+    public void testRemovePartialAndReplace()
+        throws Exception
+    {
+        // SETUP
+        ConcurrentLRUMemoryCache<String, String> lru = createCache( "testRemovePartialAndReplace", 1000 );
+        for ( int i = 0; i < 100; i++ )
+        {
+            lru.update( new CacheElement<String, String>( "lru", "a:" + i, "data " + i ) );
+            lru.update( new CacheElement<String, String>( "lru", "b:" + i, "data " + i ) );
+            lru.update( new CacheElement<String, String>( "lru", "b:" + i, "new data " + i ) );
+        }
+
+        // DO WORK
+        boolean removed = lru.remove( "a:" );
+
+        // VERIFY
+        assertTrue( "Should have removed something.", removed );
+        assertEquals( "Wrong size.", 100, lru.getSize() );
+        assertEquals( "The lists and the map disagree.", 100, lru.getListSize() );
+        assertEquals( "Should have the new value.", "new data 5", lru.get( "b:5" ).getVal() );
+    }
+
+    /**
+     * Verify that freeElements spools the requested number and stops when the cache is empty.
+     * <p>
+     * @throws Exception
+     */
+    public void testFreeElements()
+        throws Exception
+    {
+        // SETUP
+        ConcurrentLRUMemoryCache<String, String> lru = createCache( "testFreeElements", 1000 );
+        put( lru, 0, 500 );
+
+        // DO WORK
+        int freed = lru.freeElements( 100 );
+
+        // VERIFY
+        assertEquals( "Wrong number freed.", 100, freed );
+        assertEquals( "Wrong size.", 400, lru.getSize() );
+        assertEquals( "Should stop at empty.", 400, lru.freeElements( 1000 ) );
+        assertEquals( "Wrong size.", 0, lru.getListSize() );
+    }
+
+    /**
+     * Verify that removeAll empties the map and all segments.
+     * <p>
+     * @throws Exception
+     */
+    public void testRemoveAll()
+        throws Exception
+    {
+        // SETUP
+        ConcurrentLRUMemoryCache<String, String> lru = createCache( "testRemoveAll", 1000 );
+        put( lru, 0, 500 );
+
+        // DO WORK
+        lru.removeAll();
+
+        // VERIFY
+        assertEquals( "Wrong size.", 0, lru.getSize() );
+        assertEquals( "Wrong list size.", 0, lru.getListSize() );
+        assertNull( "Should be gone.", lru.get( "1:key" ) );
+    }
+}
@@ -0,0 +1,169 @@
+package org.apache.commons.jcs.engine.memory.lru;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.memory.behavior.IElementWeigher;
+import org.apache.commons.jcs.engine.stats.behavior.IStatElement;
+
+/** Unit tests for the weight bounded lru memory cache. */
+public class LRUMemoryCacheUnitTest
+    extends TestCase
+{
+    /** Weighs every element at 10 bytes. */
+    public static class TenByteWeigher
+        implements IElementWeigher<String, String>
+    {
+        /**
+         * @param ce
+         * @return 10
+         */
+        public long weigh( ICacheElement<String, String> ce )
+        {
+            return 10;
+        }
+    }
+
+    /**
+     * Creates an lru memory cache bounded by weight.
+     * <p>
+     * @param cacheName
+     * @param maxMemoryBytes
+     * @param weigherClassName
+     * @return an initialized cache
+     */
+    private LRUMemoryCache<String, String> createCache( String cacheName, long maxMemoryBytes, String weigherClassName )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( 100 );
+        attributes.setSpoolChunkSize( 1 );
+        attributes.setMaxMemoryBytes( maxMemoryBytes );
+        attributes.setElementWeigherClassName( weigherClassName );
+
+        LRUMemoryCache<String, String> cache = new LRUMemoryCache<String, String>();
+        cache.initialize( new CompositeCache<String, String>( cacheName, attributes, new ElementAttributes() ) );
+        return cache;
+    }
+
+    /**
+     * Verify that the least recently used items are spooled once the weight limit is passed,
+     * even though the object limit is not reached.
+     * <p>
+     * @throws IOException
+     */
+    public void testMaxMemoryBytes_SpoolsByWeight()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testMaxMemoryBytes_SpoolsByWeight";
+        LRUMemoryCache<String, String> cache = createCache( cacheName, 50, TenByteWeigher.class.getName() );
+
+        // DO WORK
+        for ( int i = 0; i < 8; i++ )
+        {
+            cache.update( new CacheElement<String, String>( cacheName, "key" + i, "value" + i ) );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong size", 5, cache.getSize() );
+        assertEquals( "Wrong bytes used", 50, cache.getBytesUsed() );
+        for ( int i = 0; i < 3; i++ )
+        {
+            assertNull( "Should have spooled " + i, cache.get( "key" + i ) );
+        }
+        for ( int i = 3; i < 8; i++ )
+        {
+            assertNotNull( "Should have " + i, cache.get( "key" + i ) );
+        }
+    }
+
+    /**
+     * Verify that replacing and removing elements keeps the weight in step.
+     * <p>
+     * @throws IOException
+     */
+    public void testMaxMemoryBytes_ReplaceAndRemove()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testMaxMemoryBytes_ReplaceAndRemove";
+        LRUMemoryCache<String, String> cache = createCache( cacheName, 1000, TenByteWeigher.class.getName() );
+        cache.update( new CacheElement<String, String>( cacheName, "a", "1" ) );
+        cache.update( new CacheElement<String, String>( cacheName, "b", "1" ) );
+
+        // DO WORK
+        cache.update( new CacheElement<String, String>( cacheName, "a", "2" ) );
+
+        // VERIFY
+        assertEquals( "Replacing should not add weight", 20, cache.getBytesUsed() );
+
+        cache.remove( "a" );
+        assertEquals( "Wrong bytes used after remove", 10, cache.getBytesUsed() );
+
+        cache.removeAll();
+        assertEquals( "Wrong bytes used after removeAll", 0, cache.getBytesUsed() );
+    }
+
+    /**
+     * Verify that the default weigher uses the serialized size and that it shows in the stats.
+     * <p>
+     * @throws IOException
+     */
+    public void testMaxMemoryBytes_DefaultWeigher()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testMaxMemoryBytes_DefaultWeigher";
+        LRUMemoryCache<String, String> cache = createCache( cacheName, 100000, null );
+        StringBuffer big = new StringBuffer();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            big.append( 'x' );
+        }
+
+        // DO WORK
+        cache.update( new CacheElement<String, String>( cacheName, "small", "x" ) );
+        long small = cache.getBytesUsed();
+        cache.update( new CacheElement<String, String>( cacheName, "big", big.toString() ) );
+
+        // VERIFY
+        assertTrue( "Should weigh the small element", small > 0 );
+        assertTrue( "Should weigh the big element by its size", cache.getBytesUsed() - small > 1000 );
+
+        String bytesUsed = null;
+        for ( IStatElement se : cache.getStatistics().getStatElements() )
+        {
+            if ( "Bytes Used".equals( se.getName() ) )
+            {
+                bytesUsed = se.getData();
+            }
+        }
+        assertEquals( "Wrong stat", "" + cache.getBytesUsed(), bytesUsed );
+    }
+
+    /**
+     * Verify that nothing is weighed unless the region is bounded by weight.
+     * <p>
+     * @throws IOException
+     */
+    public void testMaxMemoryBytes_NotSet()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testMaxMemoryBytes_NotSet";
+        LRUMemoryCache<String, String> cache = createCache( cacheName, -1, TenByteWeigher.class.getName() );
+
+        // DO WORK
+        cache.update( new CacheElement<String, String>( cacheName, "a", "1" ) );
+
+        // VERIFY
+        assertEquals( "Should not weigh", 0, cache.getBytesUsed() );
+    }
+}
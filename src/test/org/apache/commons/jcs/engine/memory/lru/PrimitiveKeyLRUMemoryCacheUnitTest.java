@@ -0,0 +1,272 @@
+package org.apache.commons.jcs.engine.memory.lru;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Tests for the PrimitiveKeyLRUMemoryCache.
+ */
+public class PrimitiveKeyLRUMemoryCacheUnitTest
+    extends TestCase
+{
+    /** The keys the region spooled, in order. */
+    private final List<Serializable> spooled = new ArrayList<Serializable>();
+
+    /**
+     * Creates an initialized cache whose region records what it spools.
+     * <p>
+     * @param cacheName
+     * @param maxObjects
+     * @return the memory cache
+     */
+    private PrimitiveKeyLRUMemoryCache<Serializable, String> createCache( String cacheName, int maxObjects )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( maxObjects );
+        attributes.setMemoryCacheName( PrimitiveKeyLRUMemoryCache.class.getName() );
+
+        PrimitiveKeyLRUMemoryCache<Serializable, String> lru = new PrimitiveKeyLRUMemoryCache<Serializable, String>();
+        lru.initialize( new CompositeCache<Serializable, String>( cacheName, attributes, new ElementAttributes() )
+        {
+            @Override
+            public void spoolToDisk( ICacheElement<Serializable, String> ce )
+            {
+                spooled.add( ce.getKey() );
+            }
+        } );
+        return lru;
+    }
+
+    /**
+     * @param key
+     * @return an element for the key
+     */
+    private CacheElement<Serializable, String> element( Serializable key )
+    {
+        return new CacheElement<Serializable, String>( "lru", key, "data " + key );
+    }
+
+    /**
+     * Verify that elements come back out and the least recently used one is spooled.
+     * <p>
+     * @throws Exception
+     */
+    public void testPutGetAndSpool()
+        throws Exception
+    {
+        // SETUP
+        PrimitiveKeyLRUMemoryCache<Serializable, String> lru = createCache( "testPutGetAndSpool", 100 );
+        for ( long i = 0; i < 100; i++ )
+        {
+            lru.update( element( Long.valueOf( i ) ) );
+        }
+
+        // DO WORK
+        assertNotNull( "Should have the element.", lru.get( Long.valueOf( 0 ) ) );
+        lru.update( element( Long.valueOf( 100 ) ) );
+
+        // VERIFY
+        assertEquals( "Wrong size.", 100, lru.getSize() );
+        assertEquals( "The second oldest should be spooled.", Long.valueOf( 1 ), spooled.get( 0 ) );
+        assertEquals( "Wrong value.", "data 0", lru.getQuiet( Long.valueOf( 0 ) ).getVal() );
+        assertNull( "Should be gone.", lru.get( Long.valueOf( 1 ) ) );
+        assertEquals( "Most recently used first.", Long.valueOf( 100 ), lru.getKeySet().iterator().next() );
+    }
+
+    /**
+     * Verify that an Integer and a Long with the same value are different keys.
+     * <p>
+     * @throws Exception
+     */
+    public void testIntegerAndLongAreDistinct()
+        throws Exception
+    {
+        // SETUP
+        PrimitiveKeyLRUMemoryCache<Serializable, String> lru = createCache( "testDistinct", 10 );
+
+        // DO WORK
+        lru.update( new CacheElement<Serializable, String>( "lru", Integer.valueOf( 7 ), "int" ) );
+        lru.update( new CacheElement<Serializable, String>( "lru", Long.valueOf( 7 ), "long" ) );
+
+        // VERIFY
+        assertEquals( "Wrong size.", 2, lru.getSize() );
+        assertEquals( "Wrong int value.", "int", lru.get( Integer.valueOf( 7 ) ).getVal() );
+        assertEquals( "Wrong long value.", "long", lru.get( Long.valueOf( 7 ) ).getVal() );
+        assertTrue( "Should remove.", lru.remove( Integer.valueOf( 7 ) ) );
+        assertEquals( "The long should stay.", "long", lru.get( Long.valueOf( 7 ) ).getVal() );
+    }
+
+    /**
+     * Verify that other keys are refused and never found.
+     * <p>
+     * @throws Exception
+     */
+    public void testRejectsOtherKeys()
+        throws Exception
+    {
+        // SETUP
+        PrimitiveKeyLRUMemoryCache<Serializable, String> lru = createCache( "testRejects", 10 );
+
+        // DO WORK
+        try
+        {
+            lru.update( element( "key" ) );
+            fail( "Should refuse a String key." );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+
+        // VERIFY
+        assertNull( "Should miss.", lru.get( "key" ) );
+        assertFalse( "Should not remove.", lru.remove( "key:" ) );
+        assertEquals( "Wrong size.", 0, lru.getSize() );
+    }
+
+    /**
+     * Verify that the slots grow with the region but not past MaxObjects.
+     * <p>
+     * @throws Exception
+     */
+    public void testGrowsToMaxObjects()
+        throws Exception
+    {
+        // SETUP
+        PrimitiveKeyLRUMemoryCache<Serializable, String> lru = createCache( "testGrows", 1000 );
+        assertTrue( "Should start small.", lru.getCapacity() < 1000 );
+
+        // DO WORK
+        for ( int i = 0; i < 1500; i++ )
+        {
+            lru.update( element( Integer.valueOf( i ) ) );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong capacity.", 1000, lru.getCapacity() );
+        assertEquals( "Wrong size.", 1000, lru.getSize() );
+        assertEquals( "Wrong number spooled.", 500, spooled.size() );
+        for ( int i = 500; i < 1500; i++ )
+        {
+            assertEquals( "Wrong value.", "data " + i, lru.getQuiet( Integer.valueOf( i ) ).getVal() );
+        }
+
+        lru.removeAll();
+        assertEquals( "Should be empty.", 0, lru.getSize() );
+        assertNull( "Should be gone.", lru.get( Integer.valueOf( 1000 ) ) );
+    }
+
+    /**
+     * Run random puts, gets and removes against a LinkedHashMap in access order and compare.
+     * <p>
+     * @throws Exception
+     */
+    public void testMatchesReferenceLRU()
+        throws Exception
+    {
+        // SETUP
+        final int max = 200;
+        PrimitiveKeyLRUMemoryCache<Serializable, String> lru = createCache( "testReference", max );
+        Map<Long, String> reference = new LinkedHashMap<Long, String>( 16, 0.75f, true );
+        Random random = new Random( 42 );
+
+        // DO WORK
+        for ( int i = 0; i < 50000; i++ )
+        {
+            // multiples of a power of two collide in a weak hash
+            Long key = Long.valueOf( random.nextInt( 600 ) * 1024L );
+            int op = random.nextInt( 10 );
+            if ( op < 5 )
+            {
+                ICacheElement<Serializable, String> ce = lru.get( key );
+                String expected = reference.get( key );
+                assertEquals( "Wrong value for " + key, expected, ce == null ? null : ce.getVal() );
+            }
+            else if ( op < 9 )
+            {
+                lru.update( element( key ) );
+                reference.put( key, "data " + key );
+                if ( reference.size() > max )
+                {
+                    Iterator<Long> it = reference.keySet().iterator();
+                    Long eldest = it.next();
+                    it.remove();
+                    assertEquals( "Wrong element spooled.", eldest, spooled.get( spooled.size() - 1 ) );
+                }
+            }
+            else
+            {
+                assertEquals( "Wrong remove result for " + key, reference.remove( key ) != null, lru.remove( key ) );
+            }
+        }
+
+        // VERIFY
+        assertEquals( "Wrong size.", reference.size(), lru.getSize() );
+        int[] counts = lru.verifyCounts();
+        assertEquals( "The index is off.", reference.size(), counts[0] );
+        assertEquals( "The list is off.", reference.size(), counts[1] );
+        assertEquals( "Wrong order.", new ArrayList<Long>( reference.keySet() ).get( reference.size() - 1 ),
+                      lru.getKeySet().iterator().next() );
+    }
+
+    /**
+     * Verify that a region configured with the class name uses it.
+     * <p>
+     * @throws Exception
+     */
+    public void testThroughRegion()
+        throws Exception
+    {
+        // SETUP
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( 10 );
+        attributes.setMemoryCacheName( PrimitiveKeyLRUMemoryCache.class.getName() );
+        CompositeCache<Long, String> region =
+            new CompositeCache<Long, String>( "testThroughRegion", attributes, new ElementAttributes() );
+
+        // DO WORK
+        for ( long i = 0; i < 20; i++ )
+        {
+            region.update( new CacheElement<Long, String>( region.getCacheName(), Long.valueOf( i ), "data " + i ) );
+        }
+
+        // VERIFY
+        assertTrue( "Wrong memory cache.", region.getMemoryCache() instanceof PrimitiveKeyLRUMemoryCache );
+        assertNull( "Should have been spooled.", region.get( Long.valueOf( 0 ) ) );
+        assertEquals( "Wrong value.", "data 19", region.get( Long.valueOf( 19 ) ).getVal() );
+    }
+}
@@ -30,6 +30,8 @@ import org.apache.commons.jcs.engine.behavior.ICacheElement;
 import org.apache.commons.jcs.engine.control.event.ElementEventHandlerMockImpl;
 import org.apache.commons.jcs.engine.memory.MockMemoryCache;
 import org.apache.commons.jcs.engine.memory.shrinking.ShrinkerThread;
+import org.apache.commons.jcs.utils.timing.CacheClock;
+import org.apache.commons.jcs.utils.timing.FakeClock;
 
 /**
  * This tests the functionality of the shrinker thread.
@@ -225,6 +227,56 @@ public class ShrinkerThreadUnitTest
         assertNull( "We not should have received an element.  It should have been spooled.", returnedElement2 );
     }
 
+    /**
+     * Drive the shrinker with a fake clock. An element that is read often enough should stay, and
+     * be spooled once it has been idle too long.
+     * <p>
+     * @throws Exception
+     */
+    public void testSimpleShrink_FakeClock()
+        throws Exception
+    {
+        // SETUP
+        FakeClock clock = new FakeClock( 1000000 );
+        CacheClock.setClock( clock );
+        try
+        {
+            MockMemoryCache<String, String> memory = new MockMemoryCache<String, String>();
+
+            CompositeCacheAttributes cacheAttr = new CompositeCacheAttributes();
+            cacheAttr.setMaxMemoryIdleTimeSeconds( 5 );
+            cacheAttr.setMaxSpoolPerRun( 10 );
+            memory.setCacheAttributes( cacheAttr );
+
+            ICacheElement<String, String> element = new CacheElement<String, String>( "testRegion", "key", "value" );
+            ElementAttributes elementAttr = new ElementAttributes();
+            elementAttr.setIsEternal( true );
+            element.setElementAttributes( elementAttr );
+            memory.update( element );
+
+            ShrinkerThread<String, String> shrinker = new ShrinkerThread<String, String>( memory );
+
+            // DO WORK
+            for ( int i = 0; i < 5; i++ )
+            {
+                clock.advance( 4000 );
+                elementAttr.setLastAccessTimeNow();
+                shrinker.run();
+                assertNotNull( "Should not have been spooled while in use.", memory.get( "key" ) );
+            }
+            clock.advance( 5001 );
+            shrinker.run();
+
+            // VERIFY
+            assertEquals( "Should have been spooled once.", 1, memory.waterfallCallCount );
+            assertNull( "Should have been spooled.", memory.get( "key" ) );
+        }
+        finally
+        {
+            CacheClock.setClock( null );
+        }
+    }
+
     /**
      * Add 10 to the memory cache. Set the spool per run limit to 3.
      * <p>
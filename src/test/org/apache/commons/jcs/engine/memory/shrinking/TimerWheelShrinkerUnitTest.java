@@ -0,0 +1,317 @@
+package org.apache.commons.jcs.engine.memory.shrinking;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.memory.MockMemoryCache;
+
+/**
+ * Tests for the timing wheel shrinker.
+ */
+public class TimerWheelShrinkerUnitTest
+    extends TestCase
+{
+    /** The time the elements were created. */
+    private static final long START = 1234567890123L;
+
+    /** The memory cache. */
+    private MockMemoryCache<String, String> memory;
+
+    /** The shrinker under test. */
+    private TimerWheelShrinker<String, String> shrinker;
+
+    /**
+     * Sets up a memory cache with a ten second memory idle time.
+     * <p>
+     * @throws Exception
+     */
+    @Override
+    protected void setUp()
+        throws Exception
+    {
+        super.setUp();
+        memory = new MockMemoryCache<String, String>();
+        CompositeCacheAttributes cacheAttr = new CompositeCacheAttributes();
+        cacheAttr.setMaxMemoryIdleTimeSeconds( 10 );
+        cacheAttr.setMaxSpoolPerRun( 10 );
+        memory.setCacheAttributes( cacheAttr );
+        shrinker = new TimerWheelShrinker<String, String>( memory );
+        // start the wheel at the same time as the elements
+        shrinker.shrink( START );
+    }
+
+    /**
+     * Creates an element, puts it in memory and schedules it.
+     * <p>
+     * @param key
+     * @param eternal
+     * @param maxLifeSeconds
+     * @return the element
+     * @throws Exception
+     */
+    private ICacheElement<String, String> put( String key, boolean eternal, long maxLifeSeconds )
+        throws Exception
+    {
+        ICacheElement<String, String> element = createElement( key, eternal, maxLifeSeconds );
+        shrinker.schedule( element );
+        memory.update( element );
+        return element;
+    }
+
+    /**
+     * Creates an element created and last used at START.
+     * <p>
+     * @param key
+     * @param eternal
+     * @param maxLifeSeconds
+     * @return the element
+     */
+    private ICacheElement<String, String> createElement( String key, boolean eternal, long maxLifeSeconds )
+    {
+        ElementAttributes elementAttr = new ElementAttributes();
+        elementAttr.setIsEternal( eternal );
+        elementAttr.setMaxLifeSeconds( maxLifeSeconds );
+        elementAttr.createTime = START;
+        elementAttr.lastAccessTime = START;
+
+        ICacheElement<String, String> element = new CacheElement<String, String>( "testRegion", key, "value" );
+        element.setElementAttributes( elementAttr );
+        return element;
+    }
+
+    /**
+     * Verify that an element past its max life is removed once it is due, and not before.
+     * <p>
+     * @throws Exception
+     */
+    public void testShrink_Expired()
+        throws Exception
+    {
+        // SETUP
+        put( "key", false, 2 );
+
+        // DO WORK
+        shrinker.shrink( START + 1000 );
+        assertEquals( "Should not be removed yet.", 1, memory.getSize() );
+        shrinker.shrink( START + 4000 );
+
+        // VERIFY
+        assertEquals( "Should be removed.", 0, memory.getSize() );
+        assertEquals( "Should not be spooled.", 0, memory.waterfallCallCount );
+        assertEquals( "Should not be scheduled.", 0, shrinker.getScheduledCount() );
+    }
+
+    /**
+     * Verify that an element idle in memory for too long is spooled.
+     * <p>
+     * @throws Exception
+     */
+    public void testShrink_MemoryIdle()
+        throws Exception
+    {
+        // SETUP
+        put( "key", true, -1 );
+
+        // DO WORK
+        shrinker.shrink( START + 12000 );
+
+        // VERIFY
+        assertEquals( "Should be removed from memory.", 0, memory.getSize() );
+        assertEquals( "Should be spooled.", 1, memory.waterfallCallCount );
+    }
+
+    /**
+     * Verify that an element used since it was scheduled is scheduled again instead of spooled.
+     * <p>
+     * @throws Exception
+     */
+    public void testShrink_AccessedIsRescheduled()
+        throws Exception
+    {
+        // SETUP
+        ICacheElement<String, String> element = put( "key", true, -1 );
+        ( (ElementAttributes) element.getElementAttributes() ).lastAccessTime = START + 8000;
+
+        // DO WORK
+        shrinker.shrink( START + 12000 );
+
+        // VERIFY
+        assertEquals( "Should still be in memory.", 1, memory.getSize() );
+        assertEquals( "Should not be spooled.", 0, memory.waterfallCallCount );
+        assertEquals( "Should be scheduled again.", 1, shrinker.getScheduledCount() );
+
+        shrinker.shrink( START + 20000 );
+        assertEquals( "Should be spooled now.", 1, memory.waterfallCallCount );
+    }
+
+    /**
+     * Verify that a replaced element is dropped when it comes due and the new one is left alone.
+     * <p>
+     * @throws Exception
+     */
+    public void testShrink_ReplacedIsIgnored()
+        throws Exception
+    {
+        // SETUP
+        ICacheElement<String, String> old = put( "key", false, 2 );
+        memory.update( new CacheElement<String, String>( "testRegion", "key", "newer" ) );
+
+        // DO WORK
+        shrinker.shrink( START + 4000 );
+
+        // VERIFY
+        assertEquals( "The new element should stay.", "newer", memory.getQuiet( "key" ).getVal() );
+        assertNotSame( "Should not be the old element.", old, memory.getQuiet( "key" ) );
+    }
+
+    /**
+     * Verify that descheduling by element only applies to the element that is scheduled.
+     * <p>
+     * @throws Exception
+     */
+    public void testDeschedule()
+        throws Exception
+    {
+        // SETUP
+        ICacheElement<String, String> first = put( "key", true, -1 );
+        put( "key", true, -1 );
+        put( "other", true, -1 );
+        assertEquals( "Wrong count.", 2, shrinker.getScheduledCount() );
+
+        // DO WORK
+        shrinker.deschedule( first );
+        assertEquals( "The old element should not deschedule the new one.", 2, shrinker.getScheduledCount() );
+        shrinker.deschedule( "key" );
+        assertEquals( "Wrong count.", 1, shrinker.getScheduledCount() );
+        shrinker.clear();
+
+        // VERIFY
+        assertEquals( "Wrong count.", 0, shrinker.getScheduledCount() );
+    }
+
+    /**
+     * Verify that schedules and deschedules from several threads at once are all applied, and that
+     * the elements of every shard come due.
+     * <p>
+     * @throws Exception
+     */
+    public void testSchedule_Concurrent()
+        throws Exception
+    {
+        // SETUP
+        final int perThread = 500;
+        Thread[] threads = new Thread[4];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int thread = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int i = 0; i < perThread; i++ )
+                    {
+                        shrinker.schedule( createElement( thread + ":" + i, true, -1 ) );
+                        if ( i % 2 == 1 )
+                        {
+                            shrinker.deschedule( thread + ":" + i );
+                        }
+                    }
+                }
+            };
+        }
+
+        // DO WORK
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t].start();
+        }
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t].join();
+        }
+
+        // VERIFY
+        assertTrue( "Should be split.", shrinker.getShardCount() >= 2 );
+        assertEquals( "Wrong count.", threads.length * perThread / 2, shrinker.getScheduledCount() );
+        shrinker.shrink( START + 12000 );
+        assertEquals( "All should have come due.", 0, shrinker.getScheduledCount() );
+    }
+
+    /**
+     * Verify that an eternal element in a region without a memory idle time is never scheduled.
+     * <p>
+     * @throws Exception
+     */
+    public void testSchedule_NeverDue()
+        throws Exception
+    {
+        // SETUP
+        CompositeCacheAttributes cacheAttr = new CompositeCacheAttributes();
+        cacheAttr.setMaxMemoryIdleTimeSeconds( -1 );
+        memory.setCacheAttributes( cacheAttr );
+        shrinker = new TimerWheelShrinker<String, String>( memory );
+
+        // DO WORK
+        put( "key", true, -1 );
+
+        // VERIFY
+        assertEquals( "Should not be scheduled.", 0, shrinker.getScheduledCount() );
+    }
+
+    /**
+     * Verify that a region using the timer wheel shrinker schedules what it puts in memory and
+     * deschedules what it removes.
+     * <p>
+     * @throws Exception
+     */
+    public void testRegionSchedulesElements()
+        throws Exception
+    {
+        // SETUP
+        CompositeCacheAttributes cacheAttr = new CompositeCacheAttributes();
+        cacheAttr.setUseMemoryShrinker( true );
+        cacheAttr.setUseTimerWheelShrinker( true );
+        cacheAttr.setMaxMemoryIdleTimeSeconds( 10 );
+        CompositeCache<String, String> region =
+            new CompositeCache<String, String>( "testRegionSchedulesElements", cacheAttr, new ElementAttributes() );
+        TimerWheelShrinker<String, String> regionShrinker = region.getTimerWheelShrinker();
+        assertNotNull( "Should have a shrinker.", regionShrinker );
+
+        // DO WORK
+        for ( int i = 0; i < 10; i++ )
+        {
+            region.update( new CacheElement<String, String>( region.getCacheName(), i + ":key", "data " + i ) );
+        }
+        region.remove( "0:key" );
+
+        // VERIFY
+        assertEquals( "Wrong count.", 9, regionShrinker.getScheduledCount() );
+        region.removeAll();
+        assertEquals( "Wrong count after remove all.", 0, regionShrinker.getScheduledCount() );
+    }
+}
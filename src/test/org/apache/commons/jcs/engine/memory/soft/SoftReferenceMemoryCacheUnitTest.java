@@ -0,0 +1,295 @@
+package org.apache.commons.jcs.engine.memory.soft;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.auxiliary.AuxiliaryCache;
+import org.apache.commons.jcs.auxiliary.MockAuxiliaryCache;
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICacheElement;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Tests for the soft and weak reference memory caches.
+ */
+public class SoftReferenceMemoryCacheUnitTest
+    extends TestCase
+{
+    /** The keys of the spooled elements. */
+    private final List<String> spooled = new ArrayList<String>();
+
+    /**
+     * Creates an initialized cache whose region records what it spools.
+     * <p>
+     * @param cache the memory cache to initialize
+     * @param maxObjects
+     * @param spoolSoftReferences
+     * @return the cache
+     */
+    private <T extends SoftReferenceMemoryCache<String, String>> T initialize( T cache, int maxObjects,
+                                                                               boolean spoolSoftReferences )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( maxObjects );
+        attributes.setSpoolSoftReferences( spoolSoftReferences );
+        attributes.setMemoryCacheName( cache.getClass().getName() );
+
+        cache.initialize( new CompositeCache<String, String>( "testSoft", attributes, new ElementAttributes() )
+        {
+            @Override
+            public void spoolToDisk( ICacheElement<String, String> ce )
+            {
+                spooled.add( ce.getKey() );
+            }
+        } );
+        return cache;
+    }
+
+    /**
+     * Elements beyond MaxObjects should move to the reference area and stay reachable.
+     * <p>
+     * @throws Exception
+     */
+    public void testOverflowStaysReachable()
+        throws Exception
+    {
+        // SETUP
+        SoftReferenceMemoryCache<String, String> cache =
+            initialize( new SoftReferenceMemoryCache<String, String>(), 10, false );
+
+        // DO WORK
+        for ( int i = 0; i < 30; i++ )
+        {
+            cache.update( new CacheElement<String, String>( "testSoft", i + ":key", "data " + i ) );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong strict size.", 10, cache.getStrictSize() );
+        assertEquals( "Wrong size.", 30, cache.getSize() );
+        assertTrue( "Nothing should be spooled.", spooled.isEmpty() );
+        for ( int i = 0; i < 30; i++ )
+        {
+            assertEquals( "Wrong value.", "data " + i, cache.getQuiet( i + ":key" ).getVal() );
+        }
+    }
+
+    /**
+     * A hit in the reference area should move the element back to the strict area.
+     * <p>
+     * @throws Exception
+     */
+    public void testReferenceHitPromotes()
+        throws Exception
+    {
+        // SETUP
+        SoftReferenceMemoryCache<String, String> cache =
+            initialize( new SoftReferenceMemoryCache<String, String>(), 2, false );
+        cache.update( new CacheElement<String, String>( "testSoft", "a", "a" ) );
+        cache.update( new CacheElement<String, String>( "testSoft", "b", "b" ) );
+        cache.update( new CacheElement<String, String>( "testSoft", "c", "c" ) );
+
+        // DO WORK
+        ICacheElement<String, String> ce = cache.get( "a" );
+
+        // VERIFY
+        assertEquals( "Wrong value.", "a", ce.getVal() );
+        assertEquals( "Wrong strict size.", 2, cache.getStrictSize() );
+        assertEquals( "b should have been demoted.", 1, cache.getReferenceSize() );
+        assertTrue( "Should have the reference hit.",
+                    cache.getStatistics().toString().indexOf( "Reference Hit Count = 1" ) != -1 );
+        assertNull( "Should miss.", cache.get( "nope" ) );
+    }
+
+    /**
+     * With SpoolSoftReferences, elements should be spooled as they leave the strict area.
+     * <p>
+     * @throws Exception
+     */
+    public void testSpoolOnDemote()
+        throws Exception
+    {
+        // SETUP
+        SoftReferenceMemoryCache<String, String> cache =
+            initialize( new SoftReferenceMemoryCache<String, String>(), 5, true );
+
+        // DO WORK
+        for ( int i = 0; i < 8; i++ )
+        {
+            cache.update( new CacheElement<String, String>( "testSoft", i + ":key", "data " + i ) );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong number spooled.", 3, spooled.size() );
+        assertEquals( "Should spool the oldest first.", "0:key", spooled.get( 0 ) );
+        assertEquals( "Should still be in memory.", "data 0", cache.getQuiet( "0:key" ).getVal() );
+
+        // freeing should not spool the demoted elements twice
+        assertEquals( "Wrong number freed.", 4, cache.freeElements( 4 ) );
+        assertEquals( "Wrong number spooled.", 4, spooled.size() );
+        assertEquals( "Wrong size.", 4, cache.getSize() );
+    }
+
+    /**
+     * Hierarchical removal and remove all should cover both areas.
+     * <p>
+     * @throws Exception
+     */
+    public void testRemove()
+        throws Exception
+    {
+        // SETUP
+        SoftReferenceMemoryCache<String, String> cache =
+            initialize( new SoftReferenceMemoryCache<String, String>(), 5, false );
+        for ( int i = 0; i < 10; i++ )
+        {
+            cache.update( new CacheElement<String, String>( "testSoft", "a:" + i, "data " + i ) );
+            cache.update( new CacheElement<String, String>( "testSoft", "b:" + i, "data " + i ) );
+        }
+
+        // DO WORK
+        boolean removed = cache.remove( "a:" );
+
+        // VERIFY
+        assertTrue( "Should have removed.", removed );
+        assertEquals( "Wrong size.", 10, cache.getSize() );
+        for ( String key : cache.getKeySet() )
+        {
+            assertTrue( "Should not have " + key, key.startsWith( "b:" ) );
+        }
+
+        cache.removeAll();
+        assertEquals( "Wrong size.", 0, cache.getSize() );
+        assertNull( "Should be gone.", cache.get( "b:9" ) );
+    }
+
+    /**
+     * The collector should clear the weak references. The drain should count them and leave the
+     * strict area alone.
+     * <p>
+     * @throws Exception
+     */
+    public void testWeakReferencesAreCollected()
+        throws Exception
+    {
+        // SETUP
+        WeakReferenceMemoryCache<String, String> cache =
+            initialize( new WeakReferenceMemoryCache<String, String>(), 10, false );
+        for ( int i = 0; i < 100; i++ )
+        {
+            cache.update( new CacheElement<String, String>( "testSoft", i + ":key", "data " + i ) );
+        }
+
+        // DO WORK
+        for ( int i = 0; i < 20 && cache.getCollectedCount() == 0; i++ )
+        {
+            System.gc();
+            Thread.sleep( 50 );
+        }
+
+        // VERIFY
+        assertTrue( "Should have collected some.", cache.getCollectedCount() > 0 );
+        assertEquals( "Wrong size.", 100 - cache.getCollectedCount(), cache.getSize() );
+        assertEquals( "Wrong strict size.", 10, cache.getStrictSize() );
+        for ( int i = 90; i < 100; i++ )
+        {
+            assertEquals( "Wrong value.", "data " + i, cache.get( i + ":key" ).getVal() );
+        }
+    }
+
+    /** A disk auxiliary backed by a map. */
+    private static class MapDiskCache
+        extends MockAuxiliaryCache<String, String>
+    {
+        /** Don't change. */
+        private static final long serialVersionUID = 1L;
+
+        /** The elements. */
+        final Map<String, ICacheElement<String, String>> map = new HashMap<String, ICacheElement<String, String>>();
+
+        @Override
+        public synchronized void update( ICacheElement<String, String> ce )
+        {
+            map.put( ce.getKey(), ce );
+        }
+
+        @Override
+        public synchronized ICacheElement<String, String> get( String key )
+        {
+            return map.get( key );
+        }
+
+        @Override
+        public synchronized boolean remove( String key )
+        {
+            return map.remove( key ) != null;
+        }
+    }
+
+    /**
+     * A key that was spooled, then updated in memory and then collected from the reference area
+     * should not be served from the old copy on disk.
+     * <p>
+     * @throws Exception
+     */
+    public void testCollectedUpdateDoesNotServeOldDiskValue()
+        throws Exception
+    {
+        // SETUP
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( 1 );
+        attributes.setMemoryCacheName( WeakReferenceMemoryCache.class.getName() );
+        CompositeCache<String, String> region =
+            new CompositeCache<String, String>( "testCollectedUpdate", attributes, new ElementAttributes() );
+        MapDiskCache disk = new MapDiskCache();
+        @SuppressWarnings("unchecked")
+        AuxiliaryCache<String, String>[] aux = new AuxiliaryCache[] { disk };
+        region.setAuxCaches( aux );
+        WeakReferenceMemoryCache<String, String> memory =
+            (WeakReferenceMemoryCache<String, String>) region.getMemoryCache();
+
+        region.update( new CacheElement<String, String>( "testCollectedUpdate", "key", "v1" ) );
+        memory.freeElements( 1 );
+        assertEquals( "v1 should be spooled.", "v1", disk.get( "key" ).getVal() );
+        region.update( new CacheElement<String, String>( "testCollectedUpdate", "key", "v2" ) );
+
+        // DO WORK
+        region.update( new CacheElement<String, String>( "testCollectedUpdate", "other", "other" ) );
+        for ( int i = 0; i < 20 && memory.getReferenceSize() > 0; i++ )
+        {
+            System.gc();
+            Thread.sleep( 50 );
+        }
+
+        // VERIFY
+        assertEquals( "v2 should have been collected.", 0, memory.getReferenceSize() );
+        ICacheElement<String, String> ce = region.get( "key" );
+        assertTrue( "Should not serve the old value.", ce == null || "v2".equals( ce.getVal() ) );
+    }
+}
@@ -0,0 +1,185 @@
+package org.apache.commons.jcs.engine.memory.tinylfu;
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+import org.apache.commons.jcs.engine.control.group.GroupAttrName;
+import org.apache.commons.jcs.engine.control.group.GroupId;
+
+/** Unit tests for the W-TinyLFU memory cache. */
+public class TinyLFUMemoryCacheUnitTest
+    extends TestCase
+{
+    /**
+     * Creates an initialized cache.
+     * <p>
+     * @param cacheName
+     * @param maxObjects
+     * @return the memory cache
+     */
+    private <K extends java.io.Serializable> TinyLFUMemoryCache<K, String> createCache( String cacheName, int maxObjects )
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( maxObjects );
+        attributes.setMemoryCacheName( TinyLFUMemoryCache.class.getName() );
+
+        TinyLFUMemoryCache<K, String> cache = new TinyLFUMemoryCache<K, String>();
+        cache.initialize( new CompositeCache<K, String>( cacheName, attributes, new ElementAttributes() ) );
+        return cache;
+    }
+
+    /**
+     * Verify that the cache never holds more than MaxObjects.
+     * <p>
+     * @throws IOException
+     */
+    public void testUpdate_BoundedByMaxObjects()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testUpdate_BoundedByMaxObjects";
+        TinyLFUMemoryCache<String, String> cache = createCache( cacheName, 100 );
+
+        // DO WORK
+        for ( int i = 0; i < 500; i++ )
+        {
+            cache.update( new CacheElement<String, String>( cacheName, "key" + i, "value" + i ) );
+            cache.get( "key" + ( i / 2 ) );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong size", 100, cache.getSize() );
+        assertEquals( "Wrong key set", 100, cache.getKeySet().size() );
+    }
+
+    /**
+     * Verify that a scan of elements read once does not flush the elements that are read often.
+     * An LRU would keep none of them.
+     * <p>
+     * @throws IOException
+     */
+    public void testUpdate_ScanResistant()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testUpdate_ScanResistant";
+        TinyLFUMemoryCache<String, String> cache = createCache( cacheName, 100 );
+        for ( int i = 0; i < 50; i++ )
+        {
+            cache.update( new CacheElement<String, String>( cacheName, "hot" + i, "value" + i ) );
+        }
+        for ( int round = 0; round < 5; round++ )
+        {
+            for ( int i = 0; i < 50; i++ )
+            {
+                assertNotNull( "Should have hot" + i, cache.get( "hot" + i ) );
+            }
+        }
+
+        // DO WORK
+        for ( int i = 0; i < 1000; i++ )
+        {
+            cache.update( new CacheElement<String, String>( cacheName, "scan" + i, "value" + i ) );
+        }
+
+        // VERIFY
+        int survivors = 0;
+        for ( int i = 0; i < 50; i++ )
+        {
+            if ( cache.getQuiet( "hot" + i ) != null )
+            {
+                survivors++;
+            }
+        }
+        assertTrue( "Hot elements should survive the scan: " + survivors, survivors >= 45 );
+        assertEquals( "Wrong size", 100, cache.getSize() );
+    }
+
+    /**
+     * Verify that replacing an element does not change the size.
+     * <p>
+     * @throws IOException
+     */
+    public void testUpdate_Replace()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testUpdate_Replace";
+        TinyLFUMemoryCache<String, String> cache = createCache( cacheName, 10 );
+        cache.update( new CacheElement<String, String>( cacheName, "key", "1" ) );
+
+        // DO WORK
+        cache.update( new CacheElement<String, String>( cacheName, "key", "2" ) );
+
+        // VERIFY
+        assertEquals( "Wrong size", 1, cache.getSize() );
+        assertEquals( "Wrong value", "2", cache.get( "key" ).getVal() );
+    }
+
+    /**
+     * Verify single, hierarchical and group removal, and that removeAll and freeElements empty
+     * the cache.
+     * <p>
+     * @throws IOException
+     */
+    public void testRemove()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testRemove";
+        TinyLFUMemoryCache<String, String> cache = createCache( cacheName, 100 );
+        for ( int i = 0; i < 10; i++ )
+        {
+            cache.update( new CacheElement<String, String>( cacheName, "a:" + i, "value" + i ) );
+            cache.update( new CacheElement<String, String>( cacheName, "b" + i, "value" + i ) );
+            cache.get( "b" + i );
+        }
+
+        // DO WORK
+        assertTrue( "Should remove", cache.remove( "b0" ) );
+        assertTrue( "Should remove hierarchy", cache.remove( "a:" ) );
+
+        // VERIFY
+        assertEquals( "Wrong size", 9, cache.getSize() );
+        assertEquals( "Should free 5", 5, cache.freeElements( 5 ) );
+        assertEquals( "Should free the rest", 4, cache.freeElements( 10 ) );
+        assertEquals( "Wrong size", 0, cache.getSize() );
+
+        cache.update( new CacheElement<String, String>( cacheName, "c", "value" ) );
+        cache.removeAll();
+        assertEquals( "Wrong size after removeAll", 0, cache.getSize() );
+        assertNull( "Should be gone", cache.get( "c" ) );
+    }
+
+    /**
+     * Verify that group removal works.
+     * <p>
+     * @throws IOException
+     */
+    public void testRemove_Group()
+        throws IOException
+    {
+        // SETUP
+        String cacheName = "testRemove_Group";
+        TinyLFUMemoryCache<GroupAttrName<String>, String> cache = createCache( cacheName, 100 );
+        GroupId groupId = new GroupId( cacheName, "group" );
+        for ( int i = 0; i < 5; i++ )
+        {
+            GroupAttrName<String> key = new GroupAttrName<String>( groupId, "attr" + i );
+            cache.update( new CacheElement<GroupAttrName<String>, String>( cacheName, key, "value" + i ) );
+        }
+
+        // DO WORK
+        boolean removed = cache.remove( new GroupAttrName<String>( groupId, null ) );
+
+        // VERIFY
+        assertTrue( "Should remove the group", removed );
+        assertEquals( "Wrong size", 0, cache.getSize() );
+    }
+}
@@ -0,0 +1,248 @@
+package org.apache.commons.jcs.utils.locking;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+
+import junit.extensions.ActiveTestSuite;
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.access.CacheAccess;
+import org.apache.commons.jcs.access.exception.ObjectExistsException;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Test which exercises the keyed locks. Each test runs in its own region, and the tests run at the
+ * same time. Within a test several threads work on the same keys.
+ */
+public class KeyedReadWriteLockConcurrentUnitTest
+    extends TestCase
+{
+    /** Number of threads per test. */
+    private static int threads = 8;
+
+    /** Number of keys. */
+    private static int items = 200;
+
+    /**
+     * Constructor for the test.
+     * <p>
+     * @param testName
+     */
+    public KeyedReadWriteLockConcurrentUnitTest( String testName )
+    {
+        super( testName );
+    }
+
+    /**
+     * Main method passes this test to the text test runner.
+     * <p>
+     * @param args
+     */
+    public static void main( String args[] )
+    {
+        String[] testCaseName = { KeyedReadWriteLockConcurrentUnitTest.class.getName() };
+        junit.textui.TestRunner.main( testCaseName );
+    }
+
+    /**
+     * A unit test suite for JUnit
+     * <p>
+     * @return The test suite
+     */
+    public static Test suite()
+    {
+        ActiveTestSuite suite = new ActiveTestSuite();
+
+        suite.addTest( new KeyedReadWriteLockConcurrentUnitTest( "testPutSafe1" )
+        {
+            @Override
+            public void runTest()
+                throws Exception
+            {
+                this.runPutSafeForRegion( "testPutSafe1" );
+            }
+        } );
+
+        suite.addTest( new KeyedReadWriteLockConcurrentUnitTest( "testPutSafe2" )
+        {
+            @Override
+            public void runTest()
+                throws Exception
+            {
+                this.runPutSafeForRegion( "testPutSafe2" );
+            }
+        } );
+
+        suite.addTest( new KeyedReadWriteLockConcurrentUnitTest( "testCounters" )
+        {
+            @Override
+            public void runTest()
+                throws Exception
+            {
+                this.runCounters();
+            }
+        } );
+
+        return suite;
+    }
+
+    /**
+     * Runs the same work in several threads and rethrows the first failure.
+     * <p>
+     * @param work
+     * @throws Exception
+     */
+    private void runThreads( final Runnable work )
+        throws Exception
+    {
+        final Throwable[] errors = new Throwable[threads];
+        Thread[] running = new Thread[threads];
+        for ( int t = 0; t < threads; t++ )
+        {
+            final int id = t;
+            running[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        work.run();
+                    }
+                    catch ( Throwable e )
+                    {
+                        errors[id] = e;
+                    }
+                }
+            };
+            running[t].start();
+        }
+        for ( Thread thread : running )
+        {
+            thread.join();
+        }
+        for ( Throwable error : errors )
+        {
+            if ( error != null )
+            {
+                throw new AssertionError( error );
+            }
+        }
+    }
+
+    /**
+     * Several threads putSafe the same keys. Exactly one put per key should succeed, and the value
+     * in the cache should be the one it put.
+     * <p>
+     * @param region
+     * @throws Exception
+     */
+    public void runPutSafeForRegion( final String region )
+        throws Exception
+    {
+        ICompositeCacheAttributes attributes = new CompositeCacheAttributes();
+        attributes.setMaxObjects( items );
+        final CacheAccess<String, String> access =
+            new CacheAccess<String, String>( new CompositeCache<String, String>( region, attributes, new ElementAttributes() ) );
+        final AtomicInteger[] wins = new AtomicInteger[items];
+        for ( int i = 0; i < items; i++ )
+        {
+            wins[i] = new AtomicInteger();
+        }
+
+        runThreads( new Runnable()
+        {
+            public void run()
+            {
+                String name = Thread.currentThread().getName();
+                for ( int i = 0; i < items; i++ )
+                {
+                    try
+                    {
+                        access.putSafe( i + ":key", name );
+                        wins[i].incrementAndGet();
+                    }
+                    catch ( ObjectExistsException e )
+                    {
+                        // another thread was first
+                    }
+                    catch ( Exception e )
+                    {
+                        throw new IllegalStateException( e );
+                    }
+                }
+            }
+        } );
+
+        for ( int i = 0; i < items; i++ )
+        {
+            assertEquals( "Exactly one putSafe should win for " + i, 1, wins[i].get() );
+            assertNotNull( "Missing " + i, access.get( i + ":key" ) );
+        }
+    }
+
+    /**
+     * Several threads increment counters under the write lock of their key. No increment should
+     * be lost, and no lock should be left behind.
+     * <p>
+     * @throws Exception
+     */
+    public void runCounters()
+        throws Exception
+    {
+        final KeyedReadWriteLock<Integer> locks = new KeyedReadWriteLock<Integer>();
+        final int[] counters = new int[10];
+        final int rounds = 10000;
+
+        runThreads( new Runnable()
+        {
+            public void run()
+            {
+                for ( int i = 0; i < rounds; i++ )
+                {
+                    Integer key = Integer.valueOf( i % counters.length );
+                    Lock lock = locks.writeLock( key );
+                    lock.lock();
+                    try
+                    {
+                        counters[key.intValue()]++;
+                    }
+                    finally
+                    {
+                        lock.unlock();
+                    }
+                }
+            }
+        } );
+
+        for ( int counter : counters )
+        {
+            assertEquals( "Lost an increment.", threads * rounds / counters.length, counter );
+        }
+        assertEquals( "Should have dropped the locks.", 0, locks.size() );
+    }
+}
@@ -0,0 +1,151 @@
+package org.apache.commons.jcs.utils.locking;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the keyed read write lock.
+ */
+public class KeyedReadWriteLockUnitTest
+    extends TestCase
+{
+    /**
+     * The lock of a key should be dropped once nobody uses it.
+     */
+    public void testLocksAreDropped()
+    {
+        // SETUP
+        KeyedReadWriteLock<String> locks = new KeyedReadWriteLock<String>();
+        Lock a = locks.writeLock( "a" );
+        Lock b = locks.readLock( "b" );
+
+        // DO WORK
+        a.lock();
+        b.lock();
+        int held = locks.size();
+        a.unlock();
+        b.unlock();
+
+        // VERIFY
+        assertEquals( "Wrong number held.", 2, held );
+        assertEquals( "Should have dropped the locks.", 0, locks.size() );
+    }
+
+    /**
+     * The locks should be reentrant, and the writer should be able to take the read lock.
+     */
+    public void testReentrant()
+    {
+        // SETUP
+        KeyedReadWriteLock<String> locks = new KeyedReadWriteLock<String>();
+
+        // DO WORK
+        locks.writeLock( "a" ).lock();
+        locks.writeLock( "a" ).lock();
+        locks.readLock( "a" ).lock();
+        locks.readLock( "a" ).unlock();
+        locks.writeLock( "a" ).unlock();
+        int held = locks.size();
+        locks.writeLock( "a" ).unlock();
+
+        // VERIFY
+        assertEquals( "Should still be held.", 1, held );
+        assertEquals( "Should have dropped the lock.", 0, locks.size() );
+        assertEquals( "Should have created one lock.", 1, locks.getCreateCount() );
+    }
+
+    /**
+     * A write lock held by another thread should block the key but not other keys.
+     * <p>
+     * @throws Exception
+     */
+    public void testOtherKeysDoNotWait()
+        throws Exception
+    {
+        // SETUP
+        final KeyedReadWriteLock<String> locks = new KeyedReadWriteLock<String>();
+        final CountDownLatch locked = new CountDownLatch( 1 );
+        final CountDownLatch done = new CountDownLatch( 1 );
+        Thread holder = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                Lock lock = locks.writeLock( "a" );
+                lock.lock();
+                try
+                {
+                    locked.countDown();
+                    done.await();
+                }
+                catch ( InterruptedException e )
+                {
+                    // done
+                }
+                finally
+                {
+                    lock.unlock();
+                }
+            }
+        };
+        holder.start();
+        locked.await();
+
+        // DO WORK
+        boolean gotA = locks.readLock( "a" ).tryLock( 10, TimeUnit.MILLISECONDS );
+        Lock b = locks.writeLock( "b" );
+        boolean gotB = b.tryLock();
+        b.unlock();
+        done.countDown();
+        holder.join();
+
+        // VERIFY
+        assertFalse( "Should not get the locked key.", gotA );
+        assertTrue( "Should get another key.", gotB );
+        assertEquals( "Should have dropped the locks.", 0, locks.size() );
+    }
+
+    /**
+     * Unlocking a key that is not locked should fail.
+     */
+    public void testUnlockWithoutLock()
+    {
+        // SETUP
+        KeyedReadWriteLock<String> locks = new KeyedReadWriteLock<String>();
+
+        // DO WORK
+        try
+        {
+            locks.writeLock( "a" ).unlock();
+            fail( "Should have thrown." );
+        }
+        catch ( IllegalMonitorStateException e )
+        {
+            // VERIFY
+            assertEquals( "Should hold nothing.", 0, locks.size() );
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.apache.commons.jcs.utils.struct;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+
+/** Unit tests for the thread safe frequency sketch. */
+public class ConcurrentFrequencySketchUnitTest
+    extends TestCase
+{
+    /** Verify that increments are counted. */
+    public void testIncrement_Counted()
+    {
+        // SETUP
+        ConcurrentFrequencySketch sketch = new ConcurrentFrequencySketch( 512 );
+
+        // DO WORK
+        for ( int i = 0; i < 5; i++ )
+        {
+            sketch.increment( "key" );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong frequency", 5, sketch.frequency( "key" ) );
+        assertEquals( "Wrong frequency for unseen key", 0, sketch.frequency( "other" ) );
+    }
+
+    /** Verify that the counters saturate at 15. */
+    public void testIncrement_Saturates()
+    {
+        // SETUP
+        ConcurrentFrequencySketch sketch = new ConcurrentFrequencySketch( 512 );
+
+        // DO WORK
+        for ( int i = 0; i < 100; i++ )
+        {
+            sketch.increment( "key" );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong frequency", 15, sketch.frequency( "key" ) );
+    }
+
+    /** Verify that the counters are halved once the sample size is reached. */
+    public void testReset_Halves()
+    {
+        // SETUP
+        ConcurrentFrequencySketch sketch = new ConcurrentFrequencySketch( 64 );
+        for ( int i = 0; i < 8; i++ )
+        {
+            sketch.increment( "hot" );
+        }
+
+        // DO WORK
+        for ( int i = 0; sketch.getSampleCount() > 0 && i < 10 * 64; i++ )
+        {
+            sketch.increment( Integer.valueOf( i ) );
+        }
+
+        // VERIFY
+        assertTrue( "Should have been halved", sketch.frequency( "hot" ) <= 4 );
+    }
+
+    /**
+     * Verify that increments from several threads at once are not lost, when the sample size is
+     * not reached.
+     * <p>
+     * @throws Exception
+     */
+    public void testIncrement_Concurrent()
+        throws Exception
+    {
+        // SETUP
+        final ConcurrentFrequencySketch sketch = new ConcurrentFrequencySketch( 1024 );
+        final int keys = 32;
+        Thread[] threads = new Thread[4];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( int n = 0; n < 3; n++ )
+                    {
+                        for ( int i = 0; i < keys; i++ )
+                        {
+                            sketch.increment( "key" + i );
+                        }
+                    }
+                }
+            };
+        }
+
+        // DO WORK
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t].start();
+        }
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            threads[t].join();
+        }
+
+        // VERIFY
+        for ( int i = 0; i < keys; i++ )
+        {
+            assertTrue( "Lost increments for key" + i, sketch.frequency( "key" + i ) >= 12 );
+        }
+        assertEquals( "Wrong sample count", keys * 12, sketch.getSampleCount() );
+    }
+}
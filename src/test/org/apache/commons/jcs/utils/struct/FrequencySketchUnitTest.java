@@ -0,0 +1,85 @@
+package org.apache.commons.jcs.utils.struct;
+
+import junit.framework.TestCase;
+
+/** Unit tests for the frequency sketch. */
+public class FrequencySketchUnitTest
+    extends TestCase
+{
+    /** Verify that increments are counted. */
+    public void testIncrement_Counted()
+    {
+        // SETUP
+        FrequencySketch sketch = new FrequencySketch( 512 );
+
+        // DO WORK
+        for ( int i = 0; i < 5; i++ )
+        {
+            sketch.increment( "key" );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong frequency", 5, sketch.frequency( "key" ) );
+        assertEquals( "Wrong frequency for unseen key", 0, sketch.frequency( "other" ) );
+    }
+
+    /** Verify that the counters saturate at 15. */
+    public void testIncrement_Saturates()
+    {
+        // SETUP
+        FrequencySketch sketch = new FrequencySketch( 512 );
+
+        // DO WORK
+        for ( int i = 0; i < 100; i++ )
+        {
+            sketch.increment( "key" );
+        }
+
+        // VERIFY
+        assertEquals( "Wrong frequency", 15, sketch.frequency( "key" ) );
+    }
+
+    /** Verify that the counters are halved once the sample size is reached. */
+    public void testReset_Halves()
+    {
+        // SETUP
+        FrequencySketch sketch = new FrequencySketch( 64 );
+        for ( int i = 0; i < 8; i++ )
+        {
+            sketch.increment( "hot" );
+        }
+
+        // DO WORK
+        for ( int i = 0; sketch.getSampleCount() > 0 && i < 10 * 64; i++ )
+        {
+            sketch.increment( Integer.valueOf( i ) );
+        }
+
+        // VERIFY
+        assertTrue( "Should have been halved", sketch.frequency( "hot" ) <= 4 );
+    }
+
+    /** Verify that the estimates of many keys are not far above their counts. */
+    public void testFrequency_FewCollisions()
+    {
+        // SETUP
+        FrequencySketch sketch = new FrequencySketch( 1024 );
+
+        // DO WORK
+        for ( int i = 0; i < 1024; i++ )
+        {
+            sketch.increment( "key" + i );
+        }
+
+        // VERIFY
+        int overestimated = 0;
+        for ( int i = 0; i < 1024; i++ )
+        {
+            if ( sketch.frequency( "key" + i ) > 1 )
+            {
+                overestimated++;
+            }
+        }
+        assertTrue( "Too many collisions: " + overestimated, overestimated < 100 );
+    }
+}
@@ -0,0 +1,161 @@
+package org.apache.commons.jcs.utils.struct;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the timing wheel.
+ */
+public class TimerWheelUnitTest
+    extends TestCase
+{
+    /** A start time that is not aligned to any bucket. */
+    private static final long START = 1234567890123L;
+
+    /**
+     * Advances the wheel one step at a time until the value comes out.
+     * <p>
+     * @param wheel
+     * @param step
+     * @param limit
+     * @return the time at which the value expired, or -1
+     */
+    private long advanceUntilExpired( TimerWheel<String> wheel, long step, long limit )
+    {
+        for ( long now = START + step; now <= limit; now += step )
+        {
+            if ( !wheel.advance( now ).isEmpty() )
+            {
+                return now;
+            }
+        }
+        return -1;
+    }
+
+    /** Verify that values at several scales expire after their deadline and not much later. */
+    public void testAdvance_ExpiresAfterDeadline()
+    {
+        long[] durations = { 1, 500, 1500, 70 * 1000, 5 * 60 * 1000, 2 * 3600 * 1000, 3 * 24 * 3600 * 1000L };
+        for ( long duration : durations )
+        {
+            // SETUP
+            TimerWheel<String> wheel = new TimerWheel<String>( START );
+            long deadline = START + duration;
+            wheel.schedule( "value", deadline );
+
+            // DO WORK
+            long expired = advanceUntilExpired( wheel, 100, deadline + 10000 );
+
+            // VERIFY
+            assertTrue( "Never expired: " + duration, expired != -1 );
+            assertTrue( "Expired too early: " + duration, expired >= deadline );
+            assertTrue( "Expired too late: " + duration, expired <= deadline + 1100 );
+            assertEquals( "Wrong size", 0, wheel.size() );
+        }
+    }
+
+    /** Verify that a single large advance expires everything that is due and keeps the rest. */
+    public void testAdvance_LargeJump()
+    {
+        // SETUP
+        TimerWheel<String> wheel = new TimerWheel<String>( START );
+        for ( int i = 1; i <= 100; i++ )
+        {
+            wheel.schedule( "value" + i, START + i * 60 * 1000L );
+        }
+
+        // DO WORK
+        List<String> expired = wheel.advance( START + 50 * 60 * 1000L + 1 );
+
+        // VERIFY
+        assertEquals( "Wrong number expired", 50, expired.size() );
+        assertEquals( "Wrong size", 50, wheel.size() );
+        assertEquals( "Wrong number expired later", 50, wheel.advance( START + 101 * 60 * 1000L ).size() );
+    }
+
+    /** Verify that a descheduled value never comes out. */
+    public void testDeschedule()
+    {
+        // SETUP
+        TimerWheel<String> wheel = new TimerWheel<String>( START );
+        TimerWheel.Node<String> node = wheel.schedule( "gone", START + 2000 );
+        wheel.schedule( "kept", START + 2000 );
+
+        // DO WORK
+        wheel.deschedule( node );
+        wheel.deschedule( node );
+        List<String> expired = wheel.advance( START + 5000 );
+
+        // VERIFY
+        assertEquals( "Wrong number expired", 1, expired.size() );
+        assertEquals( "Wrong value", "kept", expired.get( 0 ) );
+        assertEquals( "Wrong size", 0, wheel.size() );
+    }
+
+    /** Verify that a rescheduled value comes out at its new deadline. */
+    public void testReschedule()
+    {
+        // SETUP
+        TimerWheel<String> wheel = new TimerWheel<String>( START );
+        TimerWheel.Node<String> node = wheel.schedule( "value", START + 2000 );
+
+        // DO WORK
+        wheel.reschedule( node, START + 120 * 1000 );
+
+        // VERIFY
+        assertTrue( "Should not expire at the old deadline", wheel.advance( START + 5000 ).isEmpty() );
+        assertEquals( "Wrong deadline", START + 120 * 1000, node.getDeadline() );
+        assertEquals( "Should expire at the new deadline", 1, wheel.advance( START + 122 * 1000 ).size() );
+    }
+
+    /** Verify that a deadline in the past expires at the next advance. */
+    public void testSchedule_PastDeadline()
+    {
+        // SETUP
+        TimerWheel<String> wheel = new TimerWheel<String>( START );
+
+        // DO WORK
+        wheel.schedule( "value", START - 5000 );
+
+        // VERIFY
+        assertEquals( "Should expire", 1, wheel.advance( START + 1024 ).size() );
+    }
+
+    /** Verify that clear forgets everything. */
+    public void testClear()
+    {
+        // SETUP
+        TimerWheel<String> wheel = new TimerWheel<String>( START );
+        for ( int i = 0; i < 10; i++ )
+        {
+            wheel.schedule( "value" + i, START + i * 1000 * 1000L );
+        }
+
+        // DO WORK
+        wheel.clear();
+
+        // VERIFY
+        assertEquals( "Wrong size", 0, wheel.size() );
+        assertTrue( "Nothing should expire", wheel.advance( START + 10000 * 1000L ).isEmpty() );
+    }
+}
@@ -0,0 +1,125 @@
+package org.apache.commons.jcs.utils.timing;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.jcs.engine.CacheElement;
+import org.apache.commons.jcs.engine.CompositeCacheAttributes;
+import org.apache.commons.jcs.engine.ElementAttributes;
+import org.apache.commons.jcs.engine.behavior.ICompositeCacheAttributes;
+import org.apache.commons.jcs.engine.control.CompositeCache;
+
+/**
+ * Tests for the cache clock. Expiration is driven by a fake clock, so nothing sleeps.
+ */
+public class CacheClockUnitTest
+    extends TestCase
+{
+    /** The clock the tests advance. */
+    private FakeClock clock;
+
+    /**
+     * Installs the fake clock.
+     */
+    @Override
+    protected void setUp()
+    {
+        clock = new FakeClock( 1000000 );
+        CacheClock.setClock( clock );
+    }
+
+    /**
+     * Restores the system clock.
+     */
+    @Override
+    protected void tearDown()
+    {
+        CacheClock.setClock( null );
+    }
+
+    /**
+     * Creates a region with an element that lives for maxLife seconds and may idle for idle
+     * seconds.
+     * <p>
+     * @param name
+     * @param maxLife
+     * @param idle
+     * @return the region
+     * @throws IOException
+     */
+    private CompositeCache<String, String> createCache( String name, long maxLife, long idle )
+        throws IOException
+    {
+        ICompositeCacheAttributes cattr = new CompositeCacheAttributes();
+        cattr.setMaxObjects( 100 );
+        CompositeCache<String, String> cache =
+            new CompositeCache<String, String>( name, cattr, new ElementAttributes() );
+
+        ElementAttributes attr = new ElementAttributes();
+        attr.setIsEternal( false );
+        attr.setMaxLifeSeconds( maxLife );
+        attr.setIdleTime( idle );
+        CacheElement<String, String> element = new CacheElement<String, String>( name, "key", "value" );
+        element.setElementAttributes( attr );
+        cache.update( element );
+        return cache;
+    }
+
+    /**
+     * Verify that the times come from the clock that is set, and that null restores the system
+     * clock.
+     */
+    public void testSetClock()
+    {
+        // DO WORK
+        ElementAttributes attr = new ElementAttributes();
+
+        // VERIFY
+        assertSame( "Wrong clock.", clock, CacheClock.getClock() );
+        assertEquals( "Wrong create time.", 1000000, attr.getCreateTime() );
+
+        CacheClock.setClock( null );
+        assertTrue( "Should use the system clock.", CacheClock.getClock() instanceof SystemClock );
+    }
+
+    /**
+     * An element should be there right up to its max life and gone after it.
+     * <p>
+     * @throws IOException
+     */
+    public void testExpiresByMaxLife()
+        throws IOException
+    {
+        // SETUP
+        CompositeCache<String, String> cache = createCache( "testExpiresByMaxLife", 10, -1 );
+
+        // DO WORK
+        clock.advance( 10000 );
+        assertNotNull( "Should not have expired yet.", cache.get( "key" ) );
+        clock.advance( 1 );
+
+        // VERIFY
+        assertNull( "Should have expired.", cache.get( "key" ) );
+    }
+}
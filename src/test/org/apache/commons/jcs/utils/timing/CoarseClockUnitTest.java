@@ -0,0 +1,72 @@
+package org.apache.commons.jcs.utils.timing;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for the coarse clock.
+ */
+public class CoarseClockUnitTest
+    extends TestCase
+{
+    /**
+     * The clock should follow the system time to within a few ticks, and stop when disposed.
+     * <p>
+     * @throws Exception
+     */
+    public void testTicks()
+        throws Exception
+    {
+        // SETUP
+        CoarseClock clock = new CoarseClock( 5 );
+        long start = clock.currentTimeMillis();
+
+        // DO WORK
+        Thread.sleep( 100 );
+        long later = clock.currentTimeMillis();
+        clock.dispose();
+        Thread.sleep( 50 );
+        long stopped = clock.currentTimeMillis();
+        Thread.sleep( 50 );
+
+        // VERIFY
+        assertTrue( "Should have moved.", later > start );
+        assertTrue( "Should be close to the system time.", System.currentTimeMillis() - later < 1000 );
+        assertEquals( "Should have stopped.", stopped, clock.currentTimeMillis() );
+    }
+
+    /**
+     * A tick of less than a millisecond should be refused.
+     */
+    public void testBadTick()
+    {
+        try
+        {
+            new CoarseClock( 0 );
+            fail( "Should have thrown." );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            // expected
+        }
+    }
+}
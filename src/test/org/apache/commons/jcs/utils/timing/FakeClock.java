@@ -0,0 +1,69 @@
+package org.apache.commons.jcs.utils.timing;
+
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.jcs.utils.timing.behavior.IClock;
+
+/**
+ * A clock for tests that only moves when told to.
+ */
+public class FakeClock
+    implements IClock
+{
+    /** The current time. */
+    private final AtomicLong now;
+
+    /**
+     * @param start the time to start at
+     */
+    public FakeClock( long start )
+    {
+        this.now = new AtomicLong( start );
+    }
+
+    /**
+     * @return the current time
+     */
+    public long currentTimeMillis()
+    {
+        return now.get();
+    }
+
+    /**
+     * Moves the clock forward.
+     * <p>
+     * @param millis
+     */
+    public void advance( long millis )
+    {
+        now.addAndGet( millis );
+    }
+
+    /**
+     * @param time the new current time
+     */
+    public void setTime( long time )
+    {
+        now.set( time );
+    }
+}